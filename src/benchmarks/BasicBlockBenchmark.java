@@ -0,0 +1,117 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpc.emulator.PC;
+import org.jpc.emulator.execution.codeblock.PeekableMemoryStream;
+import org.jpc.emulator.execution.decoder.*;
+import org.jpc.emulator.memory.PhysicalAddressSpace;
+import org.jpc.emulator.processor.Processor;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Interpreted execution of single real mode blocks made of common
+ * instruction mixes.  Each block ends in a short jump to the next byte.
+ * @author Ian Preston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BasicBlockBenchmark
+{
+    private static final int CODE_ADDRESS = 0x7000;
+
+    private static final byte[] ALU = {
+        0x01, (byte) 0xd8,       // add ax, bx
+        0x29, (byte) 0xd1,       // sub cx, dx
+        0x31, (byte) 0xfe,       // xor si, di
+        0x21, (byte) 0xc8,       // and ax, cx
+        0x09, (byte) 0xd3,       // or bx, dx
+        0x46,                    // inc si
+        0x4f,                    // dec di
+        0x39, (byte) 0xd8,       // cmp ax, bx
+        (byte) 0xeb, 0x00        // jmp short $+2
+    };
+
+    private static final byte[] MEMORY = {
+        (byte) 0xa1, 0x00, 0x01,               // mov ax, [0x100]
+        (byte) 0xa3, 0x02, 0x01,               // mov [0x102], ax
+        (byte) 0x8b, 0x1e, 0x04, 0x01,         // mov bx, [0x104]
+        0x01, 0x1e, 0x06, 0x01,                // add [0x106], bx
+        (byte) 0x89, 0x1e, 0x08, 0x01,         // mov [0x108], bx
+        (byte) 0x8b, 0x0e, 0x0a, 0x01,         // mov cx, [0x10a]
+        (byte) 0xeb, 0x00                      // jmp short $+2
+    };
+
+    private static final byte[] STACK = {
+        0x50, 0x53, 0x51, 0x52,  // push ax, bx, cx, dx
+        0x5a, 0x59, 0x5b, 0x58,  // pop dx, cx, bx, ax
+        (byte) 0xeb, 0x00        // jmp short $+2
+    };
+
+    @Param({"alu", "memory", "stack"})
+    public String mix;
+
+    private Processor cpu;
+    private BasicBlock block;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        PC pc = BenchmarkPC.create("odin070", false);
+        cpu = pc.getProcessor();
+        byte[] code = mix.equals("alu") ? ALU : mix.equals("memory") ? MEMORY : STACK;
+
+        PhysicalAddressSpace physical = (PhysicalAddressSpace) pc.getComponent(PhysicalAddressSpace.class);
+        physical.copyArrayIntoContents(CODE_ADDRESS, code, 0, code.length);
+        PeekableMemoryStream input = new PeekableMemoryStream();
+        input.set(physical, CODE_ADDRESS);
+        block = FastDecoder.decodeBlock(input, 16, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public Object execute()
+    {
+        cpu.eip = 0;
+        block.execute(cpu);
+        block.execute(cpu);
+        block.execute(cpu);
+        block.execute(cpu);
+        block.execute(cpu);
+        block.execute(cpu);
+        block.execute(cpu);
+        return block.execute(cpu);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package benchmarks;
+
+import java.io.*;
+import java.util.*;
+
+import org.jpc.emulator.PC;
+import org.jpc.emulator.processor.Processor;
+import org.jpc.j2se.*;
+
+/**
+ * Builds the emulators the benchmarks run against from the bundled disk images.
+ * @author Ian Preston
+ */
+class BenchmarkPC
+{
+    static final String IMAGES = System.getProperty("jpc.images", "resources/images");
+
+    /**
+     * Creates a deterministic PC booting the named image set.
+     * @param image one of <code>odin070</code>, <code>floppy</code> or
+     * <code>dosgames</code> (floppy.img plus dosgames.img as the hard disk)
+     * @param compile whether hot blocks are compiled to bytecode
+     * @return freshly reset PC
+     * @throws IOException if an image is missing or unreadable
+     */
+    static PC create(String image, boolean compile) throws IOException
+    {
+        List<String> args = new ArrayList<String>();
+        if (image.equals("dosgames"))
+        {
+            args.addAll(Arrays.asList("-fda", imagePath("floppy.img"), "-hda", imagePath("dosgames.img"), "-boot", "fda"));
+        }
+        else
+            args.addAll(Arrays.asList("-fda", imagePath(image + ".img"), "-boot", "fda"));
+        args.add("-deterministic");
+        if (compile)
+            args.add("-compile");
+
+        String[] parsed = Option.parse(args.toArray(new String[args.size()]));
+        PC.compile = compile;
+        return new PC(new VirtualClock(), parsed);
+    }
+
+    private static String imagePath(String name) throws FileNotFoundException
+    {
+        File f = new File(IMAGES, name);
+        if (!f.exists())
+            throw new FileNotFoundException(f + " (set -Djpc.images to the directory holding the disk images)");
+        return f.getPath();
+    }
+
+    /**
+     * Runs a PC for at least the given number of x86 instructions.
+     * @param pc started PC
+     * @param instructions instruction count to run
+     * @return instructions actually executed
+     */
+    static long run(PC pc, long instructions)
+    {
+        long count = 0;
+        while (count < instructions)
+            count += pc.execute();
+        return count;
+    }
+
+    /**
+     * A block start seen while running a guest, with the decoder mode it ran in.
+     */
+    static class BlockStart
+    {
+        final int address, mode, operandSize;
+
+        BlockStart(int address, int mode, int operandSize)
+        {
+            this.address = address;
+            this.mode = mode;
+            this.operandSize = operandSize;
+        }
+    }
+
+    /**
+     * Samples distinct block start addresses from a running PC, so the
+     * decoder can be measured on the code the guest really executes.
+     * @param pc started PC
+     * @param count maximum number of distinct block starts to collect
+     * @param instructions instruction budget to sample within
+     * @return sampled block starts
+     */
+    static List<BlockStart> sampleBlockStarts(PC pc, int count, long instructions)
+    {
+        Processor cpu = pc.getProcessor();
+        Map<Long, BlockStart> starts = new LinkedHashMap<Long, BlockStart>();
+        long executed = 0;
+        while ((starts.size() < count) && (executed < instructions))
+        {
+            executed += pc.execute();
+            int mode = cpu.isVirtual8086Mode() ? 3 : cpu.isProtectedMode() ? 2 : 1;
+            int operandSize = (mode == 2) && cpu.cs.getDefaultSizeFlag() ? 32 : 16;
+            int address = cpu.getInstructionPointer();
+            long key = ((long) mode << 40) | ((long) operandSize << 32) | (address & 0xffffffffL);
+            if (!starts.containsKey(key))
+                starts.put(key, new BlockStart(address, mode, operandSize));
+        }
+        return new ArrayList<BlockStart>(starts.values());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpc.emulator.PC;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * End to end emulation speed booting the bundled images.  The
+ * <code>instructions</code> counter is reported in instructions per
+ * microsecond, which is MIPS.
+ * <p>
+ * Each trial boots a fresh PC, so the later iterations measure the guest
+ * after boot rather than the BIOS.  The <code>dosgames</code> image set needs
+ * dosgames.img alongside floppy.img, and is selected with
+ * <code>-p image=dosgames</code>.
+ * @author Ian Preston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class BootBenchmark
+{
+    @Param({"odin070", "floppy"})
+    public String image;
+
+    @Param({"false", "true"})
+    public boolean compile;
+
+    private PC pc;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters
+    {
+        public long instructions;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        pc = BenchmarkPC.create(image, compile);
+        pc.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pc.stop();
+    }
+
+    @Benchmark
+    public void execute(Counters counters)
+    {
+        counters.instructions += pc.execute();
+    }
+}
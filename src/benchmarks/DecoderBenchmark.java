@@ -0,0 +1,130 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.jpc.emulator.PC;
+import org.jpc.emulator.execution.codeblock.PeekableMemoryStream;
+import org.jpc.emulator.execution.decoder.*;
+import org.jpc.emulator.memory.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Decoder throughput on block starts sampled from a booting guest.
+ * <p>
+ * The pages holding the sampled blocks are copied out of the guest before
+ * measuring, so the numbers cover decoding alone and not address translation.
+ * @author Ian Preston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark
+{
+    private static final int SAMPLES = 256;
+
+    @Param({"odin070"})
+    public String image;
+
+    private Memory[] pages;
+    private int[] offsets, modes, operandSizes;
+    private PeekableMemoryStream input = new PeekableMemoryStream();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        PC pc = BenchmarkPC.create(image, false);
+        pc.start();
+        BenchmarkPC.run(pc, 50000000);
+        List<BenchmarkPC.BlockStart> starts = BenchmarkPC.sampleBlockStarts(pc, SAMPLES, 200000000);
+        pc.stop();
+
+        LinearAddressSpace linear = (LinearAddressSpace) pc.getComponent(LinearAddressSpace.class);
+        Map<Integer, Memory> copies = new HashMap<Integer, Memory>();
+        List<BenchmarkPC.BlockStart> decodable = new ArrayList<BenchmarkPC.BlockStart>();
+        List<Memory> blockPages = new ArrayList<Memory>();
+        for (BenchmarkPC.BlockStart s: starts)
+        {
+            int page = s.address & AddressSpace.INDEX_MASK;
+            Memory copy = copies.get(page);
+            if (copy == null)
+            {
+                // two pages so blocks running off the end of the first still decode
+                byte[] code = new byte[2 * AddressSpace.BLOCK_SIZE];
+                try {
+                    linear.copyContentsIntoArray(page, code, 0, code.length);
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                copy = new LazyCodeBlockMemory(code.length, null);
+                copy.copyArrayIntoContents(0, code, 0, code.length);
+                copies.put(page, copy);
+            }
+            try {
+                input.set(copy, s.address & AddressSpace.BLOCK_MASK);
+                FastDecoder.decodeBlock(input, s.operandSize, s.mode);
+            } catch (RuntimeException e) {
+                continue;
+            }
+            decodable.add(s);
+            blockPages.add(copy);
+        }
+        if (decodable.isEmpty())
+            throw new IllegalStateException("No decodable blocks sampled from " + image);
+
+        // round down to a power of two so the rotation is a mask
+        int count = Integer.highestOneBit(decodable.size());
+        pages = new Memory[count];
+        offsets = new int[count];
+        modes = new int[count];
+        operandSizes = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            BenchmarkPC.BlockStart s = decodable.get(i);
+            pages[i] = blockPages.get(i);
+            offsets[i] = s.address & AddressSpace.BLOCK_MASK;
+            modes[i] = s.mode;
+            operandSizes[i] = s.operandSize;
+        }
+    }
+
+    @Benchmark
+    public BasicBlock decodeBlock()
+    {
+        int i = next++ & (pages.length - 1);
+        input.set(pages[i], offsets[i]);
+        return FastDecoder.decodeBlock(input, operandSizes[i], modes[i]);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jpc.emulator.PC;
+import org.jpc.emulator.execution.*;
+import org.jpc.emulator.processor.Processor;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of evaluating the lazily computed arithmetic flags after the
+ * instructions that set them.
+ * @author Ian Preston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyFlagsBenchmark
+{
+    private static final int OPERANDS = 1024;
+
+    private Processor cpu;
+    private int[] operands = new int[OPERANDS];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        PC pc = BenchmarkPC.create("odin070", false);
+        cpu = pc.getProcessor();
+        Random r = new Random(0);
+        for (int i = 0; i < operands.length; i++)
+            operands[i] = r.nextInt();
+    }
+
+    private void add32()
+    {
+        cpu.flagOp1 = operands[next++ & (OPERANDS - 1)];
+        cpu.flagOp2 = operands[next & (OPERANDS - 1)];
+        cpu.flagResult = cpu.flagOp1 + cpu.flagOp2;
+        cpu.flagIns = UCodes.ADD32;
+        cpu.flagStatus = Executable.OSZAPC;
+    }
+
+    private void sub32()
+    {
+        cpu.flagOp1 = operands[next++ & (OPERANDS - 1)];
+        cpu.flagOp2 = operands[next & (OPERANDS - 1)];
+        cpu.flagResult = cpu.flagOp1 - cpu.flagOp2;
+        cpu.flagIns = UCodes.SUB32;
+        cpu.flagStatus = Executable.OSZAPC;
+    }
+
+    @Benchmark
+    public boolean addCarry()
+    {
+        add32();
+        return cpu.cf();
+    }
+
+    @Benchmark
+    public boolean addOverflow()
+    {
+        add32();
+        return cpu.of();
+    }
+
+    @Benchmark
+    public boolean subZero()
+    {
+        sub32();
+        return cpu.zf();
+    }
+
+    @Benchmark
+    public boolean logicSign()
+    {
+        cpu.setOSZAPC_Logic32(operands[next++ & (OPERANDS - 1)]);
+        return cpu.sf();
+    }
+
+    @Benchmark
+    public int subAllFlags()
+    {
+        sub32();
+        return cpu.getEFlags();
+    }
+}
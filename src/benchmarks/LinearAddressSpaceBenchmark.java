@@ -0,0 +1,113 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jpc.emulator.PC;
+import org.jpc.emulator.memory.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Linear address space reads and writes, with paging off and with an
+ * identity mapped set of 4K page tables.  The TLB miss benchmark
+ * invalidates the translation before each read, so it measures a page table
+ * walk plus the TLB refill.
+ * @author Ian Preston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinearAddressSpaceBenchmark
+{
+    // accesses stay clear of the video memory and ROMs below 1M
+    private static final int REGION_START = 0x100000;
+    private static final int REGION_END = 0x400000;
+    private static final int PAGE_DIRECTORY = 0x400000;
+    private static final int ADDRESSES = 4096;
+
+    @Param({"false", "true"})
+    public boolean paging;
+
+    private LinearAddressSpace linear;
+    private int[] addresses = new int[ADDRESSES];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        PC pc = BenchmarkPC.create("odin070", false);
+        linear = (LinearAddressSpace) pc.getComponent(LinearAddressSpace.class);
+        PhysicalAddressSpace physical = (PhysicalAddressSpace) pc.getComponent(PhysicalAddressSpace.class);
+
+        if (paging)
+        {
+            // identity map the first 8M with user read/write 4K pages
+            for (int table = 0; table < 2; table++)
+            {
+                int tableAddress = PAGE_DIRECTORY + (table + 1) * AddressSpace.BLOCK_SIZE;
+                physical.setDoubleWord(PAGE_DIRECTORY + 4 * table, tableAddress | 0x7);
+                for (int page = 0; page < 1024; page++)
+                    physical.setDoubleWord(tableAddress + 4 * page, ((table << 22) | (page << 12)) | 0x7);
+            }
+            linear.setPageDirectoryBaseAddress(PAGE_DIRECTORY);
+            linear.setPageCacheEnabled(true);
+            linear.setPagingEnabled(true);
+        }
+
+        Random r = new Random(0);
+        for (int i = 0; i < addresses.length; i++)
+            addresses[i] = (REGION_START + r.nextInt(REGION_END - REGION_START)) & ~3;
+    }
+
+    @Benchmark
+    public int readDoubleWord()
+    {
+        return linear.getDoubleWord(addresses[next++ & (ADDRESSES - 1)]);
+    }
+
+    @Benchmark
+    public void writeDoubleWord()
+    {
+        int address = addresses[next++ & (ADDRESSES - 1)];
+        linear.setDoubleWord(address, address);
+    }
+
+    @Benchmark
+    public int readDoubleWordTLBMiss()
+    {
+        int address = addresses[next++ & (ADDRESSES - 1)];
+        linear.invalidateTLBEntry(address);
+        return linear.getDoubleWord(address);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jpc.emulator.PC;
+import org.jpc.emulator.memory.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Physical double word reads at a fixed offset within successive pages.  An
+ * offset of 4094 makes every read straddle two pages.
+ * @author Ian Preston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicalAddressSpaceBenchmark
+{
+    private static final int FIRST_PAGE = 0x100;
+    private static final int PAGES = 0x200;
+
+    @Param({"0", "4092", "4094"})
+    public int offset;
+
+    private PhysicalAddressSpace physical;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        PC pc = BenchmarkPC.create("odin070", false);
+        physical = (PhysicalAddressSpace) pc.getComponent(PhysicalAddressSpace.class);
+        // touch every page so lazily allocated memory is in place
+        for (int page = FIRST_PAGE; page <= FIRST_PAGE + PAGES; page++)
+            physical.setByte(page << AddressSpace.INDEX_SHIFT, (byte) page);
+    }
+
+    @Benchmark
+    public int getDoubleWord()
+    {
+        int page = FIRST_PAGE + (next++ & (PAGES - 1));
+        return physical.getDoubleWord((page << AddressSpace.INDEX_SHIFT) + offset);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.*;
+import java.util.logging.*;
+
+import org.jpc.emulator.memory.*;
+import org.jpc.j2se.PCControl;
+
+/**
+ * Moves a running PC to another JVM over a socket with iterative pre-copy.
+ * Every RAM page is streamed while the guest carries on running, then the
+ * pages it has written since are streamed again, round after round, until
+ * the remainder is small or stops shrinking. Only then is the guest
+ * stopped, for the last dirty pages and the component state written by
+ * <code>PC.saveState</code>.
+ * <p>
+ * Each round pauses the guest just long enough to select the dirty pages;
+ * their contents are copied out copy on write, exactly as for incremental
+ * snapshots. The receiving end must be a freshly constructed PC with the
+ * same configuration, and acknowledges once the state is loaded, after
+ * which the sending PC must not be run again.
+ * @author Ian Preston
+ */
+public final class Migration
+{
+    private static final Logger LOGGING = Logger.getLogger(Migration.class.getName());
+
+    private static final long MAGIC = 0x4a50434d49475231L; // "JPCMIGR1"
+    private static final int END_OF_ROUND = -1;
+    private static final int END_OF_MIGRATION = -2;
+    private static final int ZERO_PAGE = 0x40000000;
+    private static final int ACK = 1;
+    private static final int PAGE_SIZE = AddressSpace.BLOCK_SIZE;
+    private static final int STREAM_BUFFER = 64 * 1024;
+
+    private static final int MAX_ROUNDS = 30;
+    private static final int STOP_PAGES = 256;
+
+    private Migration()
+    {
+    }
+
+    /**
+     * Migrates <code>pc</code> to the receiver at the other end of
+     * <code>socket</code>. If anything goes wrong before the receiver has
+     * taken over, the guest is left running here as it was. Once it has,
+     * <code>pc</code> is marked as migrated and refuses to start. Either way the
+     * dirty page bits are used up, so a later incremental snapshot must
+     * start a new chain, and any snapshot still being written must have
+     * finished first.
+     * @param pc the PC to move
+     * @param control used to pause and resume the guest between rounds
+     * @param socket connection to a receiver in <code>receive</code>
+     * @throws IOException if the migration failed
+     */
+    public static void send(PC pc, PCControl control, Socket socket) throws IOException
+    {
+        PhysicalAddressSpace memory = (PhysicalAddressSpace) pc.getComponent(PhysicalAddressSpace.class);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER));
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[PAGE_SIZE];
+        boolean wasRunning = control.isRunning();
+        boolean stopped = false;
+        boolean handedOver = false;
+        MemoryCapture pages = null;
+        try
+        {
+            out.writeLong(MAGIC);
+            int previous = Integer.MAX_VALUE;
+            for (int round = 0; ; round++)
+            {
+                control.stop();
+                stopped = true;
+                pages = memory.captureMemory(round == 0);
+                int count = pages.getPageCount();
+                if ((round > 0) && ((count <= STOP_PAGES) || (round >= MAX_ROUNDS) || ((round > 1) && (count >= previous))))
+                    break;
+                if (wasRunning)
+                {
+                    control.start();
+                    stopped = false;
+                }
+                LOGGING.log(Level.FINE, "migration round {0}: {1} pages", new Object[]{Integer.valueOf(round), Integer.valueOf(count)});
+                sendPages(out, pages, buffer);
+                out.writeInt(END_OF_ROUND);
+                previous = count;
+            }
+
+            LOGGING.log(Level.INFO, "migration stopped the guest with {0} pages left", Integer.valueOf(pages.getPageCount()));
+            ByteArrayOutputStream state = new ByteArrayOutputStream();
+            pc.saveState(state, false);
+            sendPages(out, pages, buffer);
+            out.writeInt(END_OF_MIGRATION);
+            out.writeInt(state.size());
+            state.writeTo(out);
+            out.flush();
+
+            if (in.read() != ACK)
+                throw new IOException("Migration target did not take over");
+            handedOver = true;
+            pc.setMigrated();
+            LOGGING.log(Level.INFO, "migration complete");
+        }
+        finally
+        {
+            if (!handedOver)
+            {
+                if (pages != null)
+                    pages.discard();
+                if (stopped && wasRunning)
+                    control.start();
+            }
+        }
+    }
+
+    private static void sendPages(DataOutputStream out, MemoryCapture pages, byte[] buffer) throws IOException
+    {
+        for (int i = 0; i < pages.getPageCount(); i++)
+        {
+            pages.copyPage(i, buffer);
+            if (isZero(buffer))
+                out.writeInt(pages.getPage(i) | ZERO_PAGE);
+            else
+            {
+                out.writeInt(pages.getPage(i));
+                out.write(buffer);
+            }
+        }
+    }
+
+    private static boolean isZero(byte[] page)
+    {
+        for (int i = 0; i < page.length; i++)
+            if (page[i] != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Takes over a PC sent by <code>send</code>. Pages are held until the
+     * final state arrives, as that state replaces the memory layout of
+     * <code>pc</code>.
+     * @param pc a freshly constructed PC with the sender's configuration
+     * @param socket connection to the sender
+     * @throws IOException if the stream is broken or isn't a migration
+     */
+    public static void receive(PC pc, Socket socket) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER));
+        if (in.readLong() != MAGIC)
+            throw new IOException("Not a JPC migration stream");
+
+        // a null entry stands for a page of zeros
+        Map<Integer, byte[]> pages = new HashMap<Integer, byte[]>();
+        int rounds = 0;
+        while (true)
+        {
+            int page = in.readInt();
+            if (page == END_OF_ROUND)
+            {
+                rounds++;
+                continue;
+            }
+            if (page == END_OF_MIGRATION)
+                break;
+            if ((page & ZERO_PAGE) != 0)
+            {
+                pages.put(Integer.valueOf(page & ~ZERO_PAGE), null);
+                continue;
+            }
+            Integer key = Integer.valueOf(page);
+            byte[] data = pages.get(key);
+            if (data == null)
+            {
+                data = new byte[PAGE_SIZE];
+                pages.put(key, data);
+            }
+            in.readFully(data);
+        }
+        byte[] state = new byte[in.readInt()];
+        in.readFully(state);
+
+        pc.loadState(new ByteArrayInputStream(state), false);
+        PhysicalAddressSpace memory = (PhysicalAddressSpace) pc.getComponent(PhysicalAddressSpace.class);
+        for (Map.Entry<Integer, byte[]> entry : pages.entrySet())
+            if (entry.getValue() != null)
+                memory.loadPage(entry.getKey().intValue(), entry.getValue());
+        memory.markClean();
+
+        OutputStream out = socket.getOutputStream();
+        out.write(ACK);
+        out.flush();
+        LOGGING.log(Level.INFO, "migration received {0} pages in {1} rounds", new Object[]{Integer.valueOf(pages.size()), Integer.valueOf(rounds + 1)});
+    }
+}
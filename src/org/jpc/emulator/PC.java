@@ -71,7 +71,6 @@ public class PC {
 
     public static int SYS_RAM_SIZE;
     public static final int DEFAULT_RAM_SIZE = Option.ram.intValue(16) * 1024 * 1024;
-    public static final int INSTRUCTIONS_BETWEEN_INTERRUPTS = 1; 
     public static final boolean ETHERNET = Option.ethernet.isSet();
 
     public static volatile boolean compile = Option.compile.isSet();
@@ -94,6 +93,7 @@ public class PC {
     private final CodeBlockManager manager;
     private EthernetCard ethernet;
     private final Keyboard keyboard;
+    private volatile boolean migrated;
 
     /**
      * Constructs a new <code>PC</code> instance with the specified external time-source and
@@ -154,7 +154,10 @@ public class PC {
         parts.add(new PIIX3IDEInterface());
         if (Option.ethernet.isSet())
             parts.add(ethernet = new EthernetCard());
-        parts.add(new DefaultVGACard());
+        if (Option.vnc.isSet())
+            parts.add(new HeadlessVGACard());
+        else
+            parts.add(new DefaultVGACard());
 
         parts.add(new SerialPort(0));
         parts.add(new SerialPort(1));
@@ -466,9 +469,13 @@ public class PC {
 
     /**
      * Starts this PC's attached clock instance.
+     * @throws IllegalStateException if this PC has been migrated to another JVM
      */
     public void start() {
+        if (migrated)
+            throw new IllegalStateException("PC has been migrated away");
         vmClock.resume();
+        ExecutionProfiler.start();
         if (Option.sound.value())
             AudioLayer.open(Option.mixer_javabuffer.intValue(8820), Option.mixer_rate.intValue(SBlaster.OPL_RATE));
     }
@@ -478,10 +485,27 @@ public class PC {
      */
     public void stop() {
         vmClock.pause();
+        ExecutionProfiler.stop();
         if (Option.sound.value())
             AudioLayer.stop();
     }
 
+    /**
+     * Marks this PC as handed over to another JVM by a migration. The guest
+     * now runs there against the same disk images, so this copy must never
+     * be started again.
+     */
+    public void setMigrated() {
+        migrated = true;
+    }
+
+    /**
+     * Returns <code>true</code> if this PC has been migrated to another JVM.
+     */
+    public boolean isMigrated() {
+        return migrated;
+    }
+
     /**
      * Inserts the specified floppy disk into the drive identified.
      * @param disk new floppy disk to be inserted.
@@ -541,16 +565,58 @@ public class PC {
      */
     public void saveState(OutputStream out) throws IOException {
         LOGGING.log(Level.INFO, "snapshot saving");
+        saveState(out, true);
+        LOGGING.log(Level.INFO, "snapshot done");
+    }
+
+    void saveState(OutputStream out, boolean memoryContents) throws IOException {
         ZipOutputStream zout = new ZipOutputStream(out);
         for (HardwareComponent hwc : parts) {
-            saveComponent(zout, hwc);
+            saveComponent(zout, hwc, memoryContents);
         }
 
         zout.finish();
-        LOGGING.log(Level.INFO, "snapshot done");
     }
 
-    private void saveComponent(ZipOutputStream zip, HardwareComponent component) throws IOException {
+    /**
+     * Takes an incremental snapshot. Everything except RAM is serialised
+     * straight away, and the RAM pages written since <code>parent</code> was
+     * taken (or all of them if there is no parent) are captured copy on write.
+     * The file is then written on a background thread while the emulation
+     * carries on. Must be called with the emulation paused.
+     * @param file the snapshot file to create
+     * @param parent the previous snapshot in the chain, or null to start a new chain
+     * @return the new snapshot, which later snapshots can chain from
+     * @throws java.io.IOException if the state can't be serialised
+     */
+    public Snapshot saveIncrementalState(File file, Snapshot parent) throws IOException {
+        if (parent != null)
+            parent.waitUntilWritten();
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        saveState(state, false);
+        MemoryCapture memory = physicalAddr.captureMemory(parent == null);
+        LOGGING.log(Level.INFO, "incremental snapshot captured {0} pages", Integer.valueOf(memory.getPageCount()));
+        return Snapshot.write(file, parent, state.toByteArray(), memory);
+    }
+
+    /**
+     * Restores an incremental snapshot, together with the chain of snapshots
+     * it was taken on top of.
+     * @param file the newest snapshot in the chain
+     * @return the restored snapshot, which later snapshots can chain from
+     * @throws java.io.IOException if the chain can't be read
+     */
+    public Snapshot loadIncrementalState(File file) throws IOException {
+        Snapshot snapshot = Snapshot.open(file);
+        LOGGING.log(Level.INFO, "incremental snapshot loading");
+        loadState(new ByteArrayInputStream(snapshot.readState()), false);
+        snapshot.loadPages(physicalAddr);
+        physicalAddr.markClean();
+        LOGGING.log(Level.INFO, "incremental snapshot load done");
+        return snapshot;
+    }
+
+    private void saveComponent(ZipOutputStream zip, HardwareComponent component, boolean memoryContents) throws IOException {
         LOGGING.log(Level.FINE, "snapshot saving {0}", component);
         int i = 0;
         while (true) {
@@ -568,7 +634,10 @@ public class PC {
         }
 
         DataOutputStream dout = new DataOutputStream(zip);
-        component.saveState(dout);
+        if ((component instanceof PhysicalAddressSpace) && !memoryContents)
+            ((PhysicalAddressSpace) component).saveLayout(dout);
+        else
+            component.saveState(dout);
         dout.flush();
         zip.closeEntry();
     }
@@ -581,6 +650,10 @@ public class PC {
      */
     public void loadState(InputStream in) throws IOException {
         LOGGING.log(Level.INFO, "snapshot loading");
+        loadState(in, true);
+    }
+
+    void loadState(InputStream in, boolean memoryContents) throws IOException {
         physicalAddr.reset();
         ZipInputStream zin = new ZipInputStream(in);
         Set<HardwareComponent> newParts = new HashSet<HardwareComponent>();
@@ -606,6 +679,8 @@ public class PC {
                     ((EthernetCard) hwc).loadIOPorts(ioHandler, din);
                 } else if (hwc instanceof VirtualClock) {
                     ((VirtualClock) hwc).loadState(din, this);
+                } else if ((hwc instanceof PhysicalAddressSpace) && !memoryContents) {
+                    ((PhysicalAddressSpace) hwc).loadLayout(din, manager);
                 } else if (hwc instanceof PhysicalAddressSpace) {
                     ((PhysicalAddressSpace) hwc).loadState(din, manager);
                 } else {
@@ -1056,8 +1131,7 @@ public class PC {
     public final int executeReal()
     {
         int x86Count = 0;
-        int clockx86Count = 0;
-        int nextClockCheck = INSTRUCTIONS_BETWEEN_INTERRUPTS;
+        manager.clearChain();
         try
         {
             for (int i = 0; i < 100; i++)
@@ -1066,15 +1140,13 @@ public class PC {
                     ethernet.checkForPackets();
 //                if (!princeAddrs.contains(processor.getInstructionPointer()))
 //                    throw new IllegalStateException("new address reached "+Integer.toHexString(processor.getInstructionPointer()));
-                int block = physicalAddr.executeReal(processor, processor.getInstructionPointer());
+                int block = manager.executeChained(processor);
+                if (block < 0)
+                    block = physicalAddr.executeReal(processor, processor.getInstructionPointer());
                 x86Count += block;
-                clockx86Count += block;
-                if (x86Count > nextClockCheck)
-                {
-                    nextClockCheck = x86Count + INSTRUCTIONS_BETWEEN_INTERRUPTS;
-                    processor.processRealModeInterrupts(clockx86Count);
-                    clockx86Count = 0;
-                }
+                // time is kept per block, but timers and the PIC only need looking at once something is due
+                if (vmClock.updateAndCheck(block) || processor.needsAttention())
+                    processor.processRealModeInterrupts(0);
             }
         } catch (ProcessorException p) {
             System.out.printf("Proc exception %s\n", p);
@@ -1091,23 +1163,19 @@ public class PC {
 
     public final int executeProtected() {
         int x86Count = 0;
-        int clockx86Count = 0;
-        int nextClockCheck = INSTRUCTIONS_BETWEEN_INTERRUPTS;
+        manager.clearChain();
         try
         {
             for (int i = 0; i < 100; i++)
             {
-                int block= linearAddr.executeProtected(processor, processor.getInstructionPointer());
+                if (ETHERNET)
+                    ethernet.checkForPackets();
+                int block = manager.executeChained(processor);
+                if (block < 0)
+                    block = linearAddr.executeProtected(processor, processor.getInstructionPointer());
                 x86Count += block;
-                clockx86Count += block;
-                if (x86Count > nextClockCheck)
-                {
-                    nextClockCheck = x86Count + INSTRUCTIONS_BETWEEN_INTERRUPTS;
-                    if (ETHERNET)
-                        ethernet.checkForPackets();
-                    processor.processProtectedModeInterrupts(clockx86Count);
-                    clockx86Count = 0;
-                }
+                if (vmClock.updateAndCheck(block) || processor.needsAttention())
+                    processor.processProtectedModeInterrupts(0);
             }
         } catch (ProcessorException p) {
                 processor.handleProtectedModeException(p);
@@ -1121,23 +1189,19 @@ public class PC {
 
     public final int executeVirtual8086() {
         int x86Count = 0;
-        int clockx86Count = 0;
-        int nextClockCheck = INSTRUCTIONS_BETWEEN_INTERRUPTS;
+        manager.clearChain();
         try
         {
             for (int i = 0; i < 100; i++)
             {
-                int block = linearAddr.executeVirtual8086(processor, processor.getInstructionPointer());
+                if (ETHERNET)
+                    ethernet.checkForPackets();
+                int block = manager.executeChained(processor);
+                if (block < 0)
+                    block = linearAddr.executeVirtual8086(processor, processor.getInstructionPointer());
                 x86Count += block;
-                clockx86Count += block;
-                if (x86Count > nextClockCheck)
-                {
-                    nextClockCheck = x86Count + INSTRUCTIONS_BETWEEN_INTERRUPTS;
-                    if (ETHERNET)
-                        ethernet.checkForPackets();
-                    processor.processVirtual8086ModeInterrupts(clockx86Count);
-                    clockx86Count = 0;
-                }
+                if (vmClock.updateAndCheck(block) || processor.needsAttention())
+                    processor.processVirtual8086ModeInterrupts(0);
             }
         }
         catch (ProcessorException p)
@@ -0,0 +1,324 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.*;
+
+import org.jpc.emulator.memory.*;
+
+/**
+ * One link in a chain of incremental snapshots. Each file holds the full
+ * serialised state of every component except RAM, plus the RAM pages which
+ * changed since its parent was taken; the first snapshot in a chain holds
+ * every page. Pages are page aligned in the file and are written and read
+ * through memory mappings.
+ * <p>
+ * File layout: magic, version, page count, state length, offset of the
+ * first page, parent file name, component state (a zip as written by
+ * <code>PC.saveState</code> without RAM contents), the page numbers, and
+ * then the pages themselves.
+ * @author Ian Preston
+ */
+public class Snapshot
+{
+    private static final Logger LOGGING = Logger.getLogger(Snapshot.class.getName());
+
+    private static final long MAGIC = 0x4a5043534e415031L; // "JPCSNAP1"
+    private static final int VERSION = 1;
+    private static final int PAGE_SIZE = AddressSpace.BLOCK_SIZE;
+    private static final int PAGES_PER_MAPPING = 16 * 1024;
+
+    private final File file;
+    private final Snapshot parent;
+    private final int pageCount;
+    private final int stateLength;
+    private final long stateOffset;
+    private final long pagesOffset;
+    private Thread writer;
+    private volatile IOException failure;
+
+    private Snapshot(File file, Snapshot parent, int pageCount, int stateLength, long stateOffset, long pagesOffset)
+    {
+        this.file = file;
+        this.parent = parent;
+        this.pageCount = pageCount;
+        this.stateLength = stateLength;
+        this.stateOffset = stateOffset;
+        this.pagesOffset = pagesOffset;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return the snapshot this one holds the changes since, or null for the first in a chain
+     */
+    public Snapshot getParent()
+    {
+        return parent;
+    }
+
+    /**
+     * Blocks until this snapshot is safely on disk.
+     * @throws IOException if writing it failed
+     */
+    public void waitUntilWritten() throws IOException
+    {
+        Thread t;
+        synchronized (this)
+        {
+            t = writer;
+        }
+        if (t != null)
+        {
+            boolean interrupted = false;
+            while (t.isAlive())
+            {
+                try
+                {
+                    t.join();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * @return true if <code>f</code> starts like an incremental snapshot
+     */
+    public static boolean isSnapshot(File f)
+    {
+        try
+        {
+            DataInputStream in = new DataInputStream(new FileInputStream(f));
+            try
+            {
+                return in.readLong() == MAGIC;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    static Snapshot write(File file, Snapshot parent, byte[] state, final MemoryCapture memory) throws IOException
+    {
+        byte[] parentName = new byte[0];
+        if (parent != null)
+        {
+            File dir = file.getAbsoluteFile().getParentFile();
+            File parentFile = parent.getFile().getAbsoluteFile();
+            String name = dir.equals(parentFile.getParentFile()) ? parentFile.getName() : parentFile.getPath();
+            parentName = name.getBytes("UTF-8");
+        }
+
+        int count = memory.getPageCount();
+        long stateOffset = 8 + 4 + 4 + 4 + 8 + 4 + parentName.length;
+        long indexOffset = stateOffset + state.length;
+        long pagesOffset = (indexOffset + 4L * count + PAGE_SIZE - 1) & ~(long) (PAGE_SIZE - 1);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream((int) (pagesOffset - stateOffset) + 64);
+        DataOutputStream header = new DataOutputStream(bout);
+        header.writeLong(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(count);
+        header.writeInt(state.length);
+        header.writeLong(pagesOffset);
+        header.writeInt(parentName.length);
+        header.write(parentName);
+        header.write(state);
+        for (int i = 0; i < count; i++)
+            header.writeInt(memory.getPage(i));
+        header.flush();
+        final byte[] prefix = bout.toByteArray();
+
+        final Snapshot snapshot = new Snapshot(file, parent, count, state.length, stateOffset, pagesOffset);
+        Thread t = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    snapshot.writePages(prefix, memory);
+                }
+                catch (IOException e)
+                {
+                    LOGGING.log(Level.WARNING, "Failed writing snapshot " + snapshot.file, e);
+                    snapshot.failure = e;
+                    memory.discard();
+                }
+            }
+        }, "Snapshot writer");
+        t.setDaemon(true);
+        synchronized (snapshot)
+        {
+            snapshot.writer = t;
+        }
+        t.start();
+        return snapshot;
+    }
+
+    private void writePages(byte[] prefix, MemoryCapture memory) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            raf.setLength(pagesOffset + (long) pageCount * PAGE_SIZE);
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_WRITE, 0, pagesOffset);
+            head.put(prefix);
+            head.force();
+
+            byte[] page = new byte[PAGE_SIZE];
+            for (int start = 0; start < pageCount; start += PAGES_PER_MAPPING)
+            {
+                int n = Math.min(PAGES_PER_MAPPING, pageCount - start);
+                MappedByteBuffer pages = channel.map(FileChannel.MapMode.READ_WRITE, pagesOffset + (long) start * PAGE_SIZE, (long) n * PAGE_SIZE);
+                for (int i = 0; i < n; i++)
+                {
+                    memory.copyPage(start + i, page);
+                    pages.put(page);
+                }
+                pages.force();
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+        LOGGING.log(Level.INFO, "snapshot {0} written with {1} pages", new Object[]{file, Integer.valueOf(pageCount)});
+    }
+
+    /**
+     * Opens an existing snapshot and every snapshot it depends on.
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if any snapshot in the chain is missing or corrupt
+     */
+    static Snapshot open(File file) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try
+        {
+            if (in.readLong() != MAGIC)
+                throw new IOException(file + " is not an incremental snapshot");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException(file + " is snapshot version " + version + ", expected " + VERSION);
+            int count = in.readInt();
+            int stateLength = in.readInt();
+            long pagesOffset = in.readLong();
+            byte[] parentName = new byte[in.readInt()];
+            in.readFully(parentName);
+            long stateOffset = 8 + 4 + 4 + 4 + 8 + 4 + parentName.length;
+
+            Snapshot parent = null;
+            if (parentName.length > 0)
+            {
+                File parentFile = new File(new String(parentName, "UTF-8"));
+                if (!parentFile.isAbsolute())
+                    parentFile = new File(file.getAbsoluteFile().getParentFile(), parentFile.getPath());
+                parent = open(parentFile);
+            }
+            return new Snapshot(file, parent, count, stateLength, stateOffset, pagesOffset);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    byte[] readState() throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            byte[] state = new byte[stateLength];
+            raf.seek(stateOffset);
+            raf.readFully(state);
+            return state;
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Loads the pages of every snapshot in the chain, oldest first, so that
+     * each page ends up with its most recent contents.
+     */
+    void loadPages(PhysicalAddressSpace memory) throws IOException
+    {
+        if (parent != null)
+            parent.loadPages(memory);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = raf.getChannel();
+            int[] index = new int[pageCount];
+            MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, pagesOffset);
+            head.position((int) (stateOffset + stateLength));
+            head.asIntBuffer().get(index);
+
+            byte[] page = new byte[PAGE_SIZE];
+            for (int start = 0; start < pageCount; start += PAGES_PER_MAPPING)
+            {
+                int n = Math.min(PAGES_PER_MAPPING, pageCount - start);
+                MappedByteBuffer pages = channel.map(FileChannel.MapMode.READ_ONLY, pagesOffset + (long) start * PAGE_SIZE, (long) n * PAGE_SIZE);
+                for (int i = 0; i < n; i++)
+                {
+                    pages.get(page);
+                    memory.loadPage(index[start + i], page);
+                }
+            }
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+}
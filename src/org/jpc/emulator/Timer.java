@@ -40,6 +40,10 @@ import org.jpc.support.Clock;
 /**
  * This class provides for the triggering of events on <code>TimerResponsive</code>
  * objects at defined and reconfigurable times.
+ * <p>
+ * Timers are not synchronized.  They are expected to be armed and checked on
+ * the thread running the emulation, and a <code>Clock</code> implementation
+ * must itself pass changes made on any other thread across to that thread.
  * @author Chris Dennis
  */
 public class Timer implements Comparable, Hibernatable
@@ -48,6 +52,7 @@ public class Timer implements Comparable, Hibernatable
     public final TimerResponsive callback;
     private boolean enabled;
     private Clock myOwner;
+    int queueIndex = -1;
 
     /**
      * Constructs a <code>Timer</code> which fires events on the specified 
@@ -86,7 +91,7 @@ public class Timer implements Comparable, Hibernatable
      * future.
      * @return <code>true</code> if this timer is enabled.
      */
-    public synchronized boolean enabled()
+    public boolean enabled()
     {
         return enabled;
     }
@@ -95,7 +100,7 @@ public class Timer implements Comparable, Hibernatable
      * Disables this timer.  Following a call to <code>disable</code> the timer 
      * cannot ever fire again unless a call is made to <code>setExpiry</code>
      */
-    public synchronized void disable()
+    public void disable()
     {
         setStatus(false);
     }
@@ -109,7 +114,7 @@ public class Timer implements Comparable, Hibernatable
      * decided by the implementation of <code>Clock</code> used by this timer.
      * @param time absolute time of expiry for this timer.
      */
-    public synchronized void setExpiry(long time)
+    public void setExpiry(long time)
     {
         expireTime = time;
         setStatus(true);
@@ -121,7 +126,7 @@ public class Timer implements Comparable, Hibernatable
      * @param time value of time to check against.
      * @return <code>true</code> if timer had expired and callback was fired.
      */
-    public synchronized boolean check(long time)
+    public boolean check(long time)
     {
         if (this.enabled && (time >= expireTime)) {
             disable();
@@ -147,9 +152,11 @@ public class Timer implements Comparable, Hibernatable
         if (!(o instanceof Timer))
             return -1;
 
-        if (getExpiry() - ((Timer) o).getExpiry() < 0)
+        Timer t = (Timer) o;
+        long diff = expireTime - t.expireTime;
+        if (diff < 0)
             return -1;
-        else if ((getExpiry() - ((Timer) o).getExpiry() == 0) && (callback == ((Timer)o).callback))
+        else if ((diff == 0) && (callback == t.callback))
             return 0;
         else
             return 1;
@@ -0,0 +1,179 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package org.jpc.emulator;
+
+/**
+ * Binary min-heap of enabled <code>Timer</code>s ordered on their expiry time.
+ * <p>
+ * Expiry times are copied into a primitive array alongside the heap so that
+ * sifting never calls back into the timers, and each timer remembers its own
+ * position so it can be moved or removed without a search.  The queue is not
+ * thread safe and belongs to the thread running the emulation.
+ * @author Ian Preston
+ */
+public final class TimerQueue
+{
+    private Timer[] heap = new Timer[16];
+    private long[] expiry = new long[16];
+    private int size;
+
+    /**
+     * Inserts, moves or removes <code>t</code> according to its current
+     * expiry time and enabled state.
+     * @param t timer whose state has changed
+     */
+    public void update(Timer t)
+    {
+        int i = t.queueIndex;
+        if (!t.enabled()) {
+            if (i >= 0)
+                removeAt(i);
+            return;
+        }
+
+        long time = t.getExpiry();
+        if (i < 0) {
+            if (size == heap.length)
+                grow();
+            i = size++;
+            heap[i] = t;
+            t.queueIndex = i;
+            expiry[i] = time;
+            siftUp(i);
+        } else {
+            long old = expiry[i];
+            expiry[i] = time;
+            if (time < old)
+                siftUp(i);
+            else if (time > old)
+                siftDown(i);
+        }
+    }
+
+    /**
+     * Returns the timer which will expire first, or <code>null</code> if
+     * there are no enabled timers.
+     */
+    public Timer peek()
+    {
+        return heap[0];
+    }
+
+    /**
+     * Returns the earliest expiry time in the queue, or
+     * <code>Long.MAX_VALUE</code> if there are no enabled timers.
+     */
+    public long nextExpiry()
+    {
+        return (size == 0) ? Long.MAX_VALUE : expiry[0];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the timer at position <code>i</code> of the heap, which is in
+     * no particular order beyond the first element being the earliest.
+     */
+    public Timer get(int i)
+    {
+        return heap[i];
+    }
+
+    private void removeAt(int i)
+    {
+        heap[i].queueIndex = -1;
+        size--;
+        if (i == size) {
+            heap[i] = null;
+            return;
+        }
+        long old = expiry[i];
+        move(size, i);
+        heap[size] = null;
+        if (expiry[i] < old)
+            siftUp(i);
+        else
+            siftDown(i);
+    }
+
+    private void siftUp(int i)
+    {
+        Timer t = heap[i];
+        long time = expiry[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (expiry[parent] <= time)
+                break;
+            move(parent, i);
+            i = parent;
+        }
+        heap[i] = t;
+        expiry[i] = time;
+        t.queueIndex = i;
+    }
+
+    private void siftDown(int i)
+    {
+        Timer t = heap[i];
+        long time = expiry[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if ((child + 1 < size) && (expiry[child + 1] < expiry[child]))
+                child++;
+            if (time <= expiry[child])
+                break;
+            move(child, i);
+            i = child;
+        }
+        heap[i] = t;
+        expiry[i] = time;
+        t.queueIndex = i;
+    }
+
+    private void move(int from, int to)
+    {
+        heap[to] = heap[from];
+        expiry[to] = expiry[from];
+        heap[to].queueIndex = to;
+    }
+
+    private void grow()
+    {
+        Timer[] h = new Timer[heap.length * 2];
+        long[] e = new long[heap.length * 2];
+        System.arraycopy(heap, 0, h, 0, size);
+        System.arraycopy(expiry, 0, e, 0, size);
+        heap = h;
+        expiry = e;
+    }
+}
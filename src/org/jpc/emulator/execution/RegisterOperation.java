@@ -0,0 +1,64 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.execution;
+
+/**
+ * Operands of a generated register or immediate form of mov, add, sub, cmp,
+ * and, or, xor, test, inc or dec, which the bytecode compiler can emit inline.
+ * Implemented by the opcode classes emitted by <code>tools.Opcode</code>.
+ * @author Ian Preston
+ */
+public interface RegisterOperation
+{
+    /**
+     * @return mnemonic of the operation, e.g. <code>"add"</code>
+     */
+    public String getOperation();
+
+    /**
+     * @return operand size in bits, 16 or 32
+     */
+    public int getOperandSize();
+
+    /**
+     * @return index into <code>Processor.regs</code> of the destination
+     */
+    public int getDestinationIndex();
+
+    /**
+     * @return index into <code>Processor.regs</code> of the source, or -1 if
+     * the source is the immediate
+     */
+    public int getSourceIndex();
+
+    /**
+     * @return sign extended immediate source, only meaningful when
+     * {@link #getSourceIndex()} is -1
+     */
+    public int getImmediate();
+}
@@ -29,6 +29,7 @@ package org.jpc.emulator.execution;
 
 import org.jpc.emulator.execution.*;
 import org.jpc.emulator.execution.decoder.*;
+import org.jpc.emulator.memory.*;
 import org.jpc.emulator.processor.*;
 import static org.jpc.emulator.processor.Processor.*;
 import static org.jpc.emulator.execution.Executable.*;
@@ -1140,6 +1141,216 @@ public class StaticOpcodes
         }
     }
 
+    /*
+     * Bulk string operations.  A REP MOVS, STOS or SCAS moves as many whole
+     * elements as lie in the current page of each operand at once, straight
+     * to or from the RAM block behind it.  Each helper raises the same fault
+     * the next element would, before touching anything, and otherwise returns
+     * 0 when the next element must go through the segment accessors (device
+     * memory, an element straddling a page, an offset near the segment limit
+     * or a short count), so registers are exact wherever a fault lands.
+     */
+    private static final int BULK_MIN_COUNT = 16;
+    private static final ThreadLocal<byte[]> bulkBuffer = new ThreadLocal<byte[]>() {
+        protected byte[] initialValue()
+        {
+            return new byte[AddressSpace.BLOCK_SIZE];
+        }
+    };
+
+    /**
+     * Returns how many elements, up to <code>count</code>, run from the one at
+     * <code>offset</code> to the end of its page without wrapping the offset.
+     */
+    private static int bulkElements(int offset, int address, int size, int count, boolean down, boolean a16)
+    {
+        int page = address & AddressSpace.BLOCK_MASK;
+        long off = a16 ? (0xffff & offset) : (0xffffffffL & offset);
+        long end = a16 ? 0x10000L : 0x100000000L;
+        if ((page + size > AddressSpace.BLOCK_SIZE) || (off + size > end))
+            return 0;
+        long n;
+        if (down)
+            n = Math.min(page, off) / size + 1;
+        else
+            n = Math.min(AddressSpace.BLOCK_SIZE - page, end - off) / size;
+        return (int) Math.min(n, 0xffffffffL & count);
+    }
+
+    private static boolean bulkReadable(Segment seg, int offset, int n, int size, boolean down)
+    {
+        int span = (n - 1) * size;
+        if (down)
+            return seg.isBulkReadable(offset - span, offset + size - 1);
+        return seg.isBulkReadable(offset, offset + span + size - 1);
+    }
+
+    private static boolean bulkWritable(Segment seg, int offset, int n, int size, boolean down)
+    {
+        int span = (n - 1) * size;
+        if (down)
+            return seg.isBulkWritable(offset - span, offset + size - 1);
+        return seg.isBulkWritable(offset, offset + span + size - 1);
+    }
+
+    private static int bulkMovs(Segment src, int srcOffset, Segment dst, int dstOffset, int size, int count, boolean down, boolean a16)
+    {
+        if ((0xffffffffL & count) < BULK_MIN_COUNT)
+            return 0;
+        int srcAddress = src.translateAddressRead(srcOffset);
+        int n = bulkElements(srcOffset, srcAddress, size, count, down, a16);
+        if ((n == 0) || !bulkReadable(src, srcOffset, n, size, down))
+            return 0;
+        Memory from = src.getAddressSpace().getBulkReadBlock(srcAddress);
+        if (from == null)
+            return 0;
+        int dstAddress = dst.translateAddressWrite(dstOffset);
+        n = Math.min(n, bulkElements(dstOffset, dstAddress, size, count, down, a16));
+        if ((n == 0) || !bulkWritable(dst, dstOffset, n, size, down))
+            return 0;
+        Memory to = dst.getAddressSpace().getBulkWriteBlock(dstAddress);
+        if (to == null)
+            return 0;
+
+        int srcStart = srcAddress & AddressSpace.BLOCK_MASK;
+        int dstStart = dstAddress & AddressSpace.BLOCK_MASK;
+        if (from == to) {
+            // an element must not read anything an earlier one has written
+            int gap = down ? srcStart - dstStart : dstStart - srcStart;
+            if (gap > 0)
+                n = Math.min(n, Math.max(1, gap / size));
+        }
+
+        int length = n * size;
+        if (down) {
+            srcStart -= length - size;
+            dstStart -= length - size;
+        }
+        byte[] buffer = bulkBuffer.get();
+        from.copyContentsIntoArray(srcStart, buffer, 0, length);
+        to.copyArrayIntoContents(dstStart, buffer, 0, length);
+        return n;
+    }
+
+    private static int bulkStos(Segment seg, int offset, int data, int size, int count, boolean down, boolean a16)
+    {
+        if ((0xffffffffL & count) < BULK_MIN_COUNT)
+            return 0;
+        int address = seg.translateAddressWrite(offset);
+        int n = bulkElements(offset, address, size, count, down, a16);
+        if ((n == 0) || !bulkWritable(seg, offset, n, size, down))
+            return 0;
+        Memory to = seg.getAddressSpace().getBulkWriteBlock(address);
+        if (to == null)
+            return 0;
+
+        int length = n * size;
+        int start = address & AddressSpace.BLOCK_MASK;
+        if (down)
+            start -= length - size;
+        if ((data == 0) && !to.isAllocated())
+            return n; // reads as zero already
+        byte[] buffer = bulkBuffer.get();
+        for (int i = 0; i < size; i++)
+            buffer[i] = (byte) (data >>> (8 * i));
+        for (int filled = size; filled < length; filled <<= 1)
+            System.arraycopy(buffer, 0, buffer, filled, Math.min(filled, length - filled));
+        to.copyArrayIntoContents(start, buffer, 0, length);
+        return n;
+    }
+
+    /**
+     * Returns how many elements of a REP SCAS can be passed over in one go.
+     * This stops short of the last element which doesn't end the scan, so
+     * that the caller compares that one itself and the flags come out right
+     * even if a later element faults.
+     */
+    private static int bulkScas(Segment seg, int offset, int data, int size, int count, boolean down, boolean a16, boolean whileEqual)
+    {
+        if ((0xffffffffL & count) < BULK_MIN_COUNT)
+            return 0;
+        int address = seg.translateAddressRead(offset);
+        int n = bulkElements(offset, address, size, count, down, a16);
+        if ((n == 0) || !bulkReadable(seg, offset, n, size, down))
+            return 0;
+        Memory from = seg.getAddressSpace().getBulkReadBlock(address);
+        if (from == null)
+            return 0;
+
+        int length = n * size;
+        int start = address & AddressSpace.BLOCK_MASK;
+        if (down)
+            start -= length - size;
+        byte[] buffer = bulkBuffer.get();
+        from.copyContentsIntoArray(start, buffer, 0, length);
+        int i = 0;
+        for (; i < n; i++) {
+            int position = down ? length - size - i * size : i * size;
+            int input = 0xff & buffer[position];
+            if (size > 1)
+                input |= (0xff & buffer[position + 1]) << 8;
+            if (size > 2)
+                input |= ((0xff & buffer[position + 2]) << 16) | (buffer[position + 3] << 24);
+            if ((data == input) != whileEqual)
+                break;
+        }
+        return Math.max(0, i - 1);
+    }
+
+    /**
+     * Hands as many elements of a forward REP INS as fit in the current page
+     * to the port's device in one go.
+     */
+    private static int bulkIns(Processor cpu, Segment seg, int port, int offset, int size, int count, boolean a16)
+    {
+        if ((0xffffffffL & count) < BULK_MIN_COUNT)
+            return 0;
+        int address = seg.translateAddressWrite(offset);
+        int n = bulkElements(offset, address, size, count, false, a16);
+        if ((n == 0) || !bulkWritable(seg, offset, n, size, false))
+            return 0;
+        Memory to = seg.getAddressSpace().getBulkWriteBlock(address);
+        if (to == null)
+            return 0;
+
+        int start = address & AddressSpace.BLOCK_MASK;
+        switch (size) {
+        case 1:
+            return cpu.ioports.ioPortReadBlock8(port, to, start, n);
+        case 2:
+            return cpu.ioports.ioPortReadBlock16(port, to, start, n);
+        default:
+            return cpu.ioports.ioPortReadBlock32(port, to, start, n);
+        }
+    }
+
+    /**
+     * Hands as many elements of a forward REP OUTS as fit in the current page
+     * to the port's device in one go.
+     */
+    private static int bulkOuts(Processor cpu, Segment seg, int port, int offset, int size, int count, boolean a16)
+    {
+        if ((0xffffffffL & count) < BULK_MIN_COUNT)
+            return 0;
+        int address = seg.translateAddressRead(offset);
+        int n = bulkElements(offset, address, size, count, false, a16);
+        if ((n == 0) || !bulkReadable(seg, offset, n, size, false))
+            return 0;
+        Memory from = seg.getAddressSpace().getBulkReadBlock(address);
+        if (from == null)
+            return 0;
+
+        int start = address & AddressSpace.BLOCK_MASK;
+        switch (size) {
+        case 1:
+            return cpu.ioports.ioPortWriteBlock8(port, from, start, n);
+        case 2:
+            return cpu.ioports.ioPortWriteBlock16(port, from, start, n);
+        default:
+            return cpu.ioports.ioPortWriteBlock32(port, from, start, n);
+        }
+    }
+
     public static void rep_movsb_a16(Processor cpu, Segment seg)
     {
         int count = cpu.r_ecx.get16() & 0xffff;
@@ -1149,6 +1360,13 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkMovs(seg, outAddr & 0xffff, cpu.es, inAddr & 0xffff, 1, count, true, true);
+                    if (n != 0) {
+                        count -= n;
+                        outAddr -= n;
+                        inAddr -= n;
+                        continue;
+                    }
                     //check hardware interrupts
                     cpu.es.setByte(inAddr & 0xffff, seg.getByte(outAddr & 0xffff));
                     count--;
@@ -1157,6 +1375,13 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkMovs(seg, outAddr & 0xffff, cpu.es, inAddr & 0xffff, 1, count, false, true);
+                    if (n != 0) {
+                        count -= n;
+                        outAddr += n;
+                        inAddr += n;
+                        continue;
+                    }
                     //check hardware interrupts
                     cpu.es.setByte(inAddr & 0xffff, seg.getByte(outAddr & 0xffff));
                     count--;
@@ -1181,6 +1406,13 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkMovs(seg, outAddr, cpu.es, inAddr, 1, count, true, false);
+                    if (n != 0) {
+                        count -= n;
+                        outAddr -= n;
+                        inAddr -= n;
+                        continue;
+                    }
                     //check hardware interrupts
                     cpu.es.setByte(inAddr, seg.getByte(outAddr));
                     count--;
@@ -1189,6 +1421,13 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkMovs(seg, outAddr, cpu.es, inAddr, 1, count, false, false);
+                    if (n != 0) {
+                        count -= n;
+                        outAddr += n;
+                        inAddr += n;
+                        continue;
+                    }
                     //check hardware interrupts
                     cpu.es.setByte(inAddr, seg.getByte(outAddr));
                     count--;
@@ -1213,6 +1452,13 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkMovs(seg, outAddr & 0xffff, cpu.es, inAddr & 0xffff, 2, count, true, true);
+                    if (n != 0) {
+                        count -= n;
+                        outAddr -= n * 2;
+                        inAddr -= n * 2;
+                        continue;
+                    }
                     //check hardware interrupts
                     cpu.es.setWord(inAddr & 0xffff, seg.getWord(outAddr & 0xffff));
                     count--;
@@ -1221,6 +1467,13 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkMovs(seg, outAddr & 0xffff, cpu.es, inAddr & 0xffff, 2, count, false, true);
+                    if (n != 0) {
+                        count -= n;
+                        outAddr += n * 2;
+                        inAddr += n * 2;
+                        continue;
+                    }
                     //check hardware interrupts
                     cpu.es.setWord(inAddr & 0xffff, seg.getWord(outAddr & 0xffff));
                     count--;
@@ -1245,6 +1498,13 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkMovs(seg, outAddr, cpu.es, inAddr, 2, count, true, false);
+                    if (n != 0) {
+                        count -= n;
+                        outAddr -= n * 2;
+                        inAddr -= n * 2;
+                        continue;
+                    }
                     //check hardware interrupts
                     cpu.es.setWord(inAddr, seg.getWord(outAddr));
                     count--;
@@ -1253,6 +1513,13 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkMovs(seg, outAddr, cpu.es, inAddr, 2, count, false, false);
+                    if (n != 0) {
+                        count -= n;
+                        outAddr += n * 2;
+                        inAddr += n * 2;
+                        continue;
+                    }
                     //check hardware interrupts
                     cpu.es.setWord(inAddr, seg.getWord(outAddr));
                     count--;
@@ -1277,6 +1544,13 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkMovs(seg, srcAddr, cpu.es, targetAddr, 4, count, true, false);
+                    if (n != 0) {
+                        count -= n;
+                        srcAddr -= n * 4;
+                        targetAddr -= n * 4;
+                        continue;
+                    }
                     cpu.es.setDoubleWord(targetAddr, seg.getDoubleWord(srcAddr));
                     count--;
                     srcAddr -= 4;
@@ -1284,6 +1558,13 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkMovs(seg, srcAddr, cpu.es, targetAddr, 4, count, false, false);
+                    if (n != 0) {
+                        count -= n;
+                        srcAddr += n * 4;
+                        targetAddr += n * 4;
+                        continue;
+                    }
                     cpu.es.setDoubleWord(targetAddr, seg.getDoubleWord(srcAddr));
                     count--;
                     srcAddr += 4;
@@ -1307,6 +1588,13 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkMovs(seg, srcAddr & 0xffff, cpu.es, targetAddr & 0xffff, 4, count, true, true);
+                    if (n != 0) {
+                        count -= n;
+                        srcAddr -= n * 4;
+                        targetAddr -= n * 4;
+                        continue;
+                    }
                     cpu.es.setDoubleWord(targetAddr & 0xffff, seg.getDoubleWord(srcAddr & 0xffff));
                     count--;
                     srcAddr -= 4;
@@ -1314,6 +1602,13 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkMovs(seg, srcAddr & 0xffff, cpu.es, targetAddr & 0xffff, 4, count, false, true);
+                    if (n != 0) {
+                        count -= n;
+                        srcAddr += n * 4;
+                        targetAddr += n * 4;
+                        continue;
+                    }
                     cpu.es.setDoubleWord(targetAddr & 0xffff, seg.getDoubleWord(srcAddr & 0xffff));
                     count--;
                     srcAddr += 4;
@@ -1405,6 +1700,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkIns(cpu, seg, port, addr, 1, count, false);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n;
+                        continue;
+                    }
                     //check hardware interrupts
                     seg.setByte(addr, (byte)0); // test memory writable
                     seg.setByte(addr, (byte)cpu.ioports.ioPortRead8(port));
@@ -1436,6 +1737,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkIns(cpu, seg, port, addr & 0xffff, 2, count, true);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n * 2;
+                        continue;
+                    }
                     //check hardware interrupts
                     seg.setWord(addr & 0xffff, (short)0); // test memory writable
                     seg.setWord(addr & 0xffff, (short)cpu.ioports.ioPortRead16(port));
@@ -1467,6 +1774,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkIns(cpu, seg, port, addr, 2, count, false);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n * 2;
+                        continue;
+                    }
                     //check hardware interrupts
                     seg.setWord(addr, (short)0); // test memory writable
                     seg.setWord(addr, (short)cpu.ioports.ioPortRead16(port));
@@ -1498,6 +1811,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkIns(cpu, seg, port, addr & 0xffff, 4, count, true);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n * 4;
+                        continue;
+                    }
                     //check hardware interrupts
                     seg.setDoubleWord(addr & 0xffff, 0); // test memory writable
                     seg.setDoubleWord(addr & 0xffff, cpu.ioports.ioPortRead32(port));
@@ -1529,6 +1848,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkIns(cpu, seg, port, addr, 4, count, false);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n * 4;
+                        continue;
+                    }
                     //check hardware interrupts
                     seg.setDoubleWord(addr, 0); // test memory writable
                     seg.setDoubleWord(addr, cpu.ioports.ioPortRead32(port));
@@ -1628,6 +1953,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkOuts(cpu, seg, port, addr & 0xffff, 1, count, true);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n;
+                        continue;
+                    }
                     cpu.ioports.ioPortWrite8(port, 0xff & seg.getByte(addr & 0xffff));
                     count--;
                     addr += 1;
@@ -1655,6 +1986,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkOuts(cpu, seg, port, addr & 0xffff, 1, count, true);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n;
+                        continue;
+                    }
                     cpu.ioports.ioPortWrite8(port, 0xff & seg.getByte(addr & 0xffff));
                     count--;
                     addr += 1;
@@ -1682,6 +2019,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkOuts(cpu, seg, port, addr & 0xffff, 2, count, true);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n * 2;
+                        continue;
+                    }
                     cpu.ioports.ioPortWrite16(port, 0xffff & seg.getWord(addr & 0xffff));
                     count--;
                     addr += 2;
@@ -1709,6 +2052,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkOuts(cpu, seg, port, addr, 2, count, false);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n * 2;
+                        continue;
+                    }
                     cpu.ioports.ioPortWrite16(port, 0xffff & seg.getWord(addr));
                     count--;
                     addr += 2;
@@ -1736,6 +2085,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkOuts(cpu, seg, port, addr & 0xffff, 4, count, true);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n * 4;
+                        continue;
+                    }
                     cpu.ioports.ioPortWrite32(port, seg.getDoubleWord(addr & 0xffff));
                     count--;
                     addr += 4;
@@ -1763,6 +2118,12 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkOuts(cpu, seg, port, addr, 4, count, false);
+                    if (n != 0) {
+                        count -= n;
+                        addr += n * 4;
+                        continue;
+                    }
                     cpu.ioports.ioPortWrite32(port, seg.getDoubleWord(addr));
                     count--;
                     addr += 4;
@@ -1784,12 +2145,24 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr & 0xffff, data, 1, count, true, true);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr -= n;
+                        continue;
+                    }
                     cpu.es.setByte(tAddr & 0xffff, data);
                     count--;
                     tAddr -= 1;
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr & 0xffff, data, 1, count, false, true);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr += n;
+                        continue;
+                    }
                     cpu.es.setByte(tAddr & 0xffff, data);
                     count--;
                     tAddr += 1;
@@ -1811,12 +2184,24 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr, data, 1, count, true, false);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr -= n;
+                        continue;
+                    }
                     cpu.es.setByte(tAddr, (byte) data);
                     count--;
                     tAddr -= 1;
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr, data, 1, count, false, false);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr += n;
+                        continue;
+                    }
                     cpu.es.setByte(tAddr, (byte) data);
                     count--;
                     tAddr += 1;
@@ -1952,12 +2337,24 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr & 0xffff, data, 2, count, true, true);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr -= n * 2;
+                        continue;
+                    }
                     cpu.es.setWord(tAddr & 0xffff, data);
                     count--;
                     tAddr -= 2;
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr & 0xffff, data, 2, count, false, true);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr += n * 2;
+                        continue;
+                    }
                     cpu.es.setWord(tAddr & 0xffff, data);
                     count--;
                     tAddr += 2;
@@ -1979,12 +2376,24 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr, data, 2, count, true, false);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr -= n * 2;
+                        continue;
+                    }
                     cpu.es.setWord(tAddr, data);
                     count--;
                     tAddr -= 2;
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr, data, 2, count, false, false);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr += n * 2;
+                        continue;
+                    }
                     cpu.es.setWord(tAddr, data);
                     count--;
                     tAddr += 2;
@@ -2006,12 +2415,24 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr & 0xffff, data, 4, count, true, true);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr -= n * 4;
+                        continue;
+                    }
                     cpu.es.setDoubleWord(tAddr & 0xffff, data);
                     count--;
                     tAddr -= 4;
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr & 0xffff, data, 4, count, false, true);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr += n * 4;
+                        continue;
+                    }
                     cpu.es.setDoubleWord(tAddr & 0xffff, data);
                     count--;
                     tAddr += 4;
@@ -2033,12 +2454,24 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr, data, 4, count, true, false);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr -= n * 4;
+                        continue;
+                    }
                     cpu.es.setDoubleWord(tAddr, data);
                     count--;
                     tAddr -= 4;
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkStos(cpu.es, tAddr, data, 4, count, false, false);
+                    if (n != 0) {
+                        count -= n;
+                        tAddr += n * 4;
+                        continue;
+                    }
                     cpu.es.setDoubleWord(tAddr, data);
                     count--;
                     tAddr += 4;
@@ -2182,6 +2615,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 1, count, true, true, false);
+                    count -= n;
+                    addr -= n;
                     input = 0xff & cpu.es.getByte(addr & 0xffff);
                     count--;
                     addr -= 1;
@@ -2189,6 +2625,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 1, count, false, true, false);
+                    count -= n;
+                    addr += n;
                     input = 0xff & cpu.es.getByte(addr & 0xffff);
                     count--;
                     addr += 1;
@@ -2217,6 +2656,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 1, count, true, true, true);
+                    count -= n;
+                    addr -= n;
                     input = 0xff & cpu.es.getByte(addr & 0xffff);
                     count--;
                     addr -= 1;
@@ -2224,6 +2666,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 1, count, false, true, true);
+                    count -= n;
+                    addr += n;
                     input = 0xff & cpu.es.getByte(addr & 0xffff);
                     count--;
                     addr += 1;
@@ -2251,6 +2696,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 1, count, true, false, true);
+                    count -= n;
+                    addr -= n;
                     input = 0xff & cpu.es.getByte(addr);
                     count--;
                     addr -= 1;
@@ -2258,6 +2706,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 1, count, false, false, true);
+                    count -= n;
+                    addr += n;
                     input = 0xff & cpu.es.getByte(addr);
                     count--;
                     addr += 1;
@@ -2285,6 +2736,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 1, count, true, false, false);
+                    count -= n;
+                    addr -= n;
                     input = 0xff & cpu.es.getByte(addr);
                     count--;
                     addr -= 1;
@@ -2292,6 +2746,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 1, count, false, false, false);
+                    count -= n;
+                    addr += n;
                     input = 0xff & cpu.es.getByte(addr);
                     count--;
                     addr += 1;
@@ -2319,6 +2776,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 2, count, true, true, true);
+                    count -= n;
+                    addr -= n * 2;
                     input = 0xffff & cpu.es.getWord(addr & 0xffff);
                     count--;
                     addr -= 2;
@@ -2326,6 +2786,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 2, count, false, true, true);
+                    count -= n;
+                    addr += n * 2;
                     input = 0xffff & cpu.es.getWord(addr & 0xffff);
                     count--;
                     addr += 2;
@@ -2353,6 +2816,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 2, count, true, false, true);
+                    count -= n;
+                    addr -= n * 2;
                     input = 0xffff & cpu.es.getWord(addr);
                     count--;
                     addr -= 2;
@@ -2360,6 +2826,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 2, count, false, false, true);
+                    count -= n;
+                    addr += n * 2;
                     input = 0xffff & cpu.es.getWord(addr);
                     count--;
                     addr += 2;
@@ -2387,6 +2856,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 2, count, true, true, false);
+                    count -= n;
+                    addr -= n * 2;
                     input = 0xffff & cpu.es.getWord(addr & 0xffff);
                     count--;
                     addr -= 2;
@@ -2394,6 +2866,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 2, count, false, true, false);
+                    count -= n;
+                    addr += n * 2;
                     input = 0xffff & cpu.es.getWord(addr & 0xffff);
                     count--;
                     addr += 2;
@@ -2421,6 +2896,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 2, count, true, false, false);
+                    count -= n;
+                    addr -= n * 2;
                     input = 0xffff & cpu.es.getWord(addr);
                     count--;
                     addr -= 2;
@@ -2428,6 +2906,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 2, count, false, false, false);
+                    count -= n;
+                    addr += n * 2;
                     input = 0xffff & cpu.es.getWord(addr);
                     count--;
                     addr += 2;
@@ -2455,6 +2936,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 4, count, true, true, true);
+                    count -= n;
+                    addr -= n * 4;
                     input = cpu.es.getDoubleWord(addr & 0xffff);
                     count--;
                     addr -= 4;
@@ -2462,6 +2946,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 4, count, false, true, true);
+                    count -= n;
+                    addr += n * 4;
                     input = cpu.es.getDoubleWord(addr & 0xffff);
                     count--;
                     addr += 4;
@@ -2489,6 +2976,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 4, count, true, true, false);
+                    count -= n;
+                    addr -= n * 4;
                     input = cpu.es.getDoubleWord(addr & 0xffff);
                     count--;
                     addr -= 4;
@@ -2496,6 +2986,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr & 0xffff, data, 4, count, false, true, false);
+                    count -= n;
+                    addr += n * 4;
                     input = cpu.es.getDoubleWord(addr & 0xffff);
                     count--;
                     addr += 4;
@@ -2523,6 +3016,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 4, count, true, false, true);
+                    count -= n;
+                    addr -= n * 4;
                     input = cpu.es.getDoubleWord(addr);
                     count--;
                     addr -= 4;
@@ -2530,6 +3026,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 4, count, false, false, true);
+                    count -= n;
+                    addr += n * 4;
                     input = cpu.es.getDoubleWord(addr);
                     count--;
                     addr += 4;
@@ -2557,6 +3056,9 @@ public class StaticOpcodes
         try {
             if (cpu.df) {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 4, count, true, false, false);
+                    count -= n;
+                    addr -= n * 4;
                     input = cpu.es.getDoubleWord(addr);
                     count--;
                     addr -= 4;
@@ -2564,6 +3066,9 @@ public class StaticOpcodes
                 }
             } else {
                 while (count != 0) {
+                    int n = bulkScas(cpu.es, addr, data, 4, count, false, false, false);
+                    count -= n;
+                    addr += n * 4;
                     input = cpu.es.getDoubleWord(addr);
                     count--;
                     addr += 4;
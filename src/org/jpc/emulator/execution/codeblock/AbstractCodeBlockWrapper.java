@@ -33,6 +33,8 @@
 
 package org.jpc.emulator.execution.codeblock;
 
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
 import org.jpc.emulator.execution.Executable;
 import org.jpc.emulator.execution.decoder.Instruction;
 import org.jpc.emulator.processor.Processor;
@@ -44,6 +46,9 @@ import org.jpc.emulator.processor.Processor;
  */
 public abstract class AbstractCodeBlockWrapper implements CodeBlock
 {
+    private static final AtomicReferenceFieldUpdater<AbstractCodeBlockWrapper, CodeBlock> TARGET =
+            AtomicReferenceFieldUpdater.newUpdater(AbstractCodeBlockWrapper.class, CodeBlock.class, "actualBlock");
+
     private volatile CodeBlock actualBlock;
     
     /**
@@ -89,6 +94,18 @@ public abstract class AbstractCodeBlockWrapper implements CodeBlock
 	actualBlock = block;
     }
     
+    /**
+     * Atomically sets the target block of this wrapper if it is still
+     * <code>expect</code>.
+     * @param expect expected current target block
+     * @param block new target block instance
+     * @return <code>true</code> if the target was replaced
+     */
+    public final boolean compareAndSetTargetBlock(CodeBlock expect, CodeBlock block)
+    {
+        return TARGET.compareAndSet(this, expect, block);
+    }
+
     /**
      * Gets a reference to the target block of this wrapper.
      * @return target block of this wrapper
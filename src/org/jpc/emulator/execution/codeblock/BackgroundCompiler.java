@@ -33,11 +33,13 @@
 
 package org.jpc.emulator.execution.codeblock;
 
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
 import org.jpc.emulator.execution.Executable;
-import org.jpc.emulator.execution.decoder.BasicBlock;
 import org.jpc.emulator.processor.*;
+import org.jpc.j2se.Option;
 
 /**
  * 
@@ -48,9 +50,9 @@ import org.jpc.emulator.processor.*;
 class BackgroundCompiler implements CodeBlockCompiler {
 
     private static final Logger LOGGING = Logger.getLogger(BackgroundCompiler.class.getName());
-    private static final int COMPILER_QUEUE_SIZE = 256;
-    private static final int COMPILE_REQUEST_THRESHOLD = 1024;
-//    private static final int MAX_COMPILER_THREADS = 10;
+    private static final int COMPILER_QUEUE_SIZE = Option.compile_queue_size.intValue(256);
+    private static final int COMPILE_REQUEST_THRESHOLD = Option.compile_threshold.intValue(1024);
+    private static final int MAX_COMPILER_THREADS = 10;
     private CodeBlockCompiler immediate,  delayed;
     private CompilerQueue compilerQueue;
 
@@ -58,24 +60,25 @@ class BackgroundCompiler implements CodeBlockCompiler {
         this.immediate = immediate;
         this.delayed = delayed;
         compilerQueue = new CompilerQueue(COMPILER_QUEUE_SIZE);
-
-        int compilerCount = 1;
-//        int compilerCount = Runtime.getRuntime().availableProcessors() - 1;
-//        if (compilerCount < 1)
-//            compilerCount = 1;
-//        else if (compilerCount > MAX_COMPILER_THREADS)
-//            compilerCount = MAX_COMPILER_THREADS;
-//        
-//        while (compilerCount-- > 0) {
-//        Thread t = new Thread(new Compiler(), "Background CodeBlock Compiler Thread " + compilerCount);
-//        try {
-//            t.setPriority(Math.max(Thread.MIN_PRIORITY, Thread.currentThread().getPriority() - 3));
-//        } catch (SecurityException e) {
-//            LOGGING.log(Level.INFO, "security manager prevents setting thread priorities");
-//        }
-//        t.setDaemon(true);
-//        t.start();
-//        }        
+        if (delayed == null)
+            return;
+
+        int compilerCount = Option.compile_threads.intValue(Runtime.getRuntime().availableProcessors() - 1);
+        if (compilerCount < 1)
+            compilerCount = 1;
+        else if (compilerCount > MAX_COMPILER_THREADS)
+            compilerCount = MAX_COMPILER_THREADS;
+
+        while (compilerCount-- > 0) {
+            Thread t = new Thread(new Compiler(), "Background CodeBlock Compiler Thread " + compilerCount);
+            try {
+                t.setPriority(Math.max(Thread.MIN_PRIORITY, Thread.currentThread().getPriority() - 3));
+            } catch (SecurityException e) {
+                LOGGING.log(Level.INFO, "security manager prevents setting thread priorities");
+            }
+            t.setDaemon(true);
+            t.start();
+        }
     }
 
     private class Compiler implements Runnable {
@@ -95,21 +98,31 @@ class BackgroundCompiler implements CodeBlockCompiler {
                 CodeBlock src = target.getTargetBlock();
                 CodeBlock result = null;
 
-                // for now exit until we have a compiler
-                if (true)
-                    return;
                 if (src instanceof ReplacementBlockTrigger) {
                     continue;
-                } else if (src instanceof RealModeCodeBlock) {
-                    result = delayed.getRealModeCodeBlock((BasicBlock) src);
-                } else if (src instanceof ProtectedModeCodeBlock) {
-                    result = delayed.getProtectedModeCodeBlock((BasicBlock) src);
+                }
+                long start = System.nanoTime();
+                try {
+                    if (src instanceof RealModeCodeBlock) {
+                        result = delayed.getRealModeCodeBlock(src);
+                    } else if (src instanceof ProtectedModeCodeBlock) {
+                        result = delayed.getProtectedModeCodeBlock(src);
+                    } else if (src instanceof Virtual8086ModeCodeBlock) {
+                        result = delayed.getVirtual8086ModeCodeBlock(src);
+                    }
+                } catch (RuntimeException e) {
+                    LOGGING.log(Level.WARNING, "Failed to compile block", e);
                 }
 
+                CompilerStatistics.compileNanos.add(System.nanoTime() - start);
+
+                // the volatile write in the wrapper publishes the fully constructed block
                 if (result == null) {
-                    target.setTargetBlock(new ReplacementBlockTrigger(src));
+                    CompilerStatistics.failed.increment();
+                    target.compareAndSetTargetBlock(src, new ReplacementBlockTrigger(src));
                 } else {
-                    target.setTargetBlock(new ReplacementBlockTrigger(result));
+                    CompilerStatistics.compiled.increment();
+                    target.compareAndSetTargetBlock(src, new ReplacementBlockTrigger(result));
                 }
             }
         }
@@ -132,8 +145,10 @@ class BackgroundCompiler implements CodeBlockCompiler {
 
     private abstract class ExecuteCountingCodeBlockWrapper extends AbstractCodeBlockWrapper {
 
-        private volatile int executeCount;
+        // live count, only touched by the emulation thread so it needs no striping or atomics
+        private int executeCount;
         private volatile boolean queued = false;
+        private volatile QueuedBlock entry;
 
         public ExecuteCountingCodeBlockWrapper(CodeBlock block) {
             super(block);
@@ -144,6 +159,8 @@ class BackgroundCompiler implements CodeBlockCompiler {
             if ((executeCount % COMPILE_REQUEST_THRESHOLD) == 0) {
                 if (!queued)
                     queued = compilerQueue.addBlock(this);
+                else
+                    compilerQueue.promote(this);
             }
 
             return super.execute(cpu);
@@ -171,55 +188,101 @@ class BackgroundCompiler implements CodeBlockCompiler {
         }
     }
 
+    /**
+     * Compile requests ordered hottest first, then oldest first.  Entries are
+     * immutable; a block that runs on while queued is re-entered with its new
+     * count, keeping its original sequence number.
+     */
+    private static final class QueuedBlock implements Comparable<QueuedBlock> {
+
+        final ExecuteCountingCodeBlockWrapper block;
+        final int hotness;
+        final long sequence;
+
+        QueuedBlock(ExecuteCountingCodeBlockWrapper block, int hotness, long sequence) {
+            this.block = block;
+            this.hotness = hotness;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(QueuedBlock o) {
+            if (hotness != o.hotness)
+                return (hotness > o.hotness) ? -1 : 1;
+            if (sequence != o.sequence)
+                return (sequence < o.sequence) ? -1 : 1;
+            return 0;
+        }
+    }
+
+    /**
+     * Bounded queue of blocks waiting for a compiler thread, built on a lock
+     * free skip list so that neither the emulation thread nor the compiler
+     * threads scan or block.  When full a request displaces the coldest queued
+     * block, or is rejected if it is no hotter.  The bound is only exact for a
+     * single producer, which is the case as each PC has one execution thread.
+     * <p>
+     * Every block is first requested at the same execution count, so a
+     * queued block is promoted each time it passes another multiple of the
+     * threshold.  Blocks that keep running while they wait overtake those
+     * that have gone cold.
+     */
     private static class CompilerQueue {
 
-        private final ExecuteCountingCodeBlockWrapper[] queue;
+        private final ConcurrentSkipListSet<QueuedBlock> queue = new ConcurrentSkipListSet<QueuedBlock>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicLong sequence = new AtomicLong();
+        private final int capacity;
 
-        CompilerQueue(int size) {
-            queue = new ExecuteCountingCodeBlockWrapper[size];
+        CompilerQueue(int capacity) {
+            this.capacity = capacity;
         }
 
         boolean addBlock(ExecuteCountingCodeBlockWrapper block) {
-            for (int i = 0; i < queue.length; i++) {
-                if (queue[i] == null) {
-                    queue[i] = block;
-                    return true;
-                }
-            }
-            for (int i = 0; i < queue.length; i++) {
-                if (block.executeCount > queue[i].executeCount) {
-                    queue[i] = block;
-                    return true;
+            QueuedBlock entry = new QueuedBlock(block, block.executeCount, sequence.getAndIncrement());
+            if (size.get() >= capacity) {
+                QueuedBlock coldest = queue.pollLast();
+                if (coldest == null) {
+                    // drained by the compiler threads in the meantime
+                } else if (coldest.compareTo(entry) < 0) {
+                    queue.add(coldest);
+                    CompilerStatistics.rejected.increment();
+                    return false;
+                } else {
+                    size.decrementAndGet();
+                    CompilerStatistics.queueDepth.decrementAndGet();
+                    CompilerStatistics.evicted.increment();
+                    coldest.block.entry = null;
+                    coldest.block.queued = false;
                 }
             }
-            return false;
+            block.entry = entry;
+            queue.add(entry);
+            size.incrementAndGet();
+            CompilerStatistics.queueDepth.incrementAndGet();
+            CompilerStatistics.queued.increment();
+            return true;
         }
 
-        ExecuteCountingCodeBlockWrapper getBlock() 
-        {
-            int index = 0;
-            int maxCount = 0;
-            for (int i = 0; i < queue.length; i++) 
-            {
-                if ((queue[i] != null) && (queue[i].executeCount > maxCount)) 
-                {
-                    maxCount = queue[i].executeCount;
-                    index = i;
-                }
-            }
-            ExecuteCountingCodeBlockWrapper block = queue[index];
-            queue[index] = null;
-
-            maxCount /= 2;
-            for (int i = 0; i < queue.length; i++)
-            {
-                if (queue[i] == null)
-                    continue;
-                if (queue[i].executeCount < maxCount)
-                    queue[i] = null;
+        void promote(ExecuteCountingCodeBlockWrapper block) {
+            QueuedBlock old = block.entry;
+            if (old == null)
+                return;
+            QueuedBlock entry = new QueuedBlock(block, block.executeCount, old.sequence);
+            // if a compiler thread took the old entry first there is nothing left to promote
+            if (queue.remove(old)) {
+                block.entry = entry;
+                queue.add(entry);
             }
+        }
 
-            return block;
+        ExecuteCountingCodeBlockWrapper getBlock() {
+            QueuedBlock entry = queue.pollFirst();
+            if (entry == null)
+                return null;
+            entry.block.entry = null;
+            size.decrementAndGet();
+            CompilerStatistics.queueDepth.decrementAndGet();
+            return entry.block;
         }
     }
 }
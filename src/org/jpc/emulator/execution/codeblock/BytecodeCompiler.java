@@ -0,0 +1,578 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package org.jpc.emulator.execution.codeblock;
+
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.*;
+
+import org.jpc.emulator.execution.Executable;
+import org.jpc.emulator.execution.RegisterOperation;
+import org.jpc.emulator.execution.UCodes;
+import org.jpc.emulator.execution.decoder.BasicBlock;
+import org.jpc.emulator.processor.Processor;
+
+import static org.jpc.emulator.execution.codeblock.ClassFileBuilder.*;
+
+/**
+ * Delayed compiler which turns the <code>Executable</code> chain of a hot
+ * <code>BasicBlock</code> into a single generated JVM class.
+ * <p>
+ * Simple register to register and register to immediate arithmetic is
+ * generated inline, with the general purpose registers and the lazy flag
+ * state (<code>flagOp1</code>, <code>flagOp2</code>, <code>flagResult</code>,
+ * <code>flagIns</code> and <code>flagStatus</code>) held in locals. These are
+ * written back to the processor before any other instruction runs and when
+ * the block exits.
+ * <p>
+ * Every other instruction is held in a field of its exact type and invoked
+ * directly, so each call site in the generated method is monomorphic and can
+ * be inlined by the JVM, instead of going through the single megamorphic
+ * <code>execute</code> call of the interpreted loop.
+ * @author Ian Preston
+ */
+public class BytecodeCompiler implements CodeBlockCompiler
+{
+    private static final Logger LOGGING = Logger.getLogger(BytecodeCompiler.class.getName());
+    public static final int MAX_COMPILED_INSTRUCTIONS = 500;
+
+    private static final String CLASS_PREFIX = "org/jpc/emulator/execution/codeblock/compiled/Block";
+    private static final String PROCESSOR = internalName(Processor.class);
+    private static final String BRANCH = internalName(Executable.Branch.class);
+    private static final String REG = internalName(Processor.Reg.class);
+    private static final String EXECUTE_DESC = "(L" + PROCESSOR + ";)L" + BRANCH + ";";
+    private static final String CONSTRUCTOR_DESC = "(L" + internalName(BasicBlock.class) + ";[L" + internalName(Executable.class) + ";)V";
+
+    private static final AtomicInteger classCount = new AtomicInteger();
+
+    private final PersistentCodeCache cache;
+
+    public BytecodeCompiler()
+    {
+        this(null);
+    }
+
+    /**
+     * @param cache on-disk cache to record generated classes in, or <code>null</code>
+     */
+    BytecodeCompiler(PersistentCodeCache cache)
+    {
+        this.cache = cache;
+    }
+
+    public RealModeCodeBlock getRealModeCodeBlock(CodeBlock block)
+    {
+        if (!(block instanceof InterpretedRealModeBlock))
+            return null;
+        return (RealModeCodeBlock) compile(((InterpretedRealModeBlock) block).getBasicBlock(), CompiledRealModeBlock.class);
+    }
+
+    public ProtectedModeCodeBlock getProtectedModeCodeBlock(CodeBlock block)
+    {
+        if (!(block instanceof InterpretedProtectedModeBlock))
+            return null;
+        return (ProtectedModeCodeBlock) compile(((InterpretedProtectedModeBlock) block).getBasicBlock(), CompiledProtectedModeBlock.class);
+    }
+
+    public Virtual8086ModeCodeBlock getVirtual8086ModeCodeBlock(CodeBlock block)
+    {
+        if (!(block instanceof InterpretedVM86ModeBlock))
+            return null;
+        return (Virtual8086ModeCodeBlock) compile(((InterpretedVM86ModeBlock) block).getBasicBlock(), CompiledVM86ModeBlock.class);
+    }
+
+    private CodeBlock compile(BasicBlock b, Class<? extends CompiledCodeBlock> superClass)
+    {
+        Executable[] ops = getInstructions(b);
+        if (ops == null)
+            return null;
+
+        String name = CLASS_PREFIX + classCount.incrementAndGet();
+        byte[] classBytes = generate(name, internalName(superClass), Arrays.asList(ops));
+        try {
+            Constructor<?> cons = load(classBytes);
+            CodeBlock block = (CodeBlock) cons.newInstance(b, ops);
+            if (cache != null)
+                cache.store(b, ops.length, classBytes, cons);
+            return block;
+        } catch (InvocationTargetException e)
+        {
+            LOGGING.log(Level.WARNING, "Generated block failed to construct", e.getCause());
+        } catch (ReflectiveOperationException e)
+        {
+            LOGGING.log(Level.WARNING, "Generated block failed to load", e);
+        } catch (LinkageError e)
+        {
+            LOGGING.log(Level.WARNING, "Generated block failed verification", e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the instructions of a block in execution order, or
+     * <code>null</code> if the block cannot be compiled.
+     * @param b block to flatten
+     * @return instructions of the block, or <code>null</code>
+     */
+    static Executable[] getInstructions(BasicBlock b)
+    {
+        // debug blocks and per instruction logging rely on BasicBlock.postInstruction
+        if ((b.getClass() != BasicBlock.class) || BasicBlock.LOG_STATE || BasicBlock.SINGLE_STEP_TIME)
+            return null;
+
+        List<Executable> ops = new ArrayList<Executable>();
+        for (Executable e = b.start; e != null; e = e.next)
+        {
+            ops.add(e);
+            if (ops.size() > MAX_COMPILED_INSTRUCTIONS)
+                return null;
+        }
+        return ops.toArray(new Executable[ops.size()]);
+    }
+
+    /**
+     * Defines a generated block class and returns its
+     * <code>(BasicBlock, Executable[])</code> constructor.
+     * @param classBytes class file produced by {@link #generate}
+     * @return constructor of the defined class
+     * @throws ReflectiveOperationException if the class has no such constructor
+     * @throws LinkageError if the class file is malformed or fails verification
+     */
+    static Constructor<?> load(byte[] classBytes) throws ReflectiveOperationException
+    {
+        return new BlockClassLoader().define(classBytes).getConstructor(BasicBlock.class, Executable[].class);
+    }
+
+    static byte[] generate(String name, String superName, List<Executable> ops)
+    {
+        ClassFileBuilder cf = new ClassFileBuilder(name, superName);
+        Inlined[] inlined = new Inlined[ops.size()];
+        String[] types = new String[ops.size()];
+        int[] fields = new int[ops.size()];
+        int[] methods = new int[ops.size()];
+        for (int i = 0; i < types.length; i++)
+        {
+            inlined[i] = Inlined.of(ops.get(i));
+            if (inlined[i] != null)
+                continue;
+            Class<?> c = ops.get(i).getClass();
+            if (!Modifier.isPublic(c.getModifiers()))
+                c = Executable.class;
+            types[i] = internalName(c);
+            cf.addField(ACC_PRIVATE | ACC_FINAL, "op" + i, "L" + types[i] + ";");
+            fields[i] = cf.fieldRef(name, "op" + i, "L" + types[i] + ";");
+            methods[i] = cf.methodRef(types[i], "execute", EXECUTE_DESC);
+        }
+
+        // constructor: store each called instruction in a field of its exact type
+        ClassFileBuilder.Code init = new ClassFileBuilder.Code(4, 3);
+        init.op(ALOAD_0);
+        init.op(ALOAD_1);
+        init.op(INVOKESPECIAL, cf.methodRef(superName, "<init>", "(L" + internalName(BasicBlock.class) + ";)V"));
+        for (int i = 0; i < types.length; i++)
+        {
+            if (inlined[i] != null)
+                continue;
+            init.op(ALOAD_0);
+            init.op(ALOAD_2);
+            init.pushInt(i);
+            init.op(AALOAD);
+            init.op(CHECKCAST, cf.classRef(types[i]));
+            init.op(PUTFIELD, fields[i]);
+        }
+        init.op(RETURN);
+        cf.addMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR_DESC, init);
+
+        // run: the unrolled equivalent of the interpreted block loop
+        int rf = cf.methodRef(PROCESSOR, "rf", "(Z)V");
+        int none = cf.fieldRef(BRANCH, "None", "L" + BRANCH + ";");
+        int valid = cf.fieldRef(name, "valid", "Z");
+        int selfModified = cf.methodRef(name, "selfModified", "()Ljava/lang/RuntimeException;");
+        int position = cf.fieldRef(name, "position", "I");
+
+        ClassFileBuilder.Code run = new ClassFileBuilder.Code(8, Locals.FIRST_LOCAL + Locals.COUNT);
+        Locals locals = new Locals(cf, run);
+        int[] starts = new int[types.length];
+        int[] ends = new int[types.length];
+        for (int i = 0; i < types.length; i++)
+        {
+            if (inlined[i] != null)
+            {
+                // reads and writes only registers and flags, so it can neither throw nor exit the block
+                locals.emit(inlined[i]);
+                CompilerStatistics.inlined.increment();
+                run.op(ALOAD_1);
+                run.op(ICONST_0);
+                run.op(INVOKEVIRTUAL, rf);
+                if (i == types.length - 1)
+                {
+                    locals.spill();
+                    run.op(GETSTATIC, none);
+                    run.op(ARETURN);
+                }
+                continue;
+            }
+            locals.spill();
+            locals.forget();
+            starts[i] = run.position();
+            run.op(ALOAD_0);
+            run.op(GETFIELD, fields[i]);
+            run.op(ALOAD_1);
+            run.op(INVOKEVIRTUAL, methods[i]);
+            run.op(ASTORE_2);
+            run.op(ALOAD_1);
+            run.op(ICONST_0);
+            run.op(INVOKEVIRTUAL, rf);
+            if (i < types.length - 1)
+            {
+                run.op(ALOAD_2);
+                run.op(GETSTATIC, none);
+                run.op(IF_ACMPEQ, 5);
+                run.op(ALOAD_2);
+                run.op(ARETURN);
+                run.op(ALOAD_0);
+                run.op(GETFIELD, valid);
+                run.op(IFNE, 8);
+                run.op(ALOAD_0);
+                run.op(INVOKEVIRTUAL, selfModified);
+                run.op(ATHROW);
+            }
+            else
+            {
+                run.op(ALOAD_2);
+                run.op(ARETURN);
+            }
+            ends[i] = run.position();
+        }
+        // record which instruction threw before unwinding to the mode specific handler
+        for (int i = 0; i < types.length; i++)
+        {
+            if (inlined[i] != null)
+                continue;
+            run.addHandler(starts[i], ends[i], run.position(), 0);
+            run.op(ASTORE_2);
+            run.op(ALOAD_0);
+            run.pushInt(i);
+            run.op(PUTFIELD, position);
+            run.op(ALOAD_2);
+            run.op(ATHROW);
+        }
+        cf.addMethod(ACC_PUBLIC, "run", EXECUTE_DESC, run);
+        return cf.toByteArray();
+    }
+
+    private static String internalName(Class<?> c)
+    {
+        return c.getName().replace('.', '/');
+    }
+
+    /**
+     * A register or immediate form of mov, add, sub, cmp, and, or, xor, test,
+     * inc or dec, which is generated inline instead of being called.
+     */
+    static final class Inlined
+    {
+        // general purpose registers in the order they are held in locals
+        static final String[] REGISTERS = {"eax", "ecx", "edx", "ebx", "esp", "ebp", "esi", "edi"};
+
+        final String operation;
+        final boolean word;
+        final int op1, op2, imm;
+
+        private Inlined(String operation, boolean word, int op1, int op2, int imm)
+        {
+            this.operation = operation;
+            this.word = word;
+            this.op1 = op1;
+            this.op2 = op2;
+            this.imm = word ? (short) imm : imm;
+        }
+
+        /**
+         * Returns the inline form of an instruction, or <code>null</code> if
+         * it must be called.
+         * @param e decoded instruction
+         * @return inline form of <code>e</code>, or <code>null</code>
+         */
+        static Inlined of(Executable e)
+        {
+            if (!(e instanceof RegisterOperation))
+                return null;
+            RegisterOperation r = (RegisterOperation) e;
+            int op1 = register(r.getDestinationIndex());
+            int op2 = (r.getSourceIndex() < 0) ? -1 : register(r.getSourceIndex());
+            if ((op1 < 0) || ((r.getSourceIndex() >= 0) && (op2 < 0)))
+                throw new IllegalStateException("Not a general purpose register operand in " + e);
+            return new Inlined(r.getOperation(), r.getOperandSize() == 16, op1, op2, r.getImmediate());
+        }
+
+        // maps an index into Processor.regs to the 32 bit register it is part of
+        private static int register(int index)
+        {
+            for (int i = 0; i < REGISTERS.length; i++)
+                if ((Processor.getRegIndex(REGISTERS[i]) == index) || (Processor.getRegIndex(REGISTERS[i].substring(1)) == index))
+                    return i;
+            return -1;
+        }
+    }
+
+    /**
+     * Emits inlined instructions against locals holding the registers and lazy
+     * flags, tracking which locals have been loaded from the processor and
+     * which have been changed since.
+     */
+    private static final class Locals
+    {
+        static final int FIRST_LOCAL = 3;
+        static final int FLAG_OP1 = 8;
+        static final int FLAG_OP2 = 9;
+        static final int FLAG_RESULT = 10;
+        static final int FLAG_INS = 11;
+        static final int FLAG_STATUS = 12;
+        static final int COUNT = 13;
+
+        private static final String[] FLAGS = {"flagOp1", "flagOp2", "flagResult", "flagIns", "flagStatus"};
+
+        private final ClassFileBuilder cf;
+        private final ClassFileBuilder.Code code;
+        private final int[] fields = new int[COUNT];
+        private final boolean[] loaded = new boolean[COUNT];
+        private final boolean[] dirty = new boolean[COUNT];
+        private final int get32, set32, carry, overflow, auxCarry, getCarryFlag;
+
+        Locals(ClassFileBuilder cf, ClassFileBuilder.Code code)
+        {
+            this.cf = cf;
+            this.code = code;
+            for (int i = 0; i < Inlined.REGISTERS.length; i++)
+                fields[i] = cf.fieldRef(PROCESSOR, "r_" + Inlined.REGISTERS[i], "L" + REG + ";");
+            for (int i = 0; i < FLAGS.length; i++)
+                fields[FLAG_OP1 + i] = cf.fieldRef(PROCESSOR, FLAGS[i], "I");
+            get32 = cf.methodRef(REG, "get32", "()I");
+            set32 = cf.methodRef(REG, "set32", "(I)V");
+            carry = cf.fieldRef(PROCESSOR, "cf", "Z");
+            overflow = cf.fieldRef(PROCESSOR, "of", "Z");
+            auxCarry = cf.fieldRef(PROCESSOR, "af", "Z");
+            getCarryFlag = cf.methodRef(PROCESSOR, "getCarryFlag", "(IZIIII)Z");
+        }
+
+        void emit(Inlined x)
+        {
+            switch (x.operation)
+            {
+            case "mov":
+                source(x);
+                write(x.op1, x.word);
+                break;
+            case "add":
+            case "sub":
+            case "cmp":
+                boolean add = x.operation.equals("add");
+                read(x.op1, x.word);
+                store(FLAG_OP1);
+                source(x);
+                store(FLAG_OP2);
+                load(FLAG_OP1);
+                load(FLAG_OP2);
+                code.op(add ? IADD : ISUB);
+                result(x, !x.operation.equals("cmp"));
+                instruction(x, add);
+                constant(Executable.OSZAPC);
+                store(FLAG_STATUS);
+                break;
+            case "inc":
+            case "dec":
+                // inc and dec leave the carry flag alone, so resolve it from the lazy state before replacing that
+                code.op(ALOAD_1);
+                load(FLAG_STATUS);
+                code.op(ALOAD_1);
+                code.op(GETFIELD, carry);
+                load(FLAG_OP1);
+                load(FLAG_OP2);
+                load(FLAG_RESULT);
+                load(FLAG_INS);
+                code.op(INVOKESTATIC, getCarryFlag);
+                code.op(PUTFIELD, carry);
+                read(x.op1, x.word);
+                store(FLAG_OP1);
+                constant(1);
+                store(FLAG_OP2);
+                load(FLAG_OP1);
+                constant(1);
+                code.op(x.operation.equals("inc") ? IADD : ISUB);
+                result(x, true);
+                instruction(x, x.operation.equals("inc"));
+                constant(Executable.NCF);
+                store(FLAG_STATUS);
+                break;
+            default:
+                for (int flag : new int[] {overflow, auxCarry, carry})
+                {
+                    code.op(ALOAD_1);
+                    code.op(ICONST_0);
+                    code.op(PUTFIELD, flag);
+                }
+                read(x.op1, x.word);
+                source(x);
+                code.op(x.operation.equals("or") ? IOR : x.operation.equals("xor") ? IXOR : IAND);
+                result(x, !x.operation.equals("test"));
+                constant(Executable.SZP);
+                store(FLAG_STATUS);
+            }
+        }
+
+        /**
+         * Writes every changed local back to the processor.
+         */
+        void spill()
+        {
+            for (int slot = 0; slot < COUNT; slot++)
+            {
+                if (!dirty[slot])
+                    continue;
+                code.op(ALOAD_1);
+                if (slot < FLAG_OP1)
+                {
+                    code.op(GETFIELD, fields[slot]);
+                    code.local(ILOAD, FIRST_LOCAL + slot);
+                    code.op(INVOKEVIRTUAL, set32);
+                }
+                else
+                {
+                    code.local(ILOAD, FIRST_LOCAL + slot);
+                    code.op(PUTFIELD, fields[slot]);
+                }
+                dirty[slot] = false;
+            }
+        }
+
+        /**
+         * Discards the locals, so they are reloaded from the processor when
+         * next used.
+         */
+        void forget()
+        {
+            Arrays.fill(loaded, false);
+        }
+
+        private void load(int slot)
+        {
+            if (!loaded[slot])
+            {
+                code.op(ALOAD_1);
+                code.op(GETFIELD, fields[slot]);
+                if (slot < FLAG_OP1)
+                    code.op(INVOKEVIRTUAL, get32);
+                code.local(ISTORE, FIRST_LOCAL + slot);
+                loaded[slot] = true;
+            }
+            code.local(ILOAD, FIRST_LOCAL + slot);
+        }
+
+        private void store(int slot)
+        {
+            code.local(ISTORE, FIRST_LOCAL + slot);
+            loaded[slot] = true;
+            dirty[slot] = true;
+        }
+
+        private void constant(int value)
+        {
+            if (value == (short) value)
+                code.pushInt(value);
+            else
+                code.op(LDC_W, cf.intConstant(value));
+        }
+
+        private void read(int register, boolean word)
+        {
+            load(register);
+            if (word)
+                code.op(I2S);
+        }
+
+        // stores the value on the stack into a register, keeping the upper half for a 16 bit write
+        private void write(int register, boolean word)
+        {
+            if (word)
+            {
+                constant(0xFFFF);
+                code.op(IAND);
+                load(register);
+                constant(0xFFFF0000);
+                code.op(IAND);
+                code.op(IOR);
+            }
+            store(register);
+        }
+
+        private void source(Inlined x)
+        {
+            if (x.op2 >= 0)
+                read(x.op2, x.word);
+            else
+                constant(x.imm);
+        }
+
+        private void result(Inlined x, boolean writeBack)
+        {
+            if (x.word)
+                code.op(I2S);
+            store(FLAG_RESULT);
+            if (writeBack)
+            {
+                load(FLAG_RESULT);
+                write(x.op1, x.word);
+            }
+        }
+
+        private void instruction(Inlined x, boolean add)
+        {
+            if (x.word)
+                constant(add ? UCodes.ADD16 : UCodes.SUB16);
+            else
+                constant(add ? UCodes.ADD32 : UCodes.SUB32);
+            store(FLAG_INS);
+        }
+    }
+
+    private static class BlockClassLoader extends ClassLoader
+    {
+        BlockClassLoader()
+        {
+            super(CompiledCodeBlock.class.getClassLoader());
+        }
+
+        Class<?> define(byte[] b)
+        {
+            return defineClass(null, b, 0, b.length);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package org.jpc.emulator.execution.codeblock;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Minimal writer for the JVM class file format, just capable enough to emit the
+ * straight line classes produced by the <code>BytecodeCompiler</code>.
+ * <p>
+ * Classes are written with major version 49 so that they are checked by the
+ * type inferencing verifier and no stack map frames are needed.
+ * @author Ian Preston
+ */
+class ClassFileBuilder
+{
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ALOAD_0 = 0x2a;
+    static final int ALOAD_1 = 0x2b;
+    static final int ALOAD_2 = 0x2c;
+    static final int ASTORE_2 = 0x4d;
+    static final int AALOAD = 0x32;
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ISTORE = 0x36;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IAND = 0x7e;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int I2S = 0x93;
+    static final int IFNE = 0x9a;
+    static final int IF_ACMPEQ = 0xa5;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream members = new ByteArrayOutputStream();
+    private final DataOutputStream membersOut = new DataOutputStream(members);
+    private int fieldCount, methodCount;
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+    private final DataOutputStream fieldsOut = new DataOutputStream(fields);
+
+    private final int thisClass, superClass;
+
+    ClassFileBuilder(String name, String superName)
+    {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    private int entry(String key, int tag, int a, int b, String utf)
+    {
+        Integer index = poolIndex.get(key);
+        if (index != null)
+            return index.intValue();
+        try {
+            poolOut.writeByte(tag);
+            if (tag == CONSTANT_UTF8)
+                poolOut.writeUTF(utf);
+            else if (tag == CONSTANT_INTEGER)
+                poolOut.writeInt(a);
+            else if (tag == CONSTANT_CLASS)
+                poolOut.writeShort(a);
+            else
+            {
+                poolOut.writeShort(a);
+                poolOut.writeShort(b);
+            }
+        } catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        poolIndex.put(key, Integer.valueOf(poolCount));
+        return poolCount++;
+    }
+
+    int utf8(String s)
+    {
+        return entry("U" + s, CONSTANT_UTF8, 0, 0, s);
+    }
+
+    int intConstant(int value)
+    {
+        return entry("I" + value, CONSTANT_INTEGER, value, 0, null);
+    }
+
+    int classRef(String internalName)
+    {
+        return entry("C" + internalName, CONSTANT_CLASS, utf8(internalName), 0, null);
+    }
+
+    private int nameAndType(String name, String descriptor)
+    {
+        return entry("N" + name + ":" + descriptor, CONSTANT_NAME_AND_TYPE, utf8(name), utf8(descriptor), null);
+    }
+
+    int fieldRef(String owner, String name, String descriptor)
+    {
+        return entry("F" + owner + "." + name + ":" + descriptor, CONSTANT_FIELDREF, classRef(owner), nameAndType(name, descriptor), null);
+    }
+
+    int methodRef(String owner, String name, String descriptor)
+    {
+        return entry("M" + owner + "." + name + ":" + descriptor, CONSTANT_METHODREF, classRef(owner), nameAndType(name, descriptor), null);
+    }
+
+    void addField(int access, String name, String descriptor)
+    {
+        try {
+            fieldsOut.writeShort(access);
+            fieldsOut.writeShort(utf8(name));
+            fieldsOut.writeShort(utf8(descriptor));
+            fieldsOut.writeShort(0);
+        } catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        fieldCount++;
+    }
+
+    void addMethod(int access, String name, String descriptor, Code code)
+    {
+        byte[] bytecode = code.toByteArray();
+        if (bytecode.length >= 0xFFFF)
+            throw new IllegalStateException("Method too large: " + bytecode.length + " bytes");
+        try {
+            membersOut.writeShort(access);
+            membersOut.writeShort(utf8(name));
+            membersOut.writeShort(utf8(descriptor));
+            membersOut.writeShort(1);
+            membersOut.writeShort(utf8("Code"));
+            membersOut.writeInt(12 + bytecode.length + 8 * code.handlers.size());
+            membersOut.writeShort(code.maxStack);
+            membersOut.writeShort(code.maxLocals);
+            membersOut.writeInt(bytecode.length);
+            membersOut.write(bytecode);
+            membersOut.writeShort(code.handlers.size());
+            for (int[] h : code.handlers)
+                for (int i = 0; i < 4; i++)
+                    membersOut.writeShort(h[i]);
+            membersOut.writeShort(0);
+        } catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        methodCount++;
+    }
+
+    byte[] toByteArray()
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            out.write(pool.toByteArray());
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(fieldCount);
+            out.write(fields.toByteArray());
+            out.writeShort(methodCount);
+            out.write(members.toByteArray());
+            out.writeShort(0);
+        } catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * Bytecode buffer for a single method body.
+     */
+    static class Code
+    {
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<int[]> handlers = new ArrayList<int[]>();
+        final int maxStack, maxLocals;
+
+        Code(int maxStack, int maxLocals)
+        {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        int position()
+        {
+            return code.size();
+        }
+
+        void op(int opcode)
+        {
+            code.write(opcode);
+        }
+
+        void op(int opcode, int u16)
+        {
+            code.write(opcode);
+            code.write(u16 >>> 8);
+            code.write(u16);
+        }
+
+        void pushInt(int value)
+        {
+            if ((value >= -1) && (value <= 5))
+                op(ICONST_0 + value);
+            else if ((value >= Byte.MIN_VALUE) && (value <= Byte.MAX_VALUE))
+            {
+                op(BIPUSH);
+                code.write(value);
+            }
+            else
+                op(SIPUSH, value & 0xFFFF);
+        }
+
+        void local(int opcode, int index)
+        {
+            code.write(opcode);
+            code.write(index);
+        }
+
+        void addHandler(int start, int end, int handler, int catchType)
+        {
+            handlers.add(new int[]{start, end, handler, catchType});
+        }
+
+        byte[] toByteArray()
+        {
+            return code.toByteArray();
+        }
+    }
+}
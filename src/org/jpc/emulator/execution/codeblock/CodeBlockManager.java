@@ -35,7 +35,11 @@ package org.jpc.emulator.execution.codeblock;
 
 import java.util.logging.*;
 
+import org.jpc.emulator.PC;
+import org.jpc.emulator.execution.Executable;
+import org.jpc.emulator.execution.decoder.BasicBlock;
 import org.jpc.emulator.memory.Memory;
+import org.jpc.emulator.processor.Processor;
 
 /**
  * Provides the outer skin for the codeblock construction system.
@@ -51,6 +55,12 @@ public class CodeBlockManager {
     private CodeBlockFactory compilingRealModeChain,  compilingProtectedModeChain,  compilingVirtual8086ModeChain;
     private PeekableMemoryStream byteSourceStream;
     private BackgroundCompiler bgc;
+    private PersistentCodeCache codeCache;
+    private BasicBlock lastBlock;
+    private Executable.Branch lastExit;
+    private int lastExitAddress;
+    private int lastExitGeneration;
+    private volatile int linkGeneration;
 
     public CodeBlockManager()
     {
@@ -60,10 +70,20 @@ public class CodeBlockManager {
         protectedModeChain = new DefaultCodeBlockFactory(new OptimisedCompiler(), BLOCK_LIMIT);
         virtual8086ModeChain = new DefaultCodeBlockFactory(new OptimisedCompiler(), BLOCK_LIMIT);
 
-        bgc = new BackgroundCompiler(new OptimisedCompiler(), null);
-        compilingRealModeChain = new DefaultCodeBlockFactory(bgc, BLOCK_LIMIT);//realModeChain;
-        compilingProtectedModeChain = new DefaultCodeBlockFactory(bgc, BLOCK_LIMIT);//protectedModeChain;
-        compilingVirtual8086ModeChain = virtual8086ModeChain;
+        if (PC.compile)
+        {
+            codeCache = PersistentCodeCache.getInstance();
+            bgc = new BackgroundCompiler(new OptimisedCompiler(), new BytecodeCompiler(codeCache));
+            compilingRealModeChain = new DefaultCodeBlockFactory(bgc, BLOCK_LIMIT);
+            compilingProtectedModeChain = new DefaultCodeBlockFactory(bgc, BLOCK_LIMIT);
+            compilingVirtual8086ModeChain = new DefaultCodeBlockFactory(bgc, BLOCK_LIMIT);
+        }
+        else
+        {
+            compilingRealModeChain = realModeChain;
+            compilingProtectedModeChain = protectedModeChain;
+            compilingVirtual8086ModeChain = virtual8086ModeChain;
+        }
     }
     
     private RealModeCodeBlock tryRealModeFactory(CodeBlockFactory ff, Memory memory, int offset)
@@ -110,6 +130,8 @@ public class CodeBlockManager {
                 throw new IllegalStateException("Couldn't find capable block");
             }
         }
+        if (codeCache != null)
+            return (RealModeCodeBlock) codeCache.lookup(block, memory, offset, PersistentCodeCache.REAL_MODE, false);
         return block;
 
     }
@@ -129,6 +151,8 @@ public class CodeBlockManager {
                 throw new IllegalStateException("Couldn't find capable block");
             }
         }
+        if (codeCache != null)
+            return (ProtectedModeCodeBlock) codeCache.lookup(block, memory, offset, PersistentCodeCache.PROTECTED_MODE, operandSize);
         return block;
     }
 
@@ -146,6 +170,93 @@ public class CodeBlockManager {
                 throw new IllegalStateException("Couldn't find capable block");
             }
         }
+        if (codeCache != null)
+            return (Virtual8086ModeCodeBlock) codeCache.lookup(block, memory, offset, PersistentCodeCache.VIRTUAL8086_MODE, false);
         return block;
     }
+
+    /**
+     * Executes the block chained from the last executed block, bypassing the
+     * address space and code block lookup.
+     * @param cpu processor to execute on
+     * @return x86 instruction count of the block, or -1 if there was no valid
+     * chained successor and the caller must look the block up in memory
+     */
+    public int executeChained(Processor cpu)
+    {
+        BasicBlock last = lastBlock;
+        if (last == null)
+            return -1;
+        BasicBlock.Link link = last.getLink(lastExit, cpu.getInstructionPointer(), cpu.cs, linkGeneration);
+        if (link == null)
+            return -1;
+
+        lastBlock = null;
+        try {
+            lastExit = link.block.execute(cpu);
+        } catch (CodeBlockReplacementException e) {
+            // block has been compiled, so relink through the memory lookup
+            lastBlock = last;
+            return -1;
+        }
+        lastBlock = link.basicBlock;
+        lastExitAddress = cpu.getInstructionPointer();
+        lastExitGeneration = linkGeneration;
+        return link.block.getX86Count();
+    }
+
+    /**
+     * Called by code memory after it has looked up and executed a block, to
+     * chain that block to its predecessor.  The link is stamped with the
+     * generation at which the predecessor exited, so if the block invalidated
+     * itself or anything else while executing the link is born stale.
+     * @param block block that was executed
+     * @param address linear address the block was executed from
+     * @param exit branch type the block returned
+     * @param cpu processor the block was executed on
+     */
+    public void blockExecuted(CodeBlock block, int address, Executable.Branch exit, Processor cpu)
+    {
+        BasicBlock b = getBasicBlock(block);
+        if ((b != null) && (lastBlock != null) && (address == lastExitAddress))
+            lastBlock.setLink(lastExit, block, b, address, cpu.cs, lastExitGeneration);
+        lastBlock = b;
+        lastExit = exit;
+        lastExitAddress = cpu.getInstructionPointer();
+        lastExitGeneration = linkGeneration;
+    }
+
+    /**
+     * Invalidates every chain between the blocks of this manager.  Must be
+     * called whenever the mapping from linear address to code block may have
+     * changed: on code invalidation, TLB flushes and physical memory remaps.
+     * These can happen on other threads, so the generation is volatile.
+     */
+    public void unlinkAll()
+    {
+        linkGeneration++;
+    }
+
+    /**
+     * Forgets the last executed block, so the next block is not chained to it.
+     */
+    public void clearChain()
+    {
+        lastBlock = null;
+    }
+
+    static BasicBlock getBasicBlock(CodeBlock block)
+    {
+        if (block instanceof AbstractCodeBlockWrapper)
+            block = ((AbstractCodeBlockWrapper) block).getTargetBlock();
+        if (block instanceof InterpretedProtectedModeBlock)
+            return ((InterpretedProtectedModeBlock) block).getBasicBlock();
+        if (block instanceof InterpretedRealModeBlock)
+            return ((InterpretedRealModeBlock) block).getBasicBlock();
+        if (block instanceof InterpretedVM86ModeBlock)
+            return ((InterpretedVM86ModeBlock) block).getBasicBlock();
+        if (block instanceof CompiledCodeBlock)
+            return ((CompiledCodeBlock) block).getBasicBlock();
+        return null;
+    }
 }
@@ -0,0 +1,92 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package org.jpc.emulator.execution.codeblock;
+
+import org.jpc.emulator.execution.*;
+import org.jpc.emulator.execution.decoder.*;
+import org.jpc.emulator.processor.Processor;
+
+/**
+ * Common superclass of the block classes generated at runtime by the
+ * <code>BytecodeCompiler</code>.
+ * <p>
+ * Generated subclasses implement {@link #run(Processor)} as a straight line
+ * sequence of direct calls on each instruction of the source block, with
+ * simple register arithmetic generated inline.  If an instruction throws, the generated exception handlers record its index in
+ * <code>position</code> so that the mode specific subclasses can fix up eip
+ * exactly as the interpreted blocks do.
+ * @author Ian Preston
+ */
+public abstract class CompiledCodeBlock implements CodeBlock
+{
+    protected final BasicBlock b;
+    protected boolean valid = true;
+    protected int position;
+
+    protected CompiledCodeBlock(BasicBlock b)
+    {
+        this.b = b;
+    }
+
+    protected abstract Executable.Branch run(Processor cpu);
+
+    protected final RuntimeException selfModified()
+    {
+        return new SelfModifyingCodeException("Block modified itself!");
+    }
+
+    protected final Executable current()
+    {
+        Executable current = b.start;
+        for (int i = 0; i < position; i++)
+            current = current.next;
+        return current;
+    }
+
+    public BasicBlock getBasicBlock() {
+        return b;
+    }
+
+    public int getX86Length() {
+        return b.getX86Length();
+    }
+
+    public int getX86Count() {
+        return b.getX86Count();
+    }
+
+    public Instruction getInstructions() {
+        return b.getInstructions();
+    }
+
+    public boolean handleMemoryRegionChange(int startAddress, int endAddress) {
+        valid = b.handleMemoryRegionChange(startAddress, endAddress);
+        return valid;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package org.jpc.emulator.execution.codeblock;
+
+import org.jpc.emulator.execution.*;
+import org.jpc.emulator.execution.decoder.*;
+import org.jpc.emulator.processor.*;
+import static org.jpc.emulator.execution.Executable.*;
+
+/**
+ * Superclass of generated virtual 8086 mode blocks, mirroring the exception handling
+ * of {@link InterpretedVM86ModeBlock}.
+ * @author Ian Preston
+ */
+public abstract class CompiledVM86ModeBlock extends CompiledCodeBlock implements Virtual8086ModeCodeBlock
+{
+    protected CompiledVM86ModeBlock(BasicBlock b)
+    {
+        super(b);
+    }
+
+    public Branch execute(Processor cpu)
+    {
+        b.preBlock(cpu);
+        try
+        {
+            return run(cpu);
+        } catch (ProcessorException e)
+        {
+            Executable current = current();
+            cpu.eip += current.delta;
+            if (current.next == null) // branches have already updated eip
+                cpu.eip -= getX86Length(); // so eip points at the branch that barfed
+            if (!e.pointsToSelf())
+            {
+                if (current.next == null)
+                    cpu.eip += getX86Length() - current.delta;
+                else
+                    cpu.eip += current.next.delta - current.delta;
+            }
+            cpu.handleVirtual8086ModeException(e);
+            return Branch.Exception;
+        }
+        catch (ModeSwitchException e)
+        {
+            e.setX86Count(position + 1);
+            throw e;
+        }
+        catch (SelfModifyingCodeException e)
+        {
+            cpu.eip += current().next.delta;
+            return Branch.Exception;
+        }
+        finally
+        {
+            b.postBlock(cpu);
+        }
+    }
+
+    public String getDisplayString() {
+        return "Compiled Virtual 8086 Mode Block:\n"+b.getDisplayString();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.execution.codeblock;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counters describing the state of the background compiler.
+ * <p>
+ * All counters are cumulative over the life of the JVM apart from the queue
+ * depth, which is the number of blocks currently waiting to be compiled.
+ * @author Ian Preston
+ */
+public final class CompilerStatistics
+{
+    static final AtomicInteger queueDepth = new AtomicInteger();
+    static final LongAdder queued = new LongAdder();
+    static final LongAdder rejected = new LongAdder();
+    static final LongAdder evicted = new LongAdder();
+    static final LongAdder compiled = new LongAdder();
+    static final LongAdder failed = new LongAdder();
+    static final LongAdder inlined = new LongAdder();
+    static final LongAdder compileNanos = new LongAdder();
+    static final LongAdder cacheHits = new LongAdder();
+    static final LongAdder cacheStored = new LongAdder();
+
+    private CompilerStatistics()
+    {
+    }
+
+    public static int getQueueDepth()
+    {
+        return queueDepth.get();
+    }
+
+    public static long getQueuedCount()
+    {
+        return queued.sum();
+    }
+
+    /**
+     * Returns the number of compile requests dropped because the queue was
+     * full of hotter blocks.
+     * @return rejected request count
+     */
+    public static long getRejectedCount()
+    {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of queued blocks displaced by a hotter block.
+     * @return evicted block count
+     */
+    public static long getEvictedCount()
+    {
+        return evicted.sum();
+    }
+
+    public static long getCompiledCount()
+    {
+        return compiled.sum();
+    }
+
+    /**
+     * Returns the number of blocks the compiler declined or failed on.
+     * @return failed block count
+     */
+    public static long getFailedCount()
+    {
+        return failed.sum();
+    }
+
+    /**
+     * Returns the number of compiled instructions generated inline against
+     * registers and flags held in locals, rather than called.
+     * @return inlined instruction count
+     */
+    public static long getInlinedCount()
+    {
+        return inlined.sum();
+    }
+
+    /**
+     * Returns the mean time taken to compile a block.
+     * @return mean compile latency in microseconds
+     */
+    public static long getMeanCompileMicros()
+    {
+        long count = compiled.sum() + failed.sum();
+        if (count == 0)
+            return 0;
+        return compileNanos.sum() / count / 1000;
+    }
+
+    /**
+     * Returns the number of blocks served compiled from the persistent code cache.
+     * @return code cache hit count
+     */
+    public static long getCacheHitCount()
+    {
+        return cacheHits.sum();
+    }
+
+    /**
+     * Returns the number of compiled blocks added to the persistent code cache.
+     * @return code cache store count
+     */
+    public static long getCacheStoredCount()
+    {
+        return cacheStored.sum();
+    }
+
+    public static String getSummary()
+    {
+        return "queue=" + getQueueDepth() + " queued=" + getQueuedCount() + " rejected=" + getRejectedCount()
+                + " evicted=" + getEvictedCount() + " compiled=" + getCompiledCount() + " failed=" + getFailedCount()
+                + " inlined=" + getInlinedCount() + " latency=" + getMeanCompileMicros() + "us" + " cached=" + getCacheHitCount() + "/" + getCacheStoredCount();
+    }
+}
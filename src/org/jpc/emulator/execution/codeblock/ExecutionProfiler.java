@@ -0,0 +1,531 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.execution.codeblock;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.*;
+
+import org.jpc.emulator.execution.Executable;
+import org.jpc.emulator.execution.decoder.BasicBlock;
+import org.jpc.emulator.processor.Processor;
+import org.jpc.j2se.Option;
+
+/**
+ * Sampling profiler for guest code, enabled with <code>-profile</code>.
+ * <p>
+ * A sampler thread ticks every <code>-profile-interval</code> microseconds.
+ * The executing thread notices the tick as it leaves the block it is in and
+ * pushes that block, its start address and the processor mode into a lock-free
+ * ring, weighted by the number of ticks since the last sample so time spent in
+ * a long block (a halt, say) is not undercounted.  On the execution path this
+ * costs a store of the block address on entry and a volatile read on exit.
+ * The sampler thread drains the ring into hot block and hot opcode tables;
+ * opcodes are charged for every instruction in a sampled block.
+ * <p>
+ * With <code>-profile-exact</code> every block also counts its own executions,
+ * which are folded into the tables once a second.  Blocks are only weakly held,
+ * so executions of a discarded block since the last fold are lost.
+ * <p>
+ * Addresses are linear, and are named from the map file given with
+ * <code>-profile-symbols</code> (see {@link SymbolMap}).  The tables and
+ * flamegraph style folded stacks (mode, symbol, block) are written to the
+ * <code>-profile-output</code> files whenever the PC is stopped and at exit.
+ * @author Ian Preston
+ */
+public final class ExecutionProfiler
+{
+    private static final Logger LOGGING = Logger.getLogger(ExecutionProfiler.class.getName());
+
+    public static final boolean ENABLED = Option.profile.isSet();
+    public static final boolean EXACT = ENABLED && Option.profile_exact.isSet();
+    private static final long INTERVAL_NANOS = Math.max(Option.profile_interval.intValue(1000), 10) * 1000L;
+    private static final long FOLD_NANOS = 1000000000L;
+    private static final int RING_SIZE = 4096;
+    private static final int HOT_ENTRIES = 50;
+
+    public static final int REAL = 0;
+    public static final int PROTECTED = 1;
+    public static final int VIRTUAL8086 = 2;
+    private static final String[] MODE_NAMES = {"real", "protected", "vm86"};
+
+    private static volatile int ticks;
+    private static volatile boolean running;
+    // only touched by executing threads
+    private static int ticksSampled, blockAddress;
+
+    private static final AtomicReferenceArray<Sample> ring = new AtomicReferenceArray<Sample>(RING_SIZE);
+    private static final AtomicLong ringHead = new AtomicLong();
+    private static final ConcurrentLinkedQueue<CountedBlock> newBlocks = new ConcurrentLinkedQueue<CountedBlock>();
+
+    // guarded by the class lock
+    private static long ringTail, totalSamples, droppedSamples, totalExecutions;
+    private static final Map<Long, BlockProfile> blocks = new HashMap<Long, BlockProfile>();
+    private static final Map<Class<?>, long[]> opcodes = new HashMap<Class<?>, long[]>();
+    private static final List<CountedBlock> countedBlocks = new ArrayList<CountedBlock>();
+    private static SymbolMap symbols;
+    private static Thread sampler;
+
+    private ExecutionProfiler()
+    {
+    }
+
+    /**
+     * Called as a block is entered.
+     * @param block block being executed
+     * @param cpu processor executing it
+     */
+    public static void blockEntered(BasicBlock block, Processor cpu)
+    {
+        blockAddress = cpu.getInstructionPointer();
+        if (EXACT && (block.countExecution() == 0))
+            newBlocks.add(new CountedBlock(block, key(mode(cpu), blockAddress)));
+    }
+
+    /**
+     * Called as a block is left, normally or not, to take any sample due.
+     * @param block block that was executed
+     * @param cpu processor that executed it
+     */
+    public static void blockExited(BasicBlock block, Processor cpu)
+    {
+        int t = ticks;
+        if (t == ticksSampled)
+            return;
+        Sample s = new Sample(block, key(mode(cpu), blockAddress), t - ticksSampled);
+        ticksSampled = t;
+        ring.lazySet((int) ringHead.getAndIncrement() & (RING_SIZE - 1), s);
+    }
+
+    private static int mode(Processor cpu)
+    {
+        if (!cpu.isProtectedMode())
+            return REAL;
+        return cpu.isVirtual8086Mode() ? VIRTUAL8086 : PROTECTED;
+    }
+
+    private static long key(int mode, int address)
+    {
+        return ((long) mode << 32) | (address & 0xffffffffL);
+    }
+
+    /**
+     * Starts, or resumes, sampling.  Does nothing unless profiling is enabled.
+     */
+    public static synchronized void start()
+    {
+        if (!ENABLED)
+            return;
+        if (sampler == null)
+        {
+            if (Option.profile_symbols.isSet())
+            {
+                try
+                {
+                    symbols = SymbolMap.load(new File(Option.profile_symbols.value()));
+                    LOGGING.log(Level.INFO, "Loaded {0} guest symbols for profiling", Integer.valueOf(symbols.size()));
+                }
+                catch (IOException e)
+                {
+                    LOGGING.log(Level.WARNING, "Couldn't read guest symbols from " + Option.profile_symbols.value(), e);
+                }
+            }
+            sampler = new Thread(new Runnable() {
+                public void run()
+                {
+                    sample();
+                }
+            }, "Execution Profiler");
+            sampler.setDaemon(true);
+            sampler.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run()
+                {
+                    writeReports();
+                }
+            }, "Execution Profiler Report"));
+        }
+        ticksSampled = ticks;
+        running = true;
+    }
+
+    /**
+     * Stops sampling and writes the reports.  Does nothing unless profiling is
+     * enabled.
+     */
+    public static void stop()
+    {
+        if (!ENABLED)
+            return;
+        running = false;
+        writeReports();
+    }
+
+    private static void sample()
+    {
+        long nextFold = System.nanoTime() + FOLD_NANOS;
+        while (true)
+        {
+            LockSupport.parkNanos(INTERVAL_NANOS);
+            // no ticks while stopped, or the first block afterwards would be charged for the pause
+            if (running)
+                ticks++;
+            synchronized (ExecutionProfiler.class)
+            {
+                drain();
+                if (EXACT && (System.nanoTime() - nextFold >= 0))
+                {
+                    foldCounts();
+                    nextFold = System.nanoTime() + FOLD_NANOS;
+                }
+            }
+        }
+    }
+
+    private static void drain()
+    {
+        long head = ringHead.get();
+        if (head - ringTail > RING_SIZE)
+        {
+            droppedSamples += head - RING_SIZE - ringTail;
+            ringTail = head - RING_SIZE;
+        }
+        while (ringTail < head)
+        {
+            Sample s = ring.getAndSet((int) ringTail & (RING_SIZE - 1), null);
+            if (s == null) // claimed but not yet published
+                break;
+            ringTail++;
+            totalSamples += s.weight;
+            getProfile(s.key, s.block).samples += s.weight;
+            chargeOpcodes(s.block, s.weight, 0);
+        }
+    }
+
+    private static void foldCounts()
+    {
+        CountedBlock c;
+        while ((c = newBlocks.poll()) != null)
+            countedBlocks.add(c);
+        for (Iterator<CountedBlock> i = countedBlocks.iterator(); i.hasNext(); )
+        {
+            c = i.next();
+            BasicBlock b = c.get();
+            if (b == null)
+            {
+                i.remove();
+                continue;
+            }
+            long count = b.getExecutionCount();
+            long delta = count - c.folded;
+            if (delta <= 0)
+                continue;
+            c.folded = count;
+            totalExecutions += delta;
+            getProfile(c.key, b).executions += delta;
+            chargeOpcodes(b, delta, 1);
+        }
+    }
+
+    private static BlockProfile getProfile(long key, BasicBlock b)
+    {
+        Long k = Long.valueOf(key);
+        BlockProfile p = blocks.get(k);
+        if (p == null)
+        {
+            p = new BlockProfile(key, b);
+            blocks.put(k, p);
+        }
+        return p;
+    }
+
+    private static void chargeOpcodes(BasicBlock b, long weight, int column)
+    {
+        for (Executable e = b.start; e != null; e = e.isBranch() ? null : e.next)
+        {
+            long[] counts = opcodes.get(e.getClass());
+            if (counts == null)
+            {
+                counts = new long[2];
+                opcodes.put(e.getClass(), counts);
+            }
+            counts[column] += weight;
+        }
+    }
+
+    private static synchronized void update()
+    {
+        drain();
+        if (EXACT)
+            foldCounts();
+    }
+
+    /**
+     * Returns the number of samples taken, counting a sample by the number of
+     * ticks it stands for.
+     * @return total sample weight
+     */
+    public static synchronized long getSampleCount()
+    {
+        return totalSamples;
+    }
+
+    /**
+     * Returns the hottest blocks, by samples and then by executions.
+     * @param max maximum number of blocks to return
+     * @return the blocks, hottest first
+     */
+    public static synchronized List<BlockProfile> getHotBlocks(int max)
+    {
+        update();
+        List<BlockProfile> hot = new ArrayList<BlockProfile>(blocks.values());
+        Collections.sort(hot);
+        return hot.subList(0, Math.min(max, hot.size()));
+    }
+
+    /**
+     * Returns a one line summary of the hottest blocks, for statistics logs.
+     * @return summary of the hottest blocks
+     */
+    public static synchronized String getSummary()
+    {
+        if (!ENABLED)
+            return "off";
+        StringBuilder b = new StringBuilder();
+        b.append("samples=").append(totalSamples);
+        for (BlockProfile p : getHotBlocks(3))
+        {
+            b.append(' ').append(p.getLocation());
+            if (totalSamples > 0)
+                b.append(String.format("=%.1f%%", 100.0 * p.samples / totalSamples));
+        }
+        return b.toString();
+    }
+
+    /**
+     * Writes the hot block and hot opcode tables.
+     * @param out destination
+     * @param max maximum number of rows in each table
+     */
+    public static synchronized void writeReport(PrintWriter out, int max)
+    {
+        update();
+        out.printf("Execution profile: %d samples at %dus intervals, %d dropped", totalSamples, INTERVAL_NANOS / 1000, droppedSamples);
+        if (EXACT)
+            out.printf(", %d block executions", totalExecutions);
+        out.println();
+        out.println();
+        out.println("Hot blocks:");
+        out.printf("%10s %7s %14s  %-9s %-8s %s%n", "samples", "%", "executions", "mode", "address", "location / code");
+        for (BlockProfile p : getHotBlocks(max))
+        {
+            out.printf("%10d %6.2f%% %14d  %-9s %08x %s%n", p.samples, percent(p.samples, totalSamples), p.executions,
+                       MODE_NAMES[p.getMode()], p.getAddress(), describe(p.getAddress()));
+            out.printf("%54s%d instructions: %s%n", "", p.instructions, p.code);
+        }
+        out.println();
+        out.println("Hot opcodes:");
+        out.printf("%10s %7s %14s  %s%n", "samples", "%", "executions", "opcode");
+        List<Map.Entry<Class<?>, long[]>> ops = new ArrayList<Map.Entry<Class<?>, long[]>>(opcodes.entrySet());
+        final int column = (totalSamples == 0) && EXACT ? 1 : 0;
+        Collections.sort(ops, new Comparator<Map.Entry<Class<?>, long[]>>() {
+            public int compare(Map.Entry<Class<?>, long[]> a, Map.Entry<Class<?>, long[]> b)
+            {
+                return Long.compare(b.getValue()[column], a.getValue()[column]);
+            }
+        });
+        long opSamples = 0;
+        for (Map.Entry<Class<?>, long[]> e : ops)
+            opSamples += e.getValue()[0];
+        for (Map.Entry<Class<?>, long[]> e : ops.subList(0, Math.min(max, ops.size())))
+            out.printf("%10d %6.2f%% %14d  %s%n", e.getValue()[0], percent(e.getValue()[0], opSamples), e.getValue()[1], e.getKey().getSimpleName());
+        out.flush();
+    }
+
+    /**
+     * Writes the samples as folded stacks, one <code>mode;symbol;address count</code>
+     * line per block, for flamegraph tools.  The symbol frame is left out where
+     * there is no symbol map or no symbol for the block.
+     * @param out destination
+     */
+    public static synchronized void writeFoldedStacks(PrintWriter out)
+    {
+        update();
+        for (BlockProfile p : blocks.values())
+        {
+            if (p.samples == 0)
+                continue;
+            out.print(MODE_NAMES[p.getMode()]);
+            String name = (symbols == null) ? null : symbols.getName(p.getAddress());
+            if (name != null)
+                out.print(';' + name);
+            out.printf(";0x%08x %d%n", p.getAddress(), p.samples);
+        }
+        out.flush();
+    }
+
+    private static String describe(int address)
+    {
+        String s = (symbols == null) ? null : symbols.describe(address);
+        return (s == null) ? "" : s;
+    }
+
+    private static double percent(long part, long total)
+    {
+        return (total == 0) ? 0 : 100.0 * part / total;
+    }
+
+    private static synchronized void writeReports()
+    {
+        String prefix = Option.profile_output.value("jpc-profile");
+        try
+        {
+            PrintWriter out = new PrintWriter(new FileWriter(prefix + ".txt"));
+            try
+            {
+                writeReport(out, HOT_ENTRIES);
+            }
+            finally
+            {
+                out.close();
+            }
+            out = new PrintWriter(new FileWriter(prefix + ".folded"));
+            try
+            {
+                writeFoldedStacks(out);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGING.log(Level.WARNING, "Couldn't write execution profile to " + prefix, e);
+        }
+    }
+
+    /**
+     * Profile of the block at one address in one processor mode.
+     */
+    public static final class BlockProfile implements Comparable<BlockProfile>
+    {
+        private final long key;
+        final int instructions;
+        final String code;
+        long samples, executions;
+
+        BlockProfile(long key, BasicBlock b)
+        {
+            this.key = key;
+            instructions = b.getX86Count();
+            StringBuilder s = new StringBuilder();
+            int count = 0;
+            for (Executable e = b.start; e != null; e = e.isBranch() ? null : e.next)
+            {
+                if (count++ == 8)
+                {
+                    s.append(" ...");
+                    break;
+                }
+                if (count > 1)
+                    s.append(' ');
+                s.append(e.getClass().getSimpleName());
+            }
+            code = s.toString();
+        }
+
+        public int getMode()
+        {
+            return (int) (key >>> 32);
+        }
+
+        public int getAddress()
+        {
+            return (int) key;
+        }
+
+        public long getSamples()
+        {
+            return samples;
+        }
+
+        public long getExecutions()
+        {
+            return executions;
+        }
+
+        /**
+         * Returns the symbol and offset of this block if known, otherwise its
+         * mode and address.
+         * @return location of this block
+         */
+        public String getLocation()
+        {
+            String s = describe(getAddress());
+            return (s.length() > 0) ? s : String.format("%s:%08x", MODE_NAMES[getMode()], getAddress());
+        }
+
+        public int compareTo(BlockProfile p)
+        {
+            if (samples != p.samples)
+                return (samples > p.samples) ? -1 : 1;
+            return Long.compare(p.executions, executions);
+        }
+    }
+
+    private static final class Sample
+    {
+        final BasicBlock block;
+        final long key;
+        final int weight;
+
+        Sample(BasicBlock block, long key, int weight)
+        {
+            this.block = block;
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    private static final class CountedBlock extends WeakReference<BasicBlock>
+    {
+        final long key;
+        long folded;
+
+        CountedBlock(BasicBlock block, long key)
+        {
+            super(block);
+            this.key = key;
+        }
+    }
+}
@@ -117,6 +117,10 @@ public class InterpretedProtectedModeBlock implements ProtectedModeCodeBlock
         return "Interpreted Protected Mode Block:\n"+b.getDisplayString();
     }
 
+    public BasicBlock getBasicBlock() {
+        return b;
+    }
+
     public Instruction getInstructions() {
         return b.getInstructions();
     }
@@ -113,6 +113,10 @@ public class InterpretedRealModeBlock implements RealModeCodeBlock
         return "Interpreted Real Mode Block:\n"+b.getDisplayString();
     }
 
+    public BasicBlock getBasicBlock() {
+        return b;
+    }
+
     public Instruction getInstructions() {
         return b.getInstructions();
     }
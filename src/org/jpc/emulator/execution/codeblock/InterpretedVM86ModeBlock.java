@@ -110,6 +110,10 @@ public class InterpretedVM86ModeBlock implements Virtual8086ModeCodeBlock
         return "Interpreted Virtual 8086 Mode Block:\n"+b.getDisplayString();
     }
 
+    public BasicBlock getBasicBlock() {
+        return b;
+    }
+
     public Instruction getInstructions() {
         return b.getInstructions();
     }
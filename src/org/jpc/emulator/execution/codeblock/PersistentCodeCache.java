@@ -0,0 +1,318 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.execution.codeblock;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.*;
+
+import org.jpc.emulator.execution.Executable;
+import org.jpc.emulator.execution.decoder.BasicBlock;
+import org.jpc.emulator.memory.Memory;
+import org.jpc.j2se.Option;
+
+/**
+ * Memory mapped file of generated block classes which survives between runs,
+ * so code that was hot in an earlier session runs compiled from its first
+ * execution.
+ * <p>
+ * Entries are keyed by the processor mode, the default operand size, the
+ * offset of the block in its memory page and the exact x86 bytes it covers.
+ * A block is only ever served from the cache if the live bytes in memory
+ * match, so stale entries are never executed and self-modifying code is still
+ * caught by the normal invalidation of the block once it is running.  Each
+ * entry also records how many instructions its class executes, so a build
+ * which decodes the same bytes into a different number of instructions can't
+ * use it to run only some of them.
+ * <p>
+ * The file is a small header followed by append-only records.  The header
+ * holds the length in use, which is only advanced once a record is complete,
+ * so a torn write is simply ignored on the next start.
+ * @author Ian Preston
+ */
+class PersistentCodeCache
+{
+    private static final Logger LOGGING = Logger.getLogger(PersistentCodeCache.class.getName());
+
+    static final int REAL_MODE = 1;
+    static final int PROTECTED_MODE = 2;
+    static final int VIRTUAL8086_MODE = 3;
+
+    private static final int MAGIC = 0x4a504343; // JPCC
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 12;
+    private static final int RECORD_HEADER_LENGTH = 24;
+    private static final int DEFAULT_SIZE_MB = 64;
+
+    private static PersistentCodeCache instance;
+    private static boolean opened;
+
+    private final MappedByteBuffer buffer;
+    private final Map<Key, Entry> index = new ConcurrentHashMap<Key, Entry>();
+    private final Map<BasicBlock, Key> pending = Collections.synchronizedMap(new WeakHashMap<BasicBlock, Key>());
+    private int end;
+    private boolean full;
+
+    private PersistentCodeCache(MappedByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        if ((buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION))
+        {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, HEADER_LENGTH);
+        }
+        end = readIndex();
+        buffer.putInt(8, end);
+    }
+
+    /**
+     * Returns the cache named by the <code>-code-cache</code> option, opening
+     * it on first use.
+     * @return shared cache, or <code>null</code> if none is configured or it
+     * could not be opened
+     */
+    static synchronized PersistentCodeCache getInstance()
+    {
+        if (opened)
+            return instance;
+        opened = true;
+
+        String path = Option.code_cache.value();
+        if (path == null)
+            return null;
+        long size = Option.code_cache_size.intValue(DEFAULT_SIZE_MB) * 1024L * 1024L;
+        try {
+            RandomAccessFile file = new RandomAccessFile(path, "rw");
+            FileChannel channel = file.getChannel();
+            // another emulator appending to the same file would corrupt it
+            if (channel.tryLock() == null)
+            {
+                LOGGING.log(Level.WARNING, "code cache {0} is in use, continuing without it", path);
+                file.close();
+                return null;
+            }
+            size = Math.min(Integer.MAX_VALUE, Math.max(size, channel.size()));
+            instance = new PersistentCodeCache(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            LOGGING.log(Level.INFO, "code cache {0} opened with {1} blocks", new Object[]{path, instance.index.size()});
+        } catch (IOException e) {
+            LOGGING.log(Level.WARNING, "unable to open code cache " + path, e);
+        }
+        return instance;
+    }
+
+    private int readIndex()
+    {
+        int limit = Math.min(buffer.getInt(8), buffer.capacity());
+        int position = HEADER_LENGTH;
+        while (position + RECORD_HEADER_LENGTH <= limit)
+        {
+            int length = buffer.getInt(position);
+            int codeLength = buffer.getShort(position + 10) & 0xffff;
+            int classLength = buffer.getInt(position + 16);
+            int instructions = buffer.getInt(position + 20);
+            if ((length != RECORD_HEADER_LENGTH + codeLength + classLength) || (classLength <= 0) || (instructions <= 0) || (length > limit - position))
+                break;
+
+            byte[] code = new byte[codeLength];
+            ByteBuffer record = buffer.duplicate();
+            record.position(position + RECORD_HEADER_LENGTH);
+            record.get(code);
+            Key key = new Key(buffer.get(position + 4), buffer.get(position + 5) != 0, buffer.getInt(position + 6), code);
+            if (key.hash == buffer.getInt(position + 12))
+                index.put(key, new Entry(position, instructions));
+            position += length;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the cached compiled equivalent of a freshly decoded block, if
+     * there is one.  Otherwise the block is remembered so that its class can
+     * be recorded if it is compiled later.
+     * @param block decoded block
+     * @param memory memory the block was decoded from
+     * @param offset offset of the block within <code>memory</code>
+     * @param mode one of <code>REAL_MODE</code>, <code>PROTECTED_MODE</code>
+     * or <code>VIRTUAL8086_MODE</code>
+     * @param operandSize <code>true</code> for 32-bit, <code>false</code> for 16-bit
+     * @return compiled block, or <code>block</code> if there is no usable entry
+     */
+    CodeBlock lookup(CodeBlock block, Memory memory, int offset, int mode, boolean operandSize)
+    {
+        BasicBlock b = CodeBlockManager.getBasicBlock(block);
+        int length = block.getX86Length();
+        if ((b == null) || (length <= 0) || (length > 0xffff) || (offset + (long) length > memory.getSize()))
+            return block;
+
+        byte[] code = new byte[length];
+        memory.copyContentsIntoArray(offset, code, 0, length);
+        Key key = new Key(mode, operandSize, offset, code);
+        Entry entry = index.get(key);
+        if (entry != null)
+        {
+            Executable[] ops = BytecodeCompiler.getInstructions(b);
+            if ((ops != null) && (ops.length == entry.instructions))
+            {
+                CodeBlock cached = instantiate(entry, b, ops);
+                if (cached != null)
+                {
+                    CompilerStatistics.cacheHits.increment();
+                    return cached;
+                }
+            }
+        }
+        pending.put(b, key);
+        return block;
+    }
+
+    private CodeBlock instantiate(Entry entry, BasicBlock b, Executable[] ops)
+    {
+        try {
+            Constructor<?> cons = entry.constructor;
+            if (cons == null)
+            {
+                int classLength = buffer.getInt(entry.position + 16);
+                byte[] classBytes = new byte[classLength];
+                ByteBuffer record = buffer.duplicate();
+                record.position(entry.position + buffer.getInt(entry.position) - classLength);
+                record.get(classBytes);
+                cons = BytecodeCompiler.load(classBytes);
+                entry.constructor = cons;
+            }
+            return (CodeBlock) cons.newInstance(b, ops);
+        } catch (InvocationTargetException e) {
+            // the instructions decoded differently to when the class was generated
+        } catch (ReflectiveOperationException e) {
+        } catch (LinkageError e) {
+            // class generated against a different build of the emulator
+        }
+        return null;
+    }
+
+    /**
+     * Records the class generated for a block decoded through
+     * {@link #lookup}.  Blocks whose key is no longer known are ignored.
+     * @param b block that was compiled
+     * @param instructions number of instructions the class executes
+     * @param classBytes generated class file
+     * @param cons constructor of the already loaded class
+     */
+    void store(BasicBlock b, int instructions, byte[] classBytes, Constructor<?> cons)
+    {
+        Key key = pending.remove(b);
+        if (key == null)
+            return;
+
+        synchronized (this)
+        {
+            if (index.containsKey(key))
+                return;
+            Entry entry = new Entry(end, instructions);
+            entry.constructor = cons;
+
+            int length = RECORD_HEADER_LENGTH + key.code.length + classBytes.length;
+            if (length > buffer.capacity() - end)
+            {
+                if (!full)
+                    LOGGING.log(Level.INFO, "code cache full, no longer recording blocks");
+                full = true;
+                index.put(key, entry);
+                return;
+            }
+
+            ByteBuffer record = buffer.duplicate();
+            record.position(end);
+            record.putInt(length);
+            record.put((byte) key.mode);
+            record.put((byte) (key.operandSize ? 1 : 0));
+            record.putInt(key.offset);
+            record.putShort((short) key.code.length);
+            record.putInt(key.hash);
+            record.putInt(classBytes.length);
+            record.putInt(instructions);
+            record.put(key.code);
+            record.put(classBytes);
+
+            end += length;
+            buffer.putInt(8, end);
+            index.put(key, entry);
+        }
+        CompilerStatistics.cacheStored.increment();
+    }
+
+    private static class Entry
+    {
+        final int position;
+        final int instructions;
+        volatile Constructor<?> constructor;
+
+        Entry(int position, int instructions)
+        {
+            this.position = position;
+            this.instructions = instructions;
+        }
+    }
+
+    private static class Key
+    {
+        final int mode;
+        final boolean operandSize;
+        final int offset;
+        final byte[] code;
+        final int hash;
+
+        Key(int mode, boolean operandSize, int offset, byte[] code)
+        {
+            this.mode = mode;
+            this.operandSize = operandSize;
+            this.offset = offset;
+            this.code = code;
+            int h = (mode * 31 + (operandSize ? 1 : 0)) * 31 + offset;
+            this.hash = h * 31 + Arrays.hashCode(code);
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return (hash == k.hash) && (mode == k.mode) && (operandSize == k.operandSize)
+                    && (offset == k.offset) && Arrays.equals(code, k.code);
+        }
+    }
+}
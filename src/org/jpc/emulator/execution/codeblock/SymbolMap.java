@@ -0,0 +1,203 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.execution.codeblock;
+
+import java.io.*;
+import java.util.*;
+import java.util.logging.*;
+
+/**
+ * Guest symbols loaded from a map file, for naming the code the profiler finds.
+ * <p>
+ * Each line holds an address and a name, optionally with a size and a type in
+ * between, so the output of <code>nm</code> and <code>nm -S</code> can be used
+ * directly as well as hand written <code>address name</code> lists.  Addresses
+ * are linear and in hex, with or without a <code>0x</code> prefix or an
+ * <code>h</code> suffix, or real mode <code>segment:offset</code> pairs.  Blank
+ * lines, lines starting with <code>#</code> or <code>;</code> and lines without
+ * an address (undefined symbols in <code>nm</code> output) are ignored.
+ * @author Ian Preston
+ */
+public class SymbolMap
+{
+    private static final Logger LOGGING = Logger.getLogger(SymbolMap.class.getName());
+
+    private final long[] starts;
+    private final long[] ends;
+    private final String[] names;
+
+    private SymbolMap(List<Symbol> symbols)
+    {
+        Collections.sort(symbols);
+        starts = new long[symbols.size()];
+        ends = new long[symbols.size()];
+        names = new String[symbols.size()];
+        for (int i = 0; i < starts.length; i++)
+        {
+            Symbol s = symbols.get(i);
+            starts[i] = s.start;
+            ends[i] = (s.size > 0) ? s.start + s.size : Long.MAX_VALUE;
+            names[i] = s.name;
+        }
+    }
+
+    /**
+     * Reads a symbol map from <code>file</code>.
+     * @param file map file to read
+     * @return symbols from the file
+     * @throws IOException if the file can't be read
+     */
+    public static SymbolMap load(File file) throws IOException
+    {
+        List<Symbol> symbols = new ArrayList<Symbol>();
+        int skipped = 0;
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                line = line.trim();
+                if ((line.length() == 0) || line.startsWith("#") || line.startsWith(";"))
+                    continue;
+                Symbol s = parse(line.split("\\s+"));
+                if (s == null)
+                    skipped++;
+                else
+                    symbols.add(s);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        if (skipped > 0)
+            LOGGING.log(Level.FINE, "Skipped {0} lines without an address in {1}", new Object[]{Integer.valueOf(skipped), file});
+        return new SymbolMap(symbols);
+    }
+
+    private static Symbol parse(String[] fields)
+    {
+        if (fields.length < 2)
+            return null;
+        long start = parseAddress(fields[0]);
+        if (start < 0)
+            return null;
+        long size = 0;
+        if (fields.length == 4)
+            size = Math.max(parseAddress(fields[1]), 0);
+        return new Symbol(start, size, fields[fields.length - 1]);
+    }
+
+    private static long parseAddress(String s)
+    {
+        try
+        {
+            int colon = s.indexOf(':');
+            if (colon >= 0)
+                return ((Long.parseLong(s.substring(0, colon), 16) << 4) + Long.parseLong(s.substring(colon + 1), 16)) & 0xffffffffL;
+            if (s.startsWith("0x") || s.startsWith("0X"))
+                s = s.substring(2);
+            else if (s.endsWith("h") || s.endsWith("H"))
+                s = s.substring(0, s.length() - 1);
+            long address = Long.parseLong(s, 16);
+            return (address > 0xffffffffL) ? -1 : address;
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the number of symbols in this map.
+     * @return symbol count
+     */
+    public int size()
+    {
+        return starts.length;
+    }
+
+    private int find(int address)
+    {
+        long a = address & 0xffffffffL;
+        int i = Arrays.binarySearch(starts, a);
+        if (i < 0)
+            i = -i - 2;
+        else
+            while ((i + 1 < starts.length) && (starts[i + 1] == a))
+                i++;
+        if ((i < 0) || (a >= ends[i]))
+            return -1;
+        return i;
+    }
+
+    /**
+     * Returns the name of the symbol containing <code>address</code>, being the
+     * closest symbol at or below it that doesn't have a size which ends first.
+     * @param address linear address
+     * @return symbol name or <code>null</code>
+     */
+    public String getName(int address)
+    {
+        int i = find(address);
+        return (i < 0) ? null : names[i];
+    }
+
+    /**
+     * Describes <code>address</code> as an offset from its symbol.
+     * @param address linear address
+     * @return <code>name+0xoffset</code>, <code>name</code> or <code>null</code>
+     */
+    public String describe(int address)
+    {
+        int i = find(address);
+        if (i < 0)
+            return null;
+        long offset = (address & 0xffffffffL) - starts[i];
+        return (offset == 0) ? names[i] : names[i] + "+0x" + Long.toHexString(offset);
+    }
+
+    private static final class Symbol implements Comparable<Symbol>
+    {
+        final long start, size;
+        final String name;
+
+        Symbol(long start, long size, String name)
+        {
+            this.start = start;
+            this.size = size;
+            this.name = name;
+        }
+
+        public int compareTo(Symbol s)
+        {
+            return (start < s.start) ? -1 : ((start == s.start) ? 0 : 1);
+        }
+    }
+}
@@ -30,6 +30,7 @@ package org.jpc.emulator.execution.decoder;
 import org.jpc.emulator.PC;
 import org.jpc.emulator.execution.*;
 import org.jpc.emulator.execution.codeblock.CodeBlock;
+import org.jpc.emulator.execution.codeblock.ExecutionProfiler;
 import org.jpc.emulator.processor.*;
 import org.jpc.j2se.Option;
 
@@ -45,8 +46,9 @@ public class BasicBlock implements CodeBlock
     public static int lastExitEip;
 
     public Executable start;
-    public BasicBlock link1, link2;
+    public Link link1, link2;
     public final int x86Length, x86Count;
+    private long executions;
     
     public BasicBlock(Executable start, int x86Length, int x86Count)
     {
@@ -63,12 +65,16 @@ public class BasicBlock implements CodeBlock
             System.out.printf("***** %08x:%08x\n", cpu.cs.getBase(), cpu.eip);
         if (PC.HISTORY)
             PC.logBlock(cpu.getInstructionPointer(), this);
+        if (ExecutionProfiler.ENABLED)
+            ExecutionProfiler.blockEntered(this, cpu);
     }
 
     public void postBlock(Processor cpu)
     {
         if (PC.HISTORY)
             lastExitEip = cpu.getInstructionPointer();
+        if (ExecutionProfiler.ENABLED)
+            ExecutionProfiler.blockExited(this, cpu);
     }
 
     private boolean watchedAddress(int addr)
@@ -118,6 +124,20 @@ public class BasicBlock implements CodeBlock
         return x86Count;
     }
 
+    /**
+     * Counts an execution of this block, for the exact profiler.
+     * @return number of executions before this one
+     */
+    public long countExecution()
+    {
+        return executions++;
+    }
+
+    public long getExecutionCount()
+    {
+        return executions;
+    }
+
     public boolean handleMemoryRegionChange(int startAddress, int endAddress)
     {
         return false;
@@ -132,4 +152,64 @@ public class BasicBlock implements CodeBlock
     {
         return null;
     }
+
+    /**
+     * Records <code>target</code> as the successor of this block when it exits
+     * with <code>exit</code>.  Only direct branches (<code>T1</code> taken,
+     * <code>T2</code> not taken or fall through) are chained.
+     * @param exit branch type this block returned
+     * @param target code block executed next
+     * @param targetBlock basic block underlying <code>target</code>
+     * @param address linear address of <code>target</code>
+     * @param cs code segment <code>target</code> was executed under
+     * @param generation link generation when <code>target</code> was looked up
+     */
+    public void setLink(Branch exit, CodeBlock target, BasicBlock targetBlock, int address, Segment cs, int generation)
+    {
+        if (exit == Branch.T1)
+            link1 = new Link(target, targetBlock, address, cs, generation);
+        else if (exit == Branch.T2)
+            link2 = new Link(target, targetBlock, address, cs, generation);
+    }
+
+    /**
+     * Returns the successor of this block for the given exit, if one is
+     * chained and still valid for the current code segment and address.
+     * @param exit branch type this block returned
+     * @param address linear address execution continues at
+     * @param cs current code segment
+     * @param generation current link generation of the code block manager
+     * @return chained successor or <code>null</code>
+     */
+    public Link getLink(Branch exit, int address, Segment cs, int generation)
+    {
+        Link l;
+        if (exit == Branch.T1)
+            l = link1;
+        else if (exit == Branch.T2)
+            l = link2;
+        else
+            return null;
+        if ((l == null) || (l.address != address) || (l.cs != cs) || (l.generation != generation))
+            return null;
+        return l;
+    }
+
+    public static final class Link
+    {
+        public final CodeBlock block;
+        public final BasicBlock basicBlock;
+        final int address;
+        final Segment cs;
+        final int generation;
+
+        Link(CodeBlock block, BasicBlock basicBlock, int address, Segment cs, int generation)
+        {
+            this.block = block;
+            this.basicBlock = basicBlock;
+            this.address = address;
+            this.cs = cs;
+            this.generation = generation;
+        }
+    }
 }
\ No newline at end of file
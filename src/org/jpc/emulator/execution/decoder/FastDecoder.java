@@ -42,16 +42,10 @@ public class FastDecoder
     public static final int MAX_INSTRUCTIONS_PER_BLOCK = Option.max_instructions_per_block.intValue(10000);
     public static final boolean DEBUG_BLOCKS = Option.debug_blocks.value();
 
-    static OpcodeDecoder[] pmOps = new OpcodeDecoder[0x800];
-    static OpcodeDecoder[] rmOps = new OpcodeDecoder[0x800];
-    static OpcodeDecoder[] vmOps = new OpcodeDecoder[0x800];
     static Set<Class> delayInts = new HashSet();
     static Set<Class> maybeDelayInts = new HashSet();
 
     static {
-        ExecutableTables.populateRMOpcodes(rmOps);
-        ExecutableTables.populatePMOpcodes(pmOps);
-        ExecutableTables.populateVMOpcodes(vmOps);
         delayInts.add(org.jpc.emulator.execution.opcodes.rm.sti.class);
         delayInts.add(org.jpc.emulator.execution.opcodes.pm.sti.class);
         delayInts.add(org.jpc.emulator.execution.opcodes.vm.sti.class);
@@ -69,13 +63,8 @@ public class FastDecoder
         maybeDelayInts.add(org.jpc.emulator.execution.opcodes.vm.mov_S_Ew_mem.class);
     }
 
-    static int decodeCount=0;
-
     public static BasicBlock decodeBlock(PeekableInputStream input, int operand_size, int mode)
     {
-        decodeCount++;
-        if (decodeCount % 1000 == 0)
-            System.out.println("Decoded "+decodeCount + " blocks...");
         int startAddr = (int)input.getAddress();
         boolean debug = false;
         int beginCount = input.getCounter();
@@ -219,7 +208,7 @@ public class FastDecoder
             b = input.readU8();
         }
         opcode += b;
-        return pmOps[opcode].decodeOpcode(blockStart, opStart, prefices, input);
+        return ExecutableTables.PM.get(opcode).decodeOpcode(blockStart, opStart, prefices, input);
     }
 
     public static Executable decodeRMOpcode(int blockStart, PeekableInputStream input)
@@ -255,7 +244,7 @@ public class FastDecoder
             b = input.readU8();
         }
         opcode += b;
-        return rmOps[opcode].decodeOpcode(blockStart, opStart, prefices, input);
+        return ExecutableTables.RM.get(opcode).decodeOpcode(blockStart, opStart, prefices, input);
     }
 
     public static Executable decodeVMOpcode(int blockStart, PeekableInputStream input)
@@ -291,6 +280,6 @@ public class FastDecoder
             b = input.readU8();
         }
         opcode += b;
-        return vmOps[opcode].decodeOpcode(blockStart, opStart, prefices, input);
+        return ExecutableTables.VM.get(opcode).decodeOpcode(blockStart, opStart, prefices, input);
     }
 }
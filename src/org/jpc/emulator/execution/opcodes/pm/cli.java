@@ -57,7 +57,7 @@ public class cli extends Executable
         if ((Processor.cpuLevel < 5) || (!(((cpu.getCR4() & 2) != 0) && (cpu.getCPL() == 3))))
         {
             if (cpu.getIOPrivilegeLevel() < cpu.getCPL())
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+                throw ProcessorException.GENERAL_PROTECTION_0;
         }
         cpu.eflagsInterruptEnable = false;
         return Branch.None;
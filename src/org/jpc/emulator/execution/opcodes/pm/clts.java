@@ -43,7 +43,7 @@ public class clts extends Executable
 
     public Branch execute(Processor cpu)
     {
-        if (cpu.getCPL() != 0) throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+        if (cpu.getCPL() != 0) throw ProcessorException.GENERAL_PROTECTION_0;
 		    cpu.setCR0(cpu.getCR0() & ~0x8);
         return Branch.None;
     }
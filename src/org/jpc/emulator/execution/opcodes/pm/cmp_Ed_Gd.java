@@ -33,7 +33,7 @@ import org.jpc.emulator.processor.*;
 import org.jpc.emulator.processor.fpu64.*;
 import static org.jpc.emulator.processor.Processor.*;
 
-public class cmp_Ed_Gd extends Executable
+public class cmp_Ed_Gd extends Executable implements RegisterOperation
 {
     final int op1Index;
     final int op2Index;
@@ -63,6 +63,31 @@ public class cmp_Ed_Gd extends Executable
         return false;
     }
 
+    public String getOperation()
+    {
+        return "cmp";
+    }
+
+    public int getOperandSize()
+    {
+        return 32;
+    }
+
+    public int getDestinationIndex()
+    {
+        return op1Index;
+    }
+
+    public int getSourceIndex()
+    {
+        return op2Index;
+    }
+
+    public int getImmediate()
+    {
+        return 0;
+    }
+
     public String toString()
     {
         return this.getClass().getName();
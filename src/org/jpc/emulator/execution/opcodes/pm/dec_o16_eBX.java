@@ -33,7 +33,7 @@ import org.jpc.emulator.processor.*;
 import org.jpc.emulator.processor.fpu64.*;
 import static org.jpc.emulator.processor.Processor.*;
 
-public class dec_o16_eBX extends Executable
+public class dec_o16_eBX extends Executable implements RegisterOperation
 {
 
     public dec_o16_eBX(int blockStart, int eip, int prefices, PeekableInputStream input)
@@ -58,6 +58,31 @@ public class dec_o16_eBX extends Executable
         return false;
     }
 
+    public String getOperation()
+    {
+        return "dec";
+    }
+
+    public int getOperandSize()
+    {
+        return 16;
+    }
+
+    public int getDestinationIndex()
+    {
+        return BX_INDEX;
+    }
+
+    public int getSourceIndex()
+    {
+        return -1;
+    }
+
+    public int getImmediate()
+    {
+        return 1;
+    }
+
     public String toString()
     {
         return this.getClass().getName();
@@ -49,7 +49,7 @@ public class hlt extends Executable
     {
             cpu.eip += blockLength;
         if (cpu.getCPL() != 0)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+            throw ProcessorException.GENERAL_PROTECTION_0;
         else
             cpu.waitForInterrupt();
         return Branch.Jmp_Unknown;
@@ -33,7 +33,7 @@ import org.jpc.emulator.processor.*;
 import org.jpc.emulator.processor.fpu64.*;
 import static org.jpc.emulator.processor.Processor.*;
 
-public class inc_o16_eBP extends Executable
+public class inc_o16_eBP extends Executable implements RegisterOperation
 {
 
     public inc_o16_eBP(int blockStart, int eip, int prefices, PeekableInputStream input)
@@ -58,6 +58,31 @@ public class inc_o16_eBP extends Executable
         return false;
     }
 
+    public String getOperation()
+    {
+        return "inc";
+    }
+
+    public int getOperandSize()
+    {
+        return 16;
+    }
+
+    public int getDestinationIndex()
+    {
+        return BP_INDEX;
+    }
+
+    public int getSourceIndex()
+    {
+        return -1;
+    }
+
+    public int getImmediate()
+    {
+        return 1;
+    }
+
     public String toString()
     {
         return this.getClass().getName();
@@ -46,7 +46,7 @@ public class invlpg_M extends Executable
 
     public Branch execute(Processor cpu)
     {
-        if (cpu.getCPL() != 0) throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+        if (cpu.getCPL() != 0) throw ProcessorException.GENERAL_PROTECTION_0;
 		    cpu.linearMemory.invalidateTLBEntry(op1.get(cpu));
         return Branch.None;
     }
@@ -56,10 +56,10 @@ public class lldt_Ew_mem extends Executable
         {
 	Segment newSegment = cpu.getSegment(selector & ~0x4);
 	if (newSegment.getType() != 0x02)
-	    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector, true);
+	    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector);
 
 	if (!(newSegment.isPresent()))
-	    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector, true);
+	    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector);
         cpu.ldtr = newSegment;
         }
         return Branch.None;
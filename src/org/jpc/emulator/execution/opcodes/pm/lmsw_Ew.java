@@ -51,7 +51,7 @@ public class lmsw_Ew extends Executable
     public Branch execute(Processor cpu)
     {
         Reg op1 = cpu.regs[op1Index];
-                if (cpu.getCPL() != 0) throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+                if (cpu.getCPL() != 0) throw ProcessorException.GENERAL_PROTECTION_0;
         cpu.setCR0((cpu.getCR0() & ~0xe) | (op1.get16() & 0xe));
         cpu.eip += blockLength;
         return Branch.Jmp_Unknown;
@@ -50,7 +50,7 @@ public class lmsw_Ew_mem extends Executable
 
     public Branch execute(Processor cpu)
     {
-                if (cpu.getCPL() != 0) throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+                if (cpu.getCPL() != 0) throw ProcessorException.GENERAL_PROTECTION_0;
         cpu.setCR0((cpu.getCR0() & ~0xe) | (op1.get16(cpu) & 0xe));
         cpu.eip += blockLength;
         return Branch.Jmp_Unknown;
@@ -49,15 +49,15 @@ public class ltr_Ew extends Executable
         Reg op1 = cpu.regs[op1Index];
         int selector = op1.get16();
         if ((selector & 0x4) != 0) //must be gdtr table
-	    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector, true);
+	    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector);
 
 	Segment tempSegment = cpu.getSegment(selector);
 
 	if ((tempSegment.getType() != 0x01) && (tempSegment.getType() != 0x09))
-	    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector, true);
+	    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector);
 
 	if (!(tempSegment.isPresent()))
-	    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector, true);
+	    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector);
 
 	long descriptor = cpu.readSupervisorQuadWord(cpu.gdtr, (selector & 0xfff8)) | (0x1L << 41); // set busy flag in segment descriptor
 	cpu.setSupervisorQuadWord(cpu.gdtr, selector & 0xfff8, descriptor);
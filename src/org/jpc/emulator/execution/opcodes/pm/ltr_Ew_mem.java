@@ -48,15 +48,15 @@ public class ltr_Ew_mem extends Executable
     {
         int selector = op1.get16(cpu);
         if ((selector & 0x4) != 0) //must be gdtr table
-	    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector, true);
+	    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector);
 
 	Segment tempSegment = cpu.getSegment(selector);
 
 	if ((tempSegment.getType() != 0x01) && (tempSegment.getType() != 0x09))
-	    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector, true);
+	    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector);
 
 	if (!(tempSegment.isPresent()))
-	    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector, true);
+	    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector);
 
 	long descriptor = cpu.readSupervisorQuadWord(cpu.gdtr, (selector & 0xfff8)) | (0x1L << 41); // set busy flag in segment descriptor
 	cpu.setSupervisorQuadWord(cpu.gdtr, selector & 0xfff8, descriptor);
@@ -33,7 +33,7 @@ import org.jpc.emulator.processor.*;
 import org.jpc.emulator.processor.fpu64.*;
 import static org.jpc.emulator.processor.Processor.*;
 
-public class or_Ed_Id extends Executable
+public class or_Ed_Id extends Executable implements RegisterOperation
 {
     final int op1Index;
     final int immd;
@@ -61,6 +61,31 @@ public class or_Ed_Id extends Executable
         return false;
     }
 
+    public String getOperation()
+    {
+        return "or";
+    }
+
+    public int getOperandSize()
+    {
+        return 32;
+    }
+
+    public int getDestinationIndex()
+    {
+        return op1Index;
+    }
+
+    public int getSourceIndex()
+    {
+        return -1;
+    }
+
+    public int getImmediate()
+    {
+        return immd;
+    }
+
     public String toString()
     {
         return this.getClass().getName();
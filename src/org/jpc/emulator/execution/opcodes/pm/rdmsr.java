@@ -43,7 +43,7 @@ public class rdmsr extends Executable
 
     public Branch execute(Processor cpu)
     {
-            if (cpu.getCPL() != 0) throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            if (cpu.getCPL() != 0) throw ProcessorException.GENERAL_PROTECTION_0;
 	long msr = cpu.getMSR(cpu.r_ecx.get32());
         cpu.r_eax.set32((int) msr);
         cpu.r_edx.set32((int)(msr >> 32));
@@ -50,14 +50,14 @@ public class sti extends Executable
                 if ((cpu.getCPL() == 3) && (cpu.getIOPrivilegeLevel() < 3))
                 {
                     if (cpu.getVIP())
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+                        throw ProcessorException.GENERAL_PROTECTION_0;
                     cpu.eflagsVirtualInterrupt = true;
                     return Branch.None;
                 }
             }
         }
         if (cpu.getCPL() > cpu.getIOPrivilegeLevel())
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+            throw ProcessorException.GENERAL_PROTECTION_0;
         cpu.eflagsInterruptEnable = true;
         return Branch.None;
     }
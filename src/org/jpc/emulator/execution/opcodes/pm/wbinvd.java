@@ -43,7 +43,7 @@ public class wbinvd extends Executable
 
     public Branch execute(Processor cpu)
     {
-            if (cpu.getCPL() != 0) throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+            if (cpu.getCPL() != 0) throw ProcessorException.GENERAL_PROTECTION_0;
         return Branch.None;
     }
 
@@ -43,7 +43,7 @@ public class wrmsr extends Executable
 
     public Branch execute(Processor cpu)
     {
-            if (cpu.getCPL() != 0) throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            if (cpu.getCPL() != 0) throw ProcessorException.GENERAL_PROTECTION_0;
 		    cpu.setMSR(cpu.r_ecx.get32(), (cpu.r_eax.get32() & 0xffffffffl) | ((cpu.r_edx.get32() & 0xffffffffl) << 32)); 
         return Branch.None;
     }
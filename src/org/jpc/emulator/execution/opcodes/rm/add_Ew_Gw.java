@@ -33,7 +33,7 @@ import org.jpc.emulator.processor.*;
 import org.jpc.emulator.processor.fpu64.*;
 import static org.jpc.emulator.processor.Processor.*;
 
-public class add_Ew_Gw extends Executable
+public class add_Ew_Gw extends Executable implements RegisterOperation
 {
     final int op1Index;
     final int op2Index;
@@ -64,6 +64,31 @@ public class add_Ew_Gw extends Executable
         return false;
     }
 
+    public String getOperation()
+    {
+        return "add";
+    }
+
+    public int getOperandSize()
+    {
+        return 16;
+    }
+
+    public int getDestinationIndex()
+    {
+        return op1Index;
+    }
+
+    public int getSourceIndex()
+    {
+        return op2Index;
+    }
+
+    public int getImmediate()
+    {
+        return 0;
+    }
+
     public String toString()
     {
         return this.getClass().getName();
@@ -33,7 +33,7 @@ import org.jpc.emulator.processor.*;
 import org.jpc.emulator.processor.fpu64.*;
 import static org.jpc.emulator.processor.Processor.*;
 
-public class and_Ew_Iw extends Executable
+public class and_Ew_Iw extends Executable implements RegisterOperation
 {
     final int op1Index;
     final int immw;
@@ -61,6 +61,31 @@ public class and_Ew_Iw extends Executable
         return false;
     }
 
+    public String getOperation()
+    {
+        return "and";
+    }
+
+    public int getOperandSize()
+    {
+        return 16;
+    }
+
+    public int getDestinationIndex()
+    {
+        return op1Index;
+    }
+
+    public int getSourceIndex()
+    {
+        return -1;
+    }
+
+    public int getImmediate()
+    {
+        return immw;
+    }
+
     public String toString()
     {
         return this.getClass().getName();
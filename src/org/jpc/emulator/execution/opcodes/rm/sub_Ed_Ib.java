@@ -33,7 +33,7 @@ import org.jpc.emulator.processor.*;
 import org.jpc.emulator.processor.fpu64.*;
 import static org.jpc.emulator.processor.Processor.*;
 
-public class sub_Ed_Ib extends Executable
+public class sub_Ed_Ib extends Executable implements RegisterOperation
 {
     final int op1Index;
     final int immb;
@@ -63,6 +63,31 @@ public class sub_Ed_Ib extends Executable
         return false;
     }
 
+    public String getOperation()
+    {
+        return "sub";
+    }
+
+    public int getOperandSize()
+    {
+        return 32;
+    }
+
+    public int getDestinationIndex()
+    {
+        return op1Index;
+    }
+
+    public int getSourceIndex()
+    {
+        return -1;
+    }
+
+    public int getImmediate()
+    {
+        return immb;
+    }
+
     public String toString()
     {
         return this.getClass().getName();
@@ -55,7 +55,7 @@ public class cli extends Executable
                     cpu.eflagsVirtualInterrupt = false;
                     return Branch.None;
                 }
-	        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION,0,true);//ProcessorException.GENERAL_PROTECTION_0;
+	        throw ProcessorException.GENERAL_PROTECTION_0;
         }
         return Branch.None;
     }
@@ -54,7 +54,7 @@ public class int_Ib extends Executable
 	    throw new IllegalStateException();
 	if (cpu.eflagsIOPrivilegeLevel < 3)
         {
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+            throw ProcessorException.GENERAL_PROTECTION_0;
         }
 	cpu.handleSoftVirtual8086ModeInterrupt(0xFF&immb, instructionLength);
         return Branch.Jmp_Unknown;
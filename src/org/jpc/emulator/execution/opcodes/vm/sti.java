@@ -52,7 +52,7 @@ public class sti extends Executable
 	    if (!cpu.eflagsVirtualInterruptPending && ((cpu.getCR4() & Processor.CR4_VIRTUAL8086_MODE_EXTENSIONS) != 0))
 	        cpu.eflagsVirtualInterrupt = true;
 	    else
-	        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION,0,true);//ProcessorException.GENERAL_PROTECTION_0;
+	        throw ProcessorException.GENERAL_PROTECTION_0;
         }
         return Branch.None;
     }
@@ -76,6 +76,42 @@ public abstract class AddressSpace extends AbstractMemory
      */
     protected abstract Memory getWriteMemoryBlockAt(int offset);
 
+    /**
+     * Returns the block of plain RAM covering this address so that string
+     * instructions can read up to the end of it in one go, raising any fault
+     * that a read there would.  Returns null where every read must go through
+     * the normal accessors, such as device memory.
+     * @param offset address to be read from
+     * @return block covering this address, or null
+     */
+    public Memory getBulkReadBlock(int offset)
+    {
+        return null;
+    }
+
+    /**
+     * Returns the block of plain RAM covering this address so that string
+     * instructions can write up to the end of it in one go, raising any fault
+     * that a write there would.  Returns null where every write must go
+     * through the normal accessors, such as device memory and ROM.
+     * @param offset address to be written to
+     * @return block covering this address, or null
+     */
+    public Memory getBulkWriteBlock(int offset)
+    {
+        return null;
+    }
+
+    protected static boolean allowsBulkRead(Memory block)
+    {
+        return block instanceof LazyCodeBlockMemory;
+    }
+
+    protected static boolean allowsBulkWrite(Memory block)
+    {
+        return (block instanceof LazyCodeBlockMemory) && !(block instanceof EPROMMemory);
+    }
+
     public abstract void clear();
 
     public abstract byte getByte(int offset);
@@ -0,0 +1,227 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.memory;
+
+import org.jpc.emulator.execution.codeblock.CodeBlock;
+
+/**
+ * Sparse map from offset within a memory block to the <code>CodeBlock</code>
+ * decoded at that offset.
+ * <p>
+ * Blocks are held in an open addressed table keyed on their start offset, so
+ * memory use is proportional to the number of decoded blocks rather than to
+ * the size of the memory.  A bitmap of the 64 equal chunks of the memory that
+ * contain code lets writes to data in a code page skip the table entirely.
+ * @author Ian Preston
+ */
+final class CodeBlockIndex
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int size;
+    private final int chunkShift;
+    private int[] keys;
+    private CodeBlock[] blocks;
+    private int count;
+    private long coverage;
+    private int[] removed = new int[INITIAL_CAPACITY];
+
+    CodeBlockIndex(int size)
+    {
+        this.size = size;
+        int shift = 0;
+        while (((size - 1) >>> shift) >= 64)
+            shift++;
+        chunkShift = shift;
+        keys = new int[INITIAL_CAPACITY];
+        blocks = new CodeBlock[INITIAL_CAPACITY];
+    }
+
+    private static int hash(int offset)
+    {
+        int h = offset * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the block starting at <code>offset</code>.
+     * @param offset offset within the memory block
+     * @return block at <code>offset</code> or <code>null</code>
+     */
+    CodeBlock get(int offset)
+    {
+        int key = offset + 1;
+        int mask = keys.length - 1;
+        for (int i = hash(offset) & mask; ; i = (i + 1) & mask)
+        {
+            int k = keys[i];
+            if (k == key)
+                return blocks[i];
+            if (k == 0)
+                return null;
+        }
+    }
+
+    /**
+     * Stores <code>block</code> at <code>offset</code>.
+     * @param offset offset within the memory block
+     * @param block block starting at <code>offset</code>
+     * @return the block previously at <code>offset</code> or <code>null</code>
+     */
+    CodeBlock put(int offset, CodeBlock block)
+    {
+        if (block == null)
+            return remove(offset);
+
+        coverage |= chunks(offset, end(offset, block));
+        int key = offset + 1;
+        int mask = keys.length - 1;
+        int i = hash(offset) & mask;
+        for (; keys[i] != 0; i = (i + 1) & mask)
+        {
+            if (keys[i] == key)
+            {
+                CodeBlock previous = blocks[i];
+                blocks[i] = block;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        blocks[i] = block;
+        if (2 * ++count > keys.length)
+            resize(2 * keys.length);
+        return null;
+    }
+
+    /**
+     * Removes the block at <code>offset</code>.
+     * @param offset offset within the memory block
+     * @return the removed block or <code>null</code>
+     */
+    CodeBlock remove(int offset)
+    {
+        int key = offset + 1;
+        int mask = keys.length - 1;
+        int i = hash(offset) & mask;
+        for (; keys[i] != key; i = (i + 1) & mask)
+            if (keys[i] == 0)
+                return null;
+
+        CodeBlock previous = blocks[i];
+        count--;
+        // shift back later entries of the probe sequence into the hole
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask)
+        {
+            int home = hash(keys[j] - 1) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask))
+            {
+                keys[i] = keys[j];
+                blocks[i] = blocks[j];
+                i = j;
+            }
+        }
+        keys[i] = 0;
+        blocks[i] = null;
+        return previous;
+    }
+
+    /**
+     * Notifies every block overlapping the written range and removes those that
+     * are no longer valid.
+     * @param start first written offset
+     * @param end last written offset
+     * @return <code>true</code> if any block was removed
+     */
+    boolean regionAltered(int start, int end)
+    {
+        if ((coverage & chunks(start, end)) == 0)
+            return false;
+
+        int n = 0;
+        long covered = 0;
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (keys[i] == 0)
+                continue;
+            int offset = keys[i] - 1;
+            CodeBlock b = blocks[i];
+            int last = end(offset, b);
+            if ((offset <= end) && (last >= start) && !b.handleMemoryRegionChange(start, end))
+            {
+                if (n == removed.length)
+                {
+                    int[] r = new int[2 * n];
+                    System.arraycopy(removed, 0, r, 0, n);
+                    removed = r;
+                }
+                removed[n++] = offset;
+            }
+            else
+                covered |= chunks(offset, last);
+        }
+        coverage = covered;
+        for (int i = 0; i < n; i++)
+            remove(removed[i]);
+        return n > 0;
+    }
+
+    private int end(int offset, CodeBlock block)
+    {
+        int length = block.getX86Length();
+        // spanning blocks report no length; they run to the end of this memory
+        if ((length <= 0) || (offset + length > size))
+            return size - 1;
+        return offset + length - 1;
+    }
+
+    private long chunks(int start, int end)
+    {
+        if (end >= size)
+            end = size - 1;
+        return (-1L << (start >>> chunkShift)) & (-1L >>> (63 - (end >>> chunkShift)));
+    }
+
+    private void resize(int capacity)
+    {
+        int[] oldKeys = keys;
+        CodeBlock[] oldBlocks = blocks;
+        keys = new int[capacity];
+        blocks = new CodeBlock[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++)
+        {
+            if (oldKeys[j] == 0)
+                continue;
+            int i = hash(oldKeys[j] - 1) & mask;
+            while (keys[i] != 0)
+                i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            blocks[i] = oldBlocks[j];
+        }
+    }
+}
@@ -140,7 +140,7 @@ public class EPROMMemory extends LazyCodeBlockMemory
 
     public void clear()
     {
-        constructCodeBlocksArray();
+        clearCodeBlocks();
     }
     
     public String toString()
@@ -30,28 +30,89 @@ package org.jpc.emulator.memory;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
-
+import java.util.Arrays;
+
+import org.jpc.j2se.Option;
+
+/**
+ * Set associative translation cache with a small fully associative victim
+ * cache for entries evicted from their set.
+ * <p>
+ * Entries are held in parallel arrays of tags, access bits, generation stamps
+ * and memory blocks.  A flush simply advances the generation below which
+ * entries are no longer valid, with a separate floor for global pages, so
+ * neither a full flush nor a non-global flush on a CR3 reload touches the
+ * entries themselves.
+ * @author Ian Preston
+ */
 public class FastTLB extends TLB
 {
     private static final byte FOUR_M = (byte) 0x01;
     private static final byte FOUR_K = (byte) 0x00;
 
-    private static final int TLB_SIZE = 1024;
-    private static final int TLB_MASK = (TLB_SIZE-1) << 12;
-    private static int TLBIndexOf(int addr) {
-        return (addr & TLB_MASK) >>> 12;
-    }
+    private static final int DEFAULT_SIZE = 4096;
+    private static final int DEFAULT_WAYS = 4;
+    private static final int VICTIM_SIZE = 8;
+    private static final int NO_PAGE = -1;
+
+    private static final int GLOBAL_PAGE   = 0x80000000;
+    private static final int SysReadOK     = 0x01;
+    private static final int UserReadOK    = 0x02;
+    private static final int SysWriteOK    = 0x04;
+    private static final int UserWriteOK   = 0x08;
+    private static final int SysExecuteOK  = 0x10;
+    private static final int UserExecuteOK = 0x20;
+
+    private final int ways;
+    private final int waysShift;
+    private final int setMask;
+    private final int victimBase;
+    private final int[] tags;
+    private final int[] access;
+    private final int[] stamps;
+    private final Memory[] blocks;
+    private final byte[] nextWay;
+    private int nextVictim;
+
+    private int generation = 1;
+    private int globalFloor = 1;
+    private int nonGlobalFloor = 1;
+    private int pendingNonGlobal = NO_PAGE;
 
-    private final Set<Integer> nonGlobalPages = new HashSet<Integer>();
-    private TLB_Entry[] cache = new TLB_Entry[TLB_SIZE];
-    private boolean split_large = false;
     private boolean globalPagesEnabled;
     private byte[] pageSize;
 
+    /**
+     * Constructs a cache sized by the <code>-tlb-size</code> and
+     * <code>-tlb-ways</code> options.
+     */
     public FastTLB()
     {
+        this(Option.tlb_size.intValue(DEFAULT_SIZE), Option.tlb_ways.intValue(DEFAULT_WAYS));
+    }
+
+    /**
+     * Constructs a cache of <code>size</code> entries split into sets of
+     * <code>ways</code> entries.  Both are rounded down to a power of two, and
+     * there are at most 64 ways.
+     * @param size total number of entries, excluding the victim cache
+     * @param ways number of entries per set
+     */
+    public FastTLB(int size, int ways)
+    {
+        ways = Integer.highestOneBit(Math.min(Math.max(1, ways), 64));
+        size = Math.max(ways, Integer.highestOneBit(Math.max(1, size)));
+        this.ways = ways;
+        waysShift = Integer.numberOfTrailingZeros(ways);
+        setMask = (size >>> waysShift) - 1;
+        victimBase = size;
+
+        tags = new int[size + VICTIM_SIZE];
+        access = new int[size + VICTIM_SIZE];
+        stamps = new int[size + VICTIM_SIZE];
+        blocks = new Memory[size + VICTIM_SIZE];
+        nextWay = new byte[setMask + 1];
+
         pageSize = new byte[AddressSpace.INDEX_SIZE];
         for (int i=0; i < AddressSpace.INDEX_SIZE; i++)
             pageSize[i] = FOUR_K;
@@ -61,9 +122,8 @@ public class FastTLB extends TLB
     public void saveState(DataOutput output) throws IOException {
         output.writeInt(pageSize.length);
         output.write(pageSize);
-        output.writeInt(nonGlobalPages.size());
-        for (Integer value : nonGlobalPages)
-            output.writeInt(value.intValue());
+        // non-global pages are only tracked for cached entries, which are not saved
+        output.writeInt(0);
     }
 
     @Override
@@ -71,10 +131,10 @@ public class FastTLB extends TLB
         int len = input.readInt();
         pageSize = new byte[len];
         input.readFully(pageSize,0,len);
-        nonGlobalPages.clear();
         int count = input.readInt();
         for (int i=0; i < count; i++)
-            nonGlobalPages.add(Integer.valueOf(input.readInt()));
+            input.readInt();
+        flush();
     }
 
     @Override
@@ -89,25 +149,33 @@ public class FastTLB extends TLB
 
     @Override
     public void flush() {
-        cache = new TLB_Entry[TLB_SIZE];
+        nextGeneration();
+        globalFloor = generation;
+        nonGlobalFloor = generation;
     }
 
     @Override
     public void flushNonGlobal() {
         if (globalPagesEnabled) {
-            for (Integer value : nonGlobalPages) {
-                int page = value.intValue();
-                int index = TLBIndexOf(page << AddressSpace.INDEX_SHIFT);
-                if ((cache[index] == null) || (!cache[index].samePage(page)))
-                    continue;
-                cache[index] = null;
-                pageSize[index] = FOUR_K;
-            }
-            nonGlobalPages.clear();
+            nextGeneration();
+            nonGlobalFloor = generation;
         } else
             flush();
     }
 
+    private void nextGeneration()
+    {
+        pendingNonGlobal = NO_PAGE;
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            Arrays.fill(blocks, null);
+            generation = 1;
+            globalFloor = 1;
+            nonGlobalFloor = 1;
+        }
+        generation++;
+    }
+
     @Override
     public void setGlobalPages(boolean enabled) {
         globalPagesEnabled = enabled;
@@ -115,7 +183,15 @@ public class FastTLB extends TLB
 
     @Override
     public void addNonGlobalPage(int addr) {
-        nonGlobalPages.add(addr >>> AddressSpace.INDEX_SHIFT);
+        int tag = addr & AddressSpace.INDEX_MASK;
+        int i = find(tag);
+        if (i >= 0) {
+            // the page has just been walked, so the entry is current as a non-global one
+            access[i] &= ~GLOBAL_PAGE;
+            stamps[i] = generation;
+        } else
+            // the entry for a 4K page is added after it is marked non-global
+            pendingNonGlobal = tag;
     }
 
     @Override
@@ -125,36 +201,28 @@ public class FastTLB extends TLB
 
     @Override
     public Memory getReadMemoryBlockAt(boolean isSupervisor, int addr) {
-        TLB_Entry entry = cache[TLBIndexOf(addr)];
-        if ((entry == null) || !entry.samePage(addr) || !entry.isRead(isSupervisor))
+        int i = find(addr & AddressSpace.INDEX_MASK);
+        if ((i < 0) || ((access[i] & (isSupervisor ? SysReadOK : UserReadOK)) == 0))
             return null;
-        return  entry.m;
+        return blocks[i];
     }
 
     @Override
     public void setReadMemoryBlockAt(boolean isSupervisor, int addr, Memory m) {
-        int index = TLBIndexOf(addr);
-        if ((cache[index] == null) || !cache[index].samePage(addr))
-            cache[index] = new TLB_Entry(m, addr & AddressSpace.INDEX_MASK, TLB_Entry.getAccess(isSupervisor, true, false, true));
-        else
-            cache[index].accessBits |= TLB_Entry.getAccess(isSupervisor, true, false, true);
+        set(addr, m, getAccess(isSupervisor, true, false, true));
     }
 
     @Override
     public Memory getWriteMemoryBlockAt(boolean isSupervisor, int addr) {
-        TLB_Entry entry = cache[TLBIndexOf(addr)];
-        if ((entry == null) || !entry.samePage(addr) || !entry.isWrite(isSupervisor))
+        int i = find(addr & AddressSpace.INDEX_MASK);
+        if ((i < 0) || ((access[i] & (isSupervisor ? SysWriteOK : UserWriteOK)) == 0))
             return null;
-        return  entry.m;
+        return blocks[i];
     }
 
     @Override
     public void setWriteMemoryBlockAt(boolean isSupervisor, int addr, Memory m) {
-        int index = TLBIndexOf(addr);
-        if ((cache[index] == null) || !cache[index].samePage(addr))
-            cache[index] = new TLB_Entry(m, addr & AddressSpace.INDEX_MASK, TLB_Entry.getAccess(isSupervisor, false, true, false));
-        else
-            cache[index].accessBits |= TLB_Entry.getAccess(isSupervisor, false, true, false);
+        set(addr, m, getAccess(isSupervisor, false, true, false));
     }
 
     @Override
@@ -171,77 +239,111 @@ public class FastTLB extends TLB
     public void invalidateTLBEntry(int addr) {
         int index = addr >>> AddressSpace.INDEX_SHIFT;
         if (pageSize[index] == FOUR_K) {
-            nonGlobalPages.remove(Integer.valueOf(index));
-            int page = TLBIndexOf(addr);
-            if ((cache[page] == null) || (!cache[page].samePage(addr)))
-                return;
-            cache[page] = null;
+            invalidate(addr & AddressSpace.INDEX_MASK);
         } else {
             index &= 0xFFC00;
-            for (int i = 0; i < 1024; i++, index++) {
-                nonGlobalPages.remove(Integer.valueOf(index));
-                int page = TLBIndexOf(index << AddressSpace.INDEX_SHIFT);
-                if ((cache[page] == null) || (!cache[page].samePage(addr)))
-                    continue;
-                cache[page] = null;
-            }
+            for (int i = 0; i < 1024; i++, index++)
+                invalidate(index << AddressSpace.INDEX_SHIFT);
         }
     }
 
-    private static class TLB_Entry
+    private void invalidate(int tag)
     {
-        private static int GLOBAL_PAGE   = 0x80000000;
-        private static int SysReadOK     = 0x01;
-        private static int UserReadOK    = 0x02;
-        private static int SysWriteOK    = 0x04;
-        private static int UserWriteOK   = 0x08;
-        private static int SysExecuteOK  = 0x10;
-        private static int UserExecuteOK = 0x20;
-
-        private static final boolean[] allowed = new boolean[32];
-        static {
-            for (int i=0; i < 32; i++)
-                allowed[i] = (0xff0bbb0b & (1 << i)) != 0;
-        }
+        int i = find(tag);
+        if (i >= 0)
+            stamps[i] = 0;
+    }
 
-        private static int getAccess(boolean isSupervisor, boolean readable, boolean writable, boolean executable)
-        {
-            if (isSupervisor)
-                return (readable ? SysReadOK : 0) | (writable ? SysWriteOK : 0) | (executable ? SysExecuteOK : 0);
-            else
-                return (readable ? SysReadOK | UserReadOK : 0) | (writable ? SysWriteOK | UserWriteOK : 0) | (executable ? SysExecuteOK | UserExecuteOK : 0);
-        }
+    private boolean isValid(int i)
+    {
+        int stamp = stamps[i];
+        return (stamp >= nonGlobalFloor) || ((stamp >= globalFloor) && ((access[i] & GLOBAL_PAGE) != 0));
+    }
 
-        int linearAddress;
-        Memory m;
-        int accessBits;
-        int linearMask;
-
-        private TLB_Entry(Memory m, int linearAddress, int accessBits)
-        {
-            this.linearAddress = linearAddress;
-            this.m = m;
-            this.accessBits = accessBits;
-            linearMask = ~0xfff;
-        }
+    /**
+     * Returns the index of the valid entry for a page, moving it back into its
+     * set if it is found in the victim cache.
+     * @param tag page aligned linear address
+     * @return index of the entry, or -1 if the page is not cached
+     */
+    private int find(int tag)
+    {
+        int i = ((tag >>> AddressSpace.INDEX_SHIFT) & setMask) << waysShift;
+        for (int end = i + ways; i < end; i++)
+            if ((tags[i] == tag) && isValid(i))
+                return i;
+
+        for (i = victimBase; i < victimBase + VICTIM_SIZE; i++)
+            if ((tags[i] == tag) && isValid(i))
+                return promote(i);
+        return -1;
+    }
 
-        public boolean isRead(boolean isSupervisor)
-        {
-            if (isSupervisor)
-                return (accessBits & SysReadOK) != 0;
-            return (accessBits & UserReadOK) != 0;
+    private void set(int addr, Memory m, int bits)
+    {
+        int tag = addr & AddressSpace.INDEX_MASK;
+        int i = find(tag);
+        if (i >= 0) {
+            access[i] |= bits;
+        } else {
+            i = allocate(tag);
+            tags[i] = tag;
+            access[i] = (tag == pendingNonGlobal) ? bits : bits | GLOBAL_PAGE;
+            stamps[i] = generation;
+            blocks[i] = m;
         }
+        pendingNonGlobal = NO_PAGE;
+    }
 
-        public boolean isWrite(boolean isSupervisor)
-        {
-            if (isSupervisor)
-                return (accessBits & SysWriteOK) != 0;
-            return (accessBits & UserWriteOK) != 0;
-        }
+    /**
+     * Chooses the way of the set for <code>tag</code> to be filled, moving
+     * any valid entry it holds into the victim cache.
+     */
+    private int allocate(int tag)
+    {
+        int set = (tag >>> AddressSpace.INDEX_SHIFT) & setMask;
+        int base = set << waysShift;
+        for (int i = base; i < base + ways; i++)
+            if (!isValid(i))
+                return i;
+
+        int way = nextWay[set];
+        nextWay[set] = (byte) ((way + 1) & (ways - 1));
+        int i = base + way;
+        int v = victimBase + nextVictim;
+        nextVictim = (nextVictim + 1) % VICTIM_SIZE;
+        move(i, v);
+        return i;
+    }
 
-        public boolean samePage(int addr)
-        {
-            return (linearAddress & linearMask) == (addr & linearMask);
-        }
+    private int promote(int v)
+    {
+        int tag = tags[v];
+        int t = access[v], s = stamps[v];
+        Memory m = blocks[v];
+        stamps[v] = 0;
+
+        int i = allocate(tag);
+        tags[i] = tag;
+        access[i] = t;
+        stamps[i] = s;
+        blocks[i] = m;
+        return i;
+    }
+
+    private void move(int from, int to)
+    {
+        tags[to] = tags[from];
+        access[to] = access[from];
+        stamps[to] = stamps[from];
+        blocks[to] = blocks[from];
+    }
+
+    private static int getAccess(boolean isSupervisor, boolean readable, boolean writable, boolean executable)
+    {
+        if (isSupervisor)
+            return (readable ? SysReadOK : 0) | (writable ? SysWriteOK : 0) | (executable ? SysExecuteOK : 0);
+        else
+            return (readable ? SysReadOK | UserReadOK : 0) | (writable ? SysWriteOK | UserWriteOK : 0) | (executable ? SysExecuteOK | UserExecuteOK : 0);
     }
 }
@@ -0,0 +1,277 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.memory;
+
+import java.nio.*;
+import java.util.Arrays;
+
+import org.jpc.emulator.execution.codeblock.CodeBlockManager;
+
+/**
+ * System RAM held in a single contiguous array rather than an array per page.
+ * <p>
+ * Multi-byte values are read and written in one access through a little
+ * endian view of the array.  Pages which have never had code decoded from
+ * them are marked clear in a bitmap, and writes to them skip the comparison
+ * with the old value and the search for code blocks to invalidate.
+ * <p>
+ * The address space and the code block machinery still work a page at a
+ * time, so each page is presented as a <code>LazyCodeBlockMemory</code> that
+ * shares the one array.
+ * @author Ian Preston
+ */
+class FlatRAM
+{
+    private static final int PAGE_SIZE = AddressSpace.BLOCK_SIZE;
+    private static final int PAGE_SHIFT = AddressSpace.INDEX_SHIFT;
+    private static final ArrayIndexOutOfBoundsException STRADDLE = new PageBoundaryException();
+
+    private final byte[] data;
+    private final ByteBuffer view;
+    private final long[] codePages;
+    private final Page[] pages;
+
+    /**
+     * Constructs <code>size</code> bytes of zeroed RAM.
+     * @param size length in bytes, a multiple of the page size
+     * @param manager code block manager for the pages
+     */
+    FlatRAM(int size, CodeBlockManager manager)
+    {
+        data = new byte[size];
+        view = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        pages = new Page[size >>> PAGE_SHIFT];
+        codePages = new long[(pages.length + 63) >>> 6];
+        for (int i = 0; i < pages.length; i++)
+            pages[i] = new Page(i, manager);
+    }
+
+    /**
+     * Returns the page starting at physical address <code>address</code>.
+     * @param address page aligned address
+     * @return memory block for that page
+     */
+    Memory getPage(int address)
+    {
+        return pages[address >>> PAGE_SHIFT];
+    }
+
+    private class Page extends LazyCodeBlockMemory
+    {
+        private final int index;
+        private final int base;
+
+        Page(int index, CodeBlockManager manager)
+        {
+            super(PAGE_SIZE, manager);
+            this.index = index;
+            this.base = index << PAGE_SHIFT;
+        }
+
+        private boolean hasCode()
+        {
+            return (codePages[index >>> 6] & (1L << index)) != 0;
+        }
+
+        protected void codeAdded()
+        {
+            codePages[index >>> 6] |= 1L << index;
+        }
+
+        protected void allocateBuffer()
+        {
+        }
+
+        public boolean isAllocated()
+        {
+            return true;
+        }
+
+        public void clear()
+        {
+            beforeWrite();
+            clearCodeBlocks();
+            codePages[index >>> 6] &= ~(1L << index);
+            Arrays.fill(data, base, base + PAGE_SIZE, (byte) 0);
+        }
+
+        public void copyContentsIntoArray(int address, byte[] buf, int off, int len)
+        {
+            System.arraycopy(data, base + address, buf, off, len);
+        }
+
+        protected void readContents(byte[] dest)
+        {
+            System.arraycopy(data, base, dest, 0, PAGE_SIZE);
+        }
+
+        public void loadInitialContents(int address, byte[] buf, int off, int len)
+        {
+            beforeWrite();
+            System.arraycopy(buf, off, data, base + address, len);
+        }
+
+        public void copyArrayIntoContents(int address, byte[] buf, int off, int len)
+        {
+            beforeWrite();
+            System.arraycopy(buf, off, data, base + address, len);
+            if (hasCode())
+                regionAltered(address, address + len - 1);
+        }
+
+        public byte getByte(int offset)
+        {
+            return data[base + offset];
+        }
+
+        public short getWord(int offset)
+        {
+            if (offset > PAGE_SIZE - 2)
+                throw STRADDLE;
+            return view.getShort(base + offset);
+        }
+
+        public int getDoubleWord(int offset)
+        {
+            if (offset > PAGE_SIZE - 4)
+                throw STRADDLE;
+            return view.getInt(base + offset);
+        }
+
+        public long getQuadWord(int offset)
+        {
+            if (offset > PAGE_SIZE - 8)
+                throw STRADDLE;
+            return view.getLong(base + offset);
+        }
+
+        public long getLowerDoubleQuadWord(int offset)
+        {
+            return getQuadWord(offset);
+        }
+
+        public long getUpperDoubleQuadWord(int offset)
+        {
+            return getQuadWord(offset + 8);
+        }
+
+        public void setByte(int offset, byte value)
+        {
+            beforeWrite();
+            int address = base + offset;
+            if (!hasCode())
+            {
+                data[address] = value;
+                return;
+            }
+            if (data[address] == value)
+                return;
+            data[address] = value;
+            regionAltered(offset, offset);
+        }
+
+        public void setWord(int offset, short value)
+        {
+            if (offset > PAGE_SIZE - 2)
+                throw STRADDLE;
+            beforeWrite();
+            int address = base + offset;
+            if (!hasCode())
+            {
+                view.putShort(address, value);
+                return;
+            }
+            if (view.getShort(address) == value)
+                return;
+            view.putShort(address, value);
+            regionAltered(offset, offset + 1);
+        }
+
+        public void setDoubleWord(int offset, int value)
+        {
+            if (offset > PAGE_SIZE - 4)
+                throw STRADDLE;
+            beforeWrite();
+            int address = base + offset;
+            if (!hasCode())
+            {
+                view.putInt(address, value);
+                return;
+            }
+            if (view.getInt(address) == value)
+                return;
+            view.putInt(address, value);
+            regionAltered(offset, offset + 3);
+        }
+
+        public void setQuadWord(int offset, long value)
+        {
+            if (offset > PAGE_SIZE - 8)
+                throw STRADDLE;
+            // code pages keep the byte granularity of invalidation
+            if (hasCode())
+            {
+                for (int i = 0; i < 8; i++, value >>= 8)
+                    setByte(offset + i, (byte) value);
+                return;
+            }
+            beforeWrite();
+            view.putLong(base + offset, value);
+        }
+
+        public void setLowerDoubleQuadWord(int offset, long value)
+        {
+            setQuadWord(offset, value);
+        }
+
+        public void setUpperDoubleQuadWord(int offset, long value)
+        {
+            setQuadWord(offset + 8, value);
+        }
+
+        public String toString()
+        {
+            return "FlatRAM page[" + Integer.toHexString(base) + "]";
+        }
+    }
+
+    /**
+     * Thrown for accesses which run off the end of a page, so the caller
+     * falls back to a byte at a time access across the boundary.  It is
+     * shared and carries no stack trace, so throwing it costs nothing.
+     */
+    private static class PageBoundaryException extends ArrayIndexOutOfBoundsException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    }
+}
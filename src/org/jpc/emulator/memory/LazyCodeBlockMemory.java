@@ -3,9 +3,9 @@ package org.jpc.emulator.memory;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.jpc.emulator.execution.Executable;
-import org.jpc.emulator.execution.decoder.Instruction;
 import org.jpc.emulator.execution.codeblock.*;
 import org.jpc.emulator.processor.Processor;
 import org.jpc.j2se.Option;
@@ -14,7 +14,7 @@ import org.jpc.j2se.Option;
  * <code>Memory</code> object with simple execute capabilities.  Uses a
  * {@link org.jpc.emulator.execution.codeblock.CodeBlockManager} instance to generate
  * {@link org.jpc.emulator.execution.codeblock.CodeBlock} objects which are then
- * stored in mirror arrays of the memory structure.
+ * stored in a sparse index alongside the memory structure.
  * @author Chris Dennis
  * @author Rhys Newman
  * @author Ian Preston
@@ -23,15 +23,26 @@ public class LazyCodeBlockMemory extends AbstractMemory
 {
     public static final boolean LOG_DISAM_ADDRESSES = Option.log_disam_addresses.value();
     private CodeBlockManager codeBlockManager;
-    private static final BlankCodeBlock PLACEHOLDER = new BlankCodeBlock();
-    private RealModeCodeBlock[] realCodeBuffer;
-    private ProtectedModeCodeBlock[] protectedCodeBuffer;
-    private Virtual8086ModeCodeBlock[] virtual8086CodeBuffer;
+    private CodeBlockIndex realCodeBlocks;
+    private CodeBlockIndex protectedCodeBlocks;
+    private CodeBlockIndex virtual8086CodeBlocks;
     private static final int ALLOCATION_THRESHOLD = 10;
     private final int size;
     private byte[] buffer = null;
     private int nullReadCount = 0;
     private List<SpanningCodeBlock> spanning = new LinkedList();
+    private int spanningLength = 0;
+
+    private static final int SNAPSHOT_IDLE = 0;
+    private static final int SNAPSHOT_PENDING = 1;
+    private static final int SNAPSHOT_COPYING = 2;
+    private static final int SNAPSHOT_PRESERVING = 3;
+    private static final int SNAPSHOT_PRESERVED = 4;
+    private static final AtomicIntegerFieldUpdater<LazyCodeBlockMemory> SNAPSHOT_STATE = AtomicIntegerFieldUpdater.newUpdater(LazyCodeBlockMemory.class, "snapshotState");
+    private volatile int snapshotState = SNAPSHOT_IDLE;
+    private byte[] preserved;
+    // new blocks may replace ones with other contents, so they always make the next snapshot
+    private boolean dirty = true;
 
     /**
      * Constructs an instance <code>size</code> bytes long.
@@ -42,26 +53,21 @@ public class LazyCodeBlockMemory extends AbstractMemory
         this.codeBlockManager = manager;
     }
 
-    protected void constructCodeBlocksArray() {
-        realCodeBuffer = new RealModeCodeBlock[(int) getSize()];
-        protectedCodeBuffer = new ProtectedModeCodeBlock[(int) getSize()];
-        virtual8086CodeBuffer = new Virtual8086ModeCodeBlock[(int) getSize()];
+    private void unlinkAll() {
+        if (codeBlockManager != null)
+            codeBlockManager.unlinkAll();
     }
 
-    private void constructRealCodeBlocksArray() {
-        realCodeBuffer = new RealModeCodeBlock[(int) getSize()];
-    }
-
-    private void constructVirtual8086CodeBlocksArray() {
-        virtual8086CodeBuffer = new Virtual8086ModeCodeBlock[(int) getSize()];
-    }
-
-    private void constructProtectedCodeBlocksArray() {
-        protectedCodeBuffer = new ProtectedModeCodeBlock[(int) getSize()];
+    protected void clearCodeBlocks() {
+        unlinkAll();
+        realCodeBlocks = null;
+        protectedCodeBlocks = null;
+        virtual8086CodeBlocks = null;
     }
 
     public int executeProtected(Processor cpu, int offset) {
         int x86Count = 0;
+        Executable.Branch exit;
         int ip = cpu.getInstructionPointer();
 
         offset = ip & AddressSpace.BLOCK_MASK;
@@ -70,7 +76,7 @@ public class LazyCodeBlockMemory extends AbstractMemory
         {
             try
             {
-                block.execute(cpu);
+                exit = block.execute(cpu);
                 x86Count += block.getX86Count();
             }
             catch (NullPointerException e)
@@ -86,23 +92,25 @@ public class LazyCodeBlockMemory extends AbstractMemory
                 }
 
                 setProtectedCodeBlockAt(offset, block);
-                block.execute(cpu);
+                exit = block.execute(cpu);
                 x86Count += block.getX86Count();
             }
         }
         catch (CodeBlockReplacementException e)
         {
             block = (ProtectedModeCodeBlock) e.getReplacement();
-            protectedCodeBuffer[offset] = block;
-            block.execute(cpu);
+            protectedCodeBlocks.put(offset, block);
+            exit = block.execute(cpu);
             x86Count += block.getX86Count();
         }
 
+        codeBlockManager.blockExecuted(block, ip, exit, cpu);
         return x86Count;
     }
 
     public int executeReal(Processor cpu, int offset) {
         int x86Count = 0;
+        Executable.Branch exit;
         int ip = cpu.getInstructionPointer();
 
         offset = ip & AddressSpace.BLOCK_MASK;
@@ -111,7 +119,7 @@ public class LazyCodeBlockMemory extends AbstractMemory
         {
             try
             {
-                block.execute(cpu);
+                exit = block.execute(cpu);
                 x86Count += block.getX86Count();
             }
             catch (NullPointerException e)
@@ -126,23 +134,25 @@ public class LazyCodeBlockMemory extends AbstractMemory
                     throw s;
                 }
                 setRealCodeBlockAt(offset, block);
-                block.execute(cpu);
+                exit = block.execute(cpu);
                 x86Count += block.getX86Count();
             }
         }
         catch (CodeBlockReplacementException e)
         {
             block = (RealModeCodeBlock) e.getReplacement();
-            realCodeBuffer[offset] = block;
-            block.execute(cpu);
+            realCodeBlocks.put(offset, block);
+            exit = block.execute(cpu);
             x86Count += block.getX86Count();
         }
 
+        codeBlockManager.blockExecuted(block, ip, exit, cpu);
         return x86Count;
     }
 
     public int executeVirtual8086(Processor cpu, int offset) {
         int x86Count = 0;
+        Executable.Branch exit;
         int ip = cpu.getInstructionPointer();
 
         offset = ip & AddressSpace.BLOCK_MASK;
@@ -151,7 +161,7 @@ public class LazyCodeBlockMemory extends AbstractMemory
         {
             try
             {
-                block.execute(cpu);
+                exit = block.execute(cpu);
                 x86Count += block.getX86Count();
             }
             catch (NullPointerException e)
@@ -166,326 +176,104 @@ public class LazyCodeBlockMemory extends AbstractMemory
                     throw s;
                 }
                 setVirtual8086CodeBlockAt(offset, block);
-                block.execute(cpu);
+                exit = block.execute(cpu);
                 x86Count += block.getX86Count();
             }
         }
         catch (CodeBlockReplacementException e)
         {
             block = (Virtual8086ModeCodeBlock) e.getReplacement();
-            virtual8086CodeBuffer[offset] = block;
-            block.execute(cpu);
+            virtual8086CodeBlocks.put(offset, block);
+            exit = block.execute(cpu);
             x86Count += block.getX86Count();
         }
 
+        codeBlockManager.blockExecuted(block, ip, exit, cpu);
         return x86Count;
     }
 
     private RealModeCodeBlock getRealModeCodeBlockAt(int offset) {
         try {
-            return realCodeBuffer[offset];
+            return (RealModeCodeBlock) realCodeBlocks.get(offset);
         } catch (NullPointerException e) {
-            constructRealCodeBlocksArray();
-            return realCodeBuffer[offset];
+            realCodeBlocks = new CodeBlockIndex(size);
+            codeAdded();
+            return null;
         }
     }
 
     private ProtectedModeCodeBlock getProtectedModeCodeBlockAt(int offset) {
         try {
-            return protectedCodeBuffer[offset];
+            return (ProtectedModeCodeBlock) protectedCodeBlocks.get(offset);
         } catch (NullPointerException e) {
-            constructProtectedCodeBlocksArray();
-            return protectedCodeBuffer[offset];
+            protectedCodeBlocks = new CodeBlockIndex(size);
+            codeAdded();
+            return null;
         }
     }
 
     private Virtual8086ModeCodeBlock getVirtual8086ModeCodeBlockAt(int offset) {
         try {
-            return virtual8086CodeBuffer[offset];
+            return (Virtual8086ModeCodeBlock) virtual8086CodeBlocks.get(offset);
         } catch (NullPointerException e) {
-            constructVirtual8086CodeBlocksArray();
-            return virtual8086CodeBuffer[offset];
+            virtual8086CodeBlocks = new CodeBlockIndex(size);
+            codeAdded();
+            return null;
         }
     }
 
     public void addSpanningBlock(SpanningCodeBlock b, int remainingLength)
     {
         spanning.add(b);
-        // add markers up to the codeblock's length
-        if (remainingLength > 4096)
-            remainingLength = 4096;
-        if (b instanceof RealModeCodeBlock)
-        {
-            if (realCodeBuffer == null) {
-                allocateBuffer();
-                realCodeBuffer = new RealModeCodeBlock[(int) getSize()];
-            }
-            for (int i=0; i < remainingLength; i++)
-                if (realCodeBuffer[i] == null)
-                    realCodeBuffer[i] = PLACEHOLDER;
-        }
-        else if (b instanceof ProtectedModeCodeBlock)
-        {
-            if (protectedCodeBuffer == null) {
-                allocateBuffer();
-                protectedCodeBuffer = new ProtectedModeCodeBlock[(int) getSize()];
-            }
-            for (int i=0; i < remainingLength; i++)
-                if (protectedCodeBuffer[i] == null)
-                    protectedCodeBuffer[i] = PLACEHOLDER;
-        }
-        else if (b instanceof Virtual8086ModeCodeBlock)
-        {
-            if (virtual8086CodeBuffer == null) {
-                allocateBuffer();
-                virtual8086CodeBuffer = new Virtual8086ModeCodeBlock[(int) getSize()];
-            }
-            for (int i=0; i < remainingLength; i++)
-                if (virtual8086CodeBuffer[i] == null)
-                    virtual8086CodeBuffer[i] = PLACEHOLDER;
-        }
-    }
-
-    private void removeVirtual8086CodeBlockAt(int offset) {
-        Virtual8086ModeCodeBlock b = virtual8086CodeBuffer[offset];
-        if ((b == null) || (b == PLACEHOLDER)) {
-            return;
-        }
-
-        virtual8086CodeBuffer[offset] = null;
-        int len = b.getX86Length();
-        for (int i = offset + 1; (i < offset + len) && (i < virtual8086CodeBuffer.length); i++) {
-            if (virtual8086CodeBuffer[i] == PLACEHOLDER) {
-                virtual8086CodeBuffer[i] = null;
-            }
-        }
-
-        for (int i = Math.min(offset + len, virtual8086CodeBuffer.length) - 1; i >= 0; i--) {
-            if (virtual8086CodeBuffer[i] == null) {
-                if (i < offset) {
-                    break;
-                } else {
-                    continue;
-                }
-            }
-            if (virtual8086CodeBuffer[i] == PLACEHOLDER) {
-                continue;
-            }
-
-            Virtual8086ModeCodeBlock bb = virtual8086CodeBuffer[i];
-            len = bb.getX86Length();
-
-            for (int j = i + 1; (j < i + len) && (j < virtual8086CodeBuffer.length); j++) {
-                if (virtual8086CodeBuffer[j] == null) {
-                    virtual8086CodeBuffer[j] = PLACEHOLDER;
-                }
-            }
-        }
-    }
-
-    private void removeProtectedCodeBlockAt(int offset) {
-        ProtectedModeCodeBlock b = protectedCodeBuffer[offset];
-        if ((b == null) || (b == PLACEHOLDER)) {
-            return;
-        }
-
-        protectedCodeBuffer[offset] = null;
-        int len = b.getX86Length();
-        for (int i = offset + 1; (i < offset + len) && (i < protectedCodeBuffer.length); i++) {
-            if (protectedCodeBuffer[i] == PLACEHOLDER) {
-                protectedCodeBuffer[i] = null;
-            }
-        }
-
-        for (int i = Math.min(offset + len, protectedCodeBuffer.length) - 1; i >= 0; i--) {
-            if (protectedCodeBuffer[i] == null) {
-                if (i < offset) {
-                    break;
-                } else {
-                    continue;
-                }
-            }
-            if (protectedCodeBuffer[i] == PLACEHOLDER) {
-                continue;
-            }
-
-            ProtectedModeCodeBlock bb = protectedCodeBuffer[i];
-            len = bb.getX86Length();
-
-            for (int j = i + 1; (j < i + len) && (j < protectedCodeBuffer.length); j++) {
-                if (protectedCodeBuffer[j] == null) {
-                    protectedCodeBuffer[j] = PLACEHOLDER;
-                }
-            }
-        }
-    }
-
-    private void removeRealCodeBlockAt(int offset) {
-        RealModeCodeBlock b = realCodeBuffer[offset];
-        if ((b == null) || (b == PLACEHOLDER)) {
-            return;
-        }
-
-        realCodeBuffer[offset] = null;
-        int len = b.getX86Length();
-        for (int i = offset + 1; (i < offset + len) && (i < realCodeBuffer.length); i++) {
-            if (realCodeBuffer[i] == PLACEHOLDER) {
-                realCodeBuffer[i] = null;
-            }
-        }
-
-        for (int i = Math.min(offset + len, realCodeBuffer.length) - 1; i >= 0; i--) {
-            if (realCodeBuffer[i] == null) {
-                if (i < offset) {
-                    break;
-                } else {
-                    continue;
-                }
-            }
-            if (realCodeBuffer[i] == PLACEHOLDER) {
-                continue;
-            }
-
-            RealModeCodeBlock bb = realCodeBuffer[i];
-            len = bb.getX86Length();
-
-            for (int j = i + 1; (j < i + len) && (j < realCodeBuffer.length); j++) {
-                if (realCodeBuffer[j] == null) {
-                    realCodeBuffer[j] = PLACEHOLDER;
-                }
-            }
-        }
+        allocateBuffer();
+        codeAdded();
+        // writes below the codeblock's length will invalidate it
+        spanningLength = Math.max(spanningLength, Math.min(remainingLength, size));
     }
 
     private void setVirtual8086CodeBlockAt(int offset, Virtual8086ModeCodeBlock block) {
-        removeVirtual8086CodeBlockAt(offset);
-        if (block == null) {
-            return;
-        }
-
-        virtual8086CodeBuffer[offset] = block;
-        int len = block.getX86Length();
-        for (int i = offset + 1; (i < offset + len) && (i < virtual8086CodeBuffer.length); i++) {
-            if (virtual8086CodeBuffer[i] == null) {
-                virtual8086CodeBuffer[i] = PLACEHOLDER;
-            }
-        }
+        if (virtual8086CodeBlocks.put(offset, block) != null)
+            unlinkAll();
     }
 
     private void setProtectedCodeBlockAt(int offset, ProtectedModeCodeBlock block) {
-        removeProtectedCodeBlockAt(offset);
-        if (block == null) {
-            return;
-        }
-
-        protectedCodeBuffer[offset] = block;
-        int len = block.getX86Length();
-        for (int i = offset + 1; (i < offset + len) && (i < protectedCodeBuffer.length); i++) {
-            if (protectedCodeBuffer[i] == null) {
-                protectedCodeBuffer[i] = PLACEHOLDER;
-            }
-        }
+        if (protectedCodeBlocks.put(offset, block) != null)
+            unlinkAll();
     }
 
     private void setRealCodeBlockAt(int offset, RealModeCodeBlock block) {
-        removeRealCodeBlockAt(offset);
-        if (block == null) {
-            return;
-        }
-
-        realCodeBuffer[offset] = block;
-        int len = block.getX86Length();
-        for (int i = offset + 1; (i < offset + len) && (i < realCodeBuffer.length); i++) {
-            if (realCodeBuffer[i] == null) {
-                realCodeBuffer[i] = PLACEHOLDER;
-            }
-        }
+        if (realCodeBlocks.put(offset, block) != null)
+            unlinkAll();
     }
 
-    private void regionAltered(int start, int end) {
-        if (realCodeBuffer != null) {
-            for (int i = end; i >= 0; i--) {
-                if (i == 0)
-                {
-                    for (SpanningCodeBlock b : spanning)
-                        b.invalidate();
-                }
-                RealModeCodeBlock b = realCodeBuffer[i];
-                if (b == null) {
-                    if (i < start) {
-                        break;
-                    } else {
-                        continue;
-                    }
-                }
-
-                if (b == PLACEHOLDER) {
-                    continue;
-                }
-
-                if (!b.handleMemoryRegionChange(start, end)) {
-                    removeRealCodeBlockAt(i);
-                }
-            }
-        }
-
-        if (protectedCodeBuffer != null) {
-            for (int i = end; i >= 0; i--) {
-                if (i == 0)
-                {
-                    for (SpanningCodeBlock b : spanning)
-                        b.invalidate();
-                }
-                ProtectedModeCodeBlock b = protectedCodeBuffer[i];
-                if (b == null) {
-                    if (i < start) {
-                        break;
-                    } else {
-                        continue;
-                    }
-                }
-
-                if (b == PLACEHOLDER) {
-                    continue;
-                }
+    /**
+     * Called whenever code is first indexed in this block, after which writes
+     * to it must be passed to <code>regionAltered</code>.
+     */
+    protected void codeAdded() {
+    }
 
-                if (!b.handleMemoryRegionChange(start, end)) {
-                    removeProtectedCodeBlockAt(i);
-                }
-            }
+    protected void regionAltered(int start, int end) {
+        if (start < spanningLength)
+        {
+            for (SpanningCodeBlock b : spanning)
+                b.invalidate();
         }
 
-        if (virtual8086CodeBuffer != null) {
-            for (int i = end; i >= 0; i--) {
-                if (i == 0)
-                {
-                    for (SpanningCodeBlock b : spanning)
-                        b.invalidate();
-                }
-                Virtual8086ModeCodeBlock b = virtual8086CodeBuffer[i];
-                if (b == null) {
-                    if (i < start) {
-                        break;
-                    } else {
-                        continue;
-                    }
-                }
-
-                if (b == PLACEHOLDER) {
-                    continue;
-                }
-
-                if (!b.handleMemoryRegionChange(start, end)) {
-                    removeVirtual8086CodeBlockAt(i);
-                }
-            }
-        }
+        boolean removed = false;
+        if (realCodeBlocks != null)
+            removed |= realCodeBlocks.regionAltered(start, end);
+        if (protectedCodeBlocks != null)
+            removed |= protectedCodeBlocks.regionAltered(start, end);
+        if (virtual8086CodeBlocks != null)
+            removed |= virtual8086CodeBlocks.regionAltered(start, end);
+        if (removed)
+            unlinkAll();
     }
 
     public void clear() {
-        realCodeBuffer = null;
-        protectedCodeBuffer = null;
-        virtual8086CodeBuffer = null;
+        beforeWrite();
+        clearCodeBlocks();
         buffer = null;
     }
 
@@ -493,47 +281,14 @@ public class LazyCodeBlockMemory extends AbstractMemory
         return "LazyCodeBlockMemory[" + getSize() + "]";
     }
 
-    private static class BlankCodeBlock implements RealModeCodeBlock, ProtectedModeCodeBlock, Virtual8086ModeCodeBlock {
-
-        private static final RuntimeException executeException = new NullPointerException();
-
-        public int getX86Length() {
-            return 0;
-        }
-
-        public int getX86Count() {
-            return 0;
-        }
-
-        public Executable.Branch execute(Processor cpu) {
-            throw executeException;
-        }
-
-        public boolean handleMemoryRegionChange(int startAddress, int endAddress) {
-            return false;
-        }
-
-        public String getDisplayString() {
-            return "\n\n<<Blank Block>>\n\n";
-        }
-
-        public String toString() {
-            return " -- Blank --\n";
-        }
-
-        public Instruction getInstructions()
-        {
-            return null;
-        }
-    }
-
     public ProtectedModeCodeBlock getProtectedBlock(int offset, boolean size) {
-        if (protectedCodeBuffer == null) {
+        if (protectedCodeBlocks == null) {
             allocateBuffer();
-            protectedCodeBuffer = new ProtectedModeCodeBlock[(int) getSize()];
+            codeAdded();
+            protectedCodeBlocks = new CodeBlockIndex(this.size);
         }
-        ProtectedModeCodeBlock block = protectedCodeBuffer[offset];
-        if ((block != null) && (block != PLACEHOLDER)) {
+        ProtectedModeCodeBlock block = (ProtectedModeCodeBlock) protectedCodeBlocks.get(offset);
+        if (block != null) {
             return block;
         }
 
@@ -543,12 +298,13 @@ public class LazyCodeBlockMemory extends AbstractMemory
     }
 
     public Virtual8086ModeCodeBlock getVirtual8086Block(int offset) {
-        if (virtual8086CodeBuffer == null) {
+        if (virtual8086CodeBlocks == null) {
             allocateBuffer();
-            virtual8086CodeBuffer = new Virtual8086ModeCodeBlock[(int) getSize()];
+            codeAdded();
+            virtual8086CodeBlocks = new CodeBlockIndex(size);
         }
-        Virtual8086ModeCodeBlock block = virtual8086CodeBuffer[offset];
-        if ((block != null) && (block != PLACEHOLDER)) {
+        Virtual8086ModeCodeBlock block = (Virtual8086ModeCodeBlock) virtual8086CodeBlocks.get(offset);
+        if (block != null) {
             return block;
         }
 
@@ -558,12 +314,13 @@ public class LazyCodeBlockMemory extends AbstractMemory
     }
 
     public RealModeCodeBlock getRealBlock(int offset) {
-        if (realCodeBuffer == null) {
+        if (realCodeBlocks == null) {
             allocateBuffer();
-            realCodeBuffer = new RealModeCodeBlock[(int) getSize()];
+            codeAdded();
+            realCodeBlocks = new CodeBlockIndex(size);
         }
-        RealModeCodeBlock block = realCodeBuffer[offset];
-        if ((block != null) && (block != PLACEHOLDER)) {
+        RealModeCodeBlock block = (RealModeCodeBlock) realCodeBlocks.get(offset);
+        if (block != null) {
             return block;
         }
 
@@ -572,8 +329,86 @@ public class LazyCodeBlockMemory extends AbstractMemory
         return block;
     }
 
+    /**
+     * Must be called before anything changes the contents of this block, so
+     * that it is known to be dirty and so that a snapshot still waiting for
+     * its contents gets them as they were when it was taken.
+     */
+    protected final void beforeWrite() {
+        dirty = true;
+        if (snapshotState != SNAPSHOT_IDLE)
+            preserveForSnapshot();
+    }
+
+    private void preserveForSnapshot() {
+        while (true) {
+            int state = snapshotState;
+            if (state == SNAPSHOT_PENDING) {
+                if (!SNAPSHOT_STATE.compareAndSet(this, SNAPSHOT_PENDING, SNAPSHOT_PRESERVING))
+                    continue;
+                byte[] copy = new byte[size];
+                readContents(copy);
+                preserved = copy;
+                snapshotState = SNAPSHOT_PRESERVED;
+                return;
+            }
+            if (state != SNAPSHOT_COPYING)
+                return;
+            // the snapshot writer is copying this block right now
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Copies the whole block into <code>dest</code> without any side effects,
+     * so that it is safe to call from a snapshot writer thread.
+     */
+    protected void readContents(byte[] dest) {
+        byte[] b = buffer;
+        if (b == null)
+            Arrays.fill(dest, 0, size, (byte) 0);
+        else
+            System.arraycopy(b, 0, dest, 0, size);
+    }
+
+    /**
+     * Selects this block for a snapshot if it has been written since the last
+     * one, or if <code>full</code> and it holds anything.  A selected block
+     * keeps its current contents for <code>copySnapshot</code> however the
+     * guest goes on to change it.  Called with the emulation paused.
+     * @return true if the block was selected
+     */
+    boolean markForSnapshot(boolean full) {
+        boolean selected = full ? isAllocated() : dirty;
+        dirty = false;
+        if (selected)
+            snapshotState = SNAPSHOT_PENDING;
+        return selected;
+    }
+
+    /**
+     * Copies the contents this block had when it was marked for a snapshot
+     * into <code>dest</code>.  May be called from any thread, once per mark.
+     */
+    void copySnapshot(byte[] dest) {
+        if (SNAPSHOT_STATE.compareAndSet(this, SNAPSHOT_PENDING, SNAPSHOT_COPYING)) {
+            readContents(dest);
+            snapshotState = SNAPSHOT_IDLE;
+            return;
+        }
+        while (snapshotState == SNAPSHOT_PRESERVING)
+            Thread.yield();
+        System.arraycopy(preserved, 0, dest, 0, size);
+        preserved = null;
+        snapshotState = SNAPSHOT_IDLE;
+    }
+
+    void clearDirty() {
+        dirty = false;
+    }
+
     //begin lazy memory methods
-    private final void allocateBuffer() {
+    protected void allocateBuffer() {
         if (buffer == null) {
             buffer = new byte[size];
         }
@@ -596,6 +431,7 @@ public class LazyCodeBlockMemory extends AbstractMemory
     }
 
     public void loadInitialContents(int address, byte[] buf, int off, int len) {
+        beforeWrite();
         try {
             System.arraycopy(buf, off, buffer, address, len);
         } catch (NullPointerException e) {
@@ -605,6 +441,7 @@ public class LazyCodeBlockMemory extends AbstractMemory
     }
 
     public void copyArrayIntoContents(int address, byte[] buf, int off, int len) {
+        beforeWrite();
         try {
             System.arraycopy(buf, off, buffer, address, len);
         } catch (NullPointerException e) {
@@ -639,6 +476,7 @@ public class LazyCodeBlockMemory extends AbstractMemory
         if (getByte(offset) == data) {
             return;
         }
+        beforeWrite();
         try {
             buffer[offset] = data;
         } catch (NullPointerException e) {
@@ -698,6 +536,7 @@ public class LazyCodeBlockMemory extends AbstractMemory
         if (getWord(offset) == data) {
             return;
         }
+        beforeWrite();
         try {
             buffer[offset] = (byte) data;
             offset++;
@@ -708,13 +547,14 @@ public class LazyCodeBlockMemory extends AbstractMemory
             offset++;
             buffer[offset] = (byte) (data >> 8);
         }
-        regionAltered(offset, offset + 1);
+        regionAltered(offset - 1, offset);
     }
 
     public void setDoubleWord(int offset, int data) {
         if (getDoubleWord(offset) == data) {
             return;
         }
+        beforeWrite();
         try {
             buffer[offset] = (byte) data;
             offset++;
@@ -739,6 +579,6 @@ public class LazyCodeBlockMemory extends AbstractMemory
             data >>= 8;
             buffer[offset] = (byte) (data);
         }
-        regionAltered(offset, offset + 3);
+        regionAltered(offset - 3, offset);
     }
 }
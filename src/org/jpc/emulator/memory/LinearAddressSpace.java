@@ -153,6 +153,7 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
 
         pagingDisabled = !value;
         tlb.flush();
+        unlinkAll();
     }
 
     /**
@@ -175,6 +176,7 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
     {
         pageSizeExtensions = value;
         tlb.flush();
+        unlinkAll();
     }
 
     /**
@@ -200,6 +202,7 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
 
         tlb.setGlobalPages(value);
         tlb.flush();
+        unlinkAll();
     }
 
     /**
@@ -229,16 +232,25 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
     {
         baseAddress = address & 0xFFFFF000;
         tlb.flushNonGlobal();
+        unlinkAll();
+    }
+
+    private void unlinkAll()
+    {
+        if ((target != null) && (target.getCodeBlockManager() != null))
+            target.getCodeBlockManager().unlinkAll();
     }
 
     public void flush()
     {
         tlb.flush();
+        unlinkAll();
     }
 
     public void invalidateTLBEntry(int offset)
     {
         tlb.invalidateTLBEntry(offset);
+        unlinkAll();
     }
 
     private Memory validateTLBEntryRead(int offset)
@@ -520,6 +532,26 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
         return tlb.getWriteMemoryBlockAt(isSupervisor, offset);
     }
 
+    public Memory getBulkReadBlock(int offset)
+    {
+        Memory block = getReadMemoryBlockAt(offset);
+        if ((block == null) || (block instanceof PageFaultWrapper))
+            block = validateTLBEntryRead(offset);
+        if (block instanceof PageFaultWrapper)
+            throw ((PageFaultWrapper) block).raise();
+        return allowsBulkRead(block) ? block : null;
+    }
+
+    public Memory getBulkWriteBlock(int offset)
+    {
+        Memory block = getWriteMemoryBlockAt(offset);
+        if ((block == null) || (block instanceof PageFaultWrapper))
+            block = validateTLBEntryWrite(offset);
+        if (block instanceof PageFaultWrapper)
+            throw ((PageFaultWrapper) block).raise();
+        return allowsBulkWrite(block) ? block : null;
+    }
+
     /**
      * Calls replace block on the underlying <code>PhysicalAddressSpace</code>
      * object.
@@ -529,6 +561,7 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
     protected void replaceBlocks(Memory oldBlock, Memory newBlock)
     {
         tlb.replaceBlocks(oldBlock, newBlock);
+        unlinkAll();
     }
 
     public byte getByte(int offset)
@@ -774,7 +807,7 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
 
         private PageFaultWrapper(int errorCode)
         {
-            pageFault = new ProcessorException(ProcessorException.Type.PAGE_FAULT, errorCode, true);
+            pageFault = ProcessorException.get(ProcessorException.Type.PAGE_FAULT, errorCode);
         }
 
         public void lock(int addr) {}
@@ -788,9 +821,9 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
             return pageFault;
         }
         
-        private void fill()
+        private ProcessorException raise()
         {
-            pageFault.fillInStackTrace();
+            return pageFault;
         }
 
         public boolean isAllocated()
@@ -804,13 +837,11 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
 
         public void copyContentsIntoArray(int address, byte[] buffer, int off, int len)
         {
-            fill();
             throw pageFault;
         }
 
         public void copyArrayIntoContents(int address, byte[] buffer, int off, int len)
         {
-            fill();
             throw pageFault;
         }
 
@@ -821,73 +852,61 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
 
         public byte getByte(int offset)
         {
-            fill();
             throw pageFault;
         }
 
         public short getWord(int offset)
         {
-            fill();
             throw pageFault;
         }
 
         public int getDoubleWord(int offset)
         {
-            fill();
             throw pageFault;
         }
 
         public long getQuadWord(int offset)
         {
-            fill();
             throw pageFault;
         }
 
         public long getLowerDoubleQuadWord(int offset)
         {
-            fill();
             throw pageFault;
         }
 
         public long getUpperDoubleQuadWord(int offset)
         {
-            fill();
             throw pageFault;
         }
 
         public void setByte(int offset, byte data)
         {
-            fill();
             throw pageFault;
         }
 
         public void setWord(int offset, short data)
         {
-            fill();
             throw pageFault;
         }
 
         public void setDoubleWord(int offset, int data)
         {
-            fill();
             throw pageFault;
         }
 
         public void setQuadWord(int offset, long data)
         {
-            fill();
             throw pageFault;
         }
 
         public void setLowerDoubleQuadWord(int offset, long data)
         {
-            fill();
             throw pageFault;
         }
 
         public void setUpperDoubleQuadWord(int offset, long data)
         {
-            fill();
             throw pageFault;
         }
 
@@ -898,13 +917,11 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
 
 	public int executeProtected(Processor cpu, int offset)
 	{
-	    fill();
 	    throw pageFault;
 	}
 
         public int executeVirtual8086(Processor cpu, int offset)
 	{
-	    fill();
 	    throw pageFault;
 	}
         
@@ -921,6 +938,7 @@ public final class LinearAddressSpace extends AddressSpace implements HardwareCo
     public void reset()
     {
         tlb.flush();
+        unlinkAll();
 
         baseAddress = 0;
         lastAddress = 0;
@@ -0,0 +1,89 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.memory;
+
+/**
+ * The physical pages selected for a snapshot. Each page reads back with
+ * the contents it had when it was captured, even if the guest has changed
+ * it since, because RAM blocks preserve their old contents on the first
+ * write after being captured. So the pages can be written out by another
+ * thread while the emulation carries on.
+ * @author Ian Preston
+ */
+public final class MemoryCapture
+{
+    private final int[] pages;
+    private final Object[] sources;
+    private final int count;
+
+    MemoryCapture(int[] pages, Object[] sources, int count)
+    {
+        this.pages = pages;
+        this.sources = sources;
+        this.count = count;
+    }
+
+    public int getPageCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return the physical address of captured page <code>i</code> shifted right by the block size
+     */
+    public int getPage(int i)
+    {
+        return pages[i];
+    }
+
+    /**
+     * Copies captured page <code>i</code> into <code>dest</code>. Each page
+     * may be copied only once, after which its preserved contents are gone.
+     */
+    public void copyPage(int i, byte[] dest)
+    {
+        Object source = sources[i];
+        if (source instanceof LazyCodeBlockMemory)
+            ((LazyCodeBlockMemory) source).copySnapshot(dest);
+        else
+            System.arraycopy((byte[]) source, 0, dest, 0, AddressSpace.BLOCK_SIZE);
+        sources[i] = null;
+    }
+
+    /**
+     * Releases every page not yet copied, for when a snapshot is abandoned
+     * part way through.
+     */
+    public void discard()
+    {
+        byte[] scratch = new byte[AddressSpace.BLOCK_SIZE];
+        for (int i = 0; i < count; i++)
+            if (sources[i] != null)
+                copyPage(i, scratch);
+    }
+}
@@ -34,8 +34,7 @@
 package org.jpc.emulator.memory;
 
 import java.io.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
 import org.jpc.emulator.*;
 import org.jpc.emulator.execution.codeblock.*;
@@ -94,10 +93,21 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
 
     public void saveState(DataOutput output) throws IOException {
         output.writeBoolean(gateA20MaskState);
-        dumpMemory(output, quickNonA20MaskedIndex, nonA20MaskedIndex);
+        dumpMemory(output, quickNonA20MaskedIndex, nonA20MaskedIndex, true);
     }
 
-    private static void dumpMemory(DataOutput output, Memory[] quick, Memory[][] full) throws IOException {
+    /**
+     * Saves the same state as <code>saveState</code> except for the contents
+     * of memory, which an incremental snapshot records page by page instead.
+     * @param output stream the layout is written to
+     * @throws IOException propogated from the supplied stream
+     */
+    public void saveLayout(DataOutput output) throws IOException {
+        output.writeBoolean(gateA20MaskState);
+        dumpMemory(output, quickNonA20MaskedIndex, nonA20MaskedIndex, false);
+    }
+
+    private static void dumpMemory(DataOutput output, Memory[] quick, Memory[][] full, boolean contents) throws IOException {
         byte[] temp = new byte[0];
         output.writeInt(quick.length);
         for (Memory block : quick) {
@@ -107,12 +117,14 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
                     if (block instanceof MapWrapper) {
                         output.writeInt(0);
                     } else {
-                        if (temp.length < blockLength) {
-                            temp = new byte[blockLength];
-                        }
-                        block.copyContentsIntoArray(0, temp, 0, blockLength);
                         output.writeInt(blockLength);
-                        output.write(temp);
+                        if (contents) {
+                            if (temp.length < blockLength) {
+                                temp = new byte[blockLength];
+                            }
+                            block.copyContentsIntoArray(0, temp, 0, blockLength);
+                            output.write(temp);
+                        }
                     }
                 } catch (IllegalStateException e) {
                     output.writeInt(0);
@@ -141,12 +153,14 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
                         if (block instanceof MapWrapper) {
                             output.writeInt(0);
                         } else {
-                            if (temp.length < blockLength) {
-                                temp = new byte[blockLength];
-                            }
-                            block.copyContentsIntoArray(0, temp, 0, blockLength);
                             output.writeInt(blockLength);
-                            output.write(temp);
+                            if (contents) {
+                                if (temp.length < blockLength) {
+                                    temp = new byte[blockLength];
+                                }
+                                block.copyContentsIntoArray(0, temp, 0, blockLength);
+                                output.write(temp);
+                            }
                         }
                     } catch (IllegalStateException e) {
                         output.writeInt(0);
@@ -158,13 +172,13 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
         }
     }
 
-    private static void loadMemory(DataInput input, Memory[] quick, Memory[][] full, CodeBlockManager manager) throws IOException {
+    private static void loadMemory(DataInput input, Memory[] quick, Memory[][] full, CodeBlockManager manager, boolean contents) throws IOException {
         byte[] temp = new byte[0];
         int quickLength = input.readInt();
         for (int i = 0; i < quickLength; i++) {
             Memory block = quick[i];
             int blockLength = input.readInt();
-            if (blockLength > 0) {
+            if ((blockLength > 0) && contents) {
                 if (blockLength > temp.length) {
                     temp = new byte[blockLength];
                 }
@@ -185,7 +199,7 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
                 if (blockLength == 0) continue;
                 chunk[j] = new LazyCodeBlockMemory(blockLength, manager);
                 Memory block = chunk[j];
-                if (blockLength > 0) {
+                if ((blockLength > 0) && contents) {
                     if (blockLength > temp.length) {
                         temp = new byte[blockLength];
                     }
@@ -198,8 +212,17 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
 
     private void initialiseMemory()
     {
-        for (int i = 0; i < PC.SYS_RAM_SIZE; i += AddressSpace.BLOCK_SIZE) {
-            mapMemory(i, new LazyCodeBlockMemory(AddressSpace.BLOCK_SIZE, manager));
+        if (Option.flat_ram.isSet())
+        {
+            FlatRAM ram = new FlatRAM(PC.SYS_RAM_SIZE, manager);
+            for (int i = 0; i < PC.SYS_RAM_SIZE; i += AddressSpace.BLOCK_SIZE)
+                mapMemory(i, ram.getPage(i));
+        }
+        else
+        {
+            for (int i = 0; i < PC.SYS_RAM_SIZE; i += AddressSpace.BLOCK_SIZE) {
+                mapMemory(i, new LazyCodeBlockMemory(AddressSpace.BLOCK_SIZE, manager));
+            }
         }
         // memory hole, the last 64 K of this is replaced by BIOS shadow ram if the BIOS ROM is 128 K or greater
         for (int i = 0xD0000; i < 0xF0000; i += AddressSpace.BLOCK_SIZE)
@@ -209,6 +232,21 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
     }
 
     public void loadState(DataInput input, CodeBlockManager manager) throws IOException {
+        loadState(input, manager, true);
+    }
+
+    /**
+     * Restores state saved by <code>saveLayout</code>, leaving every page
+     * zeroed until <code>loadPage</code> fills it in.
+     * @param input stream the layout is read from
+     * @param manager code block manager for the new memory blocks
+     * @throws IOException propogated from the supplied stream
+     */
+    public void loadLayout(DataInput input, CodeBlockManager manager) throws IOException {
+        loadState(input, manager, false);
+    }
+
+    private void loadState(DataInput input, CodeBlockManager manager, boolean contents) throws IOException {
         clearArray(quickA20MaskedIndex, UNCONNECTED);
         clearArray(quickNonA20MaskedIndex, UNCONNECTED);
 
@@ -216,7 +254,7 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
         this.manager = manager;
         initialiseMemory();
         setGateA20State(input.readBoolean());
-        loadMemory(input, quickNonA20MaskedIndex, nonA20MaskedIndex, manager);
+        loadMemory(input, quickNonA20MaskedIndex, nonA20MaskedIndex, manager, contents);
 
         for (int a = 0; a < TOP_INDEX_SIZE; a++)
         {
@@ -295,6 +333,7 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
         if (m instanceof EPROMMemory)
         {
             ((EPROMMemory) m).setReadable(r);
+            unlinkAll();
         }
         else
             System.out.printf("Tried to set non eprom readable at %x\n", address);
@@ -307,6 +346,12 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
             ((EPROMMemory) getMemoryBlockAt(page)).setWritable(w);
     }
 
+    private void unlinkAll()
+    {
+        if (manager != null)
+            manager.unlinkAll();
+    }
+
     public CodeBlockManager getCodeBlockManager()
     {
         return manager;
@@ -330,6 +375,7 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
             quickIndex = quickA20MaskedIndex;
             index = a20MaskedIndex;
         }
+        unlinkAll();
 
         if ((linearAddr != null) && linearAddr.isPagingEnabled()) {
             linearAddr.flush();
@@ -360,6 +406,134 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
         dirtyPages.clear();
     }
 
+    /**
+     * Selects pages for a snapshot: every allocated page if <code>full</code>,
+     * otherwise those written since the previous capture. Unlike
+     * <code>getDirtyPages</code> this sees every write, including those made
+     * through the TLB straight into RAM blocks. Must be called with the
+     * emulation paused; the pages can then be copied from any thread.
+     * @param full whether to capture everything rather than just the changes
+     * @return the captured pages
+     */
+    public MemoryCapture captureMemory(boolean full)
+    {
+        CaptureBuilder builder = new CaptureBuilder(full);
+        for (int i = 0; i < quickNonA20MaskedIndex.length; i++)
+            builder.add(i, quickNonA20MaskedIndex[i]);
+        for (int a = 0; a < TOP_INDEX_SIZE; a++)
+        {
+            Memory[] chunk = nonA20MaskedIndex[a];
+            if (chunk == null)
+                continue;
+            for (int b = 0; b < chunk.length; b++)
+                builder.add(((a << TOP_INDEX_SHIFT) | (b << BOTTOM_INDEX_SHIFT)) >>> INDEX_SHIFT, chunk[b]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Forgets which pages have been written, after a snapshot is restored.
+     */
+    public void markClean()
+    {
+        for (Memory block : quickNonA20MaskedIndex)
+            if (block instanceof LazyCodeBlockMemory)
+                ((LazyCodeBlockMemory) block).clearDirty();
+        for (Memory[] chunk : nonA20MaskedIndex)
+            if (chunk != null)
+                for (Memory block : chunk)
+                    if (block instanceof LazyCodeBlockMemory)
+                        ((LazyCodeBlockMemory) block).clearDirty();
+    }
+
+    /**
+     * Overwrites a page with contents from a snapshot.
+     * @param page physical address shifted right by the block size
+     * @param data the page contents
+     */
+    public void loadPage(int page, byte[] data)
+    {
+        Memory block;
+        if (page < quickNonA20MaskedIndex.length)
+            block = quickNonA20MaskedIndex[page];
+        else
+        {
+            int address = page << INDEX_SHIFT;
+            Memory[] chunk = nonA20MaskedIndex[address >>> TOP_INDEX_SHIFT];
+            block = (chunk == null) ? null : chunk[(address >>> BOTTOM_INDEX_SHIFT) & BOTTOM_INDEX_MASK];
+        }
+        if (block instanceof LazyCodeBlockMemory)
+            block.loadInitialContents(0, data, 0, BLOCK_SIZE);
+    }
+
+    private static class CaptureBuilder
+    {
+        private final boolean full;
+        private final Map<Memory, Boolean> seen = new IdentityHashMap<Memory, Boolean>();
+        private int[] pages = new int[1024];
+        private Object[] sources = new Object[1024];
+        private int count;
+
+        CaptureBuilder(boolean full)
+        {
+            this.full = full;
+        }
+
+        void add(int page, Memory block)
+        {
+            if ((block == null) || (block instanceof MapWrapper))
+                return;
+            Boolean selected = seen.get(block);
+            if (selected == null)
+            {
+                if (block instanceof LazyCodeBlockMemory)
+                {
+                    boolean s = ((LazyCodeBlockMemory) block).markForSnapshot(full);
+                    seen.put(block, Boolean.valueOf(s));
+                    if (s)
+                        append(page, block);
+                    return;
+                }
+                if (!block.isAllocated() || (block.getSize() != BLOCK_SIZE))
+                    return;
+                seen.put(block, Boolean.TRUE);
+            }
+            else if (!selected.booleanValue())
+                return;
+
+            // blocks mapped more than once, and anything other than RAM, are copied straight away
+            byte[] copy = new byte[BLOCK_SIZE];
+            try
+            {
+                if (block instanceof LazyCodeBlockMemory)
+                    ((LazyCodeBlockMemory) block).readContents(copy);
+                else
+                    block.copyContentsIntoArray(0, copy, 0, BLOCK_SIZE);
+            }
+            catch (IllegalStateException e)
+            {
+                return;
+            }
+            append(page, copy);
+        }
+
+        private void append(int page, Object source)
+        {
+            if (count == pages.length)
+            {
+                pages = Arrays.copyOf(pages, count * 2);
+                sources = Arrays.copyOf(sources, count * 2);
+            }
+            pages[count] = page;
+            sources[count++] = source;
+        }
+
+        MemoryCapture build()
+        {
+            return new MemoryCapture(pages, sources, count);
+        }
+    }
+
     protected Memory getReadMemoryBlockAt(int offset) {
         return getMemoryBlockAt(offset);
     }
@@ -376,6 +550,8 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
 
     public short getWord(int offset)
     {
+        if ((offset & BLOCK_MASK) > BLOCK_SIZE - 2)
+            return super.getWord(offset);
         try
         {
             return getReadMemoryBlockAt(offset).getWord(offset & BLOCK_MASK);
@@ -388,6 +564,11 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
 
     public void setWord(int offset, short data)
     {
+        if ((offset & BLOCK_MASK) > BLOCK_SIZE - 2)
+        {
+            super.setWord(offset, data);
+            return;
+        }
         try
         {
             getWriteMemoryBlockAt(offset).setWord(offset & BLOCK_MASK, data);
@@ -400,6 +581,8 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
 
     public int getDoubleWord(int offset)
     {
+        if ((offset & BLOCK_MASK) > BLOCK_SIZE - 4)
+            return super.getDoubleWord(offset);
         try
         {
             return getReadMemoryBlockAt(offset).getDoubleWord(offset & BLOCK_MASK);
@@ -412,6 +595,11 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
 
     public void setDoubleWord(int offset, int data)
     {
+        if ((offset & BLOCK_MASK) > BLOCK_SIZE - 4)
+        {
+            super.setDoubleWord(offset, data);
+            return;
+        }
         try
         {
             getWriteMemoryBlockAt(offset).setDoubleWord(offset & BLOCK_MASK, data);
@@ -427,6 +615,16 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
         return getMemoryBlockAt(offset);
     }
 
+    public Memory getBulkReadBlock(int offset) {
+        Memory block = getReadMemoryBlockAt(offset);
+        return allowsBulkRead(block) ? block : null;
+    }
+
+    public Memory getBulkWriteBlock(int offset) {
+        Memory block = getWriteMemoryBlockAt(offset);
+        return allowsBulkWrite(block) ? block : null;
+    }
+
     public int executeReal(Processor cpu, int offset) {
         try {
 //            if (PC.HISTORY)
@@ -458,6 +656,7 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
     }
 
     protected void replaceBlocks(Memory oldBlock, Memory newBlock) {
+        unlinkAll();
         for (int i = 0; i < quickA20MaskedIndex.length; i++) {
             if (quickA20MaskedIndex[i] == oldBlock) {
                 quickA20MaskedIndex[i] = newBlock;
@@ -868,6 +1067,7 @@ public final class PhysicalAddressSpace extends AddressSpace implements Hardware
     }
 
     private void setMemoryBlockAt(int i, Memory b) {
+        unlinkAll();
         try {
             int idx = i >>> INDEX_SHIFT;
             quickNonA20MaskedIndex[idx] = b;
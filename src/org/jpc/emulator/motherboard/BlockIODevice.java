@@ -0,0 +1,111 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.motherboard;
+
+import org.jpc.emulator.memory.Memory;
+
+/**
+ * An <code>IODevice</code> that can move a whole run of string I/O elements
+ * in one call, letting <code>REP INS</code> and <code>REP OUTS</code> bypass
+ * the per element port dispatch.
+ * <p>
+ * Each method must leave the device, and the given memory, exactly as
+ * <code>count</code> successive single element accesses would have done.
+ * A device may stop short at any point where it would rather be accessed one
+ * element at a time (a state change, an interrupt, an unsupported mode) by
+ * returning the number of elements it has already moved, which may be zero.
+ * @author Ian Preston
+ */
+public interface BlockIODevice extends IODevice
+{
+    /**
+     * Reads up to <code>count</code> bytes from the port into <code>memory</code>
+     * starting at <code>offset</code>.
+     * @param address port address.
+     * @param memory destination block.
+     * @param offset byte offset within the block.
+     * @param count maximum number of bytes to read.
+     * @return number of bytes actually read.
+     */
+    public int ioPortReadBlock8(int address, Memory memory, int offset, int count);
+
+    /**
+     * Reads up to <code>count</code> words from the port into <code>memory</code>
+     * starting at <code>offset</code>.
+     * @param address port address.
+     * @param memory destination block.
+     * @param offset byte offset within the block.
+     * @param count maximum number of words to read.
+     * @return number of words actually read.
+     */
+    public int ioPortReadBlock16(int address, Memory memory, int offset, int count);
+
+    /**
+     * Reads up to <code>count</code> doublewords from the port into
+     * <code>memory</code> starting at <code>offset</code>.
+     * @param address port address.
+     * @param memory destination block.
+     * @param offset byte offset within the block.
+     * @param count maximum number of doublewords to read.
+     * @return number of doublewords actually read.
+     */
+    public int ioPortReadBlock32(int address, Memory memory, int offset, int count);
+
+    /**
+     * Writes up to <code>count</code> bytes from <code>memory</code> starting at
+     * <code>offset</code> to the port.
+     * @param address port address.
+     * @param memory source block.
+     * @param offset byte offset within the block.
+     * @param count maximum number of bytes to write.
+     * @return number of bytes actually written.
+     */
+    public int ioPortWriteBlock8(int address, Memory memory, int offset, int count);
+
+    /**
+     * Writes up to <code>count</code> words from <code>memory</code> starting at
+     * <code>offset</code> to the port.
+     * @param address port address.
+     * @param memory source block.
+     * @param offset byte offset within the block.
+     * @param count maximum number of words to write.
+     * @return number of words actually written.
+     */
+    public int ioPortWriteBlock16(int address, Memory memory, int offset, int count);
+
+    /**
+     * Writes up to <code>count</code> doublewords from <code>memory</code>
+     * starting at <code>offset</code> to the port.
+     * @param address port address.
+     * @param memory source block.
+     * @param offset byte offset within the block.
+     * @param count maximum number of doublewords to write.
+     * @return number of doublewords actually written.
+     */
+    public int ioPortWriteBlock32(int address, Memory memory, int offset, int count);
+}
@@ -34,14 +34,19 @@
 package org.jpc.emulator.motherboard;
 
 import org.jpc.emulator.AbstractHardwareComponent;
+import org.jpc.emulator.memory.Memory;
 
 /**
  * This class holds the map between ioport addresses and <code>IODevice</code>
  * objects.  Unmapped ports are redirected to an unconnected inner class instance
  * whose data lines float high, and on which writes fail silently.
+ * <p>
+ * Block transfers are passed on to devices that implement
+ * <code>BlockIODevice</code>; for any other device nothing is transferred and
+ * the caller falls back to single element accesses.
  * @author Chris Dennis
  */
-public class IOPortHandler extends AbstractHardwareComponent implements IODevice
+public class IOPortHandler extends AbstractHardwareComponent implements BlockIODevice
 {
     private static final int MAX_IOPORTS = 65536;
     private static final IODevice defaultDevice = new UnconnectedIOPort();
@@ -88,6 +93,54 @@ public class IOPortHandler extends AbstractHardwareComponent implements IODevice
         ioPortDevice[address].ioPortWrite32(address, data);
     }
 
+    public int ioPortReadBlock8(int address, Memory memory, int offset, int count)
+    {
+        IODevice device = ioPortDevice[address];
+        if (device instanceof BlockIODevice)
+            return ((BlockIODevice) device).ioPortReadBlock8(address, memory, offset, count);
+        return 0;
+    }
+
+    public int ioPortReadBlock16(int address, Memory memory, int offset, int count)
+    {
+        IODevice device = ioPortDevice[address];
+        if (device instanceof BlockIODevice)
+            return ((BlockIODevice) device).ioPortReadBlock16(address, memory, offset, count);
+        return 0;
+    }
+
+    public int ioPortReadBlock32(int address, Memory memory, int offset, int count)
+    {
+        IODevice device = ioPortDevice[address];
+        if (device instanceof BlockIODevice)
+            return ((BlockIODevice) device).ioPortReadBlock32(address, memory, offset, count);
+        return 0;
+    }
+
+    public int ioPortWriteBlock8(int address, Memory memory, int offset, int count)
+    {
+        IODevice device = ioPortDevice[address];
+        if (device instanceof BlockIODevice)
+            return ((BlockIODevice) device).ioPortWriteBlock8(address, memory, offset, count);
+        return 0;
+    }
+
+    public int ioPortWriteBlock16(int address, Memory memory, int offset, int count)
+    {
+        IODevice device = ioPortDevice[address];
+        if (device instanceof BlockIODevice)
+            return ((BlockIODevice) device).ioPortWriteBlock16(address, memory, offset, count);
+        return 0;
+    }
+
+    public int ioPortWriteBlock32(int address, Memory memory, int offset, int count)
+    {
+        IODevice device = ioPortDevice[address];
+        if (device instanceof BlockIODevice)
+            return ((BlockIODevice) device).ioPortWriteBlock32(address, memory, offset, count);
+        return 0;
+    }
+
     public int[] ioPortsRequested()
     {
         return null;
@@ -103,6 +103,11 @@ class BMDMAIORegion implements IOPortIORegion, Hibernatable
 	physicalMemory.copyArrayIntoContents(address, buffer, offset, length);
     }
 
+    void readMemory(int address, byte[] buffer, int offset, int length)
+    {
+	physicalMemory.copyContentsIntoArray(address, buffer, offset, length);
+    }
+
     void setIDEDevice(IDEChannel.IDEState device)
     {
 	this.ideDevice = device;
@@ -273,12 +278,11 @@ class BMDMAIORegion implements IOPortIORegion, Hibernatable
 		length = 0x10000;
 	    while (length > 0) {
 		int lengthOne = this.ideDevice.dmaCallback(ideDMAFunction, prdAddress, length);
+		if (lengthOne == IDEChannel.IDEState.DMA_PENDING)
+		    /* the device ends the transfer once its disk I/O is done */
+		    return;
 		if (lengthOne == 0) {
-		    /* end of transfer */
-		    this.status &= ~BM_STATUS_DMAING;
-		    this.status |= BM_STATUS_INT;
-		    this.ideDMAFunction = IDEChannel.IDEState.IDF_NONE;
-		    this.ideDevice = null;
+		    endTransfer();
 		    return;
 		}
 		prdAddress += lengthOne;
@@ -289,7 +293,11 @@ class BMDMAIORegion implements IOPortIORegion, Hibernatable
 		break;
 	    currentAddress += 8;
 	}
-	/* end of transfer */
+	endTransfer();
+    }
+
+    void endTransfer()
+    {
 	this.status &= ~BM_STATUS_DMAING;
 	this.status |= BM_STATUS_INT;
 	this.ideDMAFunction = IDEChannel.IDEState.IDF_NONE;
@@ -35,6 +35,7 @@ package org.jpc.emulator.pci.peripheral;
 
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
@@ -127,10 +128,50 @@ public final class DefaultVGACard extends VGACard {
         ymax = Math.max(y + h, ymax);
     }
 
+    /**
+     * Returns <code>true</code> if any part of the display has been redrawn
+     * since the last call to <code>prepareUpdate</code>.
+     */
+    public boolean isDirty()
+    {
+        return (xmax > xmin) && (ymax > ymin);
+    }
+
+    /**
+     * Draws the display into <code>g</code>, stretched to the size of the
+     * monitor.  Only the part of the display under the clip of
+     * <code>g</code> is drawn.  Displays shown at their own size or at a whole
+     * multiple of it are copied or pixel replicated, and only fractional
+     * scales are interpolated.
+     */
     public void paintPCMonitor(Graphics2D g, PCMonitor monitor)
     {
         Dimension s = monitor.getSize();
-        
+        if ((s.width == width) && (s.height == height))
+        {
+            g.drawImage(buffer, 0, 0, null);
+            return;
+        }
+
+        int scaleX = s.width / width;
+        int scaleY = s.height / height;
+        if ((scaleX * width == s.width) && (scaleY * height == s.height))
+        {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null)
+                clip = new Rectangle(0, 0, s.width, s.height);
+            int sx1 = Math.max(0, clip.x / scaleX);
+            int sy1 = Math.max(0, clip.y / scaleY);
+            int sx2 = Math.min(width, (clip.x + clip.width + scaleX - 1) / scaleX);
+            int sy2 = Math.min(height, (clip.y + clip.height + scaleY - 1) / scaleY);
+            if ((sx2 <= sx1) || (sy2 <= sy1))
+                return;
+
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            g.drawImage(buffer, sx1 * scaleX, sy1 * scaleY, sx2 * scaleX, sy2 * scaleY, sx1, sy1, sx2, sy2, null);
+            return;
+        }
+
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
         g.drawImage(buffer, 0, 0, s.width,  s.height, 0, 0, width, height, null);
     }
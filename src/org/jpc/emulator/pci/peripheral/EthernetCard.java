@@ -34,7 +34,9 @@
 package org.jpc.emulator.pci.peripheral;
 
 import org.jpc.emulator.pci.*;
+import org.jpc.emulator.motherboard.BlockIODevice;
 import org.jpc.emulator.motherboard.IOPortHandler;
+import org.jpc.emulator.memory.Memory;
 import org.jpc.emulator.AbstractHardwareComponent;
 
 import java.io.*;
@@ -155,6 +157,7 @@ public class EthernetCard extends AbstractPCIDevice
     //public volatile int ethPacketsWaiting = 0;
 
     EthernetOutput outputDevice;
+    private final byte[] receiveBuffer = new byte[NE2000_MEM_SIZE];
     private byte[] memory;
     private EthernetIORegion ioRegion;
 
@@ -249,7 +252,25 @@ public class EthernetCard extends AbstractPCIDevice
     }
 
     public void checkForPackets() {
-        receivePacket(outputDevice.getPacket());
+        while (receiveRingHasRoom())
+        {
+            int length = outputDevice.getPacket(receiveBuffer);
+            if (length < 0)
+                break;
+            receivePacket(receiveBuffer, length);
+        }
+    }
+
+    /**
+     * Whether a maximum sized frame would still fit between the current page
+     * and the boundary the driver has read up to.
+     */
+    private boolean receiveRingHasRoom()
+    {
+        int index = (curpag & 0xFF) << 8;
+        int bound = (boundary & 0xFF) << 8;
+        int avail = (index < bound) ? bound - index : ((stop - start) << 8) - (index - bound);
+        return avail >= MAX_ETH_FRAME_SIZE + 4;
     }
 
     public void setOutputDevice(EthernetOutput out) {
@@ -328,7 +349,7 @@ public class EthernetCard extends AbstractPCIDevice
             return null;
     }
 
-    class EthernetIORegion extends AbstractHardwareComponent implements IOPortIORegion
+    class EthernetIORegion extends AbstractHardwareComponent implements IOPortIORegion, BlockIODevice
     {
 
         private int address;
@@ -495,6 +516,68 @@ public class EthernetCard extends AbstractPCIDevice
             }
         }
 
+        public int ioPortReadBlock8(int address, Memory memory, int offset, int count)
+        {
+            return 0;
+        }
+
+        public int ioPortReadBlock16(int address, Memory memory, int offset, int count)
+        {
+            switch (address - this.getAddress())
+            {
+                case 0x10:
+                case 0x11:
+                    return EthernetCard.this.asicIOPortReadBlock(memory, offset, 2, count);
+                default:
+                    return 0;
+            }
+        }
+
+        public int ioPortReadBlock32(int address, Memory memory, int offset, int count)
+        {
+            switch (address - this.getAddress())
+            {
+                case 0x10:
+                case 0x11:
+                case 0x12:
+                case 0x13:
+                    return EthernetCard.this.asicIOPortReadBlock(memory, offset, 4, count);
+                default:
+                    return 0;
+            }
+        }
+
+        public int ioPortWriteBlock8(int address, Memory memory, int offset, int count)
+        {
+            return 0;
+        }
+
+        public int ioPortWriteBlock16(int address, Memory memory, int offset, int count)
+        {
+            switch (address - this.getAddress())
+            {
+                case 0x10:
+                case 0x11:
+                    return EthernetCard.this.asicIOPortWriteBlock(memory, offset, 2, count);
+                default:
+                    return 0;
+            }
+        }
+
+        public int ioPortWriteBlock32(int address, Memory memory, int offset, int count)
+        {
+            switch (address - this.getAddress())
+            {
+                case 0x10:
+                case 0x11:
+                case 0x12:
+                case 0x13:
+                    return EthernetCard.this.asicIOPortWriteBlock(memory, offset, 4, count);
+                default:
+                    return 0;
+            }
+        }
+
         public int[] ioPortsRequested()
         {
             int addr = this.getAddress();
@@ -847,6 +930,44 @@ public class EthernetCard extends AbstractPCIDevice
         return 0x00;
     }
 
+    /**
+     * Returns how many remote DMA elements can be moved in one go: whole words
+     * or longs from an even address in packet memory, stopping where the
+     * remote byte count runs out or the ring wraps, so a single
+     * <code>dmaUpdate</code> leaves things as the separate accesses would.
+     */
+    private int asicBlockElements(int size, int count)
+    {
+        if ((size == 2) && (0 == (dcfg & 0x01)))
+            return 0;
+        if ((rcnt <= 0) || ((rsar & 1) != 0) || (rsar < NE2000_PMEM_START))
+            return 0;
+        int end = (rsar < stop) ? Math.min(stop, NE2000_MEM_SIZE) : NE2000_MEM_SIZE;
+        return Math.max(0, Math.min(count, Math.min(end - rsar, rcnt) / size));
+    }
+
+    private int asicIOPortReadBlock(Memory target, int offset, int size, int count)
+    {
+        int elements = this.asicBlockElements(size, count);
+        if (elements == 0)
+            return 0;
+        int length = elements * size;
+        target.copyArrayIntoContents(offset, memory, rsar, length);
+        this.dmaUpdate(length);
+        return elements;
+    }
+
+    private int asicIOPortWriteBlock(Memory source, int offset, int size, int count)
+    {
+        int elements = this.asicBlockElements(size, count);
+        if (elements == 0)
+            return 0;
+        int length = elements * size;
+        source.copyContentsIntoArray(offset, memory, rsar, length);
+        this.dmaUpdate(length);
+        return elements;
+    }
+
     private void dmaUpdate(int length)
     {
         rsar += length;
@@ -992,6 +1113,11 @@ public class EthernetCard extends AbstractPCIDevice
     {
         if (packet == null)
             return;
+        receivePacket(packet, packet.length);
+    }
+
+    public void receivePacket(byte[] packet, int length)
+    {
         int totalLen, index, mcastIdx;
 
         if ((command & E8390_STOP) == 1)
@@ -1026,7 +1152,7 @@ public class EthernetCard extends AbstractPCIDevice
             //this is us!
         } else {
             System.out.println("Weird ETH packet recieved");
-            printPacket(packet, 0, packet.length);
+            printPacket(packet, 0, length);
             return;
         }
 
@@ -1034,10 +1160,11 @@ public class EthernetCard extends AbstractPCIDevice
 //        System.out.println("Packet got through");
         index = (curpag & 0xFF) << 8;
         //4 bytes for header
-        totalLen = packet.length + 4;
+        totalLen = length + 4;
         /* address for next packet (4 bytes for CRC) */
         int pages = (totalLen + 4 + 255)/256;
-        int next = curpag + pages;
+        int current = curpag & 0xFF;
+        int next = current + pages;
 //        int avail;
         //don't emulate partial receives
 //        if (avail < pages)
@@ -1059,16 +1186,16 @@ public class EthernetCard extends AbstractPCIDevice
         index += 4;
 
         //write packet data
-        if ((next > curpag) || (curpag + pages == stop))
+        if ((next > current) || (current + pages == stop))
         {
-            System.arraycopy(packet, 0, memory, index, packet.length);
+            System.arraycopy(packet, 0, memory, index, length);
             System.arraycopy(phys, 0, memory, index, 6);
         } else
         {
-            int endSize = (stop - curpag) << 8;
+            int endSize = (stop - current) << 8;
             System.arraycopy(packet, 0, memory, index, endSize - 4);
             int startIndex = start * 256;
-            System.arraycopy(packet, endSize -4, memory, startIndex, packet.length + 4 - (endSize - 4));
+            System.arraycopy(packet, endSize -4, memory, startIndex, length - (endSize - 4));
         }
         curpag = (byte) next;
         //signal that we have a packet
@@ -0,0 +1,174 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package org.jpc.emulator.pci.peripheral;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import org.jpc.j2se.PCMonitor;
+
+/**
+ * VGA card which renders into a plain pixel array with no attached monitor.
+ * <p>
+ * The display is divided into square tiles, and every region the line and
+ * character drawers redraw marks the tiles it covers in a bitmap.  A remote
+ * display runs <code>updateDisplay</code> on its own thread, holding the
+ * card's monitor, and then collects the dirty tiles so that only those need
+ * be encoded and sent.
+ * @author Ian Preston
+ */
+public final class HeadlessVGACard extends VGACard
+{
+    private static final Logger LOGGING = Logger.getLogger(HeadlessVGACard.class.getName());
+
+    public static final int TILE_SHIFT = 4;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    private int[] rawImageData;
+    private int width, height;
+    private int tilesX, tilesY;
+    private long[] dirtyTiles;
+    private int resizeCount;
+
+    public HeadlessVGACard()
+    {
+        resizeDisplay(720, 480);
+    }
+
+    /**
+     * A headless card has no monitor to drive, so the monitor is ignored and
+     * the display stays in the card's own pixel array.
+     */
+    public void setMonitor(PCMonitor mon)
+    {
+        LOGGING.log(Level.WARNING, "ignoring monitor attached to a headless VGA card");
+    }
+
+    protected int rgbToPixel(int red, int green, int blue)
+    {
+        return ((0xFF & red) << 16) | ((0xFF & green) << 8) | (0xFF & blue);
+    }
+
+    public synchronized void resizeDisplay(int width, int height)
+    {
+        if ((width == 0) || (height == 0))
+            return;
+        this.width = width;
+        this.height = height;
+        rawImageData = new int[width * height];
+
+        tilesX = (width + TILE_SIZE - 1) >>> TILE_SHIFT;
+        tilesY = (height + TILE_SIZE - 1) >>> TILE_SHIFT;
+        dirtyTiles = new long[(tilesX * tilesY + 63) >>> 6];
+        resizeCount++;
+        dirtyDisplayRegion(0, 0, width, height);
+    }
+
+    public synchronized Dimension getDisplaySize()
+    {
+        return new Dimension(width, height);
+    }
+
+    /**
+     * Returns the number of times the display has changed size, so that a
+     * reader can tell when the pixel array has been replaced.
+     */
+    public synchronized int getResizeCount()
+    {
+        return resizeCount;
+    }
+
+    public int[] getDisplayBuffer()
+    {
+        return rawImageData;
+    }
+
+    public int getTilesX()
+    {
+        return tilesX;
+    }
+
+    public int getTilesY()
+    {
+        return tilesY;
+    }
+
+    protected void dirtyDisplayRegion(int x, int y, int w, int h)
+    {
+        int x1 = Math.max(0, x) >>> TILE_SHIFT;
+        int y1 = Math.max(0, y) >>> TILE_SHIFT;
+        int x2 = Math.min(tilesX - 1, (x + w - 1) >>> TILE_SHIFT);
+        int y2 = Math.min(tilesY - 1, (y + h - 1) >>> TILE_SHIFT);
+        for (int ty = y1; ty <= y2; ty++)
+            for (int tx = x1; tx <= x2; tx++) {
+                int tile = ty * tilesX + tx;
+                dirtyTiles[tile >>> 6] |= 1L << tile;
+            }
+    }
+
+    /**
+     * Runs a display update and ORs the tiles it redrew into
+     * <code>tiles</code>, clearing them here.
+     * @param tiles bitmap of <code>getTilesX() * getTilesY()</code> tiles
+     * numbered row by row
+     * @return <code>true</code> if any tile was redrawn
+     */
+    public synchronized boolean refresh(long[] tiles)
+    {
+        updateDisplay();
+        boolean dirty = false;
+        int len = Math.min(tiles.length, dirtyTiles.length);
+        for (int i = 0; i < len; i++) {
+            if (dirtyTiles[i] == 0)
+                continue;
+            tiles[i] |= dirtyTiles[i];
+            dirtyTiles[i] = 0;
+            dirty = true;
+        }
+        return dirty;
+    }
+
+    public synchronized void saveScreenshot()
+    {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, rawImageData, 0, width);
+        try
+        {
+            ImageIO.write(image, "png", new File("Screenshot.png"));
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+}
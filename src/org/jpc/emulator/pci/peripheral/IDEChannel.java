@@ -34,27 +34,39 @@
 package org.jpc.emulator.pci.peripheral;
 
 import org.jpc.emulator.motherboard.*;
+import org.jpc.emulator.memory.Memory;
+import org.jpc.j2se.Option;
 import org.jpc.support.BlockDevice;
+import org.jpc.support.Clock;
 import org.jpc.emulator.*;
 
 import java.io.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 /**
  * 
  * @author Chris Dennis
  */
-class IDEChannel extends AbstractHardwareComponent implements IODevice {
+class IDEChannel extends AbstractHardwareComponent implements BlockIODevice {
 
     private static final Logger LOGGING = Logger.getLogger(IDEChannel.class.getName());
+    private static final boolean ASYNC_DMA = !Option.deterministic.isSet();
+    private static final long DMA_LATENCY_NANOS = 100000;
+    private static final long DMA_SECTOR_NANOS = 2000;
+    private static ExecutorService dmaExecutor;
     private IDEState[] devices;
     private IDEState currentDevice;
     private int ioBase,  ioBaseTwo,  irq;
     private InterruptController irqDevice;
     private int nextDriveSerial;
+    private Clock clock;
     public static final String CDLABEL = "CDROM";//"JPC CD-ROM";
 
     public void saveState(DataOutput output) throws IOException {
+        for (IDEState device : devices) {
+            device.completeDMA();
+        }
         output.writeInt(ioBase);
         output.writeInt(ioBaseTwo);
         output.writeInt(irq);
@@ -156,6 +168,37 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
         devices[1].setDrive(drives[1]);
     }
 
+    /**
+     * Connects the clock which times the completion of DMA transfers. Until
+     * then, and always with <code>-deterministic</code>, the disk is read or
+     * written synchronously as the transfer starts; otherwise it happens on
+     * a worker thread while the guest carries on, and the transfer
+     * completes at a fixed emulated time after it started.
+     * @param clock the emulated clock
+     */
+    public void setClock(Clock clock) {
+        if (!ASYNC_DMA || (this.clock == clock)) {
+            return;
+        }
+        this.clock = clock;
+        for (IDEState device : devices) {
+            device.dmaTimer = clock.newTimer(device);
+        }
+    }
+
+    private static synchronized ExecutorService getDMAExecutor() {
+        if (dmaExecutor == null) {
+            dmaExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "IDE DMA");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return dmaExecutor;
+    }
+
     public void ioPortWrite8(int address, int data) {
         if (address == ioBaseTwo) {
             writeCommand(data);
@@ -226,6 +269,38 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
         }
     }
 
+    public int ioPortReadBlock8(int address, Memory memory, int offset, int count) {
+        return 0;
+    }
+
+    public int ioPortReadBlock16(int address, Memory memory, int offset, int count) {
+        if ((address - ioBase) > 1)
+            return 0;
+        return readDataBlock(memory, offset, 2, count);
+    }
+
+    public int ioPortReadBlock32(int address, Memory memory, int offset, int count) {
+        if ((address - ioBase) > 3)
+            return 0;
+        return readDataBlock(memory, offset, 4, count);
+    }
+
+    public int ioPortWriteBlock8(int address, Memory memory, int offset, int count) {
+        return 0;
+    }
+
+    public int ioPortWriteBlock16(int address, Memory memory, int offset, int count) {
+        if ((address - ioBase) > 1)
+            return 0;
+        return writeDataBlock(memory, offset, 2, count);
+    }
+
+    public int ioPortWriteBlock32(int address, Memory memory, int offset, int count) {
+        if ((address - ioBase) > 3)
+            return 0;
+        return writeDataBlock(memory, offset, 4, count);
+    }
+
     public int[] ioPortsRequested() {
         if (ioBaseTwo == 0) {
             return new int[]{ioBase, ioBase + 1,
@@ -248,6 +323,8 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
         if (((devices[0].command & IDEState.IDE_CMD_RESET) == 0) &&
                 ((data & IDEState.IDE_CMD_RESET) != 0)) {
             /* reset low to high */
+            devices[0].abandonDMA();
+            devices[1].abandonDMA();
             devices[0].status = (byte) (IDEState.BUSY_STAT | IDEState.SEEK_STAT);
             devices[0].error = 0x01;
             devices[1].status = (byte) (IDEState.BUSY_STAT | IDEState.SEEK_STAT);
@@ -336,6 +413,7 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
                 if (currentDevice != devices[0] && currentDevice.drive == null) {
                     break;
                 }
+                currentDevice.abandonDMA();
                 switch (data) {
                     case IDEState.WIN_IDENTIFY:
                         if ((currentDevice.drive != null) && !currentDevice.isCDROM) {
@@ -685,13 +763,46 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
         }
     }
 
+    /**
+     * Moves whole elements between the data buffer and memory, stopping at
+     * the end of the current transfer so that whatever that starts is seen
+     * by the next element exactly as it would be by single accesses.
+     */
+    private int readDataBlock(Memory memory, int offset, int size, int count) {
+        int elements = Math.min(count, (currentDevice.dataBufferEnd - currentDevice.dataBufferOffset) / size);
+        if (elements <= 0)
+            return 0;
+        int length = elements * size;
+        memory.copyArrayIntoContents(offset, currentDevice.dataBuffer, currentDevice.dataBufferOffset, length);
+        currentDevice.dataBufferOffset += length;
+
+        if (currentDevice.dataBufferOffset >= currentDevice.dataBufferEnd) {
+            currentDevice.endTransfer(currentDevice.endTransferFunction);
+        }
+        return elements;
+    }
+
+    private int writeDataBlock(Memory memory, int offset, int size, int count) {
+        int elements = Math.min(count, (currentDevice.dataBufferEnd - currentDevice.dataBufferOffset) / size);
+        if (elements <= 0)
+            return 0;
+        int length = elements * size;
+        memory.copyContentsIntoArray(offset, currentDevice.dataBuffer, currentDevice.dataBufferOffset, length);
+        currentDevice.dataBufferOffset += length;
+
+        if (currentDevice.dataBufferOffset >= currentDevice.dataBufferEnd) {
+            currentDevice.endTransfer(currentDevice.endTransferFunction);
+        }
+        return elements;
+    }
+
     private void clearHob() {
         /* any write clears HOB high bit of device control register */
         devices[0].select &= ~(1 << 7);
         devices[1].select &= ~(1 << 7);
     }
 
-    class IDEState implements Hibernatable {
+    class IDEState implements Hibernatable, TimerResponsive {
         /* Bits of HD_STATUS */
 
         public static final int ERR_STAT = 0x01;
@@ -921,6 +1032,8 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
 
         /* set to 1 set disable mult support */
         public static final int MAX_MULT_SECTORS = 16;
+        public static final int MAX_DMA_SECTORS = 128;
+        public static final int DMA_PENDING = -1;
 
         /* ATAPI defines */
         public static final int ATAPI_PACKET_SIZE = 12;
@@ -1050,6 +1163,14 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
         public byte[] ioBuffer;
         private int ioBufferSize;
         private int ioBufferIndex;
+        private byte[] dmaBuffer;
+        private byte[] dmaSource;
+        private Timer dmaTimer;
+        private Future<?> dmaIO;
+        private boolean dmaIOWrite;
+        private byte[] asyncBuffer;
+        private long asyncSector;
+        private boolean prefetched;
         public byte[] dataBuffer;
         public int dataBufferOffset;
         public int dataBufferEnd;
@@ -1187,8 +1308,10 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
             switch (ideDMAFunction) {
                 case IDF_ATAPI_READ_DMA_CB:
                     return atapiCommandReadDMACallback(address, size);
-//                case IDF_READ_DMA_CB:
-//                    return readDMACallback(address, size);
+                case IDF_READ_DMA_CB:
+                    return readDMACallback(address, size);
+                case IDF_WRITE_DMA_CB:
+                    return writeDMACallback(address, size);
                 default:
                     LOGGING.log(Level.WARNING, "Need DMA callback function {0,number,integer}", Integer.valueOf(ideDMAFunction));
                     return 0;
@@ -1285,10 +1408,15 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
         }
 
         public void sectorWriteDMA() {
+            abandonDMA();
             status = READY_STAT | SEEK_STAT | DRQ_STAT;
             int n = nSector;
-            if (n > MAX_MULT_SECTORS) {
-                n = MAX_MULT_SECTORS;
+            if (dmaTimer != null) {
+                // gather the whole transfer so that it can be written in one go
+                dmaSource = new byte[n * 512];
+            } else {
+                n = Math.min(n, MAX_DMA_SECTORS);
+                dmaSource = getDMABuffer();
             }
             ioBufferIndex = 0;
             ioBufferSize = n * 512;
@@ -1296,12 +1424,106 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
         }
 
         public void sectorReadDMA() {
+            abandonDMA();
             status = READY_STAT | SEEK_STAT | DRQ_STAT;
             ioBufferIndex = 0;
             ioBufferSize = 0;
+            prefetched = false;
+            if ((dmaTimer != null) && (nSector > 0)) {
+                // the transfer starts once the whole lot has been read
+                final BlockDevice device = drive;
+                final long first = getSector();
+                final int n = nSector;
+                final byte[] buffer = new byte[n * 512];
+                asyncBuffer = buffer;
+                asyncSector = first;
+                startDMAIO(new Runnable() {
+                    public void run() {
+                        device.read(first, buffer, n);
+                    }
+                }, false, n);
+                return;
+            }
             dmaStart(IDF_READ_DMA_CB);
         }
 
+        private void startDMAIO(Runnable io, boolean write, int sectors) {
+            dmaIOWrite = write;
+            dmaIO = getDMAExecutor().submit(io);
+            dmaTimer.setExpiry(clock.getEmulatedNanos() + DMA_LATENCY_NANOS + sectors * DMA_SECTOR_NANOS);
+        }
+
+        /**
+         * Completes the DMA transfer whose disk I/O was started on a worker
+         * thread, waiting for the I/O if it hasn't finished yet.
+         */
+        public void callback() {
+            Future<?> io = dmaIO;
+            if (io == null) {
+                return;
+            }
+            dmaIO = null;
+            waitForDMAIO(io);
+
+            if (dmaIOWrite) {
+                status = READY_STAT | SEEK_STAT;
+                setIRQ();
+                bmdma.endTransfer();
+            } else {
+                prefetched = true;
+                dmaStart(IDF_READ_DMA_CB);
+            }
+        }
+
+        public int getType() {
+            return 6;
+        }
+
+        private void waitForDMAIO(Future<?> io) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    io.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    LOGGING.log(Level.WARNING, "DMA disk I/O failed", e.getCause());
+                    break;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Drops any transfer still waiting on its disk I/O, as a reset or a
+         * new command does.  Its completion is never signalled, but the I/O
+         * itself is waited for so that it can't overlap or be reordered with
+         * whatever the drive does next.
+         */
+        void abandonDMA() {
+            Future<?> io = dmaIO;
+            if (io == null) {
+                return;
+            }
+            dmaIO = null;
+            dmaTimer.disable();
+            waitForDMAIO(io);
+        }
+
+        /**
+         * Finishes any transfer still waiting on its disk I/O straight away,
+         * so that no state is held outside what is saved.
+         */
+        void completeDMA() {
+            if (dmaIO != null) {
+                dmaTimer.disable();
+                callback();
+            }
+        }
+
         public void sectorWrite() {
             status = READY_STAT | SEEK_STAT;
             long sectorNumber = getSector();
@@ -1497,6 +1719,7 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
         }
 
         public void reset() {
+            abandonDMA();
             multSectors = MAX_MULT_SECTORS;
             select = (byte) 0xa0;
             status = READY_STAT;
@@ -1928,37 +2151,110 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
             }
         }
 
+        private byte[] getDMABuffer() {
+            if (dmaBuffer == null) {
+                dmaBuffer = new byte[MAX_DMA_SECTORS * 512];
+            }
+            return dmaBuffer;
+        }
+
+        /**
+         * Moves data read from the disk into the guest buffer described by
+         * one physical region descriptor, reading as many sectors as the
+         * transfer has left (up to a whole buffer full) with one device call.
+         */
         private int readDMACallback(int address, int size) {
             int originalSize = size;
-            packetTransferSize = size;
-	    while (size > 0) {
-		if (packetTransferSize <= 0)
-		    break;
-		int length = drive.SECTOR_SIZE - ioBufferIndex;
-		if (length <= 0) {
-		    ioBufferIndex = 0;
-		    length = drive.SECTOR_SIZE;
-		}
-		if (length > size)
-		    length = size;
-                int start = nSector;
-                sectorRead();
-                int end = nSector;
-		bmdma.writeMemory(address, ioBuffer, ioBufferIndex, 512*(start-end));
-		packetTransferSize -= length;
-		ioBufferIndex += length;
-		size -= length;
-		address += length;
-	    }
-
-	    if (packetTransferSize <= 0) {
-		status = READY_STAT | SEEK_STAT;
-		nSector = (nSector & ~0x7);
-		setIRQ();
-		return 0;
-	    }
-
-	    return originalSize - size;
+            while (size > 0) {
+                int length = ioBufferSize - ioBufferIndex;
+                if (length <= 0) {
+                    int n = prefetched ? nSector : Math.min(nSector, MAX_DMA_SECTORS);
+                    if (n == 0) {
+                        break;
+                    }
+                    long sectorNumber = getSector();
+                    if (prefetched) {
+                        dmaSource = asyncBuffer;
+                        ioBufferIndex = (int) (sectorNumber - asyncSector) * 512;
+                    } else {
+                        dmaSource = getDMABuffer();
+                        drive.read(sectorNumber, dmaSource, n);
+                        ioBufferIndex = 0;
+                    }
+                    ioBufferSize = ioBufferIndex + n * 512;
+                    setSector(sectorNumber + n);
+                    nSector -= n;
+                    length = n * 512;
+                }
+                if (length > size) {
+                    length = size;
+                }
+                bmdma.writeMemory(address, dmaSource, ioBufferIndex, length);
+                ioBufferIndex += length;
+                size -= length;
+                address += length;
+            }
+
+            if ((ioBufferIndex >= ioBufferSize) && (nSector == 0)) {
+                prefetched = false;
+                status = READY_STAT | SEEK_STAT;
+                setIRQ();
+                return 0;
+            }
+            return originalSize - size;
+        }
+
+        /**
+         * Gathers data for the disk from the guest buffer described by one
+         * physical region descriptor, writing each full buffer out with one
+         * device call.
+         */
+        private int writeDMACallback(int address, int size) {
+            if ((dmaSource == null) || (dmaSource.length < ioBufferSize)) {
+                // restored from a snapshot taken before the transfer started
+                dmaSource = new byte[Math.max(ioBufferSize, MAX_DMA_SECTORS * 512)];
+            }
+            byte[] buffer = dmaSource;
+            int originalSize = size;
+            while (true) {
+                int length = ioBufferSize - ioBufferIndex;
+                if (length == 0) {
+                    final int n = ioBufferSize >>> 9;
+                    final long sectorNumber = getSector();
+                    setSector(sectorNumber + n);
+                    nSector -= n;
+                    if ((dmaTimer != null) && (n > 0)) {
+                        final BlockDevice device = drive;
+                        final byte[] data = buffer;
+                        startDMAIO(new Runnable() {
+                            public void run() {
+                                device.write(sectorNumber, data, n);
+                            }
+                        }, true, n);
+                        return DMA_PENDING;
+                    }
+                    drive.write(sectorNumber, buffer, n);
+                    if (nSector == 0) {
+                        status = READY_STAT | SEEK_STAT;
+                        setIRQ();
+                        return 0;
+                    }
+                    ioBufferIndex = 0;
+                    ioBufferSize = Math.min(nSector, MAX_DMA_SECTORS) * 512;
+                    length = ioBufferSize;
+                }
+                if (size <= 0) {
+                    break;
+                }
+                if (length > size) {
+                    length = size;
+                }
+                bmdma.readMemory(address, buffer, ioBufferIndex, length);
+                ioBufferIndex += length;
+                size -= length;
+                address += length;
+            }
+            return originalSize - size;
         }
 
         private int atapiCommandReadDMACallback(int address, int size) {
@@ -2103,11 +2399,6 @@ class IDEChannel extends AbstractHardwareComponent implements IODevice {
             return bufferOffset;
         }
 
-        private void hdReadSector(long sector, byte[] buffer, int sectorSize) {
-            drive.read(sector, buffer, 1);
-            System.out.println("DMA reading sector: " + sector);
-        }
-
         private void cdReadSector(int lba, byte[] buffer, int sectorSize) {
             switch (sectorSize) {
                 case 2048:
@@ -58,6 +58,8 @@ public class PIIX3IDEInterface extends AbstractPCIDevice
 
     private BlockDevice[] drives;
 
+    private Clock clock;
+
     public PIIX3IDEInterface()
     {
 	devfnSet = false;
@@ -181,6 +183,14 @@ public class PIIX3IDEInterface extends AbstractPCIDevice
 
     private boolean devfnSet;
 
+    private void connectClock()
+    {
+        if ((clock == null) || (channels[0] == null))
+            return;
+        channels[0].setClock(clock);
+        channels[1].setClock(clock);
+    }
+
     public boolean updated()
     {
 	return ioportRegistered && pciRegistered && dmaRegistered && irqDevice.updated() && drivesUpdated;
@@ -198,6 +208,11 @@ public class PIIX3IDEInterface extends AbstractPCIDevice
             ioportRegistered = true;
         }
 
+        if ((component instanceof Clock) && component.updated()) {
+            clock = (Clock) component;
+        }
+        connectClock();
+
         if ((component instanceof PCIBus) && component.updated() && !pciRegistered && devfnSet) {
             pciRegistered = ((PCIBus) component).registerDevice(this);
         }
@@ -237,6 +252,10 @@ public class PIIX3IDEInterface extends AbstractPCIDevice
             ((IOPortHandler)component).registerIOPortCapable(channels[1]);
             ioportRegistered = true;
         }
+
+	if ((component instanceof Clock) && component.initialised())
+	    clock = (Clock)component;
+	connectClock();
 	
 	if ((component instanceof PCIBus) && component.initialised() && !pciRegistered && devfnSet) {
 	    pciRegistered = ((PCIBus)component).registerDevice(this);
@@ -3,12 +3,13 @@ package org.jpc.emulator.peripheral;
 import org.jpc.emulator.AbstractHardwareComponent;
 import org.jpc.emulator.HardwareComponent;
 import org.jpc.emulator.motherboard.*;
+import org.jpc.emulator.memory.Memory;
 import org.jpc.j2se.Option;
 import org.jpc.support.Clock;
 
 import java.util.logging.*;
 
-public class SBlaster extends AbstractHardwareComponent implements IODevice
+public class SBlaster extends AbstractHardwareComponent implements BlockIODevice
 {
     private static final Logger Log = Logger.getLogger(SBlaster.class.getName());
     private static InterruptController irqDevice;
@@ -1688,6 +1689,44 @@ public class SBlaster extends AbstractHardwareComponent implements IODevice
             }
     }
 
+    public int ioPortReadBlock8(int port, Memory memory, int offset, int count)
+    {
+        if (port-sb.hw.base != DSP_READ_DATA)
+            return 0;
+        for (int i=0;i<count;i++)
+            memory.setByte(offset+i, (byte)DSP_ReadData());
+        return count;
+    }
+
+    public int ioPortReadBlock16(int port, Memory memory, int offset, int count)
+    {
+        return 0;
+    }
+
+    public int ioPortReadBlock32(int port, Memory memory, int offset, int count)
+    {
+        return 0;
+    }
+
+    public int ioPortWriteBlock8(int port, Memory memory, int offset, int count)
+    {
+        if (port-sb.hw.base != DSP_WRITE_DATA)
+            return 0;
+        for (int i=0;i<count;i++)
+            DSP_DoWrite((short)(memory.getByte(offset+i) & 0xff));
+        return count;
+    }
+
+    public int ioPortWriteBlock16(int port, Memory memory, int offset, int count)
+    {
+        return 0;
+    }
+
+    public int ioPortWriteBlock32(int port, Memory memory, int offset, int count)
+    {
+        return 0;
+    }
+
     public int[] ioPortsRequested()
     {
         int base = sb.hw.base;
@@ -85,7 +85,7 @@ class DescriptorTableSegment extends Segment
         if ((0xffffffffL & offset) > limit)
         {
             System.out.println("Offset beyond end of Descriptor Table Segment: Offset=" + Integer.toHexString(offset) + ", limit=" + Long.toHexString(limit));
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, offset, true);
+            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, offset);
         }
     }
 
@@ -0,0 +1,101 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.emulator.processor;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counters of the faults and mode switches taken by the processor.
+ * <p>
+ * Counts are cumulative over the life of the JVM; the summary reports the
+ * rate of each since it was last asked for.
+ * @author Ian Preston
+ */
+public final class FaultStatistics
+{
+    private static final ProcessorException.Type[] types = ProcessorException.Type.values();
+    private static final LongAdder[] faults = new LongAdder[types.length];
+    private static final LongAdder modeSwitches = new LongAdder();
+    static {
+        for (int i = 0; i < faults.length; i++)
+            faults[i] = new LongAdder();
+    }
+
+    private static final long[] lastCounts = new long[types.length + 1];
+    private static long lastNanos = System.nanoTime();
+
+    private FaultStatistics()
+    {
+    }
+
+    static void fault(ProcessorException e)
+    {
+        faults[e.getType().ordinal()].increment();
+    }
+
+    static void modeSwitch()
+    {
+        modeSwitches.increment();
+    }
+
+    public static long getFaultCount(ProcessorException.Type type)
+    {
+        return faults[type.ordinal()].sum();
+    }
+
+    public static long getModeSwitchCount()
+    {
+        return modeSwitches.sum();
+    }
+
+    /**
+     * Returns the number of each type of fault, and of mode switches, per
+     * second since the last call, leaving out any that haven't happened.
+     * @return fault rate summary
+     */
+    public static synchronized String getSummary()
+    {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastNanos) / 1000000000.0;
+        lastNanos = now;
+
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i <= types.length; i++) {
+            long count = (i < types.length) ? faults[i].sum() : modeSwitches.sum();
+            long delta = count - lastCounts[i];
+            lastCounts[i] = count;
+            if (delta == 0)
+                continue;
+            if (summary.length() > 0)
+                summary.append(' ');
+            summary.append((i < types.length) ? types[i].toString() : "MODE_SWITCH");
+            summary.append('=').append(Math.round(10 * delta / seconds) / 10.0).append("/s");
+        }
+        return summary.toString();
+    }
+}
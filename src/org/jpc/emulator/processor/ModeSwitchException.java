@@ -22,6 +22,11 @@ public class ModeSwitchException extends RuntimeException
         return x86Count;
     }
 
+    public Throwable fillInStackTrace()
+    {
+        return this;
+    }
+
     public String toString()
     {
         if (this == REAL_MODE_EXCEPTION)
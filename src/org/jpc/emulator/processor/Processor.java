@@ -37,6 +37,7 @@ import org.jpc.support.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.*;
 import static org.jpc.emulator.execution.Executable.*;
 import static org.jpc.emulator.execution.UCodes.*;
@@ -701,12 +702,12 @@ public class Processor implements HardwareComponent
         Segment returnSegment = getSegment(newCS);
 
         if (returnSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         switch (returnSegment.getType()) {
             default:
                 LOGGING.log(Level.WARNING, "Invalid segment type {0,number,integer}", Integer.valueOf(returnSegment.getType()));
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newCS, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newCS);
 
             case 0x18: //Code, Execute-Only
             case 0x19: //Code, Execute-Only, Accessed
@@ -714,10 +715,10 @@ public class Processor implements HardwareComponent
             case 0x1b: //Code, Execute/Read, Accessed
             {
                 if (returnSegment.getRPL() < getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newCS);
 
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, newCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, newCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -734,10 +735,10 @@ public class Processor implements HardwareComponent
 
                     if ((returnStackSegment.getRPL() != returnSegment.getRPL()) || ((returnStackSegment.getType() & 0x12) != 0x12) ||
                             (returnStackSegment.getDPL() != returnSegment.getRPL()))
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newSS, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newSS);
 
                     if (!returnStackSegment.isPresent())
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newSS, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newSS);
 
                     returnSegment.checkAddress(newEIP);
 
@@ -830,13 +831,13 @@ public class Processor implements HardwareComponent
             case 0x1f: //Code: Execute/Read, Conforming, Accessed
             {
                 if (returnSegment.getRPL() < getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newCS);
 
                 if (returnSegment.getDPL() > returnSegment.getRPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newCS);
 
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, newCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, newCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -1008,7 +1009,7 @@ public class Processor implements HardwareComponent
 
         Segment s = getSegment(selector, isStack);
         if (!s.isPresent())
-            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, selector, true);
+            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, selector);
         return s;
     }
 
@@ -1387,6 +1388,7 @@ public class Processor implements HardwareComponent
     public IOPortHandler ioports;
 
     private volatile int interruptFlags;
+    private volatile Thread haltedThread;
     private InterruptController interruptController;
     private boolean alignmentChecking;
 
@@ -1476,21 +1478,21 @@ public class Processor implements HardwareComponent
         int tempCS = 0xFFFF & stack16(2);
 
         if ((tempCS & 0xfffc) == 0)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         Segment returnSegment = getSegment(tempCS);
         if (returnSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         if (returnSegment.getRPL() < getCPL())
         {
             System.out.println("RPL too small in far ret: RPL=" + returnSegment.getRPL() + ", CPL=" + getCPL() + ", new CS=" + Integer.toHexString(tempCS));
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS & 0xfffc, true);
+            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS & 0xfffc);
         }
 
         switch (returnSegment.getType()) {
             default:
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
             case 0x18: //Code, Execute-Only
             case 0x19: //Code, Execute-Only, Accessed
@@ -1498,7 +1500,7 @@ public class Processor implements HardwareComponent
             case 0x1b: //Code, Execute/Read, Accessed
             {
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, tempCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -1512,16 +1514,16 @@ public class Processor implements HardwareComponent
                     int newSS = 0xffff & stack16(6 + stackdelta);
 
                     if ((newSS & 0xfffc) == 0)
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+                        throw ProcessorException.GENERAL_PROTECTION_0;
 
                     Segment returnStackSegment = getSegment(newSS, true);
 
                     if ((returnStackSegment.getRPL() != returnSegment.getRPL()) || ((returnStackSegment.getType() & 0x12) != 0x12) ||
                             (returnStackSegment.getDPL() != returnSegment.getRPL()))
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newSS & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newSS & 0xfffc);
 
                     if (!returnStackSegment.isPresent())
-                        throw new ProcessorException(ProcessorException.Type.STACK_SEGMENT, newSS & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.STACK_SEGMENT, newSS & 0xfffc);
 
                     returnSegment.checkAddress(tempEIP);
 
@@ -1608,10 +1610,10 @@ public class Processor implements HardwareComponent
             case 0x1f: //Code: Execute/Read, Conforming, Accessed
             {
                 if (returnSegment.getDPL() > returnSegment.getRPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, tempCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -1638,11 +1640,11 @@ public class Processor implements HardwareComponent
         Segment returnSegment = getSegment(tempCS);
 
         if (returnSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         switch (returnSegment.getType()) {
             default:
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
             case 0x18: //Code, Execute-Only
             case 0x19: //Code, Execute-Only, Accessed
@@ -1650,10 +1652,10 @@ public class Processor implements HardwareComponent
             case 0x1b: //Code, Execute/Read, Accessed
             {
                 if (returnSegment.getRPL() < getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, tempCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -1661,21 +1663,21 @@ public class Processor implements HardwareComponent
                     int tmpSP = 0xffff & stack16(4 + stackdelta);
 
                     if ((tmpSS & 0xfffc) == 0)
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+                        throw ProcessorException.GENERAL_PROTECTION_0;
 
                     Segment newStack = getSegment(tmpSS, true);
 
                     if (newStack.getRPL() != returnSegment.getRPL())
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tmpSS & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tmpSS & 0xfffc);
 
                     if (!((ProtectedModeSegment)newStack).isDataWritable() || ((ProtectedModeSegment)newStack).isCode())
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tmpSS & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tmpSS & 0xfffc);
 
                     if (newStack.getDPL() != returnSegment.getRPL())
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tmpSS & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tmpSS & 0xfffc);
 
                     if (!newStack.isPresent())
-                        throw new ProcessorException(ProcessorException.Type.STACK_SEGMENT, tmpSS & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.STACK_SEGMENT, tmpSS & 0xfffc);
 
                     // commit cs and eip
                     returnSegment.checkAddress(tempEIP);
@@ -1704,13 +1706,13 @@ public class Processor implements HardwareComponent
             case 0x1f: //Code: Execute/Read, Conforming, Accessed
             {
                 if (returnSegment.getRPL() < getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (returnSegment.getDPL() > returnSegment.getRPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, tempCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -1743,11 +1745,11 @@ public class Processor implements HardwareComponent
         Segment returnSegment = getSegment(tempCS);
 
         if (returnSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         switch (returnSegment.getType()) {
             default:
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
             case 0x18: //Code, Execute-Only
             case 0x19: //Code, Execute-Only, Accessed
@@ -1755,10 +1757,10 @@ public class Processor implements HardwareComponent
             case 0x1b: //Code, Execute/Read, Accessed
             {
                 if (returnSegment.getRPL() < getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, tempCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -1781,13 +1783,13 @@ public class Processor implements HardwareComponent
             case 0x1f: //Code: Execute/Read, Conforming, Accessed
             {
                 if (returnSegment.getRPL() < getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (returnSegment.getDPL() > returnSegment.getRPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, tempCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -1820,11 +1822,11 @@ public class Processor implements HardwareComponent
         Segment returnSegment = getSegment(tempCS);
 
         if (returnSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         switch (returnSegment.getType()) {
             default:
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
             case 0x18: //Code, Execute-Only
             case 0x19: //Code, Execute-Only, Accessed
@@ -1832,10 +1834,10 @@ public class Processor implements HardwareComponent
             case 0x1b: //Code, Execute/Read, Accessed
             {
                 if (returnSegment.getRPL() < getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, tempCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -1852,10 +1854,10 @@ public class Processor implements HardwareComponent
 
                     if ((returnStackSegment.getRPL() != returnSegment.getRPL()) || ((returnStackSegment.getType() & 0x12) != 0x12) ||
                             (returnStackSegment.getDPL() != returnSegment.getRPL()))
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempSS, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempSS);
 
                     if (!returnStackSegment.isPresent())
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempSS, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempSS);
 
                     returnSegment.checkAddress(tempEIP);
 
@@ -1883,13 +1885,13 @@ public class Processor implements HardwareComponent
             case 0x1f: //Code: Execute/Read, Conforming, Accessed
             {
                 if (returnSegment.getRPL() < getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (returnSegment.getDPL() > returnSegment.getRPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, tempCS);
 
                 if (!(returnSegment.isPresent()))
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, tempCS, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, tempCS);
 
                 if (returnSegment.getRPL() > getCPL()) {
                     //OUTER PRIVILEGE-LEVEL
@@ -1986,10 +1988,10 @@ public class Processor implements HardwareComponent
         ProtectedModeSegment returnSegment = (ProtectedModeSegment) getSegment(newCS);
 
         if (returnSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         if (returnSegment.getRPL() < getCPL())
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newCS & 0xfffc, true);
+            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newCS & 0xfffc);
 
         checkCS(returnSegment, 0, returnSegment.getRPL());
 
@@ -2028,21 +2030,21 @@ public class Processor implements HardwareComponent
 
             int ssSelector = 0xffff & ss.getWord(tmpESP+16);
             if ((ssSelector & 0xfffc) == 0)
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+                throw ProcessorException.GENERAL_PROTECTION_0;
 
             ProtectedModeSegment returnStackSegment = (ProtectedModeSegment) getSegment(ssSelector, true);
 
             if (returnStackSegment.getRPL() != returnSegment.getRPL())
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, ssSelector & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, ssSelector & 0xfffc);
 
             if (returnStackSegment.isCode() || !returnStackSegment.isDataWritable())
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, ssSelector & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, ssSelector & 0xfffc);
 
             if (returnStackSegment.getDPL() != returnSegment.getRPL())
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, ssSelector & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, ssSelector & 0xfffc);
 
             if (!returnStackSegment.isPresent())
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, ssSelector & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, ssSelector & 0xfffc);
 
             int newESP = ss.getDoubleWord(tmpESP+12);
 
@@ -2107,24 +2109,24 @@ public class Processor implements HardwareComponent
     private void checkCS(ProtectedModeSegment newcs, int checkRPL, int checkCPL)
     {
         if (!newcs.isCode())
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newcs.getSelector() & 0xfffc, true);
+            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newcs.getSelector() & 0xfffc);
 
         if (!newcs.isConforming())
         {
             if (newcs.getDPL() != checkCPL)
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newcs.getSelector() & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newcs.getSelector() & 0xfffc);
 
             if (checkRPL > checkCPL)
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newcs.getSelector() & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newcs.getSelector() & 0xfffc);
         }
         else
         {
             if (newcs.getDPL() > checkCPL)
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, newcs.getSelector() & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, newcs.getSelector() & 0xfffc);
         }
 
         if (!newcs.isPresent())
-            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, newcs.getSelector() & 0xfffc, true);
+            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, newcs.getSelector() & 0xfffc);
     }
 
     public void jumpFar_pm(int targetSelector, int targetEIP)
@@ -2132,31 +2134,31 @@ public class Processor implements HardwareComponent
         Segment newSegment = getSegment(targetSelector);
         //System.out.println("Far Jump: new CS: " + newSegment.getClass() + " at " + Integer.toHexString(newSegment.getBase()) + " with selector " + Integer.toHexString(newSegment.getSelector()) + " to address " + Integer.toHexString(targetEIP + newSegment.getBase()));
         if (newSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 	
         switch (newSegment.getType()) { // segment type
             default: // not a valid segment descriptor for a jump
                 LOGGING.log(Level.WARNING, "Invalid segment type {0,number,integer}", Integer.valueOf(newSegment.getType()));
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
             case 0x05: // Task Gate
                 LOGGING.log(Level.WARNING, "Task gate not implemented");
                 throw new IllegalStateException("Execute Failed");
             case 0x0b: // TSS (Busy)
             case 0x09: // TSS (Not Busy)
                 if ((newSegment.getDPL() < getCPL()) || (newSegment.getDPL() < newSegment.getRPL()) )
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
                 if (!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector);
                 if (newSegment.getLimit() < 0x67) // large enough to read ?
-                    throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, targetSelector);
                 if ((newSegment.getType() & 0x2) != 0) // busy ? if yes,error
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
 	    
                 newSegment.getByte(0); // new TSS paged into memory ?
                 tss.getByte(0);// old TSS paged into memory ?
 
                 if (tss.getLimit() < 0x5f)
-                    throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, (tss.getSelector() & 0xfffc), true);
+                    throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, (tss.getSelector() & 0xfffc));
 
                 //save current state into current TSS
                 ((ProtectedModeSegment.AbstractTSS) tss).saveCPUState(this);
@@ -2207,7 +2209,7 @@ public class Processor implements HardwareComponent
                 setCPL(3);
 
                 if((ldtSelector & 0x4) !=0) // not in gdt
-                    throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, ldtSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, ldtSelector);
                 //load ldt
                 if ((ldtSelector & 0xfffc ) != 0)
                 {
@@ -2215,15 +2217,15 @@ public class Processor implements HardwareComponent
                     if((readSupervisorByte(gdtr, ((ldtSelector & ~0x7) + 5 ))& 0xE) != 2) // not a ldt entry
                     {
                         System.out.println("Tried to load LDT in task switch with invalid segment type: 0x"  + Integer.toHexString(readSupervisorByte(gdtr, ((ldtSelector & ~0x7) + 5 )& 0xF)));
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, ldtSelector & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, ldtSelector & 0xfffc);
                     }
 
                     Segment newLdtr=getSegment(ldtSelector); // get new ldt
                     if (!newLdtr.isSystem())
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, ldtSelector & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, ldtSelector & 0xfffc);
 
                     if (!newLdtr.isPresent())
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, ldtSelector & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, ldtSelector & 0xfffc);
 
                     ldtr = newLdtr;
                 }
@@ -2244,24 +2246,24 @@ public class Processor implements HardwareComponent
                     {
                         Segment newSS = getSegment(ssSelector, true);
                         if (newSS.isSystem() || ((ProtectedModeSegment) newSS).isCode() || !((ProtectedModeSegment) newSS).isDataWritable())
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, ssSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, ssSelector & 0xfffc);
 
                         if (!newSS.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.STACK_SEGMENT, ssSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.STACK_SEGMENT, ssSelector & 0xfffc);
 
                         if (newSS.getDPL() != cs.getRPL())
                         {
                             System.out.println("SS.dpl != cs.rpl : " + newSS.getDPL() + "!=" + cs.getRPL());
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, ssSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, ssSelector & 0xfffc);
                         }
 
                         if (newSS.getDPL() != newSS.getRPL())
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, ssSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, ssSelector & 0xfffc);
 
                         ss(newSS);
                     }
                     else
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, ssSelector & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, ssSelector & 0xfffc);
 
                     int newCsRpl = csSelector & 3;
                     //load other data segments
@@ -2272,15 +2274,15 @@ public class Processor implements HardwareComponent
                         if (newDS.isSystem() || (newDS.isCode() && ((newDS.getType() & 2) == 0)))
                         {
                             System.out.println(newDS.isSystem());
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, dsSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, dsSelector & 0xfffc);
                         }
 
                         if (!newDS.isConforming() || newDS.isDataWritable())
                             if ((newDS.getRPL() > newDS.getDPL()) || (newCsRpl > newDS.getDPL()))
-                                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, dsSelector & 0xfffc, true);
+                                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, dsSelector & 0xfffc);
 
                         if (!newDS.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, dsSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, dsSelector & 0xfffc);
 
                         ds(newDS);
                     }
@@ -2289,14 +2291,14 @@ public class Processor implements HardwareComponent
                         ProtectedModeSegment newES = (ProtectedModeSegment) getSegment(esSelector);
 
                         if (newES.isSystem() || (newES.isCode() && ((newES.getType() & 2) == 0)))
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, esSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, esSelector & 0xfffc);
 
                         if (!newES.isConforming() || newES.isDataWritable())
                             if ((newES.getRPL() > newES.getDPL()) || (newCsRpl > newES.getDPL()))
-                                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, esSelector & 0xfffc, true);
+                                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, esSelector & 0xfffc);
 
                         if (!newES.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, esSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, esSelector & 0xfffc);
 
                         es(newES);
                     }
@@ -2305,14 +2307,14 @@ public class Processor implements HardwareComponent
                         ProtectedModeSegment newFS = (ProtectedModeSegment) getSegment(fsSelector);
 
                         if (newFS.isSystem() || (newFS.isCode() && ((newFS.getType() & 2) == 0)))
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, fsSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, fsSelector & 0xfffc);
 
                         if (!newFS.isConforming() || newFS.isDataWritable())
                             if ((newFS.getRPL() > newFS.getDPL()) || (newCsRpl > newFS.getDPL()))
-                                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, fsSelector & 0xfffc, true);
+                                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, fsSelector & 0xfffc);
 
                         if (!newFS.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, fsSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, fsSelector & 0xfffc);
 
                         fs(newFS);
                     }
@@ -2321,14 +2323,14 @@ public class Processor implements HardwareComponent
                         ProtectedModeSegment newGS = (ProtectedModeSegment) getSegment(gsSelector);
 
                         if (newGS.isSystem() || (newGS.isCode() && ((newGS.getType() & 2) == 0)))
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, gsSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, gsSelector & 0xfffc);
 
                         if (!newGS.isConforming() || newGS.isDataWritable())
                             if ((newGS.getRPL() > newGS.getDPL()) || (newCsRpl > newGS.getDPL()))
-                                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, gsSelector & 0xfffc, true);
+                                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, gsSelector & 0xfffc);
 
                         if (!newGS.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, gsSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, gsSelector & 0xfffc);
 
                         gs(newGS);
                     }
@@ -2338,22 +2340,22 @@ public class Processor implements HardwareComponent
                     {
                         Segment newCS = getSegment(csSelector);
                         if (newCS.isSystem() || ((ProtectedModeSegment) newCS).isDataWritable())
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, csSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, csSelector & 0xfffc);
 
                         if (!((ProtectedModeSegment) newCS).isConforming() && (newCS.getDPL() != newCS.getRPL()))
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, csSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, csSelector & 0xfffc);
 
                         if (((ProtectedModeSegment) newCS).isConforming() && (newCS.getDPL() > newCS.getRPL()))
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, csSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, csSelector & 0xfffc);
 
                         if (!newCS.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, csSelector & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, csSelector & 0xfffc);
 
                         cs(newCS);
                         cs.checkAddress(eip);
                     }
                     else
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, csSelector & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, csSelector & 0xfffc);
                 }
 
                 return;
@@ -2366,9 +2368,9 @@ public class Processor implements HardwareComponent
             case 0x1a: // Non-conforming Code Segment
             case 0x1b: { // Non-conforming Code Segment
                 if ((newSegment.getRPL() != getCPL()) || (newSegment.getDPL() > getCPL()))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
                 if (!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector);
 	    
                 newSegment.checkAddress(targetEIP);
                 newSegment.setRPL(getCPL());
@@ -2381,9 +2383,9 @@ public class Processor implements HardwareComponent
             case 0x1e: // Conforming Code Segment (Readable & Not Accessed)
             case 0x1f: { // Conforming Code Segment (Readable & Accessed)
                 if (newSegment.getDPL() > getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
                 if (!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector);
 
                 newSegment.checkAddress(targetEIP);
                 newSegment.setRPL(getCPL());
@@ -2418,13 +2420,13 @@ public class Processor implements HardwareComponent
     {
         Segment newSegment = getSegment(targetSelector);
         if (newSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         switch (newSegment.getType())
         { // segment type
             default: // not a valid segment descriptor for a jump
                 LOGGING.log(Level.WARNING, "Invalid segment type {0,number,integer}", Integer.valueOf(newSegment.getType()));
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
             case 0x01: // TSS 16-bit (Not Busy)
             case 0x03: // TSS 16-bit (Busy)
                 LOGGING.log(Level.WARNING, "16-bit TSS not implemented");
@@ -2432,9 +2434,9 @@ public class Processor implements HardwareComponent
             case 0x04: // Call Gate 16-bit
             {
                 if ((newSegment.getRPL() > getCPL()) || (newSegment.getDPL() < getCPL()))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
                 if (!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector);
 
                 ProtectedModeSegment.GateSegment gate = (ProtectedModeSegment.GateSegment) newSegment;
 
@@ -2444,17 +2446,17 @@ public class Processor implements HardwareComponent
                 try {
                     targetSegment = getSegment(targetSegmentSelector);
                 } catch (ProcessorException e) {
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
                 }
                 if (targetSegment == SegmentFactory.NULL_SEGMENT)
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+                    throw ProcessorException.GENERAL_PROTECTION_0;
 
                 if (targetSegment.getDPL() > getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
 
                 switch (targetSegment.getType()) {
                     default:
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
 
                     case 0x18: //Code, Execute-Only
                     case 0x19: //Code, Execute-Only, Accessed
@@ -2462,7 +2464,7 @@ public class Processor implements HardwareComponent
                     case 0x1b: //Code, Execute/Read, Accessed
                     {
                         if (!targetSegment.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector, true);
+                            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector);
 
                         if (targetSegment.getDPL() < getCPL()) {
                             LOGGING.log(Level.WARNING, "16-bit call gate: jump to more privileged segment not implemented");
@@ -2473,7 +2475,7 @@ public class Processor implements HardwareComponent
                             throw new IllegalStateException("Execute Failed");
                             //SAME-PRIVILEGE
                         } else
-                            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
                     }
 //                            break;
                     case 0x1c: //Code: Execute-Only, Conforming
@@ -2482,7 +2484,7 @@ public class Processor implements HardwareComponent
                     case 0x1f: //Code: Execute/Read, Conforming, Accessed
                     {
                         if (!targetSegment.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector, true);
+                            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector);
 
                         LOGGING.log(Level.WARNING, "16-bit call gate: jump to same privilege conforming segment not implemented");
                         throw new IllegalStateException("Execute Failed");
@@ -2508,9 +2510,9 @@ public class Processor implements HardwareComponent
             case 0x1b: // Non-conforming Code Segment
             {
                 if ((newSegment.getRPL() > getCPL()) || (newSegment.getDPL() != getCPL()))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
                 if (!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector);
 
                 if ((r_esp.get32() < 4) && (r_esp.get32() > 0))
                     throw ProcessorException.STACK_SEGMENT_0;
@@ -2537,17 +2539,17 @@ public class Processor implements HardwareComponent
     public final void call_far_pm_o16_a16(int targetSelector, int targetEIP)
     {
         if ((targetSelector & 0xfffc) == 0)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         Segment newSegment = getSegment(targetSelector);
         if (newSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         switch (newSegment.getType())
         { // segment type
             default: // not a valid segment descriptor for a jump
                 LOGGING.log(Level.WARNING, "Invalid segment type {0,number,integer}", Integer.valueOf(newSegment.getType()));
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
             case 0x01: // TSS 16-bit (Not Busy)
             case 0x03: // TSS 16-bit (Busy)
                 LOGGING.log(Level.WARNING, "16-bit TSS not implemented");
@@ -2555,35 +2557,35 @@ public class Processor implements HardwareComponent
             case 0x04: // Call Gate 16-bit
             {
                 if ((newSegment.getDPL() < newSegment.getRPL()) || (newSegment.getDPL() < getCPL()))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector & 0xfffc);
                 if (!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector & 0xfffc);
 
                 ProtectedModeSegment.CallGate16Bit gate = (ProtectedModeSegment.CallGate16Bit) newSegment;
 
                 int targetSegmentSelector = gate.getTargetSegment();
 
                 if ((targetSegmentSelector & 0xfffc) == 0)
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, 0, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, 0);
 
                 Segment targetSegment;
                 try {
                     targetSegment = getSegment(targetSegmentSelector);
                 } catch (ProcessorException e) {
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc);
                 }
                 if (targetSegment == SegmentFactory.NULL_SEGMENT)
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc);
 
                 if ((targetSegment.getDPL() > getCPL()) || (targetSegment.isSystem()) || ((targetSegment.getType() & 0x18) == 0x10))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc);
 
                 if (!targetSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector & 0xfffc);
 
                 switch (targetSegment.getType()) {
                     default:
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
 
                     case 0x18: //Code, Execute-Only
                     case 0x19: //Code, Execute-Only, Accessed
@@ -2598,7 +2600,7 @@ public class Processor implements HardwareComponent
                             if ((tss.getType() & 0x8) != 0) {
                                 int tssStackAddress = (targetSegment.getDPL() * 8) + 4;
                                 if ((tssStackAddress + 7) > tss.getLimit())
-                                    throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, tss.getSelector(), true);
+                                    throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, tss.getSelector());
 
                                 boolean isSup = linearMemory.isSupervisor();
                                 try {
@@ -2611,29 +2613,29 @@ public class Processor implements HardwareComponent
                             } else {
                                 int tssStackAddress = (targetSegment.getDPL() * 4) + 2;
                                 if ((tssStackAddress + 4) > tss.getLimit())
-                                    throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, tss.getSelector(), true);
+                                    throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, tss.getSelector());
                                 newStackSelector = 0xffff & tss.getWord(tssStackAddress + 2);
                                 newESP = 0xffff & tss.getWord(tssStackAddress);
                             }
 
                             if ((newStackSelector & 0xfffc) == 0)
-                                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, 0, true);
+                                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, 0);
 
                             Segment newStackSegment;
                             try {
                                 newStackSegment = getSegment(newStackSelector, true);
                             } catch (ProcessorException e) {
-                                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newStackSelector, true);
+                                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newStackSelector);
                             }
 
                             if (newStackSegment.getRPL() != targetSegment.getDPL())
-                                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc, true);
+                                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc);
 
                             if ((newStackSegment.getDPL() != targetSegment.getDPL()) || ((newStackSegment.getType() & 0x1a) != 0x12))
-                                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc, true);
+                                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc);
 
                             if (!(newStackSegment.isPresent()))
-                                throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, newStackSelector & 0xfffc, true);
+                                throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, newStackSelector & 0xfffc);
 
                             int parameters = gate.getParameterCount() & 0x1f;
                             if ((newStackSegment.getDefaultSizeFlag() && (r_esp.get32() < 8 + 2 * parameters) && (r_esp.get32() > 0)) ||
@@ -2685,7 +2687,7 @@ public class Processor implements HardwareComponent
                             throw new IllegalStateException("Execute Failed");
                             //SAME-PRIVILEGE
                         } else
-                            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
                     }
                     break;
                     case 0x1c: //Code: Execute-Only, Conforming
@@ -2717,7 +2719,7 @@ public class Processor implements HardwareComponent
             case 0x1b: // Non-conforming Code Segment
             {
                 if(!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, newSegment.getSelector(), true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, newSegment.getSelector());
 
                 if ((r_esp.get32() < 4) && (r_esp.get32() > 0))
                     throw ProcessorException.STACK_SEGMENT_0;
@@ -2752,13 +2754,13 @@ public class Processor implements HardwareComponent
     {
         Segment newSegment = getSegment(targetSelector);
         if (newSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         switch (newSegment.getType())
         { // segment type
             default: // not a valid segment descriptor for a jump
                 LOGGING.log(Level.WARNING, "Invalid segment type {0,number,integer}", Integer.valueOf(newSegment.getType()));
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
             case 0x01: // TSS 16-bit (Not Busy)
             case 0x03: // TSS 16-bit (Busy)
                 LOGGING.log(Level.WARNING, "16-bit TSS not implemented");
@@ -2766,9 +2768,9 @@ public class Processor implements HardwareComponent
             case 0x04: // Call Gate 16-bit
             {
                 if ((newSegment.getRPL() > getCPL()) || (newSegment.getDPL() < getCPL()))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
                 if (!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector);
 
                 ProtectedModeSegment.GateSegment gate = (ProtectedModeSegment.GateSegment) newSegment;
 
@@ -2778,17 +2780,17 @@ public class Processor implements HardwareComponent
                 try {
                     targetSegment = getSegment(targetSegmentSelector);
                 } catch (ProcessorException e) {
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
                 }
                 if (targetSegment == SegmentFactory.NULL_SEGMENT)
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+                    throw ProcessorException.GENERAL_PROTECTION_0;
 
                 if (targetSegment.getDPL() > getCPL())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
 
                 switch (targetSegment.getType()) {
                     default:
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
 
                     case 0x18: //Code, Execute-Only
                     case 0x19: //Code, Execute-Only, Accessed
@@ -2796,7 +2798,7 @@ public class Processor implements HardwareComponent
                     case 0x1b: //Code, Execute/Read, Accessed
                     {
                         if (!targetSegment.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector, true);
+                            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector);
 
                         if (targetSegment.getDPL() < getCPL()) {
                             LOGGING.log(Level.WARNING, "16-bit call gate: jump to more privileged segment not implemented");
@@ -2807,7 +2809,7 @@ public class Processor implements HardwareComponent
                             throw new IllegalStateException("Execute Failed");
                             //SAME-PRIVILEGE
                         } else
-                            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
                     }
 //                            break;
                     case 0x1c: //Code: Execute-Only, Conforming
@@ -2816,7 +2818,7 @@ public class Processor implements HardwareComponent
                     case 0x1f: //Code: Execute/Read, Conforming, Accessed
                     {
                         if (!targetSegment.isPresent())
-                            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector, true);
+                            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector);
 
                         LOGGING.log(Level.WARNING, "16-bit call gate: jump to same privilege conforming segment not implemented");
                         throw new IllegalStateException("Execute Failed");
@@ -2842,9 +2844,9 @@ public class Processor implements HardwareComponent
             case 0x1b: // Non-conforming Code Segment
             {
                 if ((newSegment.getRPL() > getCPL()) || (newSegment.getDPL() != getCPL()))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
                 if (!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector);
 
                 if ((r_esp.get16() & 0xffff) < 8)
                     throw ProcessorException.STACK_SEGMENT_0;
@@ -2872,12 +2874,12 @@ public class Processor implements HardwareComponent
     {
         Segment newSegment = getSegment(targetSelector);
         if (newSegment == SegmentFactory.NULL_SEGMENT)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         switch (newSegment.getType()) { // segment type
             default: // not a valid segment descriptor for a jump
                 LOGGING.log(Level.WARNING, "Invalid segment type {0,number,integer}", Integer.valueOf(newSegment.getType()));
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
             case 0x01: // TSS 16-bit (Not Busy)
             case 0x03: // TSS 16-bit (Busy)
                 LOGGING.log(Level.WARNING, "16-bit TSS not implemented");
@@ -2885,9 +2887,9 @@ public class Processor implements HardwareComponent
             case 0x04: // Call Gate 16-bit
                  {
                     if ((newSegment.getRPL() > getCPL()) || (newSegment.getDPL() < getCPL()))
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
                     if (!newSegment.isPresent())
-                        throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector, true);
+                        throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector);
 
                     ProtectedModeSegment.GateSegment gate = (ProtectedModeSegment.GateSegment) newSegment;
 
@@ -2897,17 +2899,17 @@ public class Processor implements HardwareComponent
                     try {
                         targetSegment = getSegment(targetSegmentSelector);
                     } catch (ProcessorException e) {
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
                     }
                     if (targetSegment == SegmentFactory.NULL_SEGMENT)
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+                        throw ProcessorException.GENERAL_PROTECTION_0;
 
                     if (targetSegment.getDPL() > getCPL())
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
 
                     switch (targetSegment.getType()) {
                         default:
-                            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
 
                         case 0x18: //Code, Execute-Only
                         case 0x19: //Code, Execute-Only, Accessed
@@ -2915,7 +2917,7 @@ public class Processor implements HardwareComponent
                         case 0x1b: //Code, Execute/Read, Accessed
                         {
                             if (!targetSegment.isPresent())
-                                throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector, true);
+                                throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector);
 
                             if (targetSegment.getDPL() < getCPL()) {
                                 LOGGING.log(Level.WARNING, "16-bit call gate: jump to more privileged segment not implemented");
@@ -2926,7 +2928,7 @@ public class Processor implements HardwareComponent
                                 throw new IllegalStateException("Execute Failed");
                             //SAME-PRIVILEGE
                             } else
-                                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector, true);
+                                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector);
                         }
 //                            break;
                         case 0x1c: //Code: Execute-Only, Conforming
@@ -2935,7 +2937,7 @@ public class Processor implements HardwareComponent
                         case 0x1f: //Code: Execute/Read, Conforming, Accessed
                              {
                                 if (!targetSegment.isPresent())
-                                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector, true);
+                                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector);
 
                                 LOGGING.log(Level.WARNING, "16-bit call gate: jump to same privilege conforming segment not implemented");
                                 throw new IllegalStateException("Execute Failed");
@@ -2961,9 +2963,9 @@ public class Processor implements HardwareComponent
             case 0x1b: // Non-conforming Code Segment
             {
                 if ((newSegment.getRPL() > getCPL()) || (newSegment.getDPL() != getCPL()))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSelector);
                 if (!newSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSelector);
 
                 if ((r_esp.get32() < 8) && (r_esp.get32() > 0))
                     throw ProcessorException.STACK_SEGMENT_0;
@@ -3022,7 +3024,7 @@ public class Processor implements HardwareComponent
     {
         int csSelector = (int) getMSR(Processor.SYSENTER_CS_MSR);
         if (csSelector == 0)
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
         eflagsInterruptEnable = false;
         eflagsResume = false;
         eflagsVirtual8086Mode = false;
@@ -3481,8 +3483,10 @@ public class Processor implements HardwareComponent
         if (eflagsVirtual8086Mode != ((eflags & EFLAGS_VM_MASK) != 0)) {
             eflagsVirtual8086Mode = ((eflags & EFLAGS_VM_MASK) != 0);
             if (eflagsVirtual8086Mode) {
+                FaultStatistics.modeSwitch();
                 throw ModeSwitchException.VIRTUAL8086_MODE_EXCEPTION;
             } else {
+                FaultStatistics.modeSwitch();
                 throw ModeSwitchException.PROTECTED_MODE_EXCEPTION;
             }
         }
@@ -3514,6 +3518,9 @@ public class Processor implements HardwareComponent
     public void raiseInterrupt()
     {
         interruptFlags |= IFLAGS_HARDWARE_INTERRUPT;
+        Thread halted = haltedThread;
+        if ((halted != null) && (halted != Thread.currentThread()))
+            LockSupport.unpark(halted);
     }
 
     public void clearInterrupt()
@@ -3521,15 +3528,24 @@ public class Processor implements HardwareComponent
         interruptFlags &= ~IFLAGS_HARDWARE_INTERRUPT;
     }
 
+    /**
+     * Idles the calling thread until a hardware interrupt is raised.
+     * <p>
+     * The clock parks the thread until its next timer is due, and an interrupt
+     * raised by a device on any other thread unparks it straight away.
+     */
     public void waitForInterrupt()
     {
-        System.out.printf("*****START HALT ticks=%016x\n", vmClock.getTicks());
-        int ints = 0;
-        while ((interruptFlags & IFLAGS_HARDWARE_INTERRUPT) == 0) {
-            vmClock.updateNowAndProcess(!SKIP_SLEEPS);
-            ints++;
+        haltedThread = Thread.currentThread();
+        try
+        {
+            while ((interruptFlags & IFLAGS_HARDWARE_INTERRUPT) == 0)
+                vmClock.updateNowAndProcess(!SKIP_SLEEPS);
+        }
+        finally
+        {
+            haltedThread = null;
         }
-        System.out.printf("END HALT ticks=%016x, interrupts=%d\n", vmClock.getTicks(), ints);
     }
 
     public void requestReset()
@@ -3569,7 +3585,7 @@ public class Processor implements HardwareComponent
 
         if (pagingChanged) {
             if (((value & CR0_PROTECTION_ENABLE) == 0) && ((value & CR0_PAGING) != 0))
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+                throw ProcessorException.GENERAL_PROTECTION_0;
         }
 
         if (alignmentChanged)
@@ -3586,11 +3602,13 @@ public class Processor implements HardwareComponent
         if (modeSwitch) {
             if ((value & CR0_PROTECTION_ENABLE) != 0) {
                 convertSegmentsToProtectedMode();
+                FaultStatistics.modeSwitch();
                 throw ModeSwitchException.PROTECTED_MODE_EXCEPTION;
             } else {
                 // 		linearMemory.flush();
                 setCPL(0);
                 convertSegmentsToRealMode();
+                FaultStatistics.modeSwitch();
                 throw ModeSwitchException.REAL_MODE_EXCEPTION;
             }
         }
@@ -4014,6 +4032,18 @@ public class Processor implements HardwareComponent
 
     private int lastPMVector = -1;
 
+    /**
+     * Returns true if an interrupt or reset request is waiting to be taken, so
+     * that the execute loops can skip the interrupt checks until it is.  The
+     * interrupt controller raises the request through a volatile flag, so one
+     * raised on any thread is seen by the next block.
+     * @return true if the interrupt checks have something to do
+     */
+    public final boolean needsAttention()
+    {
+        return eflagsInterruptEnable && ((interruptFlags != 0) || (lastPMVector != -1));
+    }
+
     public final void processProtectedModeInterrupts(int instructions)
     {
         processProtectedModeInterrupts(instructions, false);
@@ -4076,6 +4106,7 @@ public class Processor implements HardwareComponent
 
     public final void handleRealModeException(ProcessorException e)
     {
+        FaultStatistics.fault(e);
         System.out.printf("RM Exception vector=%x\n", e.getType().vector());
         handleRealModeInterrupt(e.getType().vector());
     }
@@ -4083,7 +4114,7 @@ public class Processor implements HardwareComponent
     public final void handleRealModeInterrupt(int vector)
     {
         if (vector*4 +3 > idtr.getLimit())
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+            throw ProcessorException.GENERAL_PROTECTION_0;
 
         vector *= 4;
         int newEip = 0xffff & idtr.getWord(vector);
@@ -4119,6 +4150,7 @@ public class Processor implements HardwareComponent
 
     public final void handleProtectedModeException(ProcessorException pe)
     {
+        FaultStatistics.fault(pe);
         int savedESP = r_esp.get32();
         int savedEIP = eip;
         Segment savedCS = cs;
@@ -4200,11 +4232,11 @@ public class Processor implements HardwareComponent
     {
         if (software) {
             if (gate.getDPL() < currentPrivilegeLevel)
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector + 2, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector + 2);
         }
 
         if (!gate.isPresent())
-            throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, selector +2, true);
+            throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, selector +2);
     }
 
     public final void setSupervisorQuadWord(Segment seg, int offset, long data)
@@ -4284,7 +4316,7 @@ public class Processor implements HardwareComponent
             gate = SegmentFactory.createProtectedModeSegment(linearMemory, selector, descriptor);
         } catch (ProcessorException e) {
             System.out.println("Failed to create gate in PM excp: selector=" + Integer.toHexString(selector));
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT, true);
+            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT);
         } finally {
             linearMemory.setSupervisor(isSup);
         }
@@ -4294,30 +4326,30 @@ public class Processor implements HardwareComponent
         switch (gate.getType()) {
             default:
                 LOGGING.log(Level.INFO, "Invalid gate type for throwing interrupt: 0x{0}", Integer.toHexString(gate.getType()));
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT);
             case 0x05: //Interrupt Handler: Task Gate
                 ProtectedModeSegment.GateSegment taskGate = (ProtectedModeSegment.GateSegment) gate;
                 int tssSelector = taskGate.getTargetSegment();
 
                 // must specify global in the local/global bit
                 if ((tssSelector & 0x4) != 0)
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector & 0xfffc);
 
                 ProtectedModeSegment newTss;
                 try {
                     newTss = (ProtectedModeSegment) getSegment(tssSelector);
                 } catch (ProcessorException e) {
-                    throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, tssSelector, true);
+                    throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, tssSelector);
                 }
 
                 if (!newTss.isSystem())
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector & 0xfffc);
 
                 if (!(newTss instanceof ProtectedModeSegment.Available16BitTSS) && !(newTss instanceof ProtectedModeSegment.Available32BitTSS))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector & 0xfffc);
 
                 if (!newTss.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, tssSelector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, tssSelector & 0xfffc);
 
                 Tasking.task_switch(this, Tasking.Source.INT, newTss, hasErrorCode, errorCode);
                 break;
@@ -4330,20 +4362,20 @@ public class Processor implements HardwareComponent
                 int targetSegmentSelector = theGate.getTargetSegment();
 
                 if ((targetSegmentSelector & 0xfffc) == 0)
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, EXT, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, EXT);
 
                 ProtectedModeSegment targetSegment;
                 try {
                     targetSegment = (ProtectedModeSegment) getSegment(targetSegmentSelector);
                 } catch (ProcessorException e) {
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc + EXT, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc + EXT);
                 }
 
                 if (!targetSegment.isCode() || targetSegment.getDPL() > currentPrivilegeLevel)
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc + EXT, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc + EXT);
 
                 if (!targetSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector & 0xfffc);
 
                 if (!targetSegment.isConforming() && targetSegment.getDPL() < currentPrivilegeLevel)
                 {
@@ -4354,7 +4386,7 @@ public class Processor implements HardwareComponent
                     {
                         int tssStackAddress = (targetSegment.getDPL() * 8) + 4;
                         if ((tssStackAddress + 7) > tss.getLimit())
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc);
 
                         isSup = linearMemory.isSupervisor();
                         try
@@ -4372,7 +4404,7 @@ public class Processor implements HardwareComponent
                     {
                         int tssStackAddress = (targetSegment.getDPL() * 4) + 2;
                         if ((tssStackAddress + 3) > tss.getLimit())
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc);
 
                         isSup = linearMemory.isSupervisor();
                         try
@@ -4390,23 +4422,23 @@ public class Processor implements HardwareComponent
                         throw new IllegalStateException("Illegal TSS type");
 
                     if ((newStackSelector & 0xfffc) == 0)
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, EXT, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, EXT);
 
                     ProtectedModeSegment newStackSegment;
                     try {
                         newStackSegment = (ProtectedModeSegment) getSegment(newStackSelector, true);
                     } catch (ProcessorException e) {
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc);
                     }
 
                     if (newStackSegment.getRPL() != targetSegment.getDPL())
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc + EXT, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc + EXT);
 
                     if (newStackSegment.isCode() || !newStackSegment.isDataWritable())
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc + EXT, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc + EXT);
 
                     if (!newStackSegment.isPresent())
-                        throw new ProcessorException(ProcessorException.Type.STACK_SEGMENT, newStackSelector & 0xfffc + EXT, true);
+                        throw ProcessorException.get(ProcessorException.Type.STACK_SEGMENT, newStackSelector & 0xfffc + EXT);
 
                     int targetOffset = theGate.getTargetOffset();
                     targetSegment.checkAddress(targetOffset);
@@ -4536,6 +4568,7 @@ public class Processor implements HardwareComponent
 
     public final void handleVirtual8086ModeException(ProcessorException pe)
     {
+        FaultStatistics.fault(pe);
         int savedESP = r_esp.get32();
         int savedEIP = eip;
         Segment savedCS = cs;
@@ -4571,7 +4604,7 @@ public class Processor implements HardwareComponent
         if ((getCR4() & 0x1) != 0) {
             throw new IllegalStateException("VME not supported");
         } else if (eflagsIOPrivilegeLevel < 3) {
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
         } else {
             try {
                 followVirtual8086ModeException(vector, false, 0, false, true);
@@ -4635,7 +4668,7 @@ public class Processor implements HardwareComponent
         int EXT = hardware ? 1 : 0;
 
         if (selector +7 > idtr.getLimit())
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT, true);
+            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT);
 
         Segment gate;
         boolean isSup = linearMemory.isSupervisor();
@@ -4647,7 +4680,7 @@ public class Processor implements HardwareComponent
         }
         catch (ProcessorException e)
         {
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT, true);
+            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT);
         }
         finally
         {
@@ -4655,14 +4688,14 @@ public class Processor implements HardwareComponent
         }
 
         if (!gate.isSystem())
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector + 2, true);
+            throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector + 2);
 
         checkGate(gate, selector, software);
 
         switch (gate.getType()) {
             default:
                 LOGGING.log(Level.INFO, "Invalid gate type for throwing interrupt: 0x{0}", Integer.toHexString(gate.getType()));
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT, true);
+                throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, selector + 2 + EXT);
             case 0x05: //Interrupt Handler: Task Gate
                 throw new IllegalStateException("Unimplemented Interrupt Handler: Task Gate");
             case 0x06: //Interrupt Handler: 16-bit Interrupt Gate
@@ -4674,20 +4707,20 @@ public class Processor implements HardwareComponent
                 int targetSegmentSelector = theGate.getTargetSegment();
 
                 if ((targetSegmentSelector & 0xfffc) == 0)
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, EXT, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, EXT);
 
                 ProtectedModeSegment targetSegment;
                 try {
                     targetSegment = (ProtectedModeSegment) getSegment(targetSegmentSelector);
                 } catch (ProcessorException e) {
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc + EXT, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc + EXT);
                 }
 
                 if (!targetSegment.isCode() || (targetSegment.getDPL() > currentPrivilegeLevel))
-                    throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc + EXT, true);
+                    throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc + EXT);
 
                 if (!targetSegment.isPresent())
-                    throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector & 0xfffc, true);
+                    throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, targetSegmentSelector & 0xfffc);
 
                 if (!targetSegment.isConforming() && targetSegment.getDPL() < currentPrivilegeLevel)
                 {
@@ -4698,7 +4731,7 @@ public class Processor implements HardwareComponent
                     {
                         int tssStackAddress = (targetSegment.getDPL() * 8) + 4;
                         if ((tssStackAddress + 7) > tss.getLimit())
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc);
 
                         isSup = linearMemory.isSupervisor();
                         try
@@ -4716,7 +4749,7 @@ public class Processor implements HardwareComponent
                     {
                         int tssStackAddress = (targetSegment.getDPL() * 4) + 2;
                         if ((tssStackAddress + 3) > tss.getLimit())
-                            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc, true);
+                            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc);
 
                         isSup = linearMemory.isSupervisor();
                         try
@@ -4734,26 +4767,26 @@ public class Processor implements HardwareComponent
                         throw new IllegalStateException("Illegal TSS type");
 
                     if (targetSegment.getDPL() != 0)
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc);
 
                     if ((newStackSelector & 0xfffc) == 0)
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, EXT, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, EXT);
 
                     ProtectedModeSegment newStackSegment;
                     try {
                         newStackSegment = (ProtectedModeSegment) getSegment(newStackSelector, true);
                     } catch (ProcessorException e) {
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc);
                     }
 
                     if (newStackSegment.getRPL() != targetSegment.getDPL())
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc + EXT, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc + EXT);
 
                     if (newStackSegment.isCode() || !newStackSegment.isDataWritable())
-                        throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc + EXT, true);
+                        throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newStackSelector & 0xfffc + EXT);
 
                     if (!newStackSegment.isPresent())
-                        throw new ProcessorException(ProcessorException.Type.STACK_SEGMENT, newStackSelector & 0xfffc + EXT, true);
+                        throw ProcessorException.get(ProcessorException.Type.STACK_SEGMENT, newStackSelector & 0xfffc + EXT);
 
                     int targetOffset = theGate.getTargetOffset();
                     targetSegment.checkAddress(targetOffset);
@@ -4871,7 +4904,7 @@ public class Processor implements HardwareComponent
                 {
                     // interrupt to same privilege level
                     if (targetSegment.isConforming() || (targetSegment.getDPL() != 0))
-                        throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc, true);
+                        throw ProcessorException.get(ProcessorException.Type.GENERAL_PROTECTION, targetSegmentSelector & 0xfffc);
 
                     int targetOffset = theGate.getTargetOffset();
                     targetSegment.checkAddress(targetOffset);
@@ -4904,6 +4937,7 @@ public class Processor implements HardwareComponent
                 eflagsNestedTask = false;
                 eflagsVirtual8086Mode = false;
                 rf(false);
+                FaultStatistics.modeSwitch();
                 throw ModeSwitchException.PROTECTED_MODE_EXCEPTION;
             }
         }
@@ -35,8 +35,16 @@ package org.jpc.emulator.processor;
 
 import java.util.*;
 
+import org.jpc.j2se.Option;
+
 /**
- * 
+ * An x86 fault or trap raised by the processor.
+ * <p>
+ * Guests that fault often (demand paging, copy-on-write, DOS extenders
+ * bouncing through virtual 8086 mode) throw these at a high rate, so they
+ * carry no stack trace unless <code>-log-fault-traces</code> is set, and
+ * instances are immutable so that the common ones can be shared: use the
+ * constants below or {@link #get} rather than a new instance.
  * @author Chris Dennis
  */
 public final class ProcessorException extends RuntimeException
@@ -51,6 +59,9 @@ public final class ProcessorException extends RuntimeException
     public static final ProcessorException ALIGNMENT_CHECK_0 = new ProcessorException(Type.ALIGNMENT_CHECK, 0, true);
     public static final ProcessorException NO_FPU = new ProcessorException(Type.NO_FPU, 0, true);
 
+    private static final int CACHE_SIZE = 64;
+    private static final ProcessorException[][] cache = new ProcessorException[Type.values().length][CACHE_SIZE];
+
     public static enum Type {
         DIVIDE_ERROR(0x00),
         DEBUG(0x01),
@@ -127,6 +138,32 @@ public final class ProcessorException extends RuntimeException
         this.pointsToSelf = pointsToSelf;
     }
     
+    /**
+     * Returns a fault of the given type and error code which points to the
+     * faulting instruction, reusing an earlier instance where one is cached.
+     * @param type fault type
+     * @param errorCode error code pushed by the fault
+     * @return matching exception
+     */
+    public static ProcessorException get(Type type, int errorCode)
+    {
+        ProcessorException[] line = cache[type.ordinal()];
+        int index = (errorCode ^ (errorCode >>> 3)) & (CACHE_SIZE - 1);
+        ProcessorException e = line[index];
+        if ((e == null) || (e.errorCode != errorCode)) {
+            e = new ProcessorException(type, errorCode, true);
+            line[index] = e;
+        }
+        return e;
+    }
+
+    public Throwable fillInStackTrace()
+    {
+        if (Option.log_fault_traces.isSet())
+            return super.fillInStackTrace();
+        return this;
+    }
+
     public Type getType()
     {
         return type;
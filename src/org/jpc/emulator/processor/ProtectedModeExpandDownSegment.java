@@ -74,7 +74,7 @@ private static final Logger LOGGING = Logger.getLogger(ProtectedModeSegment.clas
             if (offset >= maxOffset)
             {
                 LOGGING.log(Level.INFO, this + "expand down segment: offset not within bounds.");
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION,0,true);
+                throw ProcessorException.GENERAL_PROTECTION_0;
             }
         } else if (offset > 0)
         {
@@ -82,10 +82,15 @@ private static final Logger LOGGING = Logger.getLogger(ProtectedModeSegment.clas
         } else
         {
             LOGGING.log(Level.INFO, this + "expand down segment: offset not within bounds.");
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION,0,true);
+            throw ProcessorException.GENERAL_PROTECTION_0;
         }
     }
 
+    public boolean isBulkReadable(int first, int last)
+    {
+        return false;
+    }
+
     public int getRawLimit()
     {
         return rawLimit;
@@ -146,11 +146,15 @@ public abstract class ProtectedModeSegment extends Segment
     {
         if ((0xffffffffL & offset) > limit) {
             LOGGING.log(Level.INFO, this + "segment limit exceeded: 0x{0} > 0x{1}", new Object[]{Integer.toHexString(offset), Integer.toHexString((int) limit)});
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION,0,true);//ProcessorException.GENERAL_PROTECTION_0;
-//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
         }
     }
 
+    public boolean isBulkReadable(int first, int last)
+    {
+        return (0xffffffffL & last) <= limit;
+    }
+
     public boolean getDefaultSizeFlag()
     {
         return defaultSize;
@@ -208,7 +212,7 @@ public abstract class ProtectedModeSegment extends Segment
         {
             if ((0xffffffffL & offset) > limit) {
                 LOGGING.log(Level.INFO, this + "Stack segment limit exceeded: 0x{0} > 0x{1}", new Object[]{Integer.toHexString(offset), Integer.toHexString((int) limit)});
-                throw new ProcessorException(ProcessorException.Type.STACK_SEGMENT,0,true);
+                throw ProcessorException.STACK_SEGMENT_0;
             }
         }
     }
@@ -244,6 +248,11 @@ public abstract class ProtectedModeSegment extends Segment
         {
             writeAttempted();
         }
+
+        public final boolean isBulkWritable(int first, int last)
+        {
+            return false;
+        }
     }
 
     static abstract class ReadOnlyStackSegment extends StackSegment
@@ -277,6 +286,11 @@ public abstract class ProtectedModeSegment extends Segment
         {
             writeAttempted();
         }
+
+        public final boolean isBulkWritable(int first, int last)
+        {
+            return false;
+        }
     }
 
     static final class ReadOnlyDataSegment extends ReadOnlyProtectedModeSegment
@@ -405,7 +419,7 @@ public abstract class ProtectedModeSegment extends Segment
         {
             if ((0xffffffffL & offset) > super.limit)
             {
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+                throw ProcessorException.GENERAL_PROTECTION_0;
             }
         }
     }
@@ -562,6 +576,11 @@ public abstract class ProtectedModeSegment extends Segment
                 cpu.setCR3(memory.getDoubleWord(initialAddress + 28));
         }
 
+        public boolean isBulkReadable(int first, int last)
+        {
+            return false;
+        }
+
         public byte getByte(int offset)
         {
             boolean isSup = ((LinearAddressSpace) memory).isSupervisor();
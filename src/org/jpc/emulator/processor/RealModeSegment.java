@@ -130,10 +130,15 @@ final class RealModeSegment extends Segment
         if ((0xffffffffL & offset) > limit)
         {
             System.out.println("RM Segment Limit exceeded: offset=" + Integer.toHexString(offset) + ", limit=" + Long.toHexString(limit));
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
         }
     }
 
+    public boolean isBulkReadable(int first, int last)
+    {
+        return (0xffffffffL & last) <= limit;
+    }
+
     public int translateAddressRead(int offset)
     {
         checkAddress(offset);
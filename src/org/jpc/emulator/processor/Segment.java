@@ -57,6 +57,11 @@ public abstract class Segment implements Hibernatable
         this.memory = memory;
     }
 
+    public final AddressSpace getAddressSpace()
+    {
+        return memory;
+    }
+
     public abstract boolean isPresent();
 
     public abstract boolean isSystem();
@@ -81,6 +86,34 @@ public abstract class Segment implements Hibernatable
 
     public abstract void checkAddress(int offset) throws ProcessorException;
 
+    /**
+     * Returns true if reading every offset from <code>first</code> to
+     * <code>last</code> inclusive would pass <code>checkAddress</code> and go
+     * straight to memory, so that the range can be read in one go.  Segments
+     * which can't tell cheaply return false, and callers then read one
+     * element at a time.
+     * @param first lowest offset
+     * @param last highest offset, not below <code>first</code>
+     * @return true if the range can be read in bulk
+     */
+    public boolean isBulkReadable(int first, int last)
+    {
+        return false;
+    }
+
+    /**
+     * Returns true if writing every offset from <code>first</code> to
+     * <code>last</code> inclusive would pass <code>checkAddress</code> and go
+     * straight to memory, so that the range can be written in one go.
+     * @param first lowest offset
+     * @param last highest offset, not below <code>first</code>
+     * @return true if the range can be written in bulk
+     */
+    public boolean isBulkWritable(int first, int last)
+    {
+        return isBulkReadable(first, last);
+    }
+
     public abstract int translateAddressRead(int offset);
 
     public abstract int translateAddressWrite(int offset);
@@ -100,7 +100,7 @@ public class SegmentFactory
             case 0x08: //Reserved
             case 0x0a: //Reserved
             case 0x0d: //Reserved
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+                throw ProcessorException.GENERAL_PROTECTION_0;
             case 0x01: //System Segment: 16-bit TSS (Available)
                 return new ProtectedModeSegment.Available16BitTSS(memory, selector, descriptor);
             case 0x02: //System Segment: LDT
@@ -195,7 +195,7 @@ public class SegmentFactory
 
         public int getType()
         {
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
         }
 
         public int getSelector()
@@ -205,22 +205,22 @@ public class SegmentFactory
 
         public void checkAddress(int offset)
         {
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
         }
 
         public int translateAddressRead(int offset)
         {
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
         }
 
         public int translateAddressWrite(int offset)
         {
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
         }
 
         public void invalidateAddress(int offset)
         {
-            throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);//ProcessorException.GENERAL_PROTECTION_0;
+            throw ProcessorException.GENERAL_PROTECTION_0;
         }
 
         public int getBase()
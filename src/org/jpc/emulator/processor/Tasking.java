@@ -55,7 +55,7 @@ public class Tasking
         int newTSSLimit = tss.getLimit();
 
         if (newTSSLimit < newTssMax)
-            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc, true);
+            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, tss.getSelector() & 0xfffc);
 
 
         // TODO support SVM
@@ -71,7 +71,7 @@ public class Tasking
         int oldTssLimit = cpu.tss.getLimit();
 
         if (oldTssLimit < oldTssMax)
-            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, cpu.tss.getSelector() & 0xfffc, true);
+            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, cpu.tss.getSelector() & 0xfffc);
 
         if (oldBase32 == newBase32)
             System.out.println("TSS: Switching to the same Task!");
@@ -337,12 +337,12 @@ public class Tasking
         cpu.setCPL(3);
 
         if ((newLdt & 4) != 0)
-            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newLdt & 0xfffc, true);
+            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newLdt & 0xfffc);
 
         if ((newLdt & 0xfffc) != 0)
         {
             if (!cpu.ldtr.isPresent() || !cpu.ldtr.isSystem() || !(cpu.ldtr instanceof ProtectedModeSegment.LDT))
-                throw new ProcessorException(ProcessorException.Type.NOT_PRESENT, newLdt & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.NOT_PRESENT, newLdt & 0xfffc);
         } else {
             // OK
         }
@@ -358,18 +358,18 @@ public class Tasking
         } else {
             // SS
             if ((newSs & 0xfffc) == 0)
-                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newSs & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newSs & 0xfffc);
 
             Segment ss = cpu.loadSegment(newSs, true);
 
             if (!((ProtectedModeSegment)ss).isDataWritable() || ((ProtectedModeSegment)ss).isCode())
-                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newSs & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newSs & 0xfffc);
 
             if (ss.getDPL() != (newCs & 3))
-                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newSs & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newSs & 0xfffc);
 
             if (ss.getDPL() != ss.getRPL())
-                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newSs & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newSs & 0xfffc);
 
             if (touch_segment((ProtectedModeSegment)ss, cpu))
                 ss = cpu.loadSegment(newSs, true);
@@ -392,18 +392,18 @@ public class Tasking
 
             // CS
             if ((newCs & 0xfffc) == 0)
-                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newCs & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newCs & 0xfffc);
 
             Segment cs = cpu.loadSegment(newCs);
 
             if (((ProtectedModeSegment)cs).isDataWritable())
-                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newCs & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newCs & 0xfffc);
 
             if (!((ProtectedModeSegment) cs).isConforming() && cs.getDPL() != cs.getRPL())
-                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newCs & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newCs & 0xfffc);
 
             if (((ProtectedModeSegment) cs).isConforming() && cs.getDPL() > cs.getRPL())
-                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, newCs & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, newCs & 0xfffc);
 
             if (touch_segment((ProtectedModeSegment)cs, cpu))
                 cs = cpu.loadSegment(newCs);
@@ -440,7 +440,7 @@ public class Tasking
             }
 
             if (cpu.eip > cpu.cs.getLimit())
-                throw new ProcessorException(ProcessorException.Type.GENERAL_PROTECTION, 0, true);
+                throw ProcessorException.GENERAL_PROTECTION_0;
         }
     }
 
@@ -451,11 +451,11 @@ public class Tasking
 
         ProtectedModeSegment s = (ProtectedModeSegment) seg;
         if (s.isSystem() || (s.isCode() && !s.isCodeReadable()))
-            throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, s.getSelector() & 0xfffc, true);
+            throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, s.getSelector() & 0xfffc);
 
         if (s.isDataWritable() || !s.isConforming())
             if ((s.getRPL() > s.getDPL()) || (cs_rpl > s.getDPL()))
-                throw new ProcessorException(ProcessorException.Type.TASK_SWITCH, s.getSelector() & 0xfffc, true);
+                throw ProcessorException.get(ProcessorException.Type.TASK_SWITCH, s.getSelector() & 0xfffc);
 
         return touch_segment(s, cpu);
     }
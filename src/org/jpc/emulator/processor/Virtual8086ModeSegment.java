@@ -116,6 +116,11 @@ public class Virtual8086ModeSegment extends Segment {
             throw ProcessorException.GENERAL_PROTECTION_0;
     }
 
+    public boolean isBulkReadable(int first, int last)
+    {
+        return (0xffffffffL & last) <= limit;
+    }
+
     public int translateAddressRead(int offset)
     {
         checkAddress(offset);
@@ -33,164 +33,219 @@
 
 package org.jpc.j2se;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.ListIterator;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-/** Forwards packets between pairs of connections
+/** Switches ethernet frames between any number of connected emulators.
+ * <p>
+ * Every client connection is served by a single thread blocked in a
+ * <code>Selector</code>. Frames arrive length prefixed, are forwarded on
+ * the destination address learnt from earlier traffic (or flooded if it is
+ * unknown or a broadcast), and are accumulated in each client's direct
+ * output buffer so that everything forwarded in one pass goes out in a
+ * single write.
  *
  * @author Ian Preston
  */
 public class EthernetHubServer  implements Runnable {
 
-    private List<Client> clients = new ArrayList<Client>();
-    private ServerSocket sock;
-
-    public EthernetHubServer(int port) {
-        try
-        {
-            sock = new ServerSocket(port);
-        } catch (IOException ex)
-        {
-            Logger.getLogger(EthernetHubServer.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        new Thread(this).start();
+    private static final Logger LOGGING = Logger.getLogger(EthernetHubServer.class.getName());
+
+    private static final int INPUT_BUFFER_SIZE = 256 * 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 512 * 1024;
+    private static final int MAX_FRAME = 64 * 1024;
+    private static final long ADDRESS_MASK = 0xffffffffffffL;
+
+    private final Selector selector;
+    private final ServerSocketChannel sock;
+    private final List<Client> clients = new ArrayList<Client>();
+    private final Map<Long, Client> addresses = new HashMap<Long, Client>();
+    private final List<Client> pendingFlush = new ArrayList<Client>();
+    private int count = 1;
+
+    public EthernetHubServer(int port) throws IOException {
+        selector = Selector.open();
+        sock = ServerSocketChannel.open();
+        sock.socket().bind(new InetSocketAddress(port));
+        sock.configureBlocking(false);
+        sock.register(selector, SelectionKey.OP_ACCEPT);
+        new Thread(this, "Ethernet Hub Server").start();
         System.out.println("Started EthernetHub Server on port " + port);
     }
 
     public void run() {
-        //wait for connections
-        Socket client;
-        int count = 1;
         while (true) {
             try
             {
-                client = sock.accept();
-                synchronized (clients) {
-                    Client c = new Client(client, count++);
-                    if (clients.size() % 2 == 1) {
-                        clients.get(clients.size()-1).setPartner(c);
-                        c.setPartner(clients.get(clients.size()-1));
-                    }
-                    clients.add(c);
-                    new Thread(new Forwarder(c)).start();
-                }
-                System.out.println("Accepted Connection from client " + (count -1));
+                selector.select();
             } catch (IOException ex)
             {
-                Logger.getLogger(EthernetHubServer.class.getName()).log(Level.SEVERE, null, ex);
+                LOGGING.log(Level.SEVERE, null, ex);
+                return;
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid())
+                    continue;
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                Client c = (Client) key.attachment();
+                try
+                {
+                    if (key.isReadable())
+                        c.read();
+                    if (key.isValid() && key.isWritable())
+                        markPending(c);
+                } catch (IOException e)
+                {
+                    disconnect(c, e);
+                }
             }
+
+            for (Client c : pendingFlush) {
+                try
+                {
+                    c.flush();
+                } catch (IOException e)
+                {
+                    disconnect(c, e);
+                }
+            }
+            pendingFlush.clear();
         }
     }
 
-    public class Forwarder implements Runnable {
-        DataInputStream in;
-        DataOutputStream out;
-        Client us;
-        Client them = null;
-
-        Forwarder(Client us) {
-            this.us = us;
-            in = us.getIn();
+    private void accept() {
+        try
+        {
+            SocketChannel channel = sock.accept();
+            if (channel == null)
+                return;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Client c = new Client(channel, count++);
+            c.key = channel.register(selector, SelectionKey.OP_READ, c);
+            clients.add(c);
+            System.out.println("Accepted Connection from client " + c.id);
+        } catch (IOException ex)
+        {
+            LOGGING.log(Level.SEVERE, null, ex);
         }
+    }
 
-        public void run()
+    private void disconnect(Client c, IOException e) {
+        if (!clients.remove(c))
+            return;
+        LOGGING.log(Level.INFO, "Client " + c.id + " disconnected: " + e.getMessage());
+        addresses.values().removeAll(Collections.singleton(c));
+        c.key.cancel();
+        try
         {
-            while (them == null)
-                if (us.getPartner() != null)
-                    them = us.getPartner();
-                else
-                    try
-                    {
-                        Thread.sleep(1000);
-                    }
-                    catch (InterruptedException ex)
-                    {
-                        Logger.getLogger(EthernetHubServer.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-            out = them.getOut();
-            try
-            {
-                while (true)
-                {
-                    long start = System.currentTimeMillis();
-                    long total = 0;
-                    for (int i = 0; i < 1000; i++)
-                    {
-                        int size = in.readInt();
-                        total += size;
-                        byte[] packet = new byte[size];
-                        in.readFully(packet);
-//                    System.out.println("Received a packet from client " + us.id);
-                        try
-                        {
-                            out.writeInt(packet.length);
-                            out.write(packet);
-                            out.flush();
-//                      System.out.println("Forwarded a packet to client " + next.id);
-                        }
-                        catch (IOException e)
-                        {
-                            System.out.println("Client " + us.id + " couldn't contact partner.");
-                        }
-                    }
-                    long end = System.currentTimeMillis();
-                    System.out.println("Bandwith " + (total*1000/(end-start)) + " bytes/second");
+            c.channel.close();
+        } catch (IOException ex) {}
+    }
+
+    private void markPending(Client c) {
+        if (!c.pending) {
+            c.pending = true;
+            pendingFlush.add(c);
+        }
+    }
+
+    /**
+     * Sends the frame at <code>in</code>'s current position on to wherever
+     * its destination address was last seen, or to everyone else if unknown.
+     */
+    private void forward(Client from, ByteBuffer in, int length) {
+        int frame = in.position();
+        if (length >= 12) {
+            long destination = (((long) in.getInt(frame) << 16) | (in.getShort(frame + 4) & 0xffff)) & ADDRESS_MASK;
+            long source = (((long) in.getInt(frame + 6) << 16) | (in.getShort(frame + 10) & 0xffff)) & ADDRESS_MASK;
+            if ((source >>> 40 & 1) == 0)
+                addresses.put(source, from);
+            if ((destination >>> 40 & 1) == 0) {
+                Client to = addresses.get(destination);
+                if (to != null) {
+                    if (to != from)
+                        to.queue(in, frame, length);
+                    return;
                 }
             }
-            catch (IOException e)
-            {
-                Logger.getLogger(EthernetHubServer.class.getName()).log(Level.SEVERE, null, e);
-            }
         }
+        for (Client to : clients)
+            if (to != from)
+                to.queue(in, frame, length);
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         int port = Integer.parseInt(args[0]);
         new EthernetHubServer(port);
     }
 
     private class Client {
-        DataOutputStream out;
-        DataInputStream in;
-        public int id;
-        private Client partner;
-
-        Client(Socket sock, int id) {
+        final SocketChannel channel;
+        final int id;
+        SelectionKey key;
+        boolean pending;
+        private final ByteBuffer in = ByteBuffer.allocateDirect(INPUT_BUFFER_SIZE);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+
+        Client(SocketChannel channel, int id) {
+            this.channel = channel;
             this.id = id;
-            try
-            {
-                sock.setTcpNoDelay(true);
-                sock.setPerformancePreferences(0, 2, 1);
-                out = new DataOutputStream(sock.getOutputStream());
-                in = new DataInputStream(sock.getInputStream());
-            } catch (IOException ex)
-            {
-                Logger.getLogger(EthernetHubServer.class.getName()).log(Level.SEVERE, null, ex);
-            }
         }
 
-        public void setPartner(Client partner) {
-            this.partner = partner;
-        }
-
-        public Client getPartner() {
-            return partner;
+        void read() throws IOException {
+            if (channel.read(in) < 0)
+                throw new IOException("connection closed");
+            in.flip();
+            while (in.remaining() >= 4) {
+                int start = in.position();
+                int length = in.getInt(start);
+                if ((length < 0) || (length > MAX_FRAME))
+                    throw new IOException("bad frame length " + length);
+                if (in.remaining() < length + 4)
+                    break;
+                in.position(start + 4);
+                forward(this, in, length);
+                in.position(start + 4 + length);
+            }
+            in.compact();
         }
 
-        public DataOutputStream getOut() {
-            return out;
+        /**
+         * Appends a frame to the output batch, dropping it if this client
+         * has fallen too far behind.
+         */
+        void queue(ByteBuffer source, int offset, int length) {
+            if (out.remaining() < length + 4)
+                return;
+            int limit = source.limit();
+            int position = source.position();
+            out.putInt(length);
+            source.limit(offset + length).position(offset);
+            out.put(source);
+            source.limit(limit).position(position);
+            markPending(this);
         }
 
-        public DataInputStream getIn() {
-            return in;
+        void flush() throws IOException {
+            pending = false;
+            out.flip();
+            channel.write(out);
+            out.compact();
+            if (key.isValid())
+                key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
         }
     }
 }
@@ -43,6 +43,8 @@ import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
@@ -53,9 +55,13 @@ import java.util.zip.*;
 
 import javax.swing.*;
 
+import org.jpc.emulator.Migration;
 import org.jpc.emulator.PC;
+import org.jpc.emulator.Snapshot;
 import org.jpc.emulator.pci.peripheral.EthernetCard;
+import org.jpc.emulator.pci.peripheral.HeadlessVGACard;
 import org.jpc.emulator.pci.peripheral.VGACard;
+import org.jpc.emulator.peripheral.Keyboard;
 import org.jpc.support.*;
 
 public class JPCApplication extends PCMonitorFrame implements PCControl
@@ -101,6 +107,7 @@ public class JPCApplication extends PCMonitorFrame implements PCControl
     private KeyTypingPanel keys;
     private JFileChooser diskImageChooser;
     private JFileChooser snapshotFileChooser;
+    private Snapshot lastSnapshot;
 
     public JPCApplication(String[] args, PC pc) throws Exception
     {
@@ -134,6 +141,46 @@ public class JPCApplication extends PCMonitorFrame implements PCControl
                 start();
             }
         });
+        snap.add("Save Incremental Snapshot").addActionListener(new ActionListener()
+        {
+            public void actionPerformed(ActionEvent ev)
+            {
+                stop();
+
+                if (snapshotFileChooser.showDialog(JPCApplication.this, "Save Incremental Snapshot") == JFileChooser.APPROVE_OPTION)
+                {
+                    try
+                    {
+                        lastSnapshot = pc.saveIncrementalState(snapshotFileChooser.getSelectedFile(), lastSnapshot);
+                    }
+                    catch (IOException e)
+                    {
+                        LOGGING.log(Level.WARNING, "Exception saving snapshot.", e);
+                        lastSnapshot = null;
+                    }
+                }
+                start();
+            }
+        });
+        snap.add("Migrate").addActionListener(new ActionListener()
+        {
+            public void actionPerformed(ActionEvent ev)
+            {
+                final String target = JOptionPane.showInputDialog(JPCApplication.this, "Enter host:port of a JPC started with -incoming", "Migrate", JOptionPane.QUESTION_MESSAGE);
+                if (target == null)
+                    return;
+                // migration consumes the dirty page bits, so the incremental chain can't continue past it
+                final Snapshot pending = lastSnapshot;
+                lastSnapshot = null;
+                new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        migrate(target, pending);
+                    }
+                }, "Migration").start();
+            }
+        });
         snap.add("Load Snapshot").addActionListener(new ActionListener()
         {
 
@@ -342,8 +389,76 @@ public class JPCApplication extends PCMonitorFrame implements PCControl
         return super.isRunning();
     }
 
+    private void migrate(String target, Snapshot pending)
+    {
+        try
+        {
+            if (pending != null)
+            {
+                // the writer must finish copying its pages before migration marks them again
+                try
+                {
+                    pending.waitUntilWritten();
+                }
+                catch (IOException e)
+                {
+                    LOGGING.log(Level.WARNING, "Exception saving snapshot.", e);
+                }
+            }
+            int colon = target.lastIndexOf(':');
+            Socket socket = new Socket(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+            try
+            {
+                Migration.send(pc, this, socket);
+            }
+            finally
+            {
+                socket.close();
+            }
+            JOptionPane.showMessageDialog(this, "The PC is now running on " + target, "Migrate", JOptionPane.INFORMATION_MESSAGE);
+        }
+        catch (Exception e)
+        {
+            LOGGING.log(Level.WARNING, "Exception migrating to " + target, e);
+            JOptionPane.showMessageDialog(this, "Migration failed: " + e, "Migrate", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Waits for a PC to be migrated in on <code>port</code> and takes it over.
+     */
+    private static void receiveMigration(PC pc, int port) throws IOException
+    {
+        ServerSocket server = new ServerSocket(port);
+        try
+        {
+            LOGGING.log(Level.INFO, "Waiting for migration on port {0}", Integer.valueOf(port));
+            Socket socket = server.accept();
+            try
+            {
+                Migration.receive(pc, socket);
+            }
+            finally
+            {
+                socket.close();
+            }
+        }
+        finally
+        {
+            server.close();
+        }
+        ((VGACard) pc.getComponent(VGACard.class)).setOriginalDisplaySize();
+    }
+
     private void loadSnapshot(File file) throws IOException
     {
+        if (Snapshot.isSnapshot(file))
+        {
+            lastSnapshot = pc.loadIncrementalState(file);
+            ((VGACard) pc.getComponent(VGACard.class)).setOriginalDisplaySize();
+            return;
+        }
+        lastSnapshot = null;
         ZipInputStream zin = new ZipInputStream(new FileInputStream(file));
         zin.getNextEntry();
         pc.loadState(zin);
@@ -666,6 +781,25 @@ public class JPCApplication extends PCMonitorFrame implements PCControl
         return resources.iterator();
     }
 
+    /**
+     * Runs <code>pc</code> on the calling thread with no window, for use when
+     * the screen is served remotely.
+     */
+    private static void runHeadless(PC pc)
+    {
+        pc.start();
+        try
+        {
+            while (true)
+                pc.execute();
+        }
+        finally
+        {
+            pc.stop();
+            LOGGING.log(Level.INFO, "PC Stopped");
+        }
+    }
+
     public static void main(String[] args) throws Exception
     {
         if ((args.length > 0) && args[0].equals("-disam"))
@@ -763,6 +897,21 @@ public class JPCApplication extends PCMonitorFrame implements PCControl
             EthernetCard card = (EthernetCard) pc.getComponent(EthernetCard.class);
             card.setOutputDevice(hub);
         }
+        else if (net.equals("nat"))
+        {
+            EthernetCard card = (EthernetCard) pc.getComponent(EthernetCard.class);
+            card.setOutputDevice(new EthernetNAT());
+        }
+        if (Option.incoming.isSet())
+            receiveMigration(pc, Option.incoming.intValue(0));
+        if (Option.vnc.isSet())
+        {
+            RFBServer server = new RFBServer((HeadlessVGACard) pc.getComponent(VGACard.class), (Keyboard) pc.getComponent(Keyboard.class),
+                    Option.vnc.intValue(5900), Option.vnc_fps.intValue(25));
+            server.start();
+            runHeadless(pc);
+            return;
+        }
         final JPCApplication app = new JPCApplication(args, pc);
 
         app.setBounds(100, 100, MONITOR_WIDTH + 20, MONITOR_HEIGHT + 70);
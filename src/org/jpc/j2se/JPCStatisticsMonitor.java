@@ -42,6 +42,10 @@ import java.lang.management.*;
 import java.util.*;
 import java.util.logging.*;
 
+import org.jpc.emulator.execution.codeblock.CompilerStatistics;
+import org.jpc.emulator.execution.codeblock.ExecutionProfiler;
+import org.jpc.emulator.processor.FaultStatistics;
+
 /**
  *
  * @author Chris Dennis
@@ -104,6 +108,15 @@ public class JPCStatisticsMonitor extends TimerTask
             }
         }
 
+        line.append(",compiler={").append(params.size()).append('}');
+        params.add(CompilerStatistics.getSummary());
+
+        line.append(",faults={").append(params.size()).append('}');
+        params.add(FaultStatistics.getSummary());
+
+        line.append(",profile={").append(params.size()).append('}');
+        params.add(ExecutionProfiler.getSummary());
+
         jpcVmStatus.log(Level.INFO, line.toString(), params.toArray());
     }
 }
@@ -49,7 +49,21 @@ public abstract class Option {
     public static final Switch log_state = createSwitch("log-state");
     public static final Switch log_blockentry = createSwitch("log-block-entry");
     public static final Switch log_memory_maps = createSwitch("log-memory-maps");
+    public static final Switch log_fault_traces = createSwitch("log-fault-traces");
+    public static final Switch profile = createSwitch("profile");
+    public static final Switch profile_exact = createSwitch("profile-exact");
+    public static final Opt profile_interval = opt("profile-interval");
+    public static final Opt profile_symbols = opt("profile-symbols");
+    public static final Opt profile_output = opt("profile-output");
     public static final Switch compile = createSwitch("compile");
+    public static final Opt compile_threshold = opt("compile-threshold");
+    public static final Opt compile_queue_size = opt("compile-queue-size");
+    public static final Opt compile_threads = opt("compile-threads");
+    public static final Opt code_cache = opt("code-cache");
+    public static final Opt code_cache_size = opt("code-cache-size");
+    public static final Switch flat_ram = createSwitch("flat-ram");
+    public static final Opt tlb_size = opt("tlb-size");
+    public static final Opt tlb_ways = opt("tlb-ways");
     public static final Switch fullscreen = createSwitch("fullscreen");
     public static final Switch history = createSwitch("history");
     public static final Switch useBochs = createSwitch("bochs");
@@ -63,8 +77,11 @@ public abstract class Option {
     public static final Switch deterministic = createSwitch("deterministic");
     public static final Opt startTime = opt("start-time");
     public static final Switch noScreen = createSwitch("no-screen");
+    public static final Opt vnc = opt("vnc");
+    public static final Opt vnc_fps = opt("vnc-fps");
 
     public static final Opt ss = opt("ss");
+    public static final Opt incoming = opt("incoming");
     public static final Opt ram = opt("ram");
     public static final Opt ips = opt("ips");
     public static final Opt cpulevel = opt("cpulevel");
@@ -113,15 +130,33 @@ public abstract class Option {
         System.out.println("-fda $file - floppy image file");
         System.out.println("-hda $file - hard disk image file");
         System.out.println("-hda dir:$dir - directory to mount as a FAT32 hard disk");
+        System.out.println("-hda overlay:$delta,$image - keep all writes to $image in the copy-on-write file $delta instead, creating it if needed");
         System.out.println("-ss $file - snapshot file to load");
+        System.out.println("-incoming $port - wait for a running PC to be migrated in on $port before starting");
         System.out.println("-ram $megabytes - the amount RAM the virtual machine should have");
         System.out.println("-ips $number - number of emulated instructions per emulated second - a larger value will cause a slower apparent time in the VM");
         System.out.println("-cpulevel $number - 4 = 486, 5 = Pentium, 6 = Pentium Pro");
         System.out.println();
         System.out.println("-sound - enable sound");
+        System.out.println("-vnc $port - run without a window and serve the screen to VNC viewers on $port");
+        System.out.println("-vnc-fps $num - maximum number of screen updates sent to each VNC viewer per second (default: 25)");
         System.out.println();
         System.out.println("Advanced Options:");
         System.out.println("-bios - specify an alternate bios image");
+        System.out.println("-compile - compile frequently executed blocks to JVM bytecode in the background");
+        System.out.println("-compile-threshold $num - number of executions of a block between requests to compile it");
+        System.out.println("-compile-queue-size $num - maximum number of blocks waiting to be compiled");
+        System.out.println("-compile-threads $num - number of background compiler threads (default: one less than the number of cores)");
+        System.out.println("-code-cache $file - keep compiled blocks in $file between runs (requires -compile)");
+        System.out.println("-code-cache-size $num - maximum size of the code cache file in megabytes (default: 64)");
+        System.out.println("-flat-ram - hold system RAM in one contiguous array instead of an array per page");
+        System.out.println("-tlb-size $num - number of entries in the translation lookaside buffer (default: 4096)");
+        System.out.println("-tlb-ways $num - number of entries in each set of the translation lookaside buffer (default: 4)");
+        System.out.println("-profile - sample the guest code being executed and write hot block and opcode tables and folded stacks whenever the PC stops");
+        System.out.println("-profile-exact - also count every execution of every block (requires -profile)");
+        System.out.println("-profile-interval $num - microseconds between profiler samples (default: 1000)");
+        System.out.println("-profile-symbols $file - name profiled code from $file, a list of hex address and symbol name pairs or nm output");
+        System.out.println("-profile-output $prefix - write the profile to $prefix.txt and $prefix.folded (default: jpc-profile)");
         System.out.println("-max-block-size $num - maximum number of instructions per basic block (A value of 1 will still have some blocks of length 2 due to mov ss,X, pop ss and sti)");
     }
 
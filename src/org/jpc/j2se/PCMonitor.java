@@ -190,18 +190,32 @@ public class PCMonitor extends KeyHandlingPanel
 
                 vgaCard.prepareUpdate();
                 vgaCard.updateDisplay();
-                /*
-                int xmin = (int)((vgaCard.getXMin() -1 ) * scaleX);
-                int xmax = (int)(vgaCard.getXMax() * scaleX);
-                int ymin = (int)((vgaCard.getYMin() - 1) * scaleY);
-                int ymax = (int)(vgaCard.getYMax() * scaleY);
-                
-                repaint(xmin, ymin, xmax - xmin + 1, ymax - ymin + 1);
-                */
-                repaint();
+                if (vgaCard.isDirty())
+                    repaintDirtyRegion();
             }
         }
 
+        /**
+         * Repaints the part of the panel covering the display region redrawn
+         * in this update, widened by a pixel on each side to cover the reach
+         * of the interpolation used at fractional scales.
+         */
+        private void repaintDirtyRegion()
+        {
+            Dimension display = vgaCard.getDisplaySize();
+            if ((display.width == 0) || (display.height == 0))
+                return;
+            int w = getWidth();
+            int h = getHeight();
+
+            int xmin = (int)((long) vgaCard.getXMin() * w / display.width) - 1;
+            int ymin = (int)((long) vgaCard.getYMin() * h / display.height) - 1;
+            int xmax = (int)(((long) vgaCard.getXMax() * w + display.width - 1) / display.width) + 1;
+            int ymax = (int)(((long) vgaCard.getYMax() * h + display.height - 1) / display.height) + 1;
+
+            repaint(xmin, ymin, xmax - xmin, ymax - ymin);
+        }
+
         public void halt() 
         {
             try 
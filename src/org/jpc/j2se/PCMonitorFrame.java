@@ -198,6 +198,11 @@ public class PCMonitorFrame extends JFrame implements Runnable
     {
         if (running)
             return;
+        if (pc.isMigrated())
+        {
+            LOGGING.log(Level.WARNING, "not starting a PC which has been migrated away");
+            return;
+        }
         monitor.startUpdateThread();
 
         running = true;
@@ -0,0 +1,534 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package org.jpc.j2se;
+
+import java.awt.Dimension;
+import java.awt.event.KeyEvent;
+import java.io.*;
+import java.net.Socket;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jpc.emulator.pci.peripheral.HeadlessVGACard;
+import org.jpc.emulator.peripheral.Keyboard;
+
+/**
+ * A single viewer connected to an <code>RFBServer</code>.
+ * <p>
+ * Client messages are read on one thread, which passes input straight to
+ * the keyboard and records update requests.  Updates are encoded and sent
+ * on a second thread no more often than the server's frame rate.  That
+ * thread holds the card's monitor only while it copies the dirty tiles into
+ * its own copy of the display, so encoding and a slow socket never hold up
+ * the renderer.
+ * @author Ian Preston
+ */
+class RFBConnection implements Runnable
+{
+    private static final Logger LOGGING = Logger.getLogger(RFBConnection.class.getName());
+    private static final int TILE_SHIFT = HeadlessVGACard.TILE_SHIFT;
+    private static final int TILE_SIZE = HeadlessVGACard.TILE_SIZE;
+    private static final int MAX_CUT_TEXT = 1 << 20;
+
+    private final RFBServer server;
+    private final HeadlessVGACard card;
+    private final Keyboard keyboard;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final RFBEncoder encoder = new RFBEncoder();
+    private volatile boolean open = true;
+
+    // guarded by this
+    private long[] pending = new long[0];
+    private boolean full = true;
+    private boolean requested;
+    private byte[] newFormat;
+    private int encoding = RFBEncoder.RAW;
+    private boolean desktopSize;
+
+    // only used by the writer thread
+    private int[] shadow;
+    private long[] taken = new long[0];
+    private int[] rects = new int[64];
+    private int width, height, tilesX, tilesY, resizeCount;
+    private int clientWidth, clientHeight;
+
+    // only used by the reader thread
+    private int lastX = -1, lastY = -1, lastMask;
+    private final byte[] discard = new byte[4096];
+
+    RFBConnection(RFBServer server, Socket socket) throws IOException
+    {
+        this.server = server;
+        this.card = server.getCard();
+        this.keyboard = server.getKeyboard();
+        this.socket = socket;
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64 * 1024));
+    }
+
+    void start()
+    {
+        new Thread(this, "RFB Client " + socket.getRemoteSocketAddress()).start();
+    }
+
+    public void run()
+    {
+        try
+        {
+            handshake();
+            Thread writer = new Thread(new Writer(), "RFB Writer " + socket.getRemoteSocketAddress());
+            writer.setDaemon(true);
+            writer.start();
+            while (open)
+                readMessage();
+        }
+        catch (IOException e)
+        {
+            if (open)
+                LOGGING.log(Level.INFO, "RFB client {0} disconnected: {1}", new Object[] {socket.getRemoteSocketAddress(), e});
+        }
+        finally
+        {
+            close();
+        }
+    }
+
+    void close()
+    {
+        open = false;
+        server.removeClient(this);
+        synchronized (this)
+        {
+            notifyAll();
+        }
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e) {}
+    }
+
+    private void handshake() throws IOException
+    {
+        out.write("RFB 003.008\n".getBytes("US-ASCII"));
+        out.flush();
+        byte[] version = new byte[12];
+        in.readFully(version);
+        int minor;
+        try
+        {
+            minor = Integer.parseInt(new String(version, 8, 3, "US-ASCII"));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IOException("Bad RFB version " + new String(version, "US-ASCII").trim());
+        }
+
+        // no authentication
+        if (minor >= 7) {
+            out.writeByte(1);
+            out.writeByte(1);
+            out.flush();
+            if (in.readUnsignedByte() != 1)
+                throw new IOException("Unsupported RFB security type");
+            if (minor >= 8)
+                out.writeInt(0);
+        } else
+            out.writeInt(1);
+        out.flush();
+
+        // every client shares the display, whatever it asks for
+        in.readUnsignedByte();
+
+        synchronized (card)
+        {
+            Dimension size = card.getDisplaySize();
+            clientWidth = size.width;
+            clientHeight = size.height;
+        }
+        out.writeShort(clientWidth);
+        out.writeShort(clientHeight);
+        encoder.reset();
+        encoder.writePixelFormat();
+        out.write(encoder.getBuffer(), 0, encoder.getLength());
+        byte[] name = "JPC".getBytes("US-ASCII");
+        out.writeInt(name.length);
+        out.write(name);
+        out.flush();
+    }
+
+    private void readMessage() throws IOException
+    {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case 0: // SetPixelFormat
+                in.skipBytes(3);
+                byte[] format = new byte[16];
+                in.readFully(format);
+                synchronized (this)
+                {
+                    newFormat = format;
+                    full = true;
+                }
+                break;
+            case 2: // SetEncodings
+                in.skipBytes(1);
+                int count = in.readUnsignedShort();
+                int chosen = -1;
+                boolean size = false;
+                for (int i = 0; i < count; i++) {
+                    int e = in.readInt();
+                    if (e == RFBEncoder.DESKTOP_SIZE)
+                        size = true;
+                    else if ((chosen < 0) && ((e == RFBEncoder.RAW) || (e == RFBEncoder.RRE) || (e == RFBEncoder.ZRLE)))
+                        chosen = e;
+                }
+                synchronized (this)
+                {
+                    encoding = (chosen < 0) ? RFBEncoder.RAW : chosen;
+                    desktopSize = size;
+                }
+                break;
+            case 3: // FramebufferUpdateRequest
+                boolean incremental = in.readUnsignedByte() != 0;
+                in.skipBytes(8);
+                synchronized (this)
+                {
+                    requested = true;
+                    if (!incremental)
+                        full = true;
+                    notifyAll();
+                }
+                break;
+            case 4: // KeyEvent
+                boolean down = in.readUnsignedByte() != 0;
+                in.skipBytes(2);
+                byte scancode = scancodeFor(in.readInt());
+                if (scancode == 0)
+                    break;
+                if (down)
+                    keyboard.keyPressed(scancode);
+                else
+                    keyboard.keyReleased(scancode);
+                break;
+            case 5: // PointerEvent
+                int mask = in.readUnsignedByte();
+                int x = in.readUnsignedShort();
+                int y = in.readUnsignedShort();
+                pointer(mask, x, y);
+                break;
+            case 6: // ClientCutText
+                in.skipBytes(3);
+                int length = in.readInt();
+                if ((length < 0) || (length > MAX_CUT_TEXT))
+                    throw new IOException("Bad RFB cut text length " + length);
+                // readFully throws EOFException if the viewer goes away partway through
+                while (length > 0)
+                {
+                    int chunk = Math.min(length, discard.length);
+                    in.readFully(discard, 0, chunk);
+                    length -= chunk;
+                }
+                break;
+            default:
+                throw new IOException("Unknown RFB client message " + type);
+        }
+    }
+
+    private void pointer(int mask, int x, int y)
+    {
+        int dx = (lastX < 0) ? 0 : x - lastX;
+        int dy = (lastY < 0) ? 0 : y - lastY;
+        int dz = 0;
+        if (((mask & 8) != 0) && ((lastMask & 8) == 0))
+            dz--;
+        if (((mask & 16) != 0) && ((lastMask & 16) == 0))
+            dz++;
+        lastX = x;
+        lastY = y;
+        lastMask = mask;
+
+        // RFB orders the buttons left, middle, right and the keyboard left, right, middle
+        int buttons = (mask & 1) | ((mask & 4) >>> 1) | ((mask & 2) << 1);
+        keyboard.putMouseEvent(dx, dy, dz, buttons);
+    }
+
+    /**
+     * Marks tiles redrawn by the renderer as needing to be sent.
+     * @param tiles bitmap of dirty tiles for the current display size
+     */
+    synchronized void markDirty(long[] tiles)
+    {
+        if (tiles.length != pending.length)
+            full = true;
+        else
+            for (int i = 0; i < tiles.length; i++)
+                pending[i] |= tiles[i];
+        notifyAll();
+    }
+
+    private boolean updateReady()
+    {
+        if (!requested)
+            return false;
+        if (full || (newFormat != null))
+            return true;
+        for (int i = 0; i < pending.length; i++)
+            if (pending[i] != 0)
+                return true;
+        return false;
+    }
+
+    class Writer implements Runnable
+    {
+        public void run()
+        {
+            long nextFrame = 0;
+            try
+            {
+                while (open) {
+                    synchronized (RFBConnection.this)
+                    {
+                        while (open && !updateReady())
+                            RFBConnection.this.wait();
+                    }
+                    if (!open)
+                        break;
+                    long delay = nextFrame - System.currentTimeMillis();
+                    if (delay > 0)
+                        Thread.sleep(delay);
+                    sendUpdate();
+                    nextFrame = System.currentTimeMillis() + server.getFrameMillis();
+                }
+            }
+            catch (InterruptedException e) {}
+            catch (IOException e)
+            {
+                if (open)
+                    LOGGING.log(Level.INFO, "RFB client {0} disconnected: {1}", new Object[] {socket.getRemoteSocketAddress(), e});
+            }
+            finally
+            {
+                close();
+                encoder.end();
+            }
+        }
+    }
+
+    private void sendUpdate() throws IOException
+    {
+        byte[] format;
+        int enc;
+        boolean sendSize = false;
+        int count;
+        synchronized (card)
+        {
+            int resizes = card.getResizeCount();
+            boolean resized = (shadow == null) || (resizes != resizeCount);
+            if (resized) {
+                resizeCount = resizes;
+                Dimension size = card.getDisplaySize();
+                width = size.width;
+                height = size.height;
+                tilesX = card.getTilesX();
+                tilesY = card.getTilesY();
+                shadow = new int[width * height];
+                taken = new long[(tilesX * tilesY + 63) >>> 6];
+            }
+
+            synchronized (this)
+            {
+                if (resized || (pending.length != taken.length)) {
+                    pending = new long[taken.length];
+                    full = true;
+                }
+                for (int i = 0; i < taken.length; i++) {
+                    taken[i] = full ? -1L : pending[i];
+                    pending[i] = 0;
+                }
+                full = false;
+                requested = false;
+                format = newFormat;
+                newFormat = null;
+                enc = encoding;
+                if (desktopSize && ((clientWidth != width) || (clientHeight != height))) {
+                    clientWidth = width;
+                    clientHeight = height;
+                    sendSize = true;
+                }
+            }
+
+            count = collectRects();
+            int[] pixels = card.getDisplayBuffer();
+            for (int r = 0; r < count; r++) {
+                int x = rects[4 * r], y = rects[4 * r + 1], w = rects[4 * r + 2], h = rects[4 * r + 3];
+                for (int row = y; row < y + h; row++)
+                    System.arraycopy(pixels, row * width + x, shadow, row * width + x, w);
+            }
+        }
+
+        if (format != null)
+            if (!encoder.readPixelFormat(new DataInputStream(new ByteArrayInputStream(format))))
+                LOGGING.log(Level.WARNING, "RFB client asked for a colour map pixel format, which is not supported");
+
+        int sent = 0;
+        for (int r = 0; r < count; r++) {
+            int x = rects[4 * r], y = rects[4 * r + 1];
+            int w = Math.min(rects[4 * r + 2], clientWidth - x);
+            int h = Math.min(rects[4 * r + 3], clientHeight - y);
+            if ((w <= 0) || (h <= 0))
+                continue;
+            rects[4 * sent] = x;
+            rects[4 * sent + 1] = y;
+            rects[4 * sent + 2] = w;
+            rects[4 * sent + 3] = h;
+            sent++;
+        }
+
+        encoder.reset();
+        encoder.writeUpdateHeader(sent + (sendSize ? 1 : 0));
+        if (sendSize)
+            encoder.writeRectHeader(0, 0, clientWidth, clientHeight, RFBEncoder.DESKTOP_SIZE);
+        for (int r = 0; r < sent; r++)
+            encoder.writeRect(shadow, width, rects[4 * r], rects[4 * r + 1], rects[4 * r + 2], rects[4 * r + 3], enc);
+        out.write(encoder.getBuffer(), 0, encoder.getLength());
+        out.flush();
+    }
+
+    /**
+     * Turns the taken tiles into rectangles, joining runs of tiles along each
+     * row of tiles and clipping them to the display.
+     * @return number of rectangles
+     */
+    private int collectRects()
+    {
+        int count = 0;
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; ) {
+                int tile = ty * tilesX + tx;
+                if ((taken[tile >>> 6] & (1L << tile)) == 0) {
+                    tx++;
+                    continue;
+                }
+                int start = tx;
+                do {
+                    tx++;
+                    tile++;
+                } while ((tx < tilesX) && ((taken[tile >>> 6] & (1L << tile)) != 0));
+
+                if (4 * count + 4 > rects.length) {
+                    int[] bigger = new int[rects.length * 2];
+                    System.arraycopy(rects, 0, bigger, 0, rects.length);
+                    rects = bigger;
+                }
+                int x = start << TILE_SHIFT, y = ty << TILE_SHIFT;
+                rects[4 * count] = x;
+                rects[4 * count + 1] = y;
+                rects[4 * count + 2] = Math.min(width, tx << TILE_SHIFT) - x;
+                rects[4 * count + 3] = Math.min(height, y + TILE_SIZE) - y;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static final String UNSHIFTED = "`-=[]\\;',./ ";
+    private static final String SHIFTED = "~_+{}|:\"<>?";
+    private static final String SHIFTED_DIGITS = ")!@#$%^&*(";
+    private static final int[] PUNCTUATION = {KeyEvent.VK_BACK_QUOTE, KeyEvent.VK_MINUS, KeyEvent.VK_EQUALS,
+        KeyEvent.VK_OPEN_BRACKET, KeyEvent.VK_CLOSE_BRACKET, KeyEvent.VK_BACK_SLASH, KeyEvent.VK_SEMICOLON,
+        KeyEvent.VK_QUOTE, KeyEvent.VK_COMMA, KeyEvent.VK_PERIOD, KeyEvent.VK_SLASH, KeyEvent.VK_SPACE};
+
+    /**
+     * Returns the scancode of the key on a US keyboard which produces an X11
+     * keysym, or zero if there is none.  The client sends shift separately,
+     * so shifted characters map to their unshifted key.
+     */
+    static byte scancodeFor(int keysym)
+    {
+        return KeyMapping.getScancode(Integer.valueOf(keyCodeFor(keysym)));
+    }
+
+    private static int keyCodeFor(int keysym)
+    {
+        if ((keysym >= 'a') && (keysym <= 'z'))
+            return KeyEvent.VK_A + keysym - 'a';
+        if ((keysym >= 'A') && (keysym <= 'Z'))
+            return KeyEvent.VK_A + keysym - 'A';
+        if ((keysym >= '0') && (keysym <= '9'))
+            return KeyEvent.VK_0 + keysym - '0';
+        if (keysym < 0x7f) {
+            int i = UNSHIFTED.indexOf(keysym);
+            if (i >= 0)
+                return PUNCTUATION[i];
+            i = SHIFTED.indexOf(keysym);
+            if (i >= 0)
+                return PUNCTUATION[i];
+            i = SHIFTED_DIGITS.indexOf(keysym);
+            if (i >= 0)
+                return KeyEvent.VK_0 + i;
+            return KeyEvent.VK_UNDEFINED;
+        }
+        if ((keysym >= 0xffbe) && (keysym <= 0xffc7))
+            return KeyEvent.VK_F1 + keysym - 0xffbe;
+
+        switch (keysym) {
+            case 0xff08: return KeyEvent.VK_BACK_SPACE;
+            case 0xff09: return KeyEvent.VK_TAB;
+            case 0xff0d:
+            case 0xff8d: return KeyEvent.VK_ENTER;
+            case 0xff13: return 19; // Pause
+            case 0xff14: return KeyEvent.VK_SCROLL_LOCK;
+            case 0xff1b: return KeyEvent.VK_ESCAPE;
+            case 0xff50: return KeyEvent.VK_HOME;
+            case 0xff51: return KeyEvent.VK_LEFT;
+            case 0xff52: return KeyEvent.VK_UP;
+            case 0xff53: return KeyEvent.VK_RIGHT;
+            case 0xff54: return KeyEvent.VK_DOWN;
+            case 0xff55: return KeyEvent.VK_PAGE_UP;
+            case 0xff56: return KeyEvent.VK_PAGE_DOWN;
+            case 0xff57: return KeyEvent.VK_END;
+            case 0xff63: return KeyEvent.VK_INSERT;
+            case 0xffc8: return 122; // F11
+            case 0xffc9: return 123; // F12
+            case 0xffe1:
+            case 0xffe2: return KeyEvent.VK_SHIFT;
+            case 0xffe3:
+            case 0xffe4: return KeyEvent.VK_CONTROL;
+            case 0xffe5: return KeyEvent.VK_CAPS_LOCK;
+            case 0xffe9:
+            case 0xffea: return KeyEvent.VK_ALT;
+            case 0xfe03: return KeyEvent.VK_ALT_GRAPH;
+            case 0xffff: return KeyEvent.VK_DELETE;
+            default: return KeyEvent.VK_UNDEFINED;
+        }
+    }
+}
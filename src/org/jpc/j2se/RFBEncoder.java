@@ -0,0 +1,422 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package org.jpc.j2se;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes rectangles of a 0x00RRGGBB pixel array into the RFB raw, RRE and
+ * ZRLE encodings, in the pixel format a client has asked for.
+ * <p>
+ * Output accumulates in an internal buffer which grows as needed and is
+ * reused between updates.  Each client connection has its own encoder,
+ * because ZRLE keeps one zlib stream for the life of the connection.
+ * @author Ian Preston
+ */
+public class RFBEncoder
+{
+    public static final int RAW = 0;
+    public static final int RRE = 2;
+    public static final int ZRLE = 16;
+    public static final int DESKTOP_SIZE = -223;
+
+    private static final int ZRLE_TILE = 64;
+
+    private int bitsPerPixel = 32, depth = 24;
+    private boolean bigEndian = false;
+    private int redMax = 255, greenMax = 255, blueMax = 255;
+    private int redShift = 16, greenShift = 8, blueShift = 0;
+    private boolean nativeFormat = true;
+    private int bytesPerPixel = 4;
+    private int cpixelBytes = 3, cpixelSkip = 0;
+
+    private byte[] out = new byte[64 * 1024];
+    private int outLength;
+    private byte[] zrle = new byte[64 * 1024];
+    private int zrleLength;
+    private byte[] compressed = new byte[64 * 1024];
+    private final Deflater deflater = new Deflater();
+
+    /**
+     * Writes the server's own pixel format, as sent in the ServerInit message.
+     */
+    public void writePixelFormat()
+    {
+        ensure(16);
+        out[outLength++] = (byte) bitsPerPixel;
+        out[outLength++] = (byte) depth;
+        out[outLength++] = (byte) (bigEndian ? 1 : 0);
+        out[outLength++] = 1;
+        writeShort(redMax);
+        writeShort(greenMax);
+        writeShort(blueMax);
+        out[outLength++] = (byte) redShift;
+        out[outLength++] = (byte) greenShift;
+        out[outLength++] = (byte) blueShift;
+        outLength += 3;
+    }
+
+    /**
+     * Reads the 16 byte pixel format of a SetPixelFormat message.
+     * @return <code>false</code> if the format uses a colour map, which is not
+     * supported, in which case the current format is kept
+     */
+    public boolean readPixelFormat(DataInput in) throws IOException
+    {
+        int bpp = in.readUnsignedByte();
+        int d = in.readUnsignedByte();
+        boolean big = in.readUnsignedByte() != 0;
+        boolean trueColour = in.readUnsignedByte() != 0;
+        int rmax = in.readUnsignedShort(), gmax = in.readUnsignedShort(), bmax = in.readUnsignedShort();
+        int rshift = in.readUnsignedByte(), gshift = in.readUnsignedByte(), bshift = in.readUnsignedByte();
+        in.skipBytes(3);
+        if (!trueColour || ((bpp != 8) && (bpp != 16) && (bpp != 32)))
+            return false;
+
+        bitsPerPixel = bpp;
+        depth = d;
+        bigEndian = big;
+        redMax = rmax;
+        greenMax = gmax;
+        blueMax = bmax;
+        redShift = rshift;
+        greenShift = gshift;
+        blueShift = bshift;
+        bytesPerPixel = bpp >>> 3;
+        nativeFormat = (bpp == 32) && (rmax == 255) && (gmax == 255) && (bmax == 255)
+            && (rshift == 16) && (gshift == 8) && (bshift == 0);
+
+        // a ZRLE cpixel drops the unused byte of 32 bit pixels with at most 24 bits of colour
+        int used = (rmax << rshift) | (gmax << gshift) | (bmax << bshift);
+        cpixelBytes = bytesPerPixel;
+        cpixelSkip = 0;
+        if ((bpp == 32) && (d <= 24)) {
+            if ((used & 0xff000000) == 0) {
+                cpixelBytes = 3;
+                cpixelSkip = big ? 1 : 0;
+            } else if ((used & 0xff) == 0) {
+                cpixelBytes = 3;
+                cpixelSkip = big ? 0 : 1;
+            }
+        }
+        return true;
+    }
+
+    public void reset()
+    {
+        outLength = 0;
+    }
+
+    public byte[] getBuffer()
+    {
+        return out;
+    }
+
+    public int getLength()
+    {
+        return outLength;
+    }
+
+    /**
+     * Writes the header of a FramebufferUpdate message.
+     */
+    public void writeUpdateHeader(int rectangles)
+    {
+        ensure(4);
+        out[outLength++] = 0;
+        out[outLength++] = 0;
+        writeShort(rectangles);
+    }
+
+    public void writeRectHeader(int x, int y, int w, int h, int encoding)
+    {
+        ensure(12);
+        writeShort(x);
+        writeShort(y);
+        writeShort(w);
+        writeShort(h);
+        writeInt(encoding);
+    }
+
+    /**
+     * Writes one rectangle of <code>pixels</code> in <code>encoding</code>,
+     * header included.  RRE falls back to raw when it would be larger.
+     * @param pixels source pixels
+     * @param scan width of a row of <code>pixels</code>
+     */
+    public void writeRect(int[] pixels, int scan, int x, int y, int w, int h, int encoding)
+    {
+        switch (encoding) {
+            case ZRLE:
+                writeRectHeader(x, y, w, h, ZRLE);
+                writeZRLE(pixels, scan, x, y, w, h);
+                return;
+            case RRE:
+                if (writeRRE(pixels, scan, x, y, w, h))
+                    return;
+                break;
+        }
+        writeRectHeader(x, y, w, h, RAW);
+        writeRaw(pixels, scan, x, y, w, h);
+    }
+
+    private void writeRaw(int[] pixels, int scan, int x, int y, int w, int h)
+    {
+        ensure(w * h * bytesPerPixel);
+        for (int row = 0; row < h; row++) {
+            int index = (y + row) * scan + x;
+            for (int col = 0; col < w; col++)
+                writePixel(pixels[index++]);
+        }
+    }
+
+    private boolean writeRRE(int[] pixels, int scan, int x, int y, int w, int h)
+    {
+        int background = pixels[y * scan + x];
+        int subrects = 0;
+        for (int row = 0; row < h; row++) {
+            int index = (y + row) * scan + x;
+            for (int col = 0; col < w; ) {
+                int colour = pixels[index + col];
+                int end = col + 1;
+                while ((end < w) && (pixels[index + end] == colour))
+                    end++;
+                if (colour != background)
+                    subrects++;
+                col = end;
+            }
+        }
+        if (4 + bytesPerPixel + subrects * (bytesPerPixel + 8) >= w * h * bytesPerPixel)
+            return false;
+
+        writeRectHeader(x, y, w, h, RRE);
+        ensure(4 + bytesPerPixel + subrects * (bytesPerPixel + 8));
+        writeInt(subrects);
+        writePixel(background);
+        for (int row = 0; row < h; row++) {
+            int index = (y + row) * scan + x;
+            for (int col = 0; col < w; ) {
+                int colour = pixels[index + col];
+                int end = col + 1;
+                while ((end < w) && (pixels[index + end] == colour))
+                    end++;
+                if (colour != background) {
+                    writePixel(colour);
+                    writeShort(col);
+                    writeShort(row);
+                    writeShort(end - col);
+                    writeShort(1);
+                }
+                col = end;
+            }
+        }
+        return true;
+    }
+
+    private void writeZRLE(int[] pixels, int scan, int x, int y, int w, int h)
+    {
+        zrleLength = 0;
+        for (int ty = 0; ty < h; ty += ZRLE_TILE) {
+            int th = Math.min(ZRLE_TILE, h - ty);
+            for (int tx = 0; tx < w; tx += ZRLE_TILE)
+                writeZRLETile(pixels, scan, x + tx, y + ty, Math.min(ZRLE_TILE, w - tx), th);
+        }
+
+        deflater.setInput(zrle, 0, zrleLength);
+        int length = 0;
+        while (true) {
+            length += deflater.deflate(compressed, length, compressed.length - length, Deflater.SYNC_FLUSH);
+            if (length < compressed.length)
+                break;
+            byte[] bigger = new byte[compressed.length * 2];
+            System.arraycopy(compressed, 0, bigger, 0, length);
+            compressed = bigger;
+        }
+        ensure(4 + length);
+        writeInt(length);
+        System.arraycopy(compressed, 0, out, outLength, length);
+        outLength += length;
+    }
+
+    private void writeZRLETile(int[] pixels, int scan, int x, int y, int w, int h)
+    {
+        int first = pixels[y * scan + x];
+        int runs = 0, runBytes = 0;
+        boolean solid = true;
+        for (int row = 0; row < h; row++) {
+            int index = (y + row) * scan + x;
+            for (int col = 0; col < w; col++)
+                if (pixels[index + col] != first) {
+                    solid = false;
+                    break;
+                }
+            if (!solid)
+                break;
+        }
+        if (solid) {
+            ensureZRLE(1 + cpixelBytes);
+            zrle[zrleLength++] = 1;
+            writeCPixel(first);
+            return;
+        }
+
+        // size runs which continue from one row to the next, as ZRLE does
+        int colour = first, length = 0;
+        for (int row = 0; row < h; row++) {
+            int index = (y + row) * scan + x;
+            for (int col = 0; col < w; col++) {
+                int p = pixels[index + col];
+                if (p == colour) {
+                    length++;
+                    continue;
+                }
+                runs++;
+                runBytes += (length - 1) / 255 + 1;
+                colour = p;
+                length = 1;
+            }
+        }
+        runs++;
+        runBytes += (length - 1) / 255 + 1;
+
+        int rawSize = w * h * cpixelBytes;
+        if (runs * cpixelBytes + runBytes >= rawSize) {
+            ensureZRLE(1 + rawSize);
+            zrle[zrleLength++] = 0;
+            for (int row = 0; row < h; row++) {
+                int index = (y + row) * scan + x;
+                for (int col = 0; col < w; col++)
+                    writeCPixel(pixels[index + col]);
+            }
+            return;
+        }
+
+        ensureZRLE(1 + runs * cpixelBytes + runBytes);
+        zrle[zrleLength++] = (byte) 128;
+        colour = first;
+        length = 0;
+        for (int row = 0; row < h; row++) {
+            int index = (y + row) * scan + x;
+            for (int col = 0; col < w; col++) {
+                int p = pixels[index + col];
+                if (p == colour) {
+                    length++;
+                    continue;
+                }
+                writeRun(colour, length);
+                colour = p;
+                length = 1;
+            }
+        }
+        writeRun(colour, length);
+    }
+
+    private void writeRun(int colour, int length)
+    {
+        writeCPixel(colour);
+        length--;
+        while (length >= 255) {
+            zrle[zrleLength++] = (byte) 255;
+            length -= 255;
+        }
+        zrle[zrleLength++] = (byte) length;
+    }
+
+    private int convert(int rgb)
+    {
+        if (nativeFormat)
+            return rgb;
+        int r = ((rgb >>> 16) & 0xff) * redMax / 255;
+        int g = ((rgb >>> 8) & 0xff) * greenMax / 255;
+        int b = (rgb & 0xff) * blueMax / 255;
+        return (r << redShift) | (g << greenShift) | (b << blueShift);
+    }
+
+    private void writePixel(int rgb)
+    {
+        int p = convert(rgb);
+        if (bigEndian)
+            for (int i = bytesPerPixel - 1; i >= 0; i--)
+                out[outLength++] = (byte) (p >>> (8 * i));
+        else
+            for (int i = 0; i < bytesPerPixel; i++)
+                out[outLength++] = (byte) (p >>> (8 * i));
+    }
+
+    private void writeCPixel(int rgb)
+    {
+        int p = convert(rgb);
+        int end = cpixelSkip + cpixelBytes;
+        if (bigEndian)
+            for (int i = cpixelSkip; i < end; i++)
+                zrle[zrleLength++] = (byte) (p >>> (8 * (bytesPerPixel - 1 - i)));
+        else
+            for (int i = cpixelSkip; i < end; i++)
+                zrle[zrleLength++] = (byte) (p >>> (8 * i));
+    }
+
+    private void writeShort(int value)
+    {
+        out[outLength++] = (byte) (value >>> 8);
+        out[outLength++] = (byte) value;
+    }
+
+    private void writeInt(int value)
+    {
+        out[outLength++] = (byte) (value >>> 24);
+        out[outLength++] = (byte) (value >>> 16);
+        out[outLength++] = (byte) (value >>> 8);
+        out[outLength++] = (byte) value;
+    }
+
+    private void ensure(int extra)
+    {
+        if (outLength + extra <= out.length)
+            return;
+        byte[] bigger = new byte[Math.max(out.length * 2, outLength + extra)];
+        System.arraycopy(out, 0, bigger, 0, outLength);
+        out = bigger;
+    }
+
+    private void ensureZRLE(int extra)
+    {
+        if (zrleLength + extra <= zrle.length)
+            return;
+        byte[] bigger = new byte[Math.max(zrle.length * 2, zrleLength + extra)];
+        System.arraycopy(zrle, 0, bigger, 0, zrleLength);
+        zrle = bigger;
+    }
+
+    public void end()
+    {
+        deflater.end();
+    }
+}
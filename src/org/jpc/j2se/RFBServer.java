@@ -0,0 +1,167 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+
+package org.jpc.j2se;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jpc.emulator.pci.peripheral.HeadlessVGACard;
+import org.jpc.emulator.peripheral.Keyboard;
+
+/**
+ * Serves the display of a <code>HeadlessVGACard</code> to VNC viewers over the
+ * RFB protocol, and feeds their key and pointer events back to the
+ * <code>Keyboard</code>.
+ * <p>
+ * A single renderer thread runs the VGA update at the frame rate and hands
+ * the tiles it redrew to every connection.  Each connection encodes and
+ * sends its updates on its own thread, so neither the emulation thread nor
+ * the other viewers ever wait on a slow client.
+ * @author Ian Preston
+ */
+public class RFBServer implements Runnable
+{
+    private static final Logger LOGGING = Logger.getLogger(RFBServer.class.getName());
+
+    private final HeadlessVGACard card;
+    private final Keyboard keyboard;
+    private final ServerSocket sock;
+    private final long frameMillis;
+    private final List<RFBConnection> clients = new CopyOnWriteArrayList<RFBConnection>();
+
+    /**
+     * Constructs a server listening on <code>port</code>.
+     * @param card display to serve
+     * @param keyboard destination for client input
+     * @param port TCP port to listen on
+     * @param fps maximum number of updates sent to each client per second
+     * @throws IOException if the port cannot be bound
+     */
+    public RFBServer(HeadlessVGACard card, Keyboard keyboard, int port, int fps) throws IOException
+    {
+        this.card = card;
+        this.keyboard = keyboard;
+        this.frameMillis = 1000 / Math.max(1, fps);
+        sock = new ServerSocket(port);
+    }
+
+    public void start()
+    {
+        Thread accept = new Thread(this, "RFB Server");
+        accept.setDaemon(true);
+        accept.start();
+
+        Thread renderer = new Thread(new Renderer(), "RFB Renderer");
+        renderer.setDaemon(true);
+        renderer.start();
+        LOGGING.log(Level.INFO, "Started RFB server on port {0}", Integer.valueOf(sock.getLocalPort()));
+    }
+
+    public void run()
+    {
+        while (!sock.isClosed()) {
+            try
+            {
+                Socket s = sock.accept();
+                s.setTcpNoDelay(true);
+                RFBConnection c = new RFBConnection(this, s);
+                clients.add(c);
+                c.start();
+            }
+            catch (IOException e)
+            {
+                if (!sock.isClosed())
+                    LOGGING.log(Level.WARNING, "RFB accept failed", e);
+            }
+        }
+    }
+
+    public void close() throws IOException
+    {
+        sock.close();
+        for (RFBConnection c: clients)
+            c.close();
+    }
+
+    HeadlessVGACard getCard()
+    {
+        return card;
+    }
+
+    Keyboard getKeyboard()
+    {
+        return keyboard;
+    }
+
+    long getFrameMillis()
+    {
+        return frameMillis;
+    }
+
+    void removeClient(RFBConnection c)
+    {
+        clients.remove(c);
+    }
+
+    class Renderer implements Runnable
+    {
+        private long[] tiles = new long[0];
+
+        public void run()
+        {
+            while (!sock.isClosed()) {
+                try
+                {
+                    Thread.sleep(frameMillis);
+                }
+                catch (InterruptedException e) {}
+
+                if (clients.isEmpty())
+                    continue;
+                synchronized (card)
+                {
+                    int count = card.getTilesX() * card.getTilesY();
+                    if (tiles.length != (count + 63) >>> 6)
+                        tiles = new long[(count + 63) >>> 6];
+                    if (!card.refresh(tiles))
+                        continue;
+                    for (RFBConnection c: clients)
+                        c.markDirty(tiles);
+                }
+                for (int i = 0; i < tiles.length; i++)
+                    tiles[i] = 0;
+            }
+        }
+    }
+}
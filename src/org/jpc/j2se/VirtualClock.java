@@ -32,22 +32,43 @@ import org.jpc.emulator.motherboard.*;
 import org.jpc.support.Clock;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.*;
 
+/**
+ * Clock which counts emulated instructions and fires timers from an indexed
+ * heap owned by the emulation thread.
+ * <p>
+ * The thread which last advanced the clock is taken to be the emulation
+ * thread.  Timers armed or disabled on it go straight into the heap without
+ * any locking.  Changes made on any other thread are passed across through a
+ * lock-free queue and applied the next time the clock is processed.
+ * <p>
+ * While the processor is halted the emulation thread parks until the next
+ * timer is due.  An interrupt raised on another thread unparks it, and time
+ * then moves on only as far as real time has.
+ * @author Ian Preston
+ */
 public class VirtualClock extends AbstractHardwareComponent implements Clock
 {
     public static long IPS = Option.ips.intValue(25000000);
     private static final boolean DEBUG = false;
     private static final Logger LOGGING = Logger.getLogger(VirtualClock.class.getName());
 
-    private PriorityQueue<Timer> timers;
+    private final TimerQueue timers = new TimerQueue();
+    private final Queue<Timer> handoff = new ConcurrentLinkedQueue<Timer>();
+    private volatile Thread owner;
     private volatile boolean ticksEnabled;
     private long ticksOffset;
     private long ticksStatic;
     private long totalTicks = 0; // emulated cycles, monotonically increasing
     private long totalEmulatedNanos = 0; // emulated nanos, monotonically increasing
+    private long dueTicks = 0; // no timer can expire before totalTicks reaches this
     private static final boolean REAL_TIME = !Option.deterministic.isSet(); //sync clock with real clock by default
 
     //required for tracking real time
@@ -60,7 +81,6 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
 
     public VirtualClock()
     {
-        timers = new PriorityQueue<Timer>(20);
         ticksEnabled = false;
         ticksOffset = 0;
         ticksStatic = 0;
@@ -78,9 +98,10 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
         ticksEnabled = input.readBoolean();
         ticksOffset = input.readLong();
         ticksStatic = input.readLong();
+        dueTicks = 0;
     }
 
-    public synchronized Timer newTimer(TimerResponsive object)
+    public Timer newTimer(TimerResponsive object)
     {
         Timer tempTimer = new Timer(object, this);
         return tempTimer;
@@ -88,23 +109,51 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
 
     private boolean process()
     {
-        Timer tempTimer;
-        tempTimer = timers.peek();
-        if ((tempTimer == null) || !tempTimer.check(getTime()))
+        if (!handoff.isEmpty())
+            drainHandoff();
+        long now = getTime();
+        long expiry = timers.nextExpiry();
+        if (expiry > now) {
+            dueTicks = computeDueTicks(now, expiry);
             return false;
-        else
-            return true;
+        }
+        dueTicks = 0;
+        return timers.peek().check(now);
     }
 
-    public synchronized void update(Timer object)
+    /**
+     * Returns the tick count before which the first timer, due at
+     * <code>expiry</code>, cannot fire.  This errs on the early side, as the
+     * processor only looks at timers and interrupts again once it is reached.
+     */
+    private long computeDueTicks(long now, long expiry)
     {
-        timers.remove(object);
-        if (object.enabled())
-        {
-            timers.offer(object);
+        if (!ticksEnabled)
+            return totalTicks;
+        if (expiry == Long.MAX_VALUE)
+            return Long.MAX_VALUE;
+        long ticks = convertNanosToTicks(expiry - now) - 1;
+        return (ticks > 0) ? totalTicks + ticks : totalTicks;
+    }
+
+    public void update(Timer object)
+    {
+        Thread current = owner;
+        if ((current != null) && (current != Thread.currentThread()))
+            handoff.offer(object);
+        else {
+            timers.update(object);
+            dueTicks = 0;
         }
     }
 
+    private void drainHandoff()
+    {
+        Timer t;
+        while ((t = handoff.poll()) != null)
+            timers.update(t);
+    }
+
     public long getTime()
     {
         if (ticksEnabled)
@@ -154,6 +203,7 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
 
     public void pause()
     {
+        dueTicks = 0;
         if (ticksEnabled)
         {
             ticksStatic = getTime();
@@ -163,6 +213,7 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
 
     public void resume()
     {
+        dueTicks = 0;
         if (!ticksEnabled)
         {
             ticksOffset = ticksStatic - getRealTime();
@@ -186,55 +237,47 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
     }
 
     public void updateNowAndProcess(boolean sleep) {
+        claimOwnership();
+        dueTicks = 0;
+        if (!handoff.isEmpty())
+            drainHandoff();
         if (REAL_TIME) {
-            Timer tempTimer;
-            synchronized (this)
-            {
-                tempTimer = timers.peek();
-            }
+            Timer tempTimer = timers.peek();
             long expiry = tempTimer.getExpiry();
             long now = getEmulatedNanos();
             long nanoDelay = expiry-now;
             if (nanoDelay > 0)
             {
+                long advance = nanoDelay;
                 nanosToSleep += nanoDelay;
                 if (nanosToSleep > MIN_SLEEP_NANOS) // don't waste time with loads of tiny sleeps (eg. mixer)
                 {
-                    try
-                    {
-                        if (DEBUG)
-                            System.out.printf("Halt: sleep for %d millis %d nanos...\n", (nanosToSleep)/1000000L, nanosToSleep % 1000000);
-                        if (nanosToSleep > 100000000)
-                            nanosToSleep = 100000000L;
-                        Thread.sleep(nanosToSleep/1000000L, (int)(nanosToSleep % 1000000));
-
-                    } catch (InterruptedException ex)
-                    {
-                        Logger.getLogger(VirtualClock.class.getName()).log(Level.SEVERE, null, ex);
-                    }
+                    if (DEBUG)
+                        System.out.printf("Halt: sleep for %d millis %d nanos...\n", (nanosToSleep)/1000000L, nanosToSleep % 1000000);
+                    if (nanosToSleep > 100000000)
+                        nanosToSleep = 100000000L;
+                    long start = System.nanoTime();
+                    LockSupport.parkNanos(nanosToSleep);
+                    // the sleep may have been capped, or cut short by an interrupt raised on another
+                    // thread, so only move on as far as real time has
+                    advance = Math.min(nanoDelay, System.nanoTime() - start);
                     nanosToSleep = 0;
                 }
-                totalTicks += convertNanosToTicks(nanoDelay)+1; // only place where ticks gets out of sync with number of instructions
+                totalTicks += convertNanosToTicks(advance)+1; // only place where ticks gets out of sync with number of instructions
+                if (advance < nanoDelay)
+                    return;
             }
             if (!tempTimer.check(getEmulatedNanos()))
                 throw new IllegalStateException("Should have forced interrupt!");
         } else {
-            Timer tempTimer;
-            synchronized (this)
-            {
-                tempTimer = timers.peek();
-            }
+            Timer tempTimer = timers.peek();
             long expiry = tempTimer.getExpiry();
             if (sleep)
-                try
-                {
-                    long toSleep = Math.min((expiry - getTime()) / 1000000, 100);
-//                    System.out.printf("Sleeping for %x millis", toSleep);
-                    Thread.sleep(toSleep);
-                } catch (InterruptedException ex)
-                {
-                    Logger.getLogger(VirtualClock.class.getName()).log(Level.SEVERE, null, ex);
-                }
+            {
+                long toSleep = Math.min(expiry - getTime(), 100000000L);
+                if (toSleep > 0)
+                    LockSupport.parkNanos(toSleep);
+            }
             // cast time difference to microseconds, then convert to cycles
             totalTicks = (long)((double)expiry * IPS / getTickRate());//totalTicks += ((expiry - getEmulatedNanos())/1000)*1000 * IPS / getTickRate();
             if (totalTicks < 0) {
@@ -254,6 +297,12 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
         process();
     }
 
+    public boolean updateAndCheck(int instructions)
+    {
+        update(instructions);
+        return (totalTicks >= dueTicks) || !handoff.isEmpty();
+    }
+
     public long convertNanosToTicks(long nanos) {
         return (long)(((double)nanos)*IPS/1000000000);
 //        return nanos * IPS / 1000000000L;
@@ -266,6 +315,7 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
 
     public void update(int instructions)
     {
+        claimOwnership();
         totalTicks += instructions;
         if ((REAL_TIME) && (totalTicks > nextRateCheckTicks))
         {
@@ -278,10 +328,18 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
                 lastRealNanos += realNanosDelta;
                 lastTotalTicks = totalTicks;
                 changeTimeRate(((double) realNanosDelta/emulatedNanosDelta));
+                dueTicks = 0;
             }
         }
     }
 
+    private void claimOwnership()
+    {
+        Thread current = Thread.currentThread();
+        if (owner != current)
+            owner = current;
+    }
+
     private void changeTimeRate(double factor)
     {
         if (DEBUG)
@@ -300,11 +358,9 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
 
     public long nextExpiry()
     {
-        Timer tempTimer;
-        tempTimer = timers.peek();
-        if (tempTimer == null)
-            return Long.MAX_VALUE;
-        return tempTimer.getExpiry();
+        if (!handoff.isEmpty() && (owner == Thread.currentThread()))
+            drainHandoff();
+        return timers.nextExpiry();
     }
 
     public long ticksToNanos(long ticks)
@@ -314,30 +370,32 @@ public class VirtualClock extends AbstractHardwareComponent implements Clock
 
     public String printTimerQueue() {
         StringBuilder b = new StringBuilder();
-        int n = timers.size();
-        List<Timer> all = new ArrayList<Timer>(n);
-        for (int i=0; i < n; i++) {
-            Timer t = timers.poll();
-            all.add(t);
+        List<Timer> all = new ArrayList<Timer>(timers.size());
+        for (int i=0; i < timers.size(); i++)
+            all.add(timers.get(i));
+        Collections.sort(all, new Comparator<Timer>() {
+            public int compare(Timer a, Timer b)
+            {
+                return Long.compare(a.getExpiry(), b.getExpiry());
+            }
+        });
+        for (Timer t: all)
             b.append(String.format("Timer class: %70s expiry %020d\n", t.callback.getClass(), t.getExpiry()));
-        }
-        timers.addAll(all);
         return b.toString();
     }
 
     // Only used to force interupts at certain times
     public void setNextPitExpiry(long ticks)
     {
-        Timer pit = timers.poll();
-        PriorityQueue<Timer> tmp = new PriorityQueue<Timer>(timers.size());
-        while (!(pit.callback instanceof IntervalTimer.TimerChannel))
+        Timer pit = null;
+        for (int i=0; i < timers.size(); i++)
         {
-            tmp.add(pit);
-            if (timers.isEmpty())
-                throw new IllegalStateException("PIT timer not set!");
-            pit = timers.poll();
+            Timer t = timers.get(i);
+            if ((t.callback instanceof IntervalTimer.TimerChannel) && ((pit == null) || (t.getExpiry() < pit.getExpiry())))
+                pit = t;
         }
+        if (pit == null)
+            throw new IllegalStateException("PIT timer not set!");
         pit.setExpiry(ticksToNanos(ticks));
-        timers.addAll(tmp);
     }
 }
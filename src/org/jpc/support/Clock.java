@@ -46,6 +46,15 @@ public interface Clock extends HardwareComponent
 
     public void updateAndProcess(int instructions);
 
+    /**
+     * Accounts for executed instructions as {@link #update(int)} does, and
+     * reports whether a timer may now be due, so that the caller need only
+     * call {@link #updateAndProcess(int)} when it is.
+     * @param instructions number of instructions executed
+     * @return true if a timer may have expired or timers have changed
+     */
+    public boolean updateAndCheck(int instructions);
+
     public void updateNowAndProcess(boolean sleep);
 
     public long getTicks();
@@ -57,6 +57,7 @@ public class DriveSet extends AbstractHardwareComponent
         
         dir("org.jpc.support.TreeBlockDevice"),
         mem("org.jpc.support.ArrayBackedSeekableIODevice"),
+        overlay("org.jpc.support.OverlaySeekableIODevice"),
         net("org.jpc.support.RemoteSeekableIODevice");
 
         private final String clazzname;
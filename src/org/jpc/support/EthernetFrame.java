@@ -0,0 +1,72 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.support;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * An ethernet frame held in a reusable buffer. Frames are taken from and
+ * returned to a shared pool so that outputs passing steady traffic between
+ * threads don't allocate per frame.
+ * @author Ian Preston
+ */
+final class EthernetFrame
+{
+    static final int MAX_LENGTH = 1514;
+
+    private static final Queue<EthernetFrame> pool = new ConcurrentLinkedQueue<EthernetFrame>();
+
+    final byte[] data = new byte[MAX_LENGTH];
+    int length;
+
+    private EthernetFrame() {}
+
+    static EthernetFrame allocate()
+    {
+        EthernetFrame f = pool.poll();
+        return (f != null) ? f : new EthernetFrame();
+    }
+
+    void release()
+    {
+        pool.offer(this);
+    }
+
+    /**
+     * Copies this frame into <code>buffer</code> and returns it to the pool.
+     * @return the frame length
+     */
+    int copyAndRelease(byte[] buffer)
+    {
+        int l = length;
+        System.arraycopy(data, 0, buffer, 0, l);
+        release();
+        return l;
+    }
+}
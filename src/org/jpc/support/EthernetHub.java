@@ -33,150 +33,192 @@
 
 package org.jpc.support;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.Socket;
-import java.net.UnknownHostException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- *
+ * Connects the ethernet card to an <code>EthernetHubServer</code>. Frames
+ * travel as a four byte length followed by the frame itself, and are batched
+ * into direct buffers in both directions so that a burst of frames costs a
+ * single socket write or read. One thread blocked in a <code>Selector</code>
+ * does all the socket work and reconnects if the hub goes away.
  * @author Ian Preston
  */
-public class EthernetHub extends EthernetOutput
+public class EthernetHub extends EthernetOutput implements Runnable
 {
-    private int errorDelay, port;
-    private String serverHost;
-    private volatile DataOutputStream out;
-    private volatile DataInputStream in;
-    private int packetSize;
-    private Queue<byte[]> inQueue = new ConcurrentLinkedQueue<byte[]>();
-    private Queue<byte[]> outQueue = new ConcurrentLinkedQueue<byte[]>();
-
-    public EthernetHub(String host, int port)
+    private static final Logger LOGGING = Logger.getLogger(EthernetHub.class.getName());
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_QUEUED_FRAMES = 256;
+
+    private final InetSocketAddress server;
+    private final Selector selector;
+    private final ByteBuffer outgoing = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final ByteBuffer incoming = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Queue<EthernetFrame> inQueue = new ConcurrentLinkedQueue<EthernetFrame>();
+    private final AtomicInteger queuedFrames = new AtomicInteger();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private SocketChannel channel;
+    private SelectionKey key;
+    private int errorDelay = 1000;
+
+    public EthernetHub(String host, int port) throws IOException
     {
-        packetSize = -1;
-        serverHost = host;
-        this.port = port;
-        errorDelay = 10000;
+        server = new InetSocketAddress(host, port);
+        selector = Selector.open();
         System.out.println("Connecting to remote EthernetHub at: " + host + ":" + port);
-        
-        new Thread(new Reader()).start();
-        new Thread(new Writer()).start();
+
+        Thread t = new Thread(this, "Ethernet Hub");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void sendPacket(byte[] data, int offset, int length)
+    {
+        synchronized (outgoing)
+        {
+            // like a real wire, frames are lost rather than queued without limit
+            if (outgoing.remaining() < length + 4)
+                return;
+            outgoing.putInt(length);
+            outgoing.put(data, offset, length);
+        }
+        if (wakeupPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    public byte[] getPacket()
+    {
+        EthernetFrame f = inQueue.poll();
+        if (f == null)
+            return null;
+        queuedFrames.decrementAndGet();
+        byte[] packet = new byte[f.length];
+        f.copyAndRelease(packet);
+        return packet;
     }
 
-    private synchronized void reconnect()
+    public int getPacket(byte[] buffer)
     {
-        notifyAll();
-        if (in != null)
-            return;
+        EthernetFrame f = inQueue.poll();
+        if (f == null)
+            return -1;
+        queuedFrames.decrementAndGet();
+        return f.copyAndRelease(buffer);
+    }
 
-        in = null;
-        out = null;
+    public void run()
+    {
         while (true)
         {
+            if (channel == null)
+                connect();
             try
             {
-                Socket server = new Socket(serverHost, port);
-                server.setTcpNoDelay(true);
-                server.setPerformancePreferences(0, 2, 1);
-                
-                out = new DataOutputStream(server.getOutputStream());
-                in = new DataInputStream(server.getInputStream());
-                errorDelay = 1000;
-                return;
+                selector.select();
+                wakeupPending.set(false);
+                if (key.isValid() && key.isReadable())
+                    read();
+                flush();
             }
-            catch (Exception e)
+            catch (IOException e)
             {
-                errorDelay = Math.min(errorDelay+2000, 30000);
-                System.out.println("Error connecting to ethernet hub: "+e);
-                try
-                {
-                    wait(errorDelay);
-                }
-                catch (Exception ee) {}
+                LOGGING.log(Level.INFO, "Lost connection to ethernet hub", e);
+                disconnect();
             }
         }
     }
 
-    class Reader implements Runnable
+    private void connect()
     {
-        public void run()
+        while (true)
         {
-            while (true) 
+            try
             {
-                if (inQueue.size() > 100)
-                {
-                    System.out.println("Clearing ETH0 packet queue");
-                    inQueue.clear();
-                }
-
+                channel = SocketChannel.open(server);
+                channel.socket().setTcpNoDelay(true);
+                channel.configureBlocking(false);
+                key = channel.register(selector, SelectionKey.OP_READ);
+                errorDelay = 1000;
+                return;
+            }
+            catch (IOException e)
+            {
+                disconnect();
+                errorDelay = Math.min(errorDelay + 2000, 30000);
+                System.out.println("Error connecting to ethernet hub: " + e);
                 try
                 {
-                    int size = in.readInt();
-                    System.out.println(">>> "+size);
-                    byte[] packet = new byte[size];
-                    in.readFully(packet);
-                    inQueue.add(packet);
-                } 
-                catch (Exception ex)
-                {
-                    in = null;
-                    out = null;
-                    reconnect();
+                    Thread.sleep(errorDelay);
                 }
+                catch (InterruptedException ie) {}
             }
         }
     }
 
-    class Writer implements Runnable
+    private void disconnect()
     {
-        public void run()
+        if (channel != null)
         {
-            while (true) 
+            try
             {
-                try
-                {
-                    synchronized (outQueue)
-                    {
-                        while (outQueue.size() == 0)
-                            outQueue.wait();
-                    }
-
-                    byte[] packet = outQueue.poll();
-                    out.writeInt(packet.length);
-                    out.write(packet);
-                    out.flush();
-                } 
-                catch (Exception ex)
-                {
-                    in = null;
-                    out = null;
-                    reconnect();
-                }
+                channel.close();
             }
+            catch (IOException e) {}
+        }
+        channel = null;
+        key = null;
+        incoming.clear();
+        synchronized (outgoing)
+        {
+            outgoing.clear();
         }
     }
 
-    public byte[] getPacket()
+    private void read() throws IOException
     {
-        byte[] packet = inQueue.poll();
-        return packet;
+        if (channel.read(incoming) < 0)
+            throw new IOException("Hub closed the connection");
+        incoming.flip();
+        while (incoming.remaining() >= 4)
+        {
+            int start = incoming.position();
+            int length = incoming.getInt(start);
+            if ((length < 0) || (length > BUFFER_SIZE - 4))
+                throw new IOException("Bad frame length " + length);
+            if (incoming.remaining() < length + 4)
+                break;
+            incoming.position(start + 4);
+            if ((length <= EthernetFrame.MAX_LENGTH) && (queuedFrames.get() < MAX_QUEUED_FRAMES))
+            {
+                EthernetFrame f = EthernetFrame.allocate();
+                incoming.get(f.data, 0, length);
+                f.length = length;
+                queuedFrames.incrementAndGet();
+                inQueue.offer(f);
+            }
+            else
+                incoming.position(start + 4 + length);
+        }
+        incoming.compact();
     }
 
-    public void sendPacket(byte[] data, int offset, int length)
+    private void flush() throws IOException
     {
-        byte[] p = new byte[length];
-        System.arraycopy(data, offset, p, 0, length);
-        
-        synchronized (outQueue)
+        synchronized (outgoing)
         {
-            outQueue.add(p);
-            outQueue.notify();
+            outgoing.flip();
+            channel.write(outgoing);
+            outgoing.compact();
+            key.interestOps(outgoing.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
         }
     }
 }
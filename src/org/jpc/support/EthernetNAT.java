@@ -0,0 +1,793 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.support;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.*;
+
+/**
+ * A user mode NAT network in the style of slirp. The guest sees a private
+ * 10.0.2.0/24 network with a gateway at 10.0.2.2, a DNS server at 10.0.2.3
+ * and gets 10.0.2.15 from the built in DHCP server. Its TCP and UDP flows
+ * are terminated here and replayed on ordinary host sockets, so no special
+ * privileges are needed on the host. Connections to the gateway address
+ * reach the host's loopback interface.
+ * <p>
+ * All protocol state belongs to a single thread blocked in a
+ * <code>Selector</code>: frames from the card are handed to it through a
+ * queue and frames for the card come back the same way. Frame buffers are
+ * recycled through a pool so that steady traffic allocates nothing. Frames
+ * for the card are dropped once <code>MAX_QUEUED_FRAMES</code> are waiting,
+ * leaving TCP to retransmit, as a real network would when the card's receive
+ * ring is full.
+ * @author Ian Preston
+ */
+public class EthernetNAT extends EthernetOutput implements Runnable
+{
+    private static final Logger LOGGING = Logger.getLogger(EthernetNAT.class.getName());
+
+    static final int NETWORK = 0x0a000200;
+    static final int NETMASK = 0xffffff00;
+    static final int GATEWAY = NETWORK | 2;
+    static final int NAMESERVER = NETWORK | 3;
+    static final int GUEST = NETWORK | 15;
+    static final byte[] GATEWAY_MAC = {0x52, 0x55, 0x0a, 0x00, 0x02, 0x02};
+    static final byte[] BROADCAST_MAC = {-1, -1, -1, -1, -1, -1};
+
+    static final int ETH_HEADER = 14;
+    static final int IP_HEADER = 20;
+    static final int TCP_HEADER = 20;
+    static final int UDP_HEADER = 8;
+    static final int MTU = 1500;
+
+    private static final int ETHERTYPE_IP = 0x0800;
+    private static final int ETHERTYPE_ARP = 0x0806;
+    private static final int PROTOCOL_ICMP = 1;
+    static final int PROTOCOL_TCP = 6;
+    private static final int PROTOCOL_UDP = 17;
+
+    private static final int DHCP_DISCOVER = 1;
+    private static final int DHCP_OFFER = 2;
+    private static final int DHCP_REQUEST = 3;
+    private static final int DHCP_ACK = 5;
+    private static final int DHCP_LEASE_SECONDS = 86400;
+    private static final int DHCP_MAGIC = 0x63825363;
+
+    private static final long UDP_IDLE_MILLIS = 60000;
+    private static final long TIMER_MILLIS = 100;
+    private static final int MAX_QUEUED_FRAMES = 256;
+
+    private final Queue<EthernetFrame> fromGuest = new ConcurrentLinkedQueue<EthernetFrame>();
+    private final Queue<EthernetFrame> toGuest = new ConcurrentLinkedQueue<EthernetFrame>();
+    private final AtomicInteger queuedFrames = new AtomicInteger();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private volatile boolean closed;
+
+    private final Selector selector;
+    private final InetSocketAddress nameserver;
+    private final Map<Long, NATTCPConnection> tcpConnections = new HashMap<Long, NATTCPConnection>();
+    private final Map<Long, UDPFlow> udpFlows = new HashMap<Long, UDPFlow>();
+    private final ByteBuffer datagram = ByteBuffer.allocate(MTU - IP_HEADER - UDP_HEADER);
+    private final byte[] guestMac = BROADCAST_MAC.clone();
+    private int ipIdentification;
+    private long lastTimerRun;
+
+    public EthernetNAT() throws IOException
+    {
+        this(defaultNameserver());
+    }
+
+    /**
+     * @param nameserver the host resolver that queries to 10.0.2.3 are relayed to
+     */
+    public EthernetNAT(InetAddress nameserver) throws IOException
+    {
+        this.nameserver = new InetSocketAddress(nameserver, 53);
+        selector = Selector.open();
+        Thread t = new Thread(this, "Ethernet NAT");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Finds the host's first configured nameserver, falling back to the loopback
+     * address where the platform doesn't expose one.
+     */
+    private static InetAddress defaultNameserver() throws IOException
+    {
+        File conf = new File("/etc/resolv.conf");
+        if (conf.canRead())
+        {
+            BufferedReader in = new BufferedReader(new FileReader(conf));
+            try
+            {
+                String line;
+                while ((line = in.readLine()) != null)
+                {
+                    String[] parts = line.trim().split("\\s+");
+                    if ((parts.length >= 2) && parts[0].equals("nameserver"))
+                        return InetAddress.getByName(parts[1]);
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        return InetAddress.getLoopbackAddress();
+    }
+
+    public void sendPacket(byte[] data, int offset, int length)
+    {
+        if (closed || (length < ETH_HEADER) || (length > EthernetFrame.MAX_LENGTH))
+            return;
+        EthernetFrame f = EthernetFrame.allocate();
+        System.arraycopy(data, offset, f.data, 0, length);
+        f.length = length;
+        fromGuest.offer(f);
+        if (wakeupPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    public byte[] getPacket()
+    {
+        EthernetFrame f = toGuest.poll();
+        if (f == null)
+            return null;
+        queuedFrames.decrementAndGet();
+        byte[] packet = Arrays.copyOf(f.data, f.length);
+        f.release();
+        return packet;
+    }
+
+    public int getPacket(byte[] buffer)
+    {
+        EthernetFrame f = toGuest.poll();
+        if (f == null)
+            return -1;
+        queuedFrames.decrementAndGet();
+        return f.copyAndRelease(buffer);
+    }
+
+    /**
+     * Stops the NAT thread, which closes every relayed host connection and
+     * the selector on its way out.
+     */
+    public void close()
+    {
+        closed = true;
+        selector.wakeup();
+    }
+
+    public void run()
+    {
+        try
+        {
+            serve();
+        }
+        finally
+        {
+            shutdown();
+        }
+    }
+
+    private void serve()
+    {
+        while (!closed)
+        {
+            try
+            {
+                selector.select(TIMER_MILLIS);
+                wakeupPending.set(false);
+
+                EthernetFrame f;
+                while ((f = fromGuest.poll()) != null)
+                {
+                    try
+                    {
+                        handleFrame(f.data, f.length);
+                    }
+                    finally
+                    {
+                        f.release();
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    Object flow = key.attachment();
+                    if (flow instanceof NATTCPConnection)
+                    {
+                        NATTCPConnection c = (NATTCPConnection) flow;
+                        c.ready(key);
+                        if (c.isClosed())
+                            tcpConnections.remove(c.key);
+                    }
+                    else
+                        ((UDPFlow) flow).ready();
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastTimerRun >= TIMER_MILLIS)
+                {
+                    lastTimerRun = now;
+                    runTimers(now);
+                }
+            }
+            catch (IOException e)
+            {
+                LOGGING.log(Level.WARNING, "NAT selector failed", e);
+                return;
+            }
+            catch (RuntimeException e)
+            {
+                LOGGING.log(Level.WARNING, "Dropping malformed frame", e);
+            }
+        }
+    }
+
+    private void shutdown()
+    {
+        closed = true;
+        for (NATTCPConnection c : tcpConnections.values())
+            c.close();
+        tcpConnections.clear();
+        for (UDPFlow flow : udpFlows.values())
+            flow.close();
+        udpFlows.clear();
+        try
+        {
+            selector.close();
+        }
+        catch (IOException e) {}
+
+        EthernetFrame f;
+        while ((f = fromGuest.poll()) != null)
+            f.release();
+        while ((f = toGuest.poll()) != null)
+            f.release();
+        queuedFrames.set(0);
+    }
+
+    private void deliver(EthernetFrame f)
+    {
+        if (queuedFrames.get() >= MAX_QUEUED_FRAMES)
+        {
+            f.release();
+            return;
+        }
+        queuedFrames.incrementAndGet();
+        toGuest.offer(f);
+    }
+
+    private void runTimers(long now)
+    {
+        for (Iterator<NATTCPConnection> it = tcpConnections.values().iterator(); it.hasNext();)
+            if (!it.next().timer(now))
+                it.remove();
+
+        for (Iterator<UDPFlow> it = udpFlows.values().iterator(); it.hasNext();)
+        {
+            UDPFlow flow = it.next();
+            if (now - flow.lastUsed > UDP_IDLE_MILLIS)
+            {
+                flow.close();
+                it.remove();
+            }
+        }
+    }
+
+    Selector selector()
+    {
+        return selector;
+    }
+
+    private void handleFrame(byte[] data, int length)
+    {
+        System.arraycopy(data, 6, guestMac, 0, 6);
+        switch (getShort(data, 12))
+        {
+            case ETHERTYPE_ARP:
+                handleARP(data, length);
+                break;
+            case ETHERTYPE_IP:
+                handleIP(data, length);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handleARP(byte[] data, int length)
+    {
+        int arp = ETH_HEADER;
+        if ((length < arp + 28) || (getShort(data, arp) != 1) || (getShort(data, arp + 2) != ETHERTYPE_IP) || (getShort(data, arp + 6) != 1))
+            return;
+        int target = getInt(data, arp + 24);
+        if (((target & NETMASK) != NETWORK) || (target == GUEST) || (target == getInt(data, arp + 14)))
+            return;
+
+        EthernetFrame f = EthernetFrame.allocate();
+        byte[] out = f.data;
+        System.arraycopy(data, arp + 8, out, 0, 6);
+        System.arraycopy(GATEWAY_MAC, 0, out, 6, 6);
+        putShort(out, 12, ETHERTYPE_ARP);
+        System.arraycopy(data, arp, out, arp, 6);
+        putShort(out, arp + 6, 2);
+        System.arraycopy(GATEWAY_MAC, 0, out, arp + 8, 6);
+        putInt(out, arp + 14, target);
+        System.arraycopy(data, arp + 8, out, arp + 18, 10);
+        f.length = Math.max(arp + 28, 60);
+        Arrays.fill(out, arp + 28, f.length, (byte) 0);
+        deliver(f);
+    }
+
+    private void handleIP(byte[] data, int length)
+    {
+        int ip = ETH_HEADER;
+        if (length < ip + IP_HEADER)
+            return;
+        int headerLength = (data[ip] & 0xf) << 2;
+        int totalLength = getShort(data, ip + 2);
+        if (((data[ip] & 0xf0) != 0x40) || (headerLength < IP_HEADER) || (totalLength < headerLength) || (ip + totalLength > length))
+            return;
+        if ((getShort(data, ip + 6) & 0x3fff) != 0)
+            return; // fragments are never produced by guests honouring our MTU
+
+        int protocol = data[ip + 9] & 0xff;
+        int source = getInt(data, ip + 12);
+        int destination = getInt(data, ip + 16);
+        int payload = ip + headerLength;
+        int payloadLength = totalLength - headerLength;
+
+        switch (protocol)
+        {
+            case PROTOCOL_TCP:
+                handleTCP(data, source, destination, payload, payloadLength);
+                break;
+            case PROTOCOL_UDP:
+                handleUDP(data, source, destination, payload, payloadLength);
+                break;
+            case PROTOCOL_ICMP:
+                handleICMP(data, source, destination, payload, payloadLength);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void handleICMP(byte[] data, int source, int destination, int icmp, int length)
+    {
+        // host sockets can't carry ICMP without privileges, so only the virtual hosts answer pings
+        if ((length < 8) || (data[icmp] != 8) || ((destination != GATEWAY) && (destination != NAMESERVER)))
+            return;
+        EthernetFrame f = newIPFrame(PROTOCOL_ICMP, destination, source, length);
+        byte[] out = f.data;
+        int reply = ETH_HEADER + IP_HEADER;
+        System.arraycopy(data, icmp, out, reply, length);
+        out[reply] = 0;
+        putShort(out, reply + 2, 0);
+        putShort(out, reply + 2, ~checksum(out, reply, length, 0) & 0xffff);
+        deliver(f);
+    }
+
+    private void handleUDP(byte[] data, int source, int destination, int udp, int length)
+    {
+        if (length < UDP_HEADER)
+            return;
+        int sourcePort = getShort(data, udp);
+        int destinationPort = getShort(data, udp + 2);
+        int udpLength = getShort(data, udp + 4);
+        if ((udpLength < UDP_HEADER) || (udpLength > length))
+            return;
+
+        if (destinationPort == 67)
+        {
+            handleDHCP(data, udp + UDP_HEADER, udpLength - UDP_HEADER);
+            return;
+        }
+
+        InetSocketAddress target;
+        if ((destination == NAMESERVER) && (destinationPort == 53))
+            target = nameserver;
+        else
+        {
+            InetAddress host = hostAddress(destination);
+            if (host == null)
+                return;
+            target = new InetSocketAddress(host, destinationPort);
+        }
+
+        long key = flowKey(sourcePort, destination, destinationPort);
+        UDPFlow flow = udpFlows.get(key);
+        try
+        {
+            if (flow == null)
+            {
+                flow = new UDPFlow(source, sourcePort, destination, destinationPort, target);
+                udpFlows.put(key, flow);
+            }
+            flow.send(data, udp + UDP_HEADER, udpLength - UDP_HEADER);
+        }
+        catch (IOException e)
+        {
+            LOGGING.log(Level.FINE, "UDP relay to " + target + " failed", e);
+            if (flow != null)
+            {
+                flow.close();
+                udpFlows.remove(key);
+            }
+        }
+    }
+
+    private void handleTCP(byte[] data, int source, int destination, int tcp, int length)
+    {
+        if (length < TCP_HEADER)
+            return;
+        int sourcePort = getShort(data, tcp);
+        int destinationPort = getShort(data, tcp + 2);
+        int seq = getInt(data, tcp + 4);
+        int ack = getInt(data, tcp + 8);
+        int headerLength = (data[tcp + 12] & 0xf0) >>> 2;
+        int flags = data[tcp + 13] & 0x3f;
+        int window = getShort(data, tcp + 14);
+        if ((headerLength < TCP_HEADER) || (headerLength > length))
+            return;
+
+        long key = flowKey(sourcePort, destination, destinationPort);
+        NATTCPConnection c = tcpConnections.get(key);
+        if (c == null)
+        {
+            if ((flags & NATTCPConnection.RST) != 0)
+                return;
+            InetAddress host = hostAddress(destination);
+            if (((flags & (NATTCPConnection.SYN | NATTCPConnection.ACK)) != NATTCPConnection.SYN) || (host == null))
+            {
+                sendReset(source, sourcePort, destination, destinationPort, seq, ack, flags, length - headerLength);
+                return;
+            }
+            try
+            {
+                c = new NATTCPConnection(this, key, source, sourcePort, destination, destinationPort, seq, window, new InetSocketAddress(host, destinationPort));
+                tcpConnections.put(key, c);
+            }
+            catch (IOException e)
+            {
+                LOGGING.log(Level.FINE, "TCP connect to " + host + ":" + destinationPort + " failed", e);
+                sendReset(source, sourcePort, destination, destinationPort, seq, ack, flags, 0);
+            }
+            return;
+        }
+        c.segment(flags, seq, ack, window, data, tcp + headerLength, length - headerLength);
+        if (c.isClosed())
+            tcpConnections.remove(key);
+    }
+
+    private void sendReset(int guest, int guestPort, int remote, int remotePort, int seq, int ack, int flags, int payloadLength)
+    {
+        if ((flags & NATTCPConnection.ACK) != 0)
+            sendTCP(remote, remotePort, guest, guestPort, ack, 0, NATTCPConnection.RST, 0, null, 0, 0);
+        else
+        {
+            int consumed = payloadLength + ((flags & NATTCPConnection.SYN) != 0 ? 1 : 0) + ((flags & NATTCPConnection.FIN) != 0 ? 1 : 0);
+            sendTCP(remote, remotePort, guest, guestPort, 0, seq + consumed, NATTCPConnection.RST | NATTCPConnection.ACK, 0, null, 0, 0);
+        }
+    }
+
+    private void handleDHCP(byte[] data, int bootp, int length)
+    {
+        if ((length < 240) || (data[bootp] != 1) || (getInt(data, bootp + 236) != DHCP_MAGIC))
+            return;
+
+        int type = 0;
+        for (int i = bootp + 240; i < bootp + length;)
+        {
+            int option = data[i] & 0xff;
+            if (option == 255)
+                break;
+            if (option == 0)
+            {
+                i++;
+                continue;
+            }
+            if (i + 1 >= bootp + length)
+                break;
+            int optionLength = data[i + 1] & 0xff;
+            if ((option == 53) && (optionLength >= 1))
+                type = data[i + 2] & 0xff;
+            i += 2 + optionLength;
+        }
+
+        int reply;
+        if (type == DHCP_DISCOVER)
+            reply = DHCP_OFFER;
+        else if (type == DHCP_REQUEST)
+            reply = DHCP_ACK;
+        else
+            return;
+
+        int replyLength = 300;
+        EthernetFrame f = newIPFrame(PROTOCOL_UDP, GATEWAY, 0xffffffff, UDP_HEADER + replyLength);
+        byte[] out = f.data;
+        int udp = ETH_HEADER + IP_HEADER;
+        int b = udp + UDP_HEADER;
+        Arrays.fill(out, b, b + replyLength, (byte) 0);
+        out[b] = 2;
+        out[b + 1] = 1;
+        out[b + 2] = 6;
+        System.arraycopy(data, bootp + 4, out, b + 4, 4); // xid
+        System.arraycopy(data, bootp + 10, out, b + 10, 2); // flags
+        putInt(out, b + 16, GUEST);
+        putInt(out, b + 20, GATEWAY);
+        System.arraycopy(data, bootp + 28, out, b + 28, 16); // chaddr
+        putInt(out, b + 236, DHCP_MAGIC);
+
+        int o = b + 240;
+        out[o++] = 53; out[o++] = 1; out[o++] = (byte) reply;
+        out[o++] = 54; out[o++] = 4; putInt(out, o, GATEWAY); o += 4;
+        out[o++] = 51; out[o++] = 4; putInt(out, o, DHCP_LEASE_SECONDS); o += 4;
+        out[o++] = 1; out[o++] = 4; putInt(out, o, NETMASK); o += 4;
+        out[o++] = 3; out[o++] = 4; putInt(out, o, GATEWAY); o += 4;
+        out[o++] = 6; out[o++] = 4; putInt(out, o, NAMESERVER); o += 4;
+        out[o++] = (byte) 255;
+
+        finishUDP(f, GATEWAY, 0xffffffff, 67, 68, replyLength);
+        deliver(f);
+    }
+
+    /**
+     * Maps an address on the guest's side of the NAT to the host address it
+     * stands for, or null if nothing sits behind it.
+     */
+    private static InetAddress hostAddress(int address)
+    {
+        if (address == GATEWAY)
+            return InetAddress.getLoopbackAddress();
+        if (((address & NETMASK) == NETWORK) || ((address >>> 28) >= 0xe) || (address == 0))
+            return null;
+        try
+        {
+            return InetAddress.getByAddress(new byte[] {(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address});
+        }
+        catch (UnknownHostException e)
+        {
+            return null;
+        }
+    }
+
+    private static long flowKey(int guestPort, int remote, int remotePort)
+    {
+        return ((long) guestPort << 48) | ((long) remotePort << 32) | (remote & 0xffffffffL);
+    }
+
+    /**
+     * Fills in the ethernet and IP headers of a frame bound for the guest
+     * carrying <code>payloadLength</code> bytes of the given protocol.
+     */
+    EthernetFrame newIPFrame(int protocol, int source, int destination, int payloadLength)
+    {
+        EthernetFrame f = EthernetFrame.allocate();
+        byte[] out = f.data;
+        System.arraycopy(guestMac, 0, out, 0, 6);
+        System.arraycopy(GATEWAY_MAC, 0, out, 6, 6);
+        putShort(out, 12, ETHERTYPE_IP);
+
+        int ip = ETH_HEADER;
+        int totalLength = IP_HEADER + payloadLength;
+        out[ip] = 0x45;
+        out[ip + 1] = 0;
+        putShort(out, ip + 2, totalLength);
+        putShort(out, ip + 4, ipIdentification++);
+        putShort(out, ip + 6, 0x4000);
+        out[ip + 8] = 64;
+        out[ip + 9] = (byte) protocol;
+        putShort(out, ip + 10, 0);
+        putInt(out, ip + 12, source);
+        putInt(out, ip + 16, destination);
+        putShort(out, ip + 10, ~checksum(out, ip, IP_HEADER, 0) & 0xffff);
+
+        f.length = ETH_HEADER + totalLength;
+        if (f.length < 60)
+        {
+            Arrays.fill(out, f.length, 60, (byte) 0);
+            f.length = 60;
+        }
+        return f;
+    }
+
+    private void finishUDP(EthernetFrame f, int source, int destination, int sourcePort, int destinationPort, int payloadLength)
+    {
+        byte[] out = f.data;
+        int udp = ETH_HEADER + IP_HEADER;
+        int udpLength = UDP_HEADER + payloadLength;
+        putShort(out, udp, sourcePort);
+        putShort(out, udp + 2, destinationPort);
+        putShort(out, udp + 4, udpLength);
+        putShort(out, udp + 6, 0);
+        int sum = ~checksum(out, udp, udpLength, pseudoHeader(source, destination, PROTOCOL_UDP, udpLength)) & 0xffff;
+        putShort(out, udp + 6, sum == 0 ? 0xffff : sum);
+    }
+
+    /**
+     * Queues a TCP segment for the guest.
+     */
+    void sendTCP(int source, int sourcePort, int destination, int destinationPort, int seq, int ack, int flags, int window, byte[] payload, int offset, int length)
+    {
+        sendTCP(source, sourcePort, destination, destinationPort, seq, ack, flags, window, 0, payload, offset, length);
+    }
+
+    /**
+     * Queues a TCP segment for the guest.
+     * @param mss if non zero, a maximum segment size option is included
+     */
+    void sendTCP(int source, int sourcePort, int destination, int destinationPort, int seq, int ack, int flags, int window, int mss, byte[] payload, int offset, int length)
+    {
+        int headerLength = (mss != 0) ? TCP_HEADER + 4 : TCP_HEADER;
+        int tcpLength = headerLength + length;
+        EthernetFrame f = newIPFrame(PROTOCOL_TCP, source, destination, tcpLength);
+        byte[] out = f.data;
+        int tcp = ETH_HEADER + IP_HEADER;
+        putShort(out, tcp, sourcePort);
+        putShort(out, tcp + 2, destinationPort);
+        putInt(out, tcp + 4, seq);
+        putInt(out, tcp + 8, ack);
+        out[tcp + 12] = (byte) (headerLength << 2);
+        out[tcp + 13] = (byte) flags;
+        putShort(out, tcp + 14, window);
+        putShort(out, tcp + 16, 0);
+        putShort(out, tcp + 18, 0);
+        if (mss != 0)
+        {
+            out[tcp + 20] = 2;
+            out[tcp + 21] = 4;
+            putShort(out, tcp + 22, mss);
+        }
+        if (length > 0)
+            System.arraycopy(payload, offset, out, tcp + headerLength, length);
+        putShort(out, tcp + 16, ~checksum(out, tcp, tcpLength, pseudoHeader(source, destination, PROTOCOL_TCP, tcpLength)) & 0xffff);
+        deliver(f);
+    }
+
+    private static int pseudoHeader(int source, int destination, int protocol, int length)
+    {
+        return (source >>> 16) + (source & 0xffff) + (destination >>> 16) + (destination & 0xffff) + protocol + length;
+    }
+
+    /**
+     * Computes the folded ones' complement sum used by IP, ICMP, UDP and TCP.
+     */
+    static int checksum(byte[] data, int offset, int length, int initial)
+    {
+        long sum = initial & 0xffffffffL;
+        int end = offset + (length & ~1);
+        for (int i = offset; i < end; i += 2)
+            sum += ((data[i] & 0xff) << 8) | (data[i + 1] & 0xff);
+        if ((length & 1) != 0)
+            sum += (data[end] & 0xff) << 8;
+        while ((sum >>> 16) != 0)
+            sum = (sum & 0xffff) + (sum >>> 16);
+        return (int) sum;
+    }
+
+    static int getShort(byte[] data, int offset)
+    {
+        return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+    }
+
+    static int getInt(byte[] data, int offset)
+    {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    static void putShort(byte[] data, int offset, int value)
+    {
+        data[offset] = (byte) (value >>> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    static void putInt(byte[] data, int offset, int value)
+    {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    /**
+     * A guest UDP conversation relayed through a connected host datagram channel.
+     */
+    private final class UDPFlow
+    {
+        final int guest, guestPort, remote, remotePort;
+        final DatagramChannel channel;
+        long lastUsed;
+
+        UDPFlow(int guest, int guestPort, int remote, int remotePort, InetSocketAddress target) throws IOException
+        {
+            this.guest = guest;
+            this.guestPort = guestPort;
+            this.remote = remote;
+            this.remotePort = remotePort;
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(target);
+            channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        void send(byte[] data, int offset, int length) throws IOException
+        {
+            lastUsed = System.currentTimeMillis();
+            channel.write(ByteBuffer.wrap(data, offset, length));
+        }
+
+        void ready()
+        {
+            try
+            {
+                while (true)
+                {
+                    datagram.clear();
+                    if (channel.read(datagram) <= 0)
+                        break;
+                    lastUsed = System.currentTimeMillis();
+                    int length = datagram.position();
+                    EthernetFrame f = newIPFrame(PROTOCOL_UDP, remote, guest, UDP_HEADER + length);
+                    System.arraycopy(datagram.array(), 0, f.data, ETH_HEADER + IP_HEADER + UDP_HEADER, length);
+                    finishUDP(f, remote, guest, remotePort, guestPort, length);
+                    deliver(f);
+                }
+            }
+            catch (IOException e)
+            {
+                // typically an ICMP port unreachable surfacing on the connected channel
+                LOGGING.log(Level.FINE, "UDP receive failed", e);
+            }
+        }
+
+        void close()
+        {
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e) {}
+        }
+    }
+}
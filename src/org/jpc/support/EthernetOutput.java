@@ -43,4 +43,20 @@ public abstract class EthernetOutput
 {
     public abstract void sendPacket(byte[] data, int offset, int length);
     public abstract byte[] getPacket();
+
+    /**
+     * Copies the next frame destined for the card into <code>buffer</code>.
+     * Outputs that keep their frames in reusable buffers override this so
+     * that polling the card allocates nothing.
+     * @param buffer destination, at least as large as the largest frame
+     * @return the length of the frame copied, or -1 if none is waiting
+     */
+    public int getPacket(byte[] buffer)
+    {
+        byte[] packet = getPacket();
+        if (packet == null)
+            return -1;
+        System.arraycopy(packet, 0, buffer, 0, packet.length);
+        return packet.length;
+    }
 }
@@ -34,20 +34,37 @@
 package org.jpc.support;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.logging.*;
 
 /**
  * A <code>SeekableIODevice</code> backed by a file on local disk.
+ * <p>
+ * The file is memory mapped where possible, so that a request costs no
+ * system calls at all, and is otherwise read and written through positional
+ * <code>FileChannel</code> calls. Positional requests are thread safe, and
+ * one racing <code>close</code> either completes or fails with an
+ * <code>IOException</code>.
  * @author Mike Moleschi
  * @author Chris Dennis
  */
-public class FileBackedSeekableIODevice implements SeekableIODevice
+public class FileBackedSeekableIODevice implements PositionalIODevice
 {
     private static final Logger LOGGING = Logger.getLogger(FileBackedSeekableIODevice.class.getName());
-    
+    private static final int MAPPING_BITS = 30;
+    private static final long MAPPING_SIZE = 1L << MAPPING_BITS;
+
     private String fileName;
     private RandomAccessFile image;
+    private FileChannel channel;
+    private volatile MappedByteBuffer[] mappings;
+    private long mappedLength;
+    private volatile long length;
+    private long position;
     private boolean readOnly;
+    private boolean unmapped;
 
     /**
      * Constructs an unconfigured instance.
@@ -65,22 +82,66 @@ public class FileBackedSeekableIODevice implements SeekableIODevice
      * @throws java.io.IOException if the file cannot be opened
      */
     public void configure(String spec) throws IOException
+    {
+        configure(spec, false);
+    }
+
+    /**
+     * Configures this instance to use the file identified as its backing,
+     * opening and mapping it read only if <code>readOnly</code> is set.
+     * Otherwise the file is only opened read only if it can't be written.
+     * @param spec file path
+     * @param readOnly true to never write the file
+     * @throws java.io.IOException if the file cannot be opened
+     */
+    public void configure(String spec, boolean readOnly) throws IOException
     {
         fileName = spec;
+        this.readOnly = readOnly;
 
-        try {
-            image = new RandomAccessFile(fileName, "rw");
-            readOnly = false;
-        } catch (IOException e) {
+        if (!readOnly) {
+            try {
+                image = new RandomAccessFile(fileName, "rw");
+            } catch (IOException e) {
+                this.readOnly = true;
+            }
+        }
+        if (this.readOnly) {
             try {
                 image = new RandomAccessFile(fileName, "r");
-                readOnly = true;
-                LOGGING.log(Level.INFO, "opened {0} as read-only", fileName);
+                if (!readOnly)
+                    LOGGING.log(Level.INFO, "opened {0} as read-only", fileName);
             } catch (IOException f) {
                 LOGGING.log(Level.WARNING, "failed to open file", f);
                 throw f;
             }
         }
+        channel = image.getChannel();
+        length = channel.size();
+        position = 0;
+        if (unmapped)
+            mappings = null;
+        else
+            map();
+    }
+
+    private void map()
+    {
+        mappings = null;
+        mappedLength = 0;
+        MappedByteBuffer[] maps = new MappedByteBuffer[(int) ((length + MAPPING_SIZE - 1) >>> MAPPING_BITS)];
+        try {
+            for (int i = 0; i < maps.length; i++) {
+                long start = (long) i << MAPPING_BITS;
+                maps[i] = channel.map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, start, Math.min(MAPPING_SIZE, length - start));
+            }
+            // published last, so a reader which sees the mappings sees their length
+            mappedLength = length;
+            mappings = maps;
+        } catch (IOException e) {
+            LOGGING.log(Level.INFO, "couldn't map " + fileName + ", using file reads instead", e);
+            mappings = null;
+        }
     }
 
     /**
@@ -92,33 +153,114 @@ public class FileBackedSeekableIODevice implements SeekableIODevice
         configure(file);
     }
 
+    /**
+     * Constructs an instance using the specified file as backing.
+     * @param file file path
+     * @param readOnly true to open and map the file read only
+     */
+    public FileBackedSeekableIODevice(String file, boolean readOnly) throws IOException
+    {
+        configure(file, readOnly);
+    }
+
+    /**
+     * Constructs an instance for brief use which only ever goes through
+     * <code>FileChannel</code> calls, so it leaves no mapping behind once
+     * closed.
+     * @param file file path
+     * @param readOnly true to open the file read only
+     * @param unmapped true to never map the file
+     */
+    FileBackedSeekableIODevice(String file, boolean readOnly, boolean unmapped) throws IOException
+    {
+        this.unmapped = unmapped;
+        configure(file, readOnly);
+    }
+
     public void seek(long offset) throws IOException
     {
-        image.seek(offset);
+        position = offset;
     }
 
     public int write(byte[] data, int offset, int length) throws IOException
     {
-        image.write(data, offset, length);
-        return length;
+        int written = write(position, data, offset, length);
+        position += written;
+        return written;
     }
 
     public int read(byte[] data, int offset, int length) throws IOException
     {
-        return image.read(data, offset, length);
+        int read = read(position, data, offset, length);
+        if (read > 0)
+            position += read;
+        return read;
     }
 
-    public long length()
+    public int read(long position, byte[] data, int offset, int len) throws IOException
     {
-        try {
-            return image.length();
-        } catch (IOException e) {
-            return -1L;
+        if (position >= length)
+            return -1;
+        len = (int) Math.min(len, length - position);
+        MappedByteBuffer[] maps = mappings;
+        long mapped = (maps == null) ? 0 : mappedLength;
+        int done = 0;
+        while ((done < len) && (position + done < mapped)) {
+            long pos = position + done;
+            ByteBuffer mapping = maps[(int) (pos >>> MAPPING_BITS)].duplicate();
+            mapping.position((int) (pos & (MAPPING_SIZE - 1)));
+            int count = Math.min(len - done, mapping.remaining());
+            mapping.get(data, offset + done, count);
+            done += count;
         }
+        while (done < len) {
+            int read = channel.read(ByteBuffer.wrap(data, offset + done, len - done), position + done);
+            if (read < 0)
+                break;
+            done += read;
+        }
+        return done;
+    }
+
+    public int write(long position, byte[] data, int offset, int len) throws IOException
+    {
+        if (readOnly)
+            throw new IOException(fileName + " is read only");
+        MappedByteBuffer[] maps = mappings;
+        long mapped = (maps == null) ? 0 : mappedLength;
+        int done = 0;
+        while ((done < len) && (position + done < mapped)) {
+            long pos = position + done;
+            ByteBuffer mapping = maps[(int) (pos >>> MAPPING_BITS)].duplicate();
+            mapping.position((int) (pos & (MAPPING_SIZE - 1)));
+            int count = Math.min(len - done, mapping.remaining());
+            mapping.put(data, offset + done, count);
+            done += count;
+        }
+        // anything past the end of the mapped file grows it
+        while (done < len)
+            done += channel.write(ByteBuffer.wrap(data, offset + done, len - done), position + done);
+        if (position + len > length) {
+            synchronized (this) {
+                length = Math.max(length, position + len);
+            }
+        }
+        return len;
+    }
+
+    public long length()
+    {
+        return length;
     }
 
     public void close() throws IOException
     {
+        // requests already holding the mappings finish with them, later ones go to the closed channel
+        MappedByteBuffer[] maps = mappings;
+        mappings = null;
+        if ((maps != null) && !readOnly)
+            for (MappedByteBuffer mapping : maps)
+                mapping.force();
         image.close();
     }
     
@@ -0,0 +1,416 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.support;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.logging.*;
+
+/**
+ * One guest TCP connection terminated by the NAT. Towards the guest this
+ * plays the remote end of the connection, with a go-back-N sender and an
+ * in-order only receiver; towards the host it is a plain non-blocking
+ * <code>SocketChannel</code>. Only ever touched by the NAT's selector thread.
+ * @author Ian Preston
+ */
+class NATTCPConnection
+{
+    private static final Logger LOGGING = Logger.getLogger(NATTCPConnection.class.getName());
+
+    static final int FIN = 0x01;
+    static final int SYN = 0x02;
+    static final int RST = 0x04;
+    static final int PSH = 0x08;
+    static final int ACK = 0x10;
+
+    private static final int MSS = EthernetNAT.MTU - EthernetNAT.IP_HEADER - EthernetNAT.TCP_HEADER;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long RETRANSMIT_MILLIS = 1000;
+    private static final long CONNECT_TIMEOUT_MILLIS = 30000;
+    private static final int MAX_RETRANSMITS = 10;
+
+    private static final int CONNECTING = 0;
+    private static final int SYN_RECEIVED = 1;
+    private static final int ESTABLISHED = 2;
+    private static final int CLOSED = 3;
+
+    final long key;
+    private final EthernetNAT nat;
+    private final int guest, guestPort, remote, remotePort;
+    private final SocketChannel channel;
+    private final SelectionKey selectionKey;
+    private int state;
+
+    private int receiveNext;
+    private boolean guestFinished, hostOutputShut;
+    private final ByteBuffer toHost = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private final int initialSequence;
+    private int sendUnacknowledged;
+    private int guestWindow;
+    private final byte[] toGuest = new byte[BUFFER_SIZE];
+    private final ByteBuffer toGuestBuffer = ByteBuffer.wrap(toGuest);
+    private int toGuestLength, sentLength;
+    private boolean hostFinished, finSent, finAcknowledged;
+
+    private final long created;
+    private long lastProgress;
+    private int retransmits;
+
+    NATTCPConnection(EthernetNAT nat, long key, int guest, int guestPort, int remote, int remotePort, int seq, int window, InetSocketAddress target) throws IOException
+    {
+        this.nat = nat;
+        this.key = key;
+        this.guest = guest;
+        this.guestPort = guestPort;
+        this.remote = remote;
+        this.remotePort = remotePort;
+        receiveNext = seq + 1;
+        guestWindow = window;
+        initialSequence = (int) System.nanoTime();
+        sendUnacknowledged = initialSequence;
+        created = lastProgress = System.currentTimeMillis();
+
+        channel = SocketChannel.open();
+        try
+        {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            state = CONNECTING;
+            if (channel.connect(target))
+            {
+                selectionKey = channel.register(nat.selector(), SelectionKey.OP_READ, this);
+                connected();
+            }
+            else
+                selectionKey = channel.register(nat.selector(), SelectionKey.OP_CONNECT, this);
+        }
+        catch (IOException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void connected()
+    {
+        state = SYN_RECEIVED;
+        sendSynAck();
+    }
+
+    private void sendSynAck()
+    {
+        nat.sendTCP(remote, remotePort, guest, guestPort, initialSequence, receiveNext, SYN | ACK, receiveWindow(), MSS, null, 0, 0);
+    }
+
+    private int receiveWindow()
+    {
+        return Math.min(toHost.remaining(), 0xffff);
+    }
+
+    private void sendAck()
+    {
+        nat.sendTCP(remote, remotePort, guest, guestPort, sendUnacknowledged + sentLength + ((finSent && !finAcknowledged) ? 1 : 0), receiveNext, ACK, receiveWindow(), null, 0, 0);
+    }
+
+    /**
+     * Processes a segment sent by the guest on this connection.
+     */
+    void segment(int flags, int seq, int ack, int window, byte[] data, int offset, int length)
+    {
+        if ((flags & RST) != 0)
+        {
+            close();
+            return;
+        }
+        if (state == CONNECTING)
+            return;
+        if ((flags & SYN) != 0)
+        {
+            // the guest didn't see our SYN-ACK
+            if (state == SYN_RECEIVED)
+                sendSynAck();
+            return;
+        }
+        if ((flags & ACK) == 0)
+            return;
+
+        if (state == SYN_RECEIVED)
+        {
+            if (ack != initialSequence + 1)
+            {
+                nat.sendTCP(remote, remotePort, guest, guestPort, ack, 0, RST, 0, null, 0, 0);
+                return;
+            }
+            state = ESTABLISHED;
+            sendUnacknowledged = ack;
+            lastProgress = System.currentTimeMillis();
+            retransmits = 0;
+            interest(SelectionKey.OP_READ, true);
+        }
+        else
+            acknowledge(ack);
+        guestWindow = window;
+
+        boolean needAck = false;
+        if (length > 0)
+        {
+            if ((seq == receiveNext) && !guestFinished)
+            {
+                int accepted = Math.min(length, toHost.remaining());
+                toHost.put(data, offset, accepted);
+                receiveNext += accepted;
+                if (accepted < length)
+                    flags &= ~FIN;
+            }
+            else
+                flags &= ~FIN;
+            needAck = true;
+        }
+        if (((flags & FIN) != 0) && !guestFinished && (seq + length == receiveNext))
+        {
+            guestFinished = true;
+            receiveNext++;
+            needAck = true;
+        }
+
+        writeToHost();
+        sendToGuest();
+        if (needAck)
+            sendAck();
+        checkFinished();
+    }
+
+    private void acknowledge(int ack)
+    {
+        int acked = ack - sendUnacknowledged;
+        int outstanding = sentLength + (finSent ? 1 : 0);
+        if ((acked <= 0) || (acked > outstanding))
+            return;
+        int data = Math.min(acked, sentLength);
+        if (acked > sentLength)
+            finAcknowledged = true;
+        if (data > 0)
+        {
+            System.arraycopy(toGuest, data, toGuest, 0, toGuestLength - data);
+            toGuestLength -= data;
+            sentLength -= data;
+        }
+        sendUnacknowledged = ack;
+        lastProgress = System.currentTimeMillis();
+        retransmits = 0;
+        if (!hostFinished && (toGuestLength < BUFFER_SIZE))
+            interest(SelectionKey.OP_READ, true);
+    }
+
+    /**
+     * Sends as much buffered host data as the guest's window allows, followed
+     * by a FIN once the host has closed and everything before it is out.
+     */
+    private void sendToGuest()
+    {
+        if (state != ESTABLISHED)
+            return;
+        while (true)
+        {
+            int length = Math.min(MSS, Math.min(toGuestLength - sentLength, guestWindow - sentLength));
+            if (length <= 0)
+                break;
+            if (sentLength == 0)
+                lastProgress = System.currentTimeMillis();
+            nat.sendTCP(remote, remotePort, guest, guestPort, sendUnacknowledged + sentLength, receiveNext, ACK | PSH, receiveWindow(), toGuest, sentLength, length);
+            sentLength += length;
+        }
+        if (hostFinished && !finSent && (sentLength == toGuestLength))
+        {
+            if (sentLength == 0)
+                lastProgress = System.currentTimeMillis();
+            nat.sendTCP(remote, remotePort, guest, guestPort, sendUnacknowledged + sentLength, receiveNext, FIN | ACK, receiveWindow(), null, 0, 0);
+            finSent = true;
+        }
+    }
+
+    private void writeToHost()
+    {
+        if (state == CLOSED)
+            return;
+        try
+        {
+            if (toHost.position() > 0)
+            {
+                int before = toHost.remaining();
+                toHost.flip();
+                channel.write(toHost);
+                toHost.compact();
+                // let the guest know the window has reopened if it had closed
+                if ((before == 0) && (toHost.remaining() > 0))
+                    sendAck();
+            }
+            interest(SelectionKey.OP_WRITE, toHost.position() > 0);
+            if (guestFinished && !hostOutputShut && (toHost.position() == 0))
+            {
+                hostOutputShut = true;
+                channel.socket().shutdownOutput();
+            }
+        }
+        catch (IOException e)
+        {
+            abort(e);
+        }
+    }
+
+    private void readFromHost()
+    {
+        try
+        {
+            toGuestBuffer.limit(BUFFER_SIZE).position(toGuestLength);
+            int read;
+            while (toGuestBuffer.hasRemaining() && ((read = channel.read(toGuestBuffer)) != 0))
+            {
+                if (read < 0)
+                {
+                    hostFinished = true;
+                    break;
+                }
+            }
+            toGuestLength = toGuestBuffer.position();
+            if (hostFinished || (toGuestLength == BUFFER_SIZE))
+                interest(SelectionKey.OP_READ, false);
+        }
+        catch (IOException e)
+        {
+            abort(e);
+        }
+    }
+
+    /**
+     * Called by the NAT when the host channel is ready.
+     */
+    void ready(SelectionKey key)
+    {
+        if (key.isConnectable())
+        {
+            try
+            {
+                channel.finishConnect();
+                key.interestOps(0);
+                connected();
+            }
+            catch (IOException e)
+            {
+                abort(e);
+            }
+            return;
+        }
+        if (key.isWritable())
+            writeToHost();
+        if (key.isReadable())
+            readFromHost();
+        sendToGuest();
+        checkFinished();
+    }
+
+    /**
+     * Retransmits anything the guest hasn't acknowledged in time.
+     * @return false if the connection has gone and should be forgotten
+     */
+    boolean timer(long now)
+    {
+        if (state == CLOSED)
+            return false;
+        if (state == CONNECTING)
+        {
+            if (now - created > CONNECT_TIMEOUT_MILLIS)
+                abort(null);
+            return !isClosed();
+        }
+        boolean outstanding = (state == SYN_RECEIVED) || (sentLength > 0) || (finSent && !finAcknowledged);
+        if (!outstanding || (now - lastProgress < RETRANSMIT_MILLIS << Math.min(retransmits, 5)))
+            return true;
+        if (++retransmits > MAX_RETRANSMITS)
+        {
+            abort(null);
+            return false;
+        }
+        lastProgress = now;
+        if (state == SYN_RECEIVED)
+            sendSynAck();
+        else
+        {
+            sentLength = 0;
+            if (!finAcknowledged)
+                finSent = false;
+            sendToGuest();
+        }
+        return true;
+    }
+
+    private void checkFinished()
+    {
+        if ((state != CLOSED) && guestFinished && hostOutputShut && finAcknowledged)
+            close();
+    }
+
+    private void interest(int op, boolean on)
+    {
+        if (!selectionKey.isValid())
+            return;
+        int ops = selectionKey.interestOps();
+        selectionKey.interestOps(on ? ops | op : ops & ~op);
+    }
+
+    private void abort(IOException e)
+    {
+        if (state == CLOSED)
+            return;
+        if (e != null)
+            LOGGING.log(Level.FINE, "NAT TCP connection failed", e);
+        if (state == CONNECTING)
+            nat.sendTCP(remote, remotePort, guest, guestPort, 0, receiveNext, RST | ACK, 0, null, 0, 0);
+        else
+            nat.sendTCP(remote, remotePort, guest, guestPort, sendUnacknowledged + sentLength, receiveNext, RST | ACK, 0, null, 0, 0);
+        close();
+    }
+
+    boolean isClosed()
+    {
+        return state == CLOSED;
+    }
+
+    void close()
+    {
+        state = CLOSED;
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e) {}
+    }
+}
@@ -0,0 +1,529 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.support;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.logging.*;
+
+/**
+ * A copy-on-write overlay over a base image which is only ever read, so
+ * that any number of emulators can share one base image (and its pages in
+ * the host's page cache) while each keeps its own changes in a delta file.
+ * <p>
+ * The delta file is sparse and memory mapped. It holds a header naming the
+ * base image, then an index entry for every 64K cluster of the disk: the
+ * cluster's position in the file, or zero if nothing in it has been
+ * written, and a bitmap of the sectors within it that have been written.
+ * Written clusters follow in the order they were first written to. Only
+ * written sectors are read from the delta; all others come from the base.
+ * <p>
+ * Configured with <code>delta,base</code> to create a delta file (or
+ * reopen it if it already exists), or just <code>delta</code> to reopen one
+ * using the base image named in its header.
+ * @author Ian Preston
+ */
+public class OverlaySeekableIODevice implements PositionalIODevice
+{
+    private static final Logger LOGGING = Logger.getLogger(OverlaySeekableIODevice.class.getName());
+
+    private static final long MAGIC = 0x4a504344454c5431L; // "JPCDELT1"
+    private static final int VERSION = 1;
+    private static final int SECTOR_SIZE = BlockDevice.SECTOR_SIZE;
+    private static final int CLUSTER_SECTORS = 128;
+    private static final int CLUSTER_SIZE = CLUSTER_SECTORS * SECTOR_SIZE;
+    private static final int ENTRY_SIZE = 4 + CLUSTER_SECTORS / 8;
+    private static final int HEADER_SIZE = 4096;
+    private static final int ALLOCATED_OFFSET = 24;
+    private static final int CLUSTERS_PER_MAPPING = 256;
+
+    private SeekableIODevice base;
+    private String basePath;
+    private final boolean temporary;
+    private File deltaFile;
+    private RandomAccessFile delta;
+    private FileChannel channel;
+    private MappedByteBuffer index;
+    private MappedByteBuffer[] mappings;
+    private long dataOffset;
+    private int allocated;
+
+    private long length;
+    private long position;
+
+    /**
+     * Constructs an unconfigured instance.
+     * <p>
+     * This must be configured by calling <code>configure</code> before first
+     * use.
+     */
+    public OverlaySeekableIODevice()
+    {
+        temporary = false;
+    }
+
+    /**
+     * Constructs an overlay on <code>base</code> whose changes are kept in a
+     * temporary delta file, created on the first write and deleted on close.
+     * @param base device to read unwritten sectors from
+     */
+    protected OverlaySeekableIODevice(SeekableIODevice base)
+    {
+        this.base = base;
+        temporary = true;
+    }
+
+    /**
+     * Constructs an instance using the given delta file, creating it over
+     * <code>baseFile</code> if it doesn't exist yet.
+     * @param deltaFile the delta file
+     * @param baseFile the base image, or null to use the one the delta names
+     * @throws java.io.IOException if either file cannot be opened
+     */
+    public OverlaySeekableIODevice(String deltaFile, String baseFile) throws IOException
+    {
+        temporary = false;
+        open(new File(deltaFile), baseFile);
+    }
+
+    public void configure(String spec) throws IOException
+    {
+        int comma = spec.indexOf(',');
+        if (comma < 0)
+            open(new File(spec), null);
+        else
+            open(new File(spec.substring(0, comma)), spec.substring(comma + 1));
+    }
+
+    private void open(File file, String baseFile) throws IOException
+    {
+        deltaFile = file;
+        if (!file.exists())
+        {
+            if (baseFile == null)
+                throw new FileNotFoundException("No delta file " + file + " and no base image to create it over");
+            openBase(baseFile);
+            create(new File(baseFile).getAbsolutePath());
+            return;
+        }
+
+        delta = new RandomAccessFile(file, "rw");
+        try
+        {
+            if ((delta.readLong() != MAGIC) || (delta.readInt() != VERSION) || (delta.readInt() != CLUSTER_SIZE))
+                throw new IOException(file + " is not a JPC delta file");
+            length = delta.readLong();
+            delta.readInt();
+            String savedBase = delta.readUTF();
+            openBase((baseFile == null) ? savedBase : baseFile);
+            if (base.length() != length)
+                throw new IOException("Base image " + base + " has changed size since " + file + " was created");
+            map();
+            allocated = index.getInt(ALLOCATED_OFFSET);
+        }
+        catch (IOException e)
+        {
+            close();
+            throw e;
+        }
+    }
+
+    // the base is shared with other overlays, so it is only ever mapped read only
+    private void openBase(String path) throws IOException
+    {
+        base = new FileBackedSeekableIODevice(path, true);
+        basePath = path;
+    }
+
+    private void create(String basePath) throws IOException
+    {
+        length = base.length();
+        delta = new RandomAccessFile(deltaFile, "rw");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(bytes);
+        header.writeLong(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(CLUSTER_SIZE);
+        header.writeLong(length);
+        header.writeInt(0);
+        header.writeUTF(basePath);
+        if (bytes.size() > HEADER_SIZE)
+            throw new IOException("Base image path too long");
+        delta.write(bytes.toByteArray());
+        map();
+        LOGGING.log(Level.INFO, "created delta file {0} over {1}", new Object[]{deltaFile, base});
+    }
+
+    private void map() throws IOException
+    {
+        int clusters = clusterCount();
+        long indexSize = HEADER_SIZE + (long) clusters * ENTRY_SIZE;
+        dataOffset = (indexSize + HEADER_SIZE - 1) & ~(long) (HEADER_SIZE - 1);
+        channel = delta.getChannel();
+        index = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+        mappings = new MappedByteBuffer[(clusters + CLUSTERS_PER_MAPPING - 1) / CLUSTERS_PER_MAPPING];
+    }
+
+    private int clusterCount()
+    {
+        return (int) ((length + CLUSTER_SIZE - 1) / CLUSTER_SIZE);
+    }
+
+    /**
+     * @return the file position of the data for <code>cluster</code> within
+     * its mapping, or -1 if none of it has been written
+     */
+    private int dataCluster(int cluster)
+    {
+        return index.getInt(HEADER_SIZE + cluster * ENTRY_SIZE) - 1;
+    }
+
+    private boolean isWritten(int cluster, int sector)
+    {
+        int entry = HEADER_SIZE + cluster * ENTRY_SIZE + 4 + (sector >>> 6) * 8;
+        return (index.getLong(entry) & (1L << sector)) != 0;
+    }
+
+    private void setWritten(int cluster, int sector)
+    {
+        int entry = HEADER_SIZE + cluster * ENTRY_SIZE + 4 + (sector >>> 6) * 8;
+        index.putLong(entry, index.getLong(entry) | (1L << sector));
+    }
+
+    private MappedByteBuffer mapping(int data) throws IOException
+    {
+        int m = data / CLUSTERS_PER_MAPPING;
+        MappedByteBuffer mapping = mappings[m];
+        if (mapping == null)
+        {
+            // mapping past the end of the file extends it sparsely
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, dataOffset + (long) m * CLUSTERS_PER_MAPPING * CLUSTER_SIZE, (long) CLUSTERS_PER_MAPPING * CLUSTER_SIZE);
+            mappings[m] = mapping;
+        }
+        return mapping;
+    }
+
+    private static int mappingOffset(int data, int offset)
+    {
+        return (data % CLUSTERS_PER_MAPPING) * CLUSTER_SIZE + offset;
+    }
+
+    public void seek(long offset) throws IOException
+    {
+        position = offset;
+    }
+
+    public int read(byte[] data, int offset, int len) throws IOException
+    {
+        int read = read(position, data, offset, len);
+        if (read > 0)
+            position += read;
+        return read;
+    }
+
+    public int write(byte[] data, int offset, int len) throws IOException
+    {
+        int written = write(position, data, offset, len);
+        position += written;
+        return written;
+    }
+
+    public int read(long position, byte[] data, int offset, int len) throws IOException
+    {
+        if (index == null)
+        {
+            // a temporary overlay which hasn't been written to yet
+            if (position >= base.length())
+                return -1;
+            len = (int) Math.min(len, base.length() - position);
+            readBase(position, data, offset, len);
+            return len;
+        }
+        if (position >= length)
+            return -1;
+        len = (int) Math.min(len, length - position);
+        int done = 0;
+        while (done < len)
+        {
+            long pos = position + done;
+            int cluster = (int) (pos / CLUSTER_SIZE);
+            int inCluster = (int) (pos % CLUSTER_SIZE);
+            int sector = inCluster / SECTOR_SIZE;
+            int dataCluster = dataCluster(cluster);
+            boolean written = (dataCluster >= 0) && isWritten(cluster, sector);
+
+            // extend the run over following sectors from the same place
+            int run = Math.min(len - done, SECTOR_SIZE - inCluster % SECTOR_SIZE);
+            while (done + run < len)
+            {
+                long next = pos + run;
+                int nextCluster = (int) (next / CLUSTER_SIZE);
+                if (written && (nextCluster != cluster))
+                    break;
+                int nextData = (nextCluster == cluster) ? dataCluster : dataCluster(nextCluster);
+                boolean nextWritten = (nextData >= 0) && isWritten(nextCluster, (int) (next % CLUSTER_SIZE) / SECTOR_SIZE);
+                if (nextWritten != written)
+                    break;
+                run += Math.min(len - done - run, SECTOR_SIZE);
+            }
+
+            if (written)
+            {
+                MappedByteBuffer mapping = mapping(dataCluster);
+                synchronized (mapping)
+                {
+                    mapping.position(mappingOffset(dataCluster, inCluster));
+                    mapping.get(data, offset + done, run);
+                }
+            }
+            else
+                readBase(pos, data, offset + done, run);
+            done += run;
+        }
+        return len;
+    }
+
+    private void readBase(long pos, byte[] data, int offset, int len) throws IOException
+    {
+        PositionalIODevice positional = (base instanceof PositionalIODevice) ? (PositionalIODevice) base : null;
+        if (positional == null)
+            base.seek(pos);
+        int done = 0;
+        while (done < len)
+        {
+            int read = (positional != null) ? positional.read(pos + done, data, offset + done, len - done) : base.read(data, offset + done, len - done);
+            if (read < 0)
+            {
+                Arrays.fill(data, offset + done, offset + len, (byte) 0);
+                return;
+            }
+            done += read;
+        }
+    }
+
+    public synchronized int write(long position, byte[] data, int offset, int len) throws IOException
+    {
+        if (index == null)
+            createTemporary();
+        len = (int) Math.max(0, Math.min(len, length - position));
+        int done = 0;
+        byte[] sectorBuffer = null;
+        while (done < len)
+        {
+            long pos = position + done;
+            int cluster = (int) (pos / CLUSTER_SIZE);
+            int inCluster = (int) (pos % CLUSTER_SIZE);
+            int run = Math.min(len - done, CLUSTER_SIZE - inCluster);
+            int dataCluster = allocate(cluster);
+            MappedByteBuffer mapping = mapping(dataCluster);
+
+            int firstSector = inCluster / SECTOR_SIZE;
+            int lastSector = (inCluster + run - 1) / SECTOR_SIZE;
+            synchronized (mapping)
+            {
+                // sectors only partly overwritten start out as they are in the base
+                for (int s = firstSector; s <= lastSector; s += Math.max(1, lastSector - firstSector))
+                {
+                    int start = Math.max(inCluster, s * SECTOR_SIZE);
+                    int end = Math.min(inCluster + run, (s + 1) * SECTOR_SIZE);
+                    if ((end - start == SECTOR_SIZE) || isWritten(cluster, s))
+                        continue;
+                    if (sectorBuffer == null)
+                        sectorBuffer = new byte[SECTOR_SIZE];
+                    readBase((long) cluster * CLUSTER_SIZE + s * SECTOR_SIZE, sectorBuffer, 0, SECTOR_SIZE);
+                    mapping.position(mappingOffset(dataCluster, s * SECTOR_SIZE));
+                    mapping.put(sectorBuffer);
+                }
+                mapping.position(mappingOffset(dataCluster, inCluster));
+                mapping.put(data, offset + done, run);
+            }
+            for (int s = firstSector; s <= lastSector; s++)
+                setWritten(cluster, s);
+            done += run;
+        }
+        return len;
+    }
+
+    private int allocate(int cluster)
+    {
+        int data = dataCluster(cluster);
+        if (data >= 0)
+            return data;
+        data = allocated++;
+        index.putInt(HEADER_SIZE + cluster * ENTRY_SIZE, data + 1);
+        index.putInt(ALLOCATED_OFFSET, allocated);
+        return data;
+    }
+
+    private void createTemporary() throws IOException
+    {
+        deltaFile = File.createTempFile("jpc", ".delta");
+        deltaFile.deleteOnExit();
+        create(base.toString());
+    }
+
+    /**
+     * Writes every sector changed in the delta back into the base image, and
+     * then empties the delta. Nothing else may be using the base image. A base
+     * image opened by this overlay is reopened writable only for the commit.
+     * @throws java.io.IOException if the base image can't be written
+     */
+    public synchronized void commit() throws IOException
+    {
+        if (index == null)
+            return;
+        // a mapping would outlive the commit, so the writable base goes through plain file writes
+        SeekableIODevice target = (basePath == null) ? base : new FileBackedSeekableIODevice(basePath, false, true);
+        try
+        {
+            if (target.readOnly())
+                throw new IOException("Base image " + target + " is read only");
+            commitTo(target);
+        }
+        finally
+        {
+            if (target != base)
+                target.close();
+        }
+        LOGGING.log(Level.INFO, "committed {0} clusters from {1} to {2}", new Object[]{Integer.valueOf(allocated), deltaFile, base});
+        discard();
+    }
+
+    private void commitTo(SeekableIODevice target) throws IOException
+    {
+        byte[] buffer = new byte[CLUSTER_SIZE];
+        for (int cluster = 0; cluster < clusterCount(); cluster++)
+        {
+            int dataCluster = dataCluster(cluster);
+            if (dataCluster < 0)
+                continue;
+            MappedByteBuffer mapping = mapping(dataCluster);
+            synchronized (mapping)
+            {
+                mapping.position(mappingOffset(dataCluster, 0));
+                mapping.get(buffer);
+            }
+            for (int s = 0; s < CLUSTER_SECTORS; )
+            {
+                if (!isWritten(cluster, s))
+                {
+                    s++;
+                    continue;
+                }
+                int end = s;
+                while ((end < CLUSTER_SECTORS) && isWritten(cluster, end))
+                    end++;
+                long pos = (long) cluster * CLUSTER_SIZE + s * SECTOR_SIZE;
+                int len = (int) Math.min((end - s) * SECTOR_SIZE, length - pos);
+                target.seek(pos);
+                target.write(buffer, s * SECTOR_SIZE, len);
+                s = end;
+            }
+        }
+    }
+
+    /**
+     * Throws away every change held in the delta, so that the device reads
+     * exactly as the base image again.
+     * @throws java.io.IOException if the delta file can't be truncated
+     */
+    public synchronized void discard() throws IOException
+    {
+        if (index == null)
+            return;
+        for (int i = HEADER_SIZE; i < dataOffset; i += 8)
+            index.putLong(i, 0);
+        allocated = 0;
+        index.putInt(ALLOCATED_OFFSET, 0);
+        index.force();
+        // the old mappings are never touched again so the file can shrink under them
+        mappings = new MappedByteBuffer[mappings.length];
+        channel.truncate(dataOffset);
+    }
+
+    /**
+     * Forces every change out to the delta file, data before the index so
+     * that the file is consistent afterwards.
+     */
+    public void flush()
+    {
+        if (index == null)
+            return;
+        for (MappedByteBuffer mapping : mappings)
+            if (mapping != null)
+                mapping.force();
+        index.force();
+    }
+
+    public long length()
+    {
+        if (index == null)
+            return base.length();
+        return length;
+    }
+
+    public boolean readOnly()
+    {
+        return false;
+    }
+
+    public void close() throws IOException
+    {
+        try
+        {
+            if (delta != null)
+            {
+                if (!temporary)
+                    flush();
+                index = null;
+                mappings = null;
+                delta.close();
+                delta = null;
+                if (temporary)
+                    deltaFile.delete();
+            }
+        }
+        finally
+        {
+            if (base != null)
+                base.close();
+        }
+    }
+
+    protected SeekableIODevice getBase()
+    {
+        return base;
+    }
+
+    public String toString()
+    {
+        return "overlay: " + deltaFile + " over " + base;
+    }
+}
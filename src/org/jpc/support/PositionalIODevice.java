@@ -0,0 +1,64 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package org.jpc.support;
+
+import java.io.*;
+
+/**
+ * A {@link SeekableIODevice} which can also transfer data at a given
+ * position without touching its read/write offset, so a request costs no
+ * separate seek and concurrent requests can't disturb each other.
+ * @author Ian Preston
+ */
+public interface PositionalIODevice extends SeekableIODevice
+{
+    /**
+     * Reads up to <code>length</code> bytes starting <code>position</code>
+     * bytes into the device, writing into <code>data</code> at
+     * <code>offset</code>.
+     * @param position location in the device to read from
+     * @param data buffer to write data into
+     * @param offset start offset in <code>data</code>
+     * @param length number of bytes to read
+     * @return number of bytes read, or -1 at the end of the device
+     * @throws java.io.IOException on I/O error
+     */
+    public int read(long position, byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Writes <code>length</code> bytes from <code>data</code> starting at
+     * <code>offset</code> into the device at <code>position</code>.
+     * @param position location in the device to write to
+     * @param data buffer to read data from
+     * @param offset start offset in <code>data</code>
+     * @param length number of bytes to write
+     * @return number of bytes written
+     * @throws java.io.IOException on I/O error
+     */
+    public int write(long position, byte[] data, int offset, int length) throws IOException;
+}
@@ -45,6 +45,7 @@ public abstract class RawBlockDevice implements BlockDevice
     private static final Logger LOGGING = Logger.getLogger(RawBlockDevice.class.getName());
     
     private SeekableIODevice data;
+    private PositionalIODevice positional;
     private long totalSectors;
 
     /**
@@ -58,16 +59,20 @@ public abstract class RawBlockDevice implements BlockDevice
 
     public int read(long sectorNumber, byte[] buffer, int size)
     {
-        Integer t;
         try {
-            
-            data.seek(sectorNumber * SECTOR_SIZE);
+            long position = sectorNumber * SECTOR_SIZE;
+            if (positional == null)
+                data.seek(position);
             int pos = 0;
             int toRead = Math.min(buffer.length, SECTOR_SIZE * size);
             while (true) {
                 if (pos >= toRead)
                     return pos;
-                int read = data.read(buffer, pos, toRead - pos);
+                int read;
+                if (positional != null)
+                    read = positional.read(position + pos, buffer, pos, toRead - pos);
+                else
+                    read = data.read(buffer, pos, toRead - pos);
                 if (read < 0)
                     return pos;
 
@@ -82,8 +87,12 @@ public abstract class RawBlockDevice implements BlockDevice
     public int write(long sectorNumber, byte[] buffer, int size)
     {
         try {
-            data.seek(sectorNumber * SECTOR_SIZE);
-            data.write(buffer, 0, size * SECTOR_SIZE);
+            if (positional != null)
+                positional.write(sectorNumber * SECTOR_SIZE, buffer, 0, size * SECTOR_SIZE);
+            else {
+                data.seek(sectorNumber * SECTOR_SIZE);
+                data.write(buffer, 0, size * SECTOR_SIZE);
+            }
         } catch (IOException e) {
             LOGGING.log(Level.WARNING, "error waiting", e);
             return -1;
@@ -128,6 +137,7 @@ public abstract class RawBlockDevice implements BlockDevice
     protected final void setData(SeekableIODevice data)
     {
         this.data = data;
+        positional = (data instanceof PositionalIODevice) ? (PositionalIODevice) data : null;
         if (data == null)
             totalSectors = 0;
         else
@@ -0,0 +1,202 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package tools;
+
+import java.lang.reflect.*;
+import java.util.*;
+import org.jpc.emulator.execution.Executable;
+import org.jpc.emulator.execution.UCodes;
+import org.jpc.emulator.execution.codeblock.*;
+import org.jpc.emulator.execution.decoder.*;
+import org.jpc.emulator.memory.LinearAddressSpace;
+import org.jpc.emulator.processor.Processor;
+import org.jpc.emulator.processor.SegmentFactory;
+import org.jpc.j2se.VirtualClock;
+
+/**
+ * Runs random sequences of the register operations the bytecode compiler
+ * generates inline, mixed with called instructions, through both an
+ * interpreted and a compiled block and compares the registers and flags.
+ * Run from the root of the source tree with
+ * <code>tools.Tools -compiler [sequences per mode] [seed]</code>.
+ * @author Ian Preston
+ */
+public class CompilerComparison
+{
+    // instructions which are always called, so locals are spilled and reloaded around them
+    static final String[] CALLED = {"nop", "adc_Ed_Gd", "sbb_Ew_Gw", "adc_Ew_Ib", "not_Ed", "neg_Ew"};
+    static final int[] UCODES = {UCodes.ADD16, UCodes.ADD32, UCodes.SUB16, UCodes.SUB32};
+
+    public static void main(String[] args) throws Exception
+    {
+        int sequences = (args.length > 0) ? Integer.parseInt(args[0]) : 3000;
+        Random r = new Random((args.length > 1) ? Long.parseLong(args[1]) : 42);
+        BytecodeCompiler compiler = new BytecodeCompiler();
+        Processor interpreted = new Processor(new VirtualClock());
+        Processor compiled = new Processor(new VirtualClock());
+        int tests = 0, failures = 0;
+        for (String mode: new String[] {"rm", "pm", "vm"})
+        {
+            List<Constructor<?>> inline = constructors(mode, registerOperations(mode));
+            List<Constructor<?>> called = constructors(mode, Arrays.asList(CALLED));
+            Constructor<?> exit = constructors(mode, Arrays.asList("jmp_Jb")).get(0);
+            System.out.printf("%s: %d register operations\n", mode, inline.size());
+            for (int t=0; t < sequences; t++)
+            {
+                List<Executable> ops = new ArrayList();
+                int n = 1 + r.nextInt(10);
+                for (int i=0; i < n; i++)
+                    ops.add(create(inline.get(r.nextInt(inline.size())), r));
+                if (r.nextInt(3) == 0)
+                    ops.add(r.nextInt(ops.size()+1), create(called.get(r.nextInt(called.size())), r));
+                ops.add(create(exit, r)); // blocks end in a branch
+                for (int i=0; i < ops.size()-1; i++)
+                    ops.get(i).next = ops.get(i+1);
+                ops.get(ops.size()-1).next = null;
+                BasicBlock b = new BasicBlock(ops.get(0), ops.size(), ops.size());
+
+                CodeBlock block, compiledBlock;
+                if (mode.equals("rm"))
+                {
+                    block = new InterpretedRealModeBlock(b);
+                    compiledBlock = compiler.getRealModeCodeBlock(block);
+                }
+                else if (mode.equals("pm"))
+                {
+                    block = new InterpretedProtectedModeBlock(b);
+                    compiledBlock = compiler.getProtectedModeCodeBlock(block);
+                }
+                else
+                {
+                    block = new InterpretedVM86ModeBlock(b);
+                    compiledBlock = compiler.getVirtual8086ModeCodeBlock(block);
+                }
+                if (compiledBlock == null)
+                    throw new IllegalStateException("Failed to compile "+ops);
+
+                long seed = r.nextLong();
+                randomise(interpreted, seed);
+                randomise(compiled, seed);
+                block.execute(interpreted);
+                compiledBlock.execute(compiled);
+                String expected = state(interpreted), actual = state(compiled);
+                tests++;
+                if (!expected.equals(actual))
+                {
+                    if (failures++ < 10)
+                        System.out.printf("Mismatch in %s\n  interpreted %s\n  compiled    %s\n", ops, expected, actual);
+                }
+            }
+        }
+        System.out.printf("%d sequences, %d mismatches\n", tests, failures);
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    // names of the opcodes the generator emits as RegisterOperation for a mode
+    static List<String> registerOperations(String mode)
+    {
+        final List<String> names = new ArrayList();
+        Callable collect = new Callable() {
+            public void call(Opcode op, String m)
+            {
+                if (op.isRegisterOperation())
+                    names.add(op.getName());
+            }
+        };
+        Generator.opcodeParse(Generator.parseXML("RMPMVM"), mode, collect);
+        if (mode.equals("rm"))
+        {
+            Generator.opcodeParse(Generator.parseXML("RMVM"), mode, collect);
+            Generator.opcodeParse(Generator.parseXML("RM"), mode, collect);
+        }
+        else if (mode.equals("vm"))
+        {
+            Generator.opcodeParse(Generator.parseXML("RMVM"), mode, collect);
+            Generator.opcodeParse(Generator.parseXML("VM"), mode, collect);
+        }
+        else
+            Generator.opcodeParse(Generator.parseXML("PM"), mode, collect);
+        return names;
+    }
+
+    static List<Constructor<?>> constructors(String mode, List<String> names) throws Exception
+    {
+        List<Constructor<?>> res = new ArrayList();
+        for (String name: names)
+        {
+            Class<?> c = Class.forName("org.jpc.emulator.execution.opcodes."+mode+"."+name);
+            res.add(c.getConstructor(int.class, int.class, int.class, PeekableInputStream.class));
+        }
+        return res;
+    }
+
+    static Executable create(Constructor<?> cons, Random r) throws Exception
+    {
+        byte[] input = new byte[8];
+        r.nextBytes(input);
+        input[0] |= (byte)0xC0; // register form of any modrm
+        return (Executable) cons.newInstance(0, 0, 0, new Disassembler.ByteArrayPeekStream(input));
+    }
+
+    static Processor.Reg[] registers(Processor cpu)
+    {
+        return new Processor.Reg[] {cpu.r_eax, cpu.r_ecx, cpu.r_edx, cpu.r_ebx, cpu.r_esp, cpu.r_ebp, cpu.r_esi, cpu.r_edi};
+    }
+
+    static void randomise(Processor cpu, long seed)
+    {
+        Random r = new Random(seed);
+        for (Processor.Reg reg: registers(cpu))
+            reg.set32(r.nextInt());
+        cpu.flagOp1 = r.nextInt();
+        cpu.flagOp2 = r.nextInt();
+        cpu.flagResult = r.nextInt();
+        cpu.flagIns = UCODES[r.nextInt(UCODES.length)];
+        cpu.flagStatus = r.nextInt(0x1000);
+        cpu.cf = r.nextBoolean();
+        cpu.of = r.nextBoolean();
+        cpu.af = r.nextBoolean();
+        cpu.sf = r.nextBoolean();
+        cpu.zf = r.nextBoolean();
+        cpu.pf = r.nextBoolean();
+        cpu.cs = SegmentFactory.createRealModeSegment(new LinearAddressSpace(), 0);
+        cpu.eip = 0x1000; // keeps the closing jump inside cs
+    }
+
+    static String state(Processor cpu)
+    {
+        StringBuilder b = new StringBuilder();
+        for (Processor.Reg reg: registers(cpu))
+            b.append(String.format("%08x ", reg.get32()));
+        b.append(String.format("op1=%08x op2=%08x res=%08x ins=%d status=%03x ", cpu.flagOp1, cpu.flagOp2, cpu.flagResult, cpu.flagIns, cpu.flagStatus));
+        b.append(String.format("cf=%b of=%b af=%b sf=%b zf=%b pf=%b ", cpu.cf, cpu.of, cpu.af, cpu.sf, cpu.zf, cpu.pf));
+        b.append(String.format("flags=%08x eip=%08x", cpu.getEFlags(), cpu.eip));
+        return b.toString();
+    }
+}
@@ -487,6 +487,14 @@ public class DecoderGenerator
         System.out.println("import org.jpc.emulator.execution.opcodes.rm.*;");
         System.out.println("import org.jpc.emulator.execution.opcodes.pm.*;");
         System.out.println("import org.jpc.emulator.execution.opcodes.vm.*;\n");
+        System.out.println("/**");
+        System.out.println(" * Opcode decoders for each processor mode, indexed by opcode | 0x100 for 0F,");
+        System.out.println(" * | 0x200 for operand size and | 0x400 for address size.");
+        System.out.println(" * <p>");
+        System.out.println(" * Each mode is a separate class and each decoder is only created the first");
+        System.out.println(" * time its opcode is seen, so the decoder and instruction classes of a mode");
+        System.out.println(" * the guest never enters are never loaded.");
+        System.out.println(" */");
         System.out.println("public class ExecutableTables {");
 
         generateMode(1, "RM");
@@ -498,15 +506,38 @@ public class DecoderGenerator
 
     public static void generateMode(int modeType, String mode)
     {
-        System.out.println("    public static void populate"+mode+"Opcodes(OpcodeDecoder[] ops) {\n");
+        System.out.println("    static final class "+mode+" {");
+        System.out.println("        private static final OpcodeDecoder[] ops = new OpcodeDecoder[0x800];\n");
+        System.out.println("        static OpcodeDecoder get(int opcode) {");
+        System.out.println("            OpcodeDecoder d = ops[opcode];");
+        System.out.println("            if (d == null)");
+        System.out.println("                d = ops[opcode] = create(opcode);");
+        System.out.println("            return d;");
+        System.out.println("        }\n");
+        System.out.println("        private static OpcodeDecoder create(int opcode) {");
+        System.out.println("            switch (opcode) {\n");
         OpcodeHolder[] ops = new OpcodeHolder[0x800];
         for (int i=0; i < ops.length; i++)
             ops[i] = new OpcodeHolder(modeType);
         generateRep(16, ops);
         removeDuplicates(ops);
-        for (int i=0; i < ops.length; i++)
-            System.out.printf("ops[0x%02x] = "+ops[i]+"\n", i);
-        System.out.println("}\n\n");
+        for (int i=0; i < 0x200; i++)
+        {
+            if (ops[i].namesSet.size() == 0)
+                continue;
+            // identical decoders for other operand and address sizes share a case
+            for (int j=i+0x200; j < ops.length; j += 0x200)
+                if (ops[j].copyOf == i)
+                    System.out.printf("case 0x%02x:\n", j);
+            System.out.printf("case 0x%02x: return "+ops[i]+"\n", i);
+        }
+        for (int i=0x200; i < ops.length; i++)
+            if ((ops[i].copyOf == -1) && (ops[i].namesSet.size() != 0))
+                System.out.printf("case 0x%02x: return "+ops[i]+"\n", i);
+        System.out.println("            default: return null;");
+        System.out.println("            }");
+        System.out.println("        }");
+        System.out.println("    }\n");
     }
 
     public static void generateRep(int mode, OpcodeHolder[] ops)
@@ -35,19 +35,24 @@ public class Opcode
     public static String HEADER;
     static
     {
-        try {
-            String tmp = "";
-            BufferedReader r = new BufferedReader(new FileReader("HEADER"));
-            String line;
-            while ((line = r.readLine()) != null)
-                tmp += line + "\n";
-            HEADER = tmp + "\n";
-        } catch (IOException e)
+        // only needed to write opcode classes, not to enumerate them
+        if (new File("HEADER").exists())
         {
-            e.printStackTrace();
+            try {
+                String tmp = "";
+                BufferedReader r = new BufferedReader(new FileReader("HEADER"));
+                String line;
+                while ((line = r.readLine()) != null)
+                    tmp += line + "\n";
+                HEADER = tmp + "\n";
+            } catch (IOException e)
+            {
+                e.printStackTrace();
+            }
         }
     }
     public static final boolean DEBUG_SIZE = true;
+    public static final List<String> REGISTER_OPERATIONS = Arrays.asList(new String[] {"mov", "add", "sub", "cmp", "and", "or", "xor", "test", "inc", "dec"});
     final String name;
     final Operand[] operands;
     final String snippet;
@@ -108,6 +113,8 @@ public class Opcode
         b.append(getDirectConstructor());
         b.append(getExecute());
         b.append(getBranch());
+        if (isRegisterOperation())
+            b.append(getRegisterOperation());
         b.append(getToString());
         b.append("}");
         return b.toString();
@@ -355,7 +362,47 @@ public class Opcode
 
     private String getPreamble(String mode)
     {
-        return getCopywriteHeader() + "package org.jpc.emulator.execution.opcodes."+mode+";\n\nimport org.jpc.emulator.execution.*;\nimport org.jpc.emulator.execution.decoder.*;\nimport org.jpc.emulator.processor.*;\nimport org.jpc.emulator.processor.fpu64.*;\nimport static org.jpc.emulator.processor.Processor.*;\n\npublic class "+getName()+" extends Executable\n{\n";
+        return getCopywriteHeader() + "package org.jpc.emulator.execution.opcodes."+mode+";\n\nimport org.jpc.emulator.execution.*;\nimport org.jpc.emulator.execution.decoder.*;\nimport org.jpc.emulator.processor.*;\nimport org.jpc.emulator.processor.fpu64.*;\nimport static org.jpc.emulator.processor.Processor.*;\n\npublic class "+getName()+" extends Executable"+(isRegisterOperation() ? " implements RegisterOperation" : "")+"\n{\n";
+    }
+
+    private String getMnemonic()
+    {
+        int end = name.indexOf("_");
+        return (end < 0) ? name : name.substring(0, end);
+    }
+
+    // register and immediate forms the bytecode compiler generates inline
+    boolean isRegisterOperation()
+    {
+        if (isMem || multiSize || (operands.length == 0) || !REGISTER_OPERATIONS.contains(getMnemonic()))
+            return false;
+        if ((operands[0].getSize() != 16) && (operands[0].getSize() != 32))
+            return false;
+        boolean unary = getMnemonic().equals("inc") || getMnemonic().equals("dec");
+        if (operands.length == 1)
+            return unary && (operands[0] instanceof Operand.SpecificReg) && Operand.reg16.containsKey(operands[0].toString());
+        if ((operands.length != 2) || unary || !isGeneralReg(operands[0]))
+            return false;
+        if (operands[1] instanceof Operand.Immediate)
+            return true;
+        return isGeneralReg(operands[1]) && (operands[1].getSize() == operands[0].getSize());
+    }
+
+    private static boolean isGeneralReg(Operand operand)
+    {
+        return (operand instanceof Operand.Reg) && (operand.toString().startsWith("E") || operand.toString().startsWith("G"));
+    }
+
+    private String getRegisterOperation()
+    {
+        boolean immediate = operands.length == 1 || (operands[1] instanceof Operand.Immediate);
+        StringBuilder b = new StringBuilder();
+        b.append("    public String getOperation()\n    {\n        return \""+getMnemonic()+"\";\n    }\n\n");
+        b.append("    public int getOperandSize()\n    {\n        return "+operands[0].getSize()+";\n    }\n\n");
+        b.append("    public int getDestinationIndex()\n    {\n        return "+operands[0].getIndex(1)+";\n    }\n\n");
+        b.append("    public int getSourceIndex()\n    {\n        return "+(immediate ? "-1" : operands[1].getIndex(2))+";\n    }\n\n");
+        b.append("    public int getImmediate()\n    {\n        return "+(operands.length == 1 ? "1" : (immediate ? operands[1].get(2) : "0"))+";\n    }\n\n");
+        return b.toString();
     }
 
     private String getBranch()
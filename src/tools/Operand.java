@@ -75,6 +75,11 @@ public abstract class Operand
         throw new IllegalStateException("Unimplemented getA!");
     }
 
+    public String getIndex(int arg)
+    {
+        throw new IllegalStateException("Unimplemented getIndex!");
+    }
+
     public static class Reg extends Operand
     {
         final int size;
@@ -125,6 +130,11 @@ public abstract class Operand
             return "op"+arg+"Index";
         }
 
+        public String getIndex(int arg)
+        {
+            return getVal(arg);
+        }
+
         public String get16(int arg)
         {
             return "op"+arg+".get16(";
@@ -336,6 +346,14 @@ public abstract class Operand
         {
             return name+".get"+getSize()+"()";
         }
+
+        public String getIndex(int arg)
+        {
+            String reg = name.substring(name.indexOf("r_")+2);
+            if (size == 16)
+                reg = reg.substring(1);
+            return reg.toUpperCase()+"_INDEX";
+        }
     }
 
     public static class Mem extends Operand
@@ -0,0 +1,303 @@
+/*
+    JPC: An x86 PC Hardware Emulator for a pure Java Virtual Machine
+
+    Copyright (C) 2012-2013 Ian Preston
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License version 2 as published by
+    the Free Software Foundation.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License along
+    with this program; if not, write to the Free Software Foundation, Inc.,
+    51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+    Details (including contact information) can be found at:
+
+    jpc.sourceforge.net
+    or the developer website
+    sourceforge.net/projects/jpc/
+
+    End of licence header
+*/
+
+package tools;
+
+import java.lang.reflect.*;
+import java.util.*;
+import org.jpc.emulator.PC;
+import org.jpc.emulator.execution.StaticOpcodes;
+import org.jpc.emulator.memory.*;
+import org.jpc.emulator.processor.*;
+import org.jpc.j2se.*;
+
+/**
+ * Checks the bulk REP MOVS, STOS and SCAS paths in StaticOpcodes against an
+ * element at a time reference. Each case runs from a random offset, often
+ * just short of a page boundary, in either direction, through paged memory
+ * with not present, read only and aliased pages and through segments with
+ * limits, and compares ECX, ESI, EDI, the last SCAS input, the fault raised
+ * and memory. Run from the root of the source tree with
+ * <code>tools.Tools -repstrings [cases] [seed]</code>.
+ * @author Ian Preston
+ */
+public class RepStringFaults
+{
+    static final int RAM_BASE = 0x200000;
+    static final int RAM_LENGTH = 0x40000;
+    static final int TABLES = 0x280000;
+    static final int LINEAR_BASE = 0x400000;
+
+    static final String[] MOVS = {"rep_movsb_a16", "rep_movsb_a32", "rep_movsw_a16", "rep_movsw_a32", "rep_movsd_a16", "rep_movsd_a32"};
+    static final String[] STOS = {"rep_stosb_a16", "rep_stosb_a32", "rep_stosw_a16", "rep_stosw_a32", "rep_stosd_a16", "rep_stosd_a32"};
+    static final String[] SCAS = {"repne_scasb_a16", "repe_scasb_a16", "rep_scasb_a32", "repne_scasb_a32", "repe_scasw_a16", "repe_scasw_a32",
+                                  "repne_scasw_a16", "repne_scasw_a32", "rep_scasd_a16", "repne_scasd_a16", "rep_scasd_a32", "repne_scasd_a32"};
+
+    static Processor cpu;
+    static PhysicalAddressSpace physical;
+    static LinearAddressSpace linear;
+
+    public static void main(String[] args) throws Exception
+    {
+        int cases = (args.length > 0) ? Integer.parseInt(args[0]) : 40000;
+        Random r = new Random((args.length > 1) ? Long.parseLong(args[1]) : 1);
+
+        String[] pcArgs = {"-boot", "fda", "-fda", "resources/images/floppy.img"};
+        Option.parse(pcArgs);
+        PC pc = new PC(new VirtualClock(), pcArgs);
+        cpu = (Processor) pc.getComponent(Processor.class);
+        physical = (PhysicalAddressSpace) pc.getComponent(PhysicalAddressSpace.class);
+        linear = (LinearAddressSpace) pc.getComponent(LinearAddressSpace.class);
+
+        // linear 0x400000 maps onto 64 pages of RAM at 0x200000, with holes
+        for (int i=0; i < 0x2000; i += 4)
+            physical.setDoubleWord(TABLES + i, 0);
+        physical.setDoubleWord(TABLES + 4, (TABLES + 0x1000) | 7);
+        for (int i=0; i < 64; i++)
+        {
+            int pte = (RAM_BASE + i*4096) | 7;
+            if ((i == 20) || (i == 47))
+                pte = 0; // not present
+            if ((i == 30) || (i == 50))
+                pte = (RAM_BASE + i*4096) | 5; // read only
+            if (i == 41)
+                pte = (RAM_BASE + 40*4096) | 7; // alias of the page before
+            physical.setDoubleWord(TABLES + 0x1000 + i*4, pte);
+        }
+        byte[] init = new byte[RAM_LENGTH];
+        r.nextBytes(init);
+        for (int i=0; i < RAM_LENGTH; i += 97)
+            init[i] = 0x41; // something for SCAS to find
+        physical.copyArrayIntoContents(RAM_BASE, init, 0, RAM_LENGTH);
+        linear.setPageDirectoryBaseAddress(TABLES);
+        linear.setPagingEnabled(true);
+        linear.setWriteProtectPages(true);
+        linear.setSupervisor(false);
+        linear.flush();
+
+        Segment flat = SegmentFactory.createProtectedModeSegment(linear, 0x23, 0x00cff3000000ffffL);
+        Segment limited = SegmentFactory.createProtectedModeSegment(linear, 0x2b, 0x0042f3400000ffffL); // base 0x400000, limit 0x2ffff
+        Segment small = SegmentFactory.createProtectedModeSegment(linear, 0x33, 0x0000f3410000ffffL); // base 0x410000, limit 0xffff
+        Segment readOnly = SegmentFactory.createProtectedModeSegment(linear, 0x3b, 0x00cff1000000ffffL);
+        Segment[] segments = {flat, limited, small, readOnly};
+
+        List<String> names = new ArrayList();
+        names.addAll(Arrays.asList(MOVS));
+        names.addAll(Arrays.asList(STOS));
+        names.addAll(Arrays.asList(SCAS));
+
+        int failures = 0;
+        Map<String, Integer> outcomes = new TreeMap();
+        for (int t=0; t < cases; t++)
+        {
+            String name = names.get(r.nextInt(names.size()));
+            String op = name.contains("movs") ? "movs" : (name.contains("stos") ? "stos" : "scas");
+            char sizeChar = name.charAt(name.indexOf('_') + 5);
+            int size = (sizeChar == 'b') ? 1 : ((sizeChar == 'w') ? 2 : 4);
+            boolean a16 = name.endsWith("a16");
+            boolean whileEqual = !name.startsWith("repne");
+            boolean down = r.nextBoolean();
+            Segment es = a16 ? ((r.nextInt(4) == 0) ? readOnly : small) : segments[r.nextInt(segments.length)];
+            Segment seg = a16 ? small : segments[r.nextInt(segments.length)];
+            int count = (r.nextInt(4) == 0) ? r.nextInt(40) : r.nextInt(6000 / size);
+            int range = a16 ? 0x10000 : 0x30000;
+            int di = r.nextInt(range);
+            int si = r.nextInt(range);
+            if (r.nextBoolean()) // start on the last or first few bytes of a page
+                di = down ? (di & ~0xfff) + r.nextInt(8) : (di & ~0xfff) | (4096 - r.nextInt(8));
+            if (r.nextInt(5) == 0)
+                si = di + r.nextInt(9) - 4; // overlapping MOVS
+            if (!a16 && ((es == flat) || (es == readOnly)))
+                di += LINEAR_BASE;
+            if (!a16 && ((seg == flat) || (seg == readOnly)))
+                si += LINEAR_BASE;
+            int data;
+            if (op.equals("scas"))
+            {
+                data = r.nextBoolean() ? 0x41 : ((size == 1) ? 0x41 : ((size == 2) ? 0x4141 : 0x41414141));
+                if (r.nextInt(4) == 0)
+                    data = r.nextInt() & ((size == 4) ? -1 : (1 << (8*size)) - 1);
+            }
+            else
+                data = (r.nextInt(3) == 0) ? 0 : r.nextInt();
+            if (op.equals("stos"))
+                data = (size == 1) ? (byte) data : ((size == 2) ? (short) data : data);
+
+            byte[] before = memory();
+            cpu.es = es;
+            cpu.df = down;
+            String expected = reference(op, size, a16, down, seg, count, si, di, data, whileEqual);
+            byte[] expectedMemory = memory();
+            restore(before);
+
+            cpu.es = es;
+            cpu.df = down;
+            cpu.r_ecx.set32(a16 ? (r.nextInt() & 0xffff0000) | (count & 0xffff) : count);
+            cpu.r_esi.set32(si);
+            cpu.r_edi.set32(di);
+            if (size == 1)
+                cpu.r_eax.set32((cpu.r_eax.get32() & ~0xff) | (data & 0xff));
+            else if (size == 2)
+                cpu.r_eax.set32((cpu.r_eax.get32() & ~0xffff) | (data & 0xffff));
+            else
+                cpu.r_eax.set32(data);
+            cpu.flagOp2 = 0;
+            String fault = "none";
+            Method m = op.equals("movs") ? StaticOpcodes.class.getMethod(name, Processor.class, Segment.class) : StaticOpcodes.class.getMethod(name, Processor.class);
+            try {
+                if (op.equals("movs"))
+                    m.invoke(null, cpu, seg);
+                else
+                    m.invoke(null, cpu);
+            } catch (InvocationTargetException e)
+            {
+                fault = fault((ProcessorException) e.getCause());
+            }
+            int input = (size == 1) ? cpu.flagOp2 & 0xff : ((size == 2) ? cpu.flagOp2 & 0xffff : cpu.flagOp2);
+            String actual = state(cpu.r_ecx.get32(), cpu.r_esi.get32(), cpu.r_edi.get32(), input, fault, a16, op);
+            String outcome = (down ? "down " : "up ") + fault.substring(0, fault.indexOf('/') < 0 ? fault.length() : fault.indexOf('/'));
+            outcomes.put(outcome, outcomes.containsKey(outcome) ? outcomes.get(outcome) + 1 : 1);
+            if (!actual.equals(expected) || !Arrays.equals(memory(), expectedMemory))
+            {
+                if (failures++ < 20)
+                    System.out.printf("Mismatch in %s df=%b es=%d seg=%d count=%x esi=%x edi=%x data=%x\n  expected %s\n  actual   %s\n",
+                            name, down, Arrays.asList(segments).indexOf(es), Arrays.asList(segments).indexOf(seg), count, si, di, data, expected, actual);
+            }
+            restore(before);
+        }
+        System.out.printf("%d cases, %d mismatches\n", cases, failures);
+        System.out.println("Outcomes: " + outcomes);
+        // the point of the exercise is faults partway through, in both directions
+        if (!outcomes.containsKey("up PAGE_FAULT") || !outcomes.containsKey("down PAGE_FAULT"))
+        {
+            System.out.println("Page faults were not hit in both directions");
+            failures++;
+        }
+        System.exit((failures == 0) ? 0 : 1);
+    }
+
+    // one element at a time, as the instructions behaved before the bulk paths
+    static String reference(String op, int size, boolean a16, boolean down, Segment seg, int count, int si, int di, int data, boolean whileEqual)
+    {
+        int input = 0;
+        String fault = "none";
+        int step = down ? -size : size;
+        if (a16)
+        {
+            count &= 0xffff;
+            si &= 0xffff;
+            di &= 0xffff;
+        }
+        try {
+            while (count != 0)
+            {
+                if (op.equals("movs"))
+                {
+                    set(cpu.es, mask(di, a16), size, (int) get(seg, mask(si, a16), size));
+                    count--;
+                    si += step;
+                    di += step;
+                }
+                else if (op.equals("stos"))
+                {
+                    set(cpu.es, mask(di, a16), size, data);
+                    count--;
+                    di += step;
+                }
+                else
+                {
+                    input = (int) get(cpu.es, mask(di, a16), size);
+                    count--;
+                    di += step;
+                    if ((data == input) != whileEqual)
+                        break;
+                }
+            }
+        } catch (ProcessorException e)
+        {
+            fault = fault(e);
+        }
+        return state(count, si, di, input, fault, a16, op);
+    }
+
+    static String fault(ProcessorException e)
+    {
+        return e.getType() + "/" + e.getErrorCode() + ((e.getType() == ProcessorException.Type.PAGE_FAULT) ? "/" + Integer.toHexString(linear.getLastWalkedAddress()) : "");
+    }
+
+    static String state(int ecx, int esi, int edi, int input, String fault, boolean a16, String op)
+    {
+        if (a16)
+        {
+            ecx &= 0xffff;
+            esi &= 0xffff;
+            edi &= 0xffff;
+        }
+        return String.format("ecx=%x esi=%s edi=%x input=%s fault=%s", ecx, op.equals("movs") ? Integer.toHexString(esi) : "-", edi,
+                op.equals("scas") ? Integer.toHexString(input) : "-", fault);
+    }
+
+    static int mask(int offset, boolean a16)
+    {
+        return a16 ? offset & 0xffff : offset;
+    }
+
+    static long get(Segment s, int offset, int size)
+    {
+        if (size == 1)
+            return s.getByte(offset) & 0xff;
+        if (size == 2)
+            return s.getWord(offset) & 0xffff;
+        return s.getDoubleWord(offset);
+    }
+
+    static void set(Segment s, int offset, int size, int value)
+    {
+        if (size == 1)
+            s.setByte(offset, (byte) value);
+        else if (size == 2)
+            s.setWord(offset, (short) value);
+        else
+            s.setDoubleWord(offset, value);
+    }
+
+    // the RAM behind the mapped pages and the page tables
+    static byte[] memory()
+    {
+        byte[] b = new byte[RAM_LENGTH + 0x2000];
+        physical.copyContentsIntoArray(RAM_BASE, b, 0, RAM_LENGTH);
+        physical.copyContentsIntoArray(TABLES, b, RAM_LENGTH, 0x2000);
+        return b;
+    }
+
+    static void restore(byte[] b)
+    {
+        physical.copyArrayIntoContents(RAM_BASE, b, 0, RAM_LENGTH);
+        physical.copyArrayIntoContents(TABLES, b, RAM_LENGTH, 0x2000);
+        linear.flush();
+    }
+}
@@ -36,6 +36,18 @@ public class Tools
             System.arraycopy(args, 1, rest, 0, rest.length);
             Comparison.main(rest);
         }
+        else if (args[0].equals("-compiler"))
+        {
+            String[] rest = new String[args.length-1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            CompilerComparison.main(rest);
+        }
+        else if (args[0].equals("-repstrings"))
+        {
+            String[] rest = new String[args.length-1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            RepStringFaults.main(rest);
+        }
         else if (args[0].equals("-convert"))
         {
             String[] rest = new String[args.length-1];